@@ -0,0 +1,110 @@
+package com.nei10u.fate.service;
+
+import com.nei10u.fate.model.FateRequest;
+import com.nei10u.fate.model.FateResponse;
+import com.nei10u.fate.service.ganzhi.DaYunIndex;
+import com.nlf.calendar.Lunar;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * 排盘与日历：
+ * - calculate：memo 关闭（每次真实排盘）与 memo 命中两种情况，样本为 1024 个不同出生输入
+ * - 流年干支：预计算表与逐年 Lunar.fromYmd 对比（一张 100 年 K 线的查询量）
+ * - 大运：按年龄索引与逐年线性扫描对比
+ * <p>
+ * 参考读数（JDK 21.0.1，1 vCPU，ops/ms，误差较大，只看量级）：calculateUncached 5.9 / calculateMemoHit 1224；
+ * yearGanZhiLunar 0.29 / yearGanZhiTable 20148；daYunLinearScan 895 / daYunIndex 1674。
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(value = 1, jvmArgs = {"-Xms512m", "-Xmx512m"})
+public class ChartCalculationBenchmark {
+
+    private static final int SAMPLES = 1024;
+    private static final int YEARS = 100;
+    private static final int BIRTH_YEAR = 1990;
+
+    private FateCalculationService uncached;
+    private FateCalculationService memoized;
+    private FateRequest[] requests;
+    private List<FateResponse.DaYunInfo> daYuns;
+    private int next;
+
+    @Setup
+    public void setup() {
+        uncached = Fixtures.calcService(0);
+        memoized = Fixtures.calcService(SAMPLES * 2);
+        requests = Fixtures.requests(SAMPLES, 2024);
+        for (FateRequest req : requests) {
+            memoized.calculate(req);
+        }
+        daYuns = Fixtures.bazi(7).getDaYunList();
+    }
+
+    @Benchmark
+    public FateResponse.BaZiInfo calculateUncached() {
+        return uncached.calculate(nextRequest());
+    }
+
+    @Benchmark
+    public FateResponse.BaZiInfo calculateMemoHit() {
+        return memoized.calculate(nextRequest());
+    }
+
+    @Benchmark
+    public void yearGanZhiTable(Blackhole bh) {
+        for (int i = 0; i < YEARS; i++) {
+            bh.consume(memoized.getYearGanZhi(BIRTH_YEAR + i));
+        }
+    }
+
+    @Benchmark
+    public void yearGanZhiLunar(Blackhole bh) {
+        for (int i = 0; i < YEARS; i++) {
+            bh.consume(Lunar.fromYmd(BIRTH_YEAR + i, 1, 1).getYearInGanZhi());
+        }
+    }
+
+    @Benchmark
+    public void daYunIndex(Blackhole bh) {
+        DaYunIndex index = DaYunIndex.of(daYuns);
+        for (int age = 1; age <= YEARS; age++) {
+            bh.consume(index.at(age));
+        }
+    }
+
+    @Benchmark
+    public void daYunLinearScan(Blackhole bh) {
+        for (int age = 1; age <= YEARS; age++) {
+            String current = DaYunIndex.CHILDHOOD;
+            for (FateResponse.DaYunInfo dy : daYuns) {
+                if (age >= dy.getStartAge()) {
+                    current = dy.getGanZhi();
+                }
+            }
+            bh.consume(current);
+        }
+    }
+
+    private FateRequest nextRequest() {
+        FateRequest req = requests[next];
+        next = (next + 1) & (SAMPLES - 1);
+        return req;
+    }
+}
@@ -0,0 +1,194 @@
+package com.nei10u.fate.service;
+
+import com.alibaba.fastjson2.JSON;
+import com.nei10u.fate.model.FateKLinePoint;
+import com.nei10u.fate.model.FateRequest;
+import com.nei10u.fate.model.FateResponse;
+import com.nei10u.fate.model.StepResponse;
+import com.nei10u.fate.model.YearlyBatchResult;
+import com.nei10u.fate.service.ganzhi.BaselineEstimator;
+import com.nei10u.fate.service.ganzhi.GanZhiRelations;
+import com.nei10u.fate.service.ganzhi.LocalFactsEngine;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+
+/**
+ * 基准用固定样本：固定种子生成，多次运行之间完全一致。
+ * <p>
+ * - 模型输出：80/100 条年度条目，约 8% 缺 open/close、约 3% 缺整条，文案长度与线上相当
+ * - JSON 包装：裸 JSON、```json 围栏、整体加引号、前后夹杂说明文字
+ * - 出生输入：1940–2010 年随机时刻，经度 75–135，男女各半
+ * - /kline 响应：四柱 + 大运 + count 个 K 线点（含批注），yearlyItems 为 null（与线上一致）
+ */
+final class Fixtures {
+
+    static final String[] WRAPPERS = {"plain", "fenced", "quoted", "garbage"};
+
+    private static final String[] PHRASES = {
+            "流年与日主相合，贵人助力明显，", "大运走印比，身心状态回稳，", "财星透出，宜把握投资窗口，",
+            "冲动日支，注意情绪与家庭关系，", "官杀混杂，压力偏大需稳守，", "食伤生财，才华容易被看见，",
+            "岁运并临，变动剧烈宜谨慎，", "学业考试有利，适合进修深造，", "健康方面留意脾胃与睡眠，"
+    };
+
+    private Fixtures() {
+    }
+
+    static FateCalculationService calcService(long memoEntries) {
+        return new FateCalculationService(memoEntries, new SimpleMeterRegistry());
+    }
+
+    /**
+     * 热路径不涉及模型调用，ModelClient 传 null。
+     */
+    static FateAiService aiService() {
+        return new FateAiService(null, calcService(10_000), new LocalFactsEngine(), new BaselineEstimator());
+    }
+
+    static List<YearlyBatchResult.YearlyItem> yearlyItems(int count, long seed) {
+        Random rnd = new Random(seed);
+        List<YearlyBatchResult.YearlyItem> items = new ArrayList<>(count);
+        int close = 50;
+        for (int age = 1; age <= count; age++) {
+            if (rnd.nextInt(100) < 3) {
+                continue;
+            }
+            int open = close;
+            close = Math.max(5, Math.min(95, open + rnd.nextInt(17) - 8));
+            YearlyBatchResult.YearlyItem item = new YearlyBatchResult.YearlyItem();
+            item.setAge(age);
+            item.setScore(Math.abs(close - open));
+            if (rnd.nextInt(100) >= 8) {
+                item.setOpen(open);
+                item.setClose(close);
+                item.setTrend(close > open ? "Bullish" : "Bearish");
+            }
+            item.setContent(content(rnd));
+            items.add(item);
+        }
+        return items;
+    }
+
+    /**
+     * normalizeKlineItems 会原地改写条目，基准每次调用前需要一份新拷贝。
+     */
+    static List<YearlyBatchResult.YearlyItem> copy(List<YearlyBatchResult.YearlyItem> items) {
+        List<YearlyBatchResult.YearlyItem> out = new ArrayList<>(items.size());
+        for (YearlyBatchResult.YearlyItem it : items) {
+            YearlyBatchResult.YearlyItem c = new YearlyBatchResult.YearlyItem();
+            c.setAge(it.getAge());
+            c.setScore(it.getScore());
+            c.setContent(it.getContent());
+            c.setOpen(it.getOpen());
+            c.setClose(it.getClose());
+            c.setTrend(it.getTrend());
+            c.setGanZhi(it.getGanZhi());
+            c.setDaYun(it.getDaYun());
+            out.add(c);
+        }
+        return out;
+    }
+
+    static String yearlyJson(int count, long seed, String wrapper) {
+        YearlyBatchResult result = new YearlyBatchResult();
+        result.setItems(yearlyItems(count, seed));
+        String json = JSON.toJSONString(result);
+        return switch (wrapper) {
+            case "plain" -> json;
+            case "fenced" -> "```json\n" + json + "\n```";
+            case "quoted" -> "\"" + json + "\"";
+            case "garbage" -> "好的，下面是根据命盘逐年推演的结果（已按要求输出 JSON）：\n\n" + json
+                    + "\n\n以上分数仅供参考，如需调整请告诉我。";
+            default -> throw new IllegalArgumentException("unknown wrapper: " + wrapper);
+        };
+    }
+
+    /**
+     * 合法四柱 + 10 步大运（起运 1–9 岁，每步 10 年，顺排）。
+     */
+    static FateResponse.BaZiInfo bazi(long seed) {
+        Random rnd = new Random(seed);
+        FateResponse.BaZiInfo info = new FateResponse.BaZiInfo();
+        int month = rnd.nextInt(60);
+        info.setYearPillar(GanZhiRelations.name(rnd.nextInt(60)));
+        info.setMonthPillar(GanZhiRelations.name(month));
+        info.setDayPillar(GanZhiRelations.name(rnd.nextInt(60)));
+        info.setHourPillar(GanZhiRelations.name(rnd.nextInt(60)));
+        int startAge = 1 + rnd.nextInt(9);
+        int direction = rnd.nextBoolean() ? 1 : 59;
+        List<FateResponse.DaYunInfo> daYuns = new ArrayList<>(10);
+        for (int i = 0; i < 10; i++) {
+            FateResponse.DaYunInfo dy = new FateResponse.DaYunInfo();
+            dy.setStartAge(startAge + i * 10);
+            dy.setStartYear(1990 + startAge + i * 10);
+            dy.setGanZhi(GanZhiRelations.name((month + direction * (i + 1)) % 60));
+            daYuns.add(dy);
+        }
+        info.setDaYunList(daYuns);
+        return info;
+    }
+
+    /**
+     * 不依赖 lunar 的 K 线响应样本：干支按序号推算，年份从 1990 起。
+     */
+    static StepResponse stepResponse(int count, long seed) {
+        FateResponse.BaZiInfo bazi = bazi(seed);
+        List<FateKLinePoint> points = new ArrayList<>(count);
+        int close = 50;
+        for (YearlyBatchResult.YearlyItem item : yearlyItems(count, seed)) {
+            int open = item.getOpen() != null ? item.getOpen() : close;
+            close = item.getClose() != null ? item.getClose() : open;
+            points.add(FateKLinePoint.builder()
+                    .age(item.getAge())
+                    .year(1989 + item.getAge())
+                    .ganZhi(GanZhiRelations.name((6 + item.getAge()) % 60))
+                    .daYun(bazi.getDaYunList().get(Math.min(9, item.getAge() / 10)).getGanZhi())
+                    .score(item.getScore())
+                    .open(open)
+                    .close(close)
+                    .trend(close >= open ? "Bullish" : "Bearish")
+                    .description(item.getContent())
+                    .build());
+        }
+        Map<String, Long> timings = new LinkedHashMap<>();
+        timings.put("bazi", 3L);
+        timings.put("kline", 41_250L);
+        StepResponse response = new StepResponse();
+        response.setRequestId("3f1c9a52-7d0e-4b8e-9a51-0c2d6e8f1b47");
+        response.setBaziInfo(bazi);
+        response.setKLineData(points);
+        response.setStageTimings(timings);
+        return response;
+    }
+
+    static FateRequest[] requests(int count, long seed) {
+        Random rnd = new Random(seed);
+        FateRequest[] out = new FateRequest[count];
+        for (int i = 0; i < count; i++) {
+            FateRequest req = new FateRequest();
+            req.setYear(1940 + rnd.nextInt(71));
+            req.setMonth(1 + rnd.nextInt(12));
+            req.setDay(1 + rnd.nextInt(28));
+            req.setHour(rnd.nextInt(24));
+            req.setMinute(rnd.nextInt(60));
+            req.setGender(rnd.nextBoolean() ? "男" : "女");
+            req.setLongitude(75 + rnd.nextDouble() * 60);
+            out[i] = req;
+        }
+        return out;
+    }
+
+    private static String content(Random rnd) {
+        StringBuilder sb = new StringBuilder(64);
+        int n = 2 + rnd.nextInt(3);
+        for (int i = 0; i < n; i++) {
+            sb.append(PHRASES[rnd.nextInt(PHRASES.length)]);
+        }
+        sb.setLength(sb.length() - 1);
+        return sb.append("。").toString();
+    }
+}
@@ -0,0 +1,53 @@
+package com.nei10u.fate.service;
+
+import com.nei10u.fate.model.YearlyBatchResult;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * 模型原始输出 -> 对象：normalizeJson（去围栏/引号/说明文字）与 parseWithFastjson 全流程。
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(value = 1, jvmArgs = {"-Xms512m", "-Xmx512m"})
+public class JsonExtractionBenchmark {
+
+    @Param({"80", "100"})
+    public int items;
+
+    @Param({"plain", "fenced", "quoted", "garbage"})
+    public String wrapper;
+
+    private FateAiService aiService;
+    private String raw;
+
+    @Setup
+    public void setup() {
+        aiService = Fixtures.aiService();
+        raw = Fixtures.yearlyJson(items, 42, wrapper);
+    }
+
+    @Benchmark
+    public String normalizeJson() {
+        return aiService.normalizeJson(raw);
+    }
+
+    @Benchmark
+    public YearlyBatchResult parseWithFastjson() {
+        return aiService.parseWithFastjson(raw, YearlyBatchResult.class);
+    }
+}
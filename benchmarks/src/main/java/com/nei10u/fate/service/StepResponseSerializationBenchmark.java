@@ -0,0 +1,103 @@
+package com.nei10u.fate.service;
+
+import com.alibaba.fastjson2.JSON;
+import com.alibaba.fastjson2.JSONB;
+import com.alibaba.fastjson2.JSONWriter;
+import com.nei10u.fate.config.FastJsonConfiguration;
+import com.nei10u.fate.config.FastJsonJsonbHttpMessageConverter;
+import com.nei10u.fate.model.StepResponse;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.util.concurrent.TimeUnit;
+import java.util.zip.GZIPInputStream;
+import java.util.zip.GZIPOutputStream;
+
+/**
+ * /kline 响应（StepResponse）在各序列化模式下的吞吐；Setup 时打印每种模式的响应字节数。
+ * <p>
+ * - pretty：现有默认（缩进 + null）
+ * - compact：prod profile（紧凑、跳过 null）
+ * - compact-gzip：compact 再经 gzip（等同 server.compression，默认压缩级别）
+ * - jsonb / jsonb-gzip：application/x-jsonb
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(value = 1, jvmArgs = {"-Xms512m", "-Xmx512m"})
+public class StepResponseSerializationBenchmark {
+
+    @Param({"80", "100"})
+    public int points;
+
+    @Param({"pretty", "compact", "compact-gzip", "jsonb", "jsonb-gzip"})
+    public String mode;
+
+    private StepResponse response;
+    private JSONWriter.Feature[] jsonFeatures;
+    private byte[] encoded;
+
+    @Setup
+    public void setup() {
+        response = Fixtures.stepResponse(points, 42);
+        jsonFeatures = FastJsonConfiguration.fastJsonConfig("pretty".equals(mode), "pretty".equals(mode))
+                .getWriterFeatures();
+        encoded = serialize();
+        System.out.printf("%n[payload] mode=%s points=%d bytes=%d%n", mode, points, encoded.length);
+    }
+
+    @Benchmark
+    public byte[] serialize() {
+        return switch (mode) {
+            case "pretty", "compact" -> JSON.toJSONBytes(response, jsonFeatures);
+            case "compact-gzip" -> gzip(JSON.toJSONBytes(response, jsonFeatures));
+            case "jsonb" -> FastJsonJsonbHttpMessageConverter.toBytes(response);
+            case "jsonb-gzip" -> gzip(FastJsonJsonbHttpMessageConverter.toBytes(response));
+            default -> throw new IllegalArgumentException("unknown mode: " + mode);
+        };
+    }
+
+    @Benchmark
+    public StepResponse deserialize() {
+        return switch (mode) {
+            case "pretty", "compact" -> JSON.parseObject(encoded, StepResponse.class);
+            case "compact-gzip" -> JSON.parseObject(gunzip(encoded), StepResponse.class);
+            case "jsonb" -> JSONB.parseObject(encoded, StepResponse.class);
+            case "jsonb-gzip" -> JSONB.parseObject(gunzip(encoded), StepResponse.class);
+            default -> throw new IllegalArgumentException("unknown mode: " + mode);
+        };
+    }
+
+    private static byte[] gzip(byte[] bytes) {
+        ByteArrayOutputStream out = new ByteArrayOutputStream(bytes.length / 3);
+        try (GZIPOutputStream gz = new GZIPOutputStream(out)) {
+            gz.write(bytes);
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+        return out.toByteArray();
+    }
+
+    private static byte[] gunzip(byte[] bytes) {
+        try (GZIPInputStream in = new GZIPInputStream(new ByteArrayInputStream(bytes))) {
+            return in.readAllBytes();
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+}
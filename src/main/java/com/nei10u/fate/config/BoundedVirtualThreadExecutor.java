@@ -0,0 +1,117 @@
+package com.nei10u.fate.config;
+
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.AbstractExecutorService;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.Condition;
+import java.util.concurrent.locks.ReentrantLock;
+
+/**
+ * 每任务一个虚拟线程的执行器，但并发数有上限：超过上限直接拒绝（与平台线程池的 AbortPolicy 语义一致）。
+ * <p>
+ * 阻塞型 LLM 调用在虚拟线程上等待时只占用很少的堆内存，不再绑定一个平台线程；
+ * 上限用于保护下游（OpenRouter 配额）与堆，而不是保护线程数。
+ * 内部只使用 j.u.c 锁，避免 synchronized 导致载体线程被钉住（pinning）。
+ */
+public final class BoundedVirtualThreadExecutor extends AbstractExecutorService {
+
+    private final ThreadFactory threadFactory;
+    private final int maxConcurrency;
+    private final Semaphore permits;
+    private final Set<Thread> running = ConcurrentHashMap.newKeySet();
+    private final ReentrantLock terminationLock = new ReentrantLock();
+    private final Condition terminated = terminationLock.newCondition();
+    private volatile boolean shutdown;
+
+    public BoundedVirtualThreadExecutor(String namePrefix, int maxConcurrency) {
+        this.threadFactory = Thread.ofVirtual().name(namePrefix, 1).factory();
+        this.maxConcurrency = maxConcurrency;
+        this.permits = new Semaphore(maxConcurrency);
+    }
+
+    @Override
+    public void execute(Runnable command) {
+        if (shutdown) {
+            throw new RejectedExecutionException("executor 已关闭");
+        }
+        if (!permits.tryAcquire()) {
+            throw new RejectedExecutionException("虚拟线程并发已达上限: " + maxConcurrency);
+        }
+        Thread thread = threadFactory.newThread(() -> {
+            try {
+                command.run();
+            } finally {
+                running.remove(Thread.currentThread());
+                permits.release();
+                if (shutdown && running.isEmpty()) {
+                    signalTerminated();
+                }
+            }
+        });
+        running.add(thread);
+        thread.start();
+    }
+
+    /**
+     * 当前在途任务数。
+     */
+    public int activeCount() {
+        return running.size();
+    }
+
+    @Override
+    public void shutdown() {
+        shutdown = true;
+        if (running.isEmpty()) {
+            signalTerminated();
+        }
+    }
+
+    @Override
+    public List<Runnable> shutdownNow() {
+        shutdown();
+        running.forEach(Thread::interrupt);
+        return List.of();
+    }
+
+    @Override
+    public boolean isShutdown() {
+        return shutdown;
+    }
+
+    @Override
+    public boolean isTerminated() {
+        return shutdown && running.isEmpty();
+    }
+
+    @Override
+    public boolean awaitTermination(long timeout, TimeUnit unit) throws InterruptedException {
+        long remaining = unit.toNanos(timeout);
+        terminationLock.lock();
+        try {
+            while (!isTerminated()) {
+                if (remaining <= 0) {
+                    return false;
+                }
+                remaining = terminated.awaitNanos(remaining);
+            }
+            return true;
+        } finally {
+            terminationLock.unlock();
+        }
+    }
+
+    private void signalTerminated() {
+        terminationLock.lock();
+        try {
+            terminated.signalAll();
+        } finally {
+            terminationLock.unlock();
+        }
+    }
+}
@@ -3,38 +3,64 @@ package com.nei10u.fate.config;
 import com.alibaba.fastjson2.JSONWriter;
 import com.alibaba.fastjson2.support.config.FastJsonConfig;
 import com.alibaba.fastjson2.support.spring6.http.converter.FastJsonHttpMessageConverter;
+import org.springframework.beans.factory.annotation.Value;
 import org.springframework.boot.autoconfigure.http.HttpMessageConverters;
 import org.springframework.context.annotation.Bean;
 import org.springframework.context.annotation.Configuration;
 import org.springframework.http.MediaType;
+import org.springframework.http.converter.HttpMessageConverter;
 
+import java.util.ArrayList;
 import java.util.List;
 
 /**
  * 全局启用 fastjson2 作为 HTTP JSON 解析与序列化。
+ * <p>
+ * - fate.json.pretty / fate.json.write-nulls：开发默认缩进 + 输出 null；prod profile 关闭两者，输出紧凑 JSON
+ * - fate.json.jsonb-enabled：额外注册 application/x-jsonb（fastjson2 JSONB），内部调用方通过 Accept 协商
+ * - gzip 由 server.compression 负责（见 application-prod.properties）
  */
 @Configuration
 public class FastJsonConfiguration {
 
     @Bean
-    public HttpMessageConverters fastJsonHttpMessageConverters() {
-        FastJsonConfig config = new FastJsonConfig();
-        config.setDateFormat("yyyy-MM-dd HH:mm:ss");
-        config.setWriterFeatures(
-                JSONWriter.Feature.WriteMapNullValue,
-                JSONWriter.Feature.PrettyFormat,
-                JSONWriter.Feature.WriteEnumUsingToString
-        );
-
-        FastJsonHttpMessageConverter converter = new FastJsonHttpMessageConverter();
-        converter.setFastJsonConfig(config);
+    public HttpMessageConverters fastJsonHttpMessageConverters(@Value("${fate.json.pretty:true}") boolean pretty,
+                                                               @Value("${fate.json.write-nulls:true}") boolean writeNulls,
+                                                               @Value("${fate.json.jsonb-enabled:true}") boolean jsonb) {
+        // byte[] 为预先序列化好的响应体（如 /yearly），交给默认的 ByteArrayHttpMessageConverter 原样输出
+        FastJsonHttpMessageConverter converter = new FastJsonHttpMessageConverter() {
+            @Override
+            protected boolean supports(Class<?> clazz) {
+                return clazz != byte[].class && super.supports(clazz);
+            }
+        };
+        converter.setFastJsonConfig(fastJsonConfig(pretty, writeNulls));
         converter.setSupportedMediaTypes(List.of(
                 MediaType.APPLICATION_JSON,
                 new MediaType("application", "*+json")
         ));
 
-        // 将 fastjson2 放在最高优先级
-        return new HttpMessageConverters(converter);
+        // 将 fastjson2 放在最高优先级；JSON 在前，未声明 Accept 的客户端仍拿到 JSON
+        List<HttpMessageConverter<?>> converters = new ArrayList<>(2);
+        converters.add(converter);
+        if (jsonb) {
+            converters.add(new FastJsonJsonbHttpMessageConverter());
+        }
+        return new HttpMessageConverters(converters);
     }
-}
 
+    public static FastJsonConfig fastJsonConfig(boolean pretty, boolean writeNulls) {
+        FastJsonConfig config = new FastJsonConfig();
+        config.setDateFormat("yyyy-MM-dd HH:mm:ss");
+        List<JSONWriter.Feature> features = new ArrayList<>(3);
+        if (writeNulls) {
+            features.add(JSONWriter.Feature.WriteMapNullValue);
+        }
+        if (pretty) {
+            features.add(JSONWriter.Feature.PrettyFormat);
+        }
+        features.add(JSONWriter.Feature.WriteEnumUsingToString);
+        config.setWriterFeatures(features.toArray(new JSONWriter.Feature[0]));
+        return config;
+    }
+}
@@ -0,0 +1,72 @@
+package com.nei10u.fate.config;
+
+import com.alibaba.fastjson2.JSONB;
+import com.alibaba.fastjson2.JSONException;
+import com.alibaba.fastjson2.JSONWriter;
+import org.springframework.core.GenericTypeResolver;
+import org.springframework.http.HttpInputMessage;
+import org.springframework.http.HttpOutputMessage;
+import org.springframework.http.MediaType;
+import org.springframework.http.converter.AbstractGenericHttpMessageConverter;
+import org.springframework.http.converter.HttpMessageNotReadableException;
+import org.springframework.http.converter.HttpMessageNotWritableException;
+
+import java.io.IOException;
+import java.lang.reflect.Type;
+
+/**
+ * fastjson2 JSONB 二进制格式（application/x-jsonb），供内部服务按 Accept / Content-Type 协商使用。
+ * <p>
+ * 与 JSON 同一套 Bean 映射：字段名按符号表写一次，null 不写，数值为变长编码；
+ * 读取端用 {@code JSONB.parseObject(bytes, StepResponse.class)} 即可。
+ */
+public class FastJsonJsonbHttpMessageConverter extends AbstractGenericHttpMessageConverter<Object> {
+
+    public static final String APPLICATION_JSONB_VALUE = "application/x-jsonb";
+    public static final MediaType APPLICATION_JSONB = MediaType.parseMediaType(APPLICATION_JSONB_VALUE);
+
+    private static final JSONWriter.Feature[] WRITER_FEATURES = {
+            JSONWriter.Feature.WriteNameAsSymbol,
+            JSONWriter.Feature.WriteEnumUsingToString
+    };
+
+    public FastJsonJsonbHttpMessageConverter() {
+        super(APPLICATION_JSONB);
+    }
+
+    public static byte[] toBytes(Object value) {
+        return JSONB.toBytes(value, WRITER_FEATURES);
+    }
+
+    @Override
+    protected boolean supports(Class<?> clazz) {
+        return clazz != byte[].class;
+    }
+
+    @Override
+    public Object read(Type type, Class<?> contextClass, HttpInputMessage inputMessage) throws IOException {
+        byte[] bytes = inputMessage.getBody().readAllBytes();
+        try {
+            return JSONB.parseObject(bytes, GenericTypeResolver.resolveType(type, contextClass));
+        } catch (JSONException e) {
+            throw new HttpMessageNotReadableException("JSONB parse error: " + e.getMessage(), e, inputMessage);
+        }
+    }
+
+    @Override
+    protected Object readInternal(Class<?> clazz, HttpInputMessage inputMessage) throws IOException {
+        return read(clazz, null, inputMessage);
+    }
+
+    @Override
+    protected void writeInternal(Object value, Type type, HttpOutputMessage outputMessage) throws IOException {
+        byte[] bytes;
+        try {
+            bytes = toBytes(value);
+        } catch (JSONException e) {
+            throw new HttpMessageNotWritableException("JSONB write error: " + e.getMessage(), e);
+        }
+        outputMessage.getHeaders().setContentLength(bytes.length);
+        outputMessage.getBody().write(bytes);
+    }
+}
@@ -0,0 +1,103 @@
+package com.nei10u.fate.config;
+
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * 专用执行器：LLM 阶段等慢 I/O 不占用 Tomcat 请求线程。
+ * <p>
+ * 执行模式与 spring.threads.virtual.enabled 保持一致（同一个开关同时切换 Tomcat 请求线程）：
+ * - 平台线程：固定大小线程池 + 有界队列，满载时直接拒绝，避免无限堆积拖垮 512m 堆
+ * - 虚拟线程：每任务一个虚拟线程，仅限制在途并发数（阻塞等待 OpenRouter 时不占用平台线程）
+ */
+@Configuration
+public class FateExecutorConfiguration {
+
+    @Value("${spring.threads.virtual.enabled:false}")
+    private boolean virtualThreads;
+
+    @Bean(name = "fateStageExecutor", destroyMethod = "shutdownNow")
+    public ExecutorService fateStageExecutor(@Value("${fate.pipeline.threads:16}") int threads,
+                                             @Value("${fate.pipeline.queue-capacity:64}") int queueCapacity,
+                                             @Value("${fate.pipeline.virtual-max-concurrency:512}") int virtualMax) {
+        return virtualThreads
+                ? new BoundedVirtualThreadExecutor("fate-stage-v-", virtualMax)
+                : boundedPlatformExecutor("fate-stage-", threads, queueCapacity);
+    }
+
+    /**
+     * 异步 job 工作线程池：POST 立即返回 202，实际步骤在这里执行。
+     */
+    @Bean(name = "fateJobExecutor", destroyMethod = "shutdownNow")
+    public ExecutorService fateJobExecutor(@Value("${fate.jobs.threads:8}") int threads,
+                                           @Value("${fate.jobs.queue-capacity:100}") int queueCapacity,
+                                           @Value("${fate.jobs.virtual-max-concurrency:1024}") int virtualMax) {
+        return virtualThreads
+                ? new BoundedVirtualThreadExecutor("fate-job-v-", virtualMax)
+                : boundedPlatformExecutor("fate-job-", threads, queueCapacity);
+    }
+
+    /**
+     * yearly 分段线程池：与阶段线程池分开，阶段线程等待分段结果时不会与子任务抢同一批线程。
+     */
+    @Bean(name = "fateShardExecutor", destroyMethod = "shutdownNow")
+    public ExecutorService fateShardExecutor(@Value("${fate.ai.yearly-shards.threads:32}") int threads,
+                                             @Value("${fate.ai.yearly-shards.queue-capacity:64}") int queueCapacity,
+                                             @Value("${fate.ai.yearly-shards.virtual-max-concurrency:1024}") int virtualMax) {
+        return virtualThreads
+                ? new BoundedVirtualThreadExecutor("fate-shard-v-", virtualMax)
+                : boundedPlatformExecutor("fate-shard-", threads, queueCapacity);
+    }
+
+    /**
+     * 报告分板块线程池：与 yearly 分段分开，/analyze 中 report 与 kline 并行时两边的扇出互不挤占、各自按配置限流。
+     */
+    @Bean(name = "fateReportSectionExecutor", destroyMethod = "shutdownNow")
+    public ExecutorService fateReportSectionExecutor(@Value("${fate.ai.report-sections.threads:28}") int threads,
+                                                     @Value("${fate.ai.report-sections.queue-capacity:56}") int queueCapacity,
+                                                     @Value("${fate.ai.report-sections.virtual-max-concurrency:1024}") int virtualMax) {
+        return virtualThreads
+                ? new BoundedVirtualThreadExecutor("fate-section-v-", virtualMax)
+                : boundedPlatformExecutor("fate-section-", threads, queueCapacity);
+    }
+
+    /**
+     * 模型上游调用线程池：调用方在此之外按自适应超时等待，超时或对冲落选时中断对应线程（JDK HttpClient 随之取消请求）。
+     */
+    @Bean(name = "fateModelExecutor", destroyMethod = "shutdownNow")
+    public ExecutorService fateModelExecutor(@Value("${fate.llm.threads:24}") int threads,
+                                             @Value("${fate.llm.queue-capacity:16}") int queueCapacity,
+                                             @Value("${fate.llm.virtual-max-concurrency:256}") int virtualMax) {
+        return virtualThreads
+                ? new BoundedVirtualThreadExecutor("fate-llm-v-", virtualMax)
+                : boundedPlatformExecutor("fate-llm-", threads, queueCapacity);
+    }
+
+    public static ExecutorService boundedPlatformExecutor(String prefix, int threads, int queueCapacity) {
+        ThreadPoolExecutor executor = new ThreadPoolExecutor(
+                threads, threads,
+                60, TimeUnit.SECONDS,
+                new ArrayBlockingQueue<>(queueCapacity),
+                namedThreadFactory(prefix),
+                new ThreadPoolExecutor.AbortPolicy());
+        executor.allowCoreThreadTimeOut(true);
+        return executor;
+    }
+
+    private static ThreadFactory namedThreadFactory(String prefix) {
+        AtomicInteger seq = new AtomicInteger();
+        return r -> {
+            Thread t = new Thread(r, prefix + seq.incrementAndGet());
+            t.setDaemon(true);
+            return t;
+        };
+    }
+}
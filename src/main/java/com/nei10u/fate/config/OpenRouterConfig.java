@@ -1,18 +1,27 @@
 package com.nei10u.fate.config;
 
+import com.nei10u.fate.service.ModelRouteProperties;
 import org.springframework.ai.openai.OpenAiChatModel;
 import org.springframework.ai.openai.OpenAiChatOptions;
 import org.springframework.ai.openai.api.OpenAiApi;
 import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.context.properties.EnableConfigurationProperties;
 import org.springframework.context.annotation.Bean;
 import org.springframework.context.annotation.Configuration;
 import org.springframework.context.annotation.Primary;
+import org.springframework.http.client.JdkClientHttpRequestFactory;
+import org.springframework.http.client.reactive.JdkClientHttpConnector;
 import org.springframework.util.StringUtils;
+import org.springframework.web.client.RestClient;
+import org.springframework.web.reactive.function.client.WebClient;
 
+import java.net.http.HttpClient;
+import java.time.Duration;
 import java.util.HashMap;
 import java.util.Map;
 
 @Configuration
+@EnableConfigurationProperties(ModelRouteProperties.class)
 public class OpenRouterConfig {
 
     @Value("${spring.ai.openai.api-key}")
@@ -30,15 +39,53 @@ public class OpenRouterConfig {
     @Value("${spring.ai.openai.chat.options.headers.X-Title}")
     private String xTitle;
 
+    @Value("${fate.llm.connect-timeout:5s}")
+    private Duration connectTimeout;
+
+    /**
+     * 同步调用的读超时兜底；日常的超时由 ModelClient 按阶段 p95 自适应控制，这里只防止线程被挂死的连接永久占用。
+     */
+    @Value("${fate.llm.read-timeout:180s}")
+    private Duration readTimeout;
+
+    /**
+     * 统一使用 JDK HttpClient（同步与流式共用）：其阻塞路径基于 j.u.c 锁，
+     * 在虚拟线程上等待响应不会钉住载体线程（HttpURLConnection 的 synchronized 路径会）。
+     */
+    @Bean
+    public HttpClient openRouterHttpClient() {
+        return newHttpClient(connectTimeout);
+    }
+
     @Bean
     @Primary
-    public OpenAiApi openAiApi() {
+    public OpenAiApi openAiApi(HttpClient openRouterHttpClient) {
+        return newOpenAiApi(openRouterHttpClient, baseUrl, apiKey, readTimeout);
+    }
+
+    /**
+     * 与线上相同的 HTTP 客户端构造，供压测工具（ThreadModeLoadTool）复用。
+     */
+    public static HttpClient newHttpClient(Duration connectTimeout) {
+        return HttpClient.newBuilder()
+                .followRedirects(HttpClient.Redirect.NORMAL)
+                .connectTimeout(connectTimeout)
+                .build();
+    }
+
+    public static OpenAiApi newOpenAiApi(HttpClient httpClient, String baseUrl, String apiKey, Duration readTimeout) {
+        JdkClientHttpRequestFactory requestFactory = new JdkClientHttpRequestFactory(httpClient);
+        requestFactory.setReadTimeout(readTimeout);
         // 明确指定路径以避免HTTP 405错误
         return new OpenAiApi.Builder()
                 .baseUrl(baseUrl)
                 .apiKey(apiKey)
                 .completionsPath("/chat/completions") // 明确指定 completions 路径
                 .embeddingsPath("/embeddings") // 明确指定 embeddings 路径
+                .restClientBuilder(RestClient.builder()
+                        .requestFactory(requestFactory))
+                .webClientBuilder(WebClient.builder()
+                        .clientConnector(new JdkClientHttpConnector(httpClient)))
                 .build();
     }
 
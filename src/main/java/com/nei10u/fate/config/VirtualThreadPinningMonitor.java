@@ -0,0 +1,103 @@
+package com.nei10u.fate.config;
+
+import jakarta.annotation.PostConstruct;
+import jakarta.annotation.PreDestroy;
+import jdk.jfr.consumer.RecordedEvent;
+import jdk.jfr.consumer.RecordedFrame;
+import jdk.jfr.consumer.RecordingStream;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.stereotype.Component;
+
+import java.time.Duration;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * 虚拟线程钉住（pinning）监控：订阅 JFR 的 jdk.VirtualThreadPinned 事件。
+ * <p>
+ * 虚拟线程在 synchronized 块内阻塞（典型如 HttpURLConnection 的部分路径）时会钉住载体线程，
+ * 虚拟线程模式下吞吐会退化为平台线程水平。这里把事件按是否落在 HTTP 客户端路径分类计数，
+ * 并带栈输出（限频），用于确认 LLM 调用链上没有 pinning。
+ * <p>
+ * 仅在 spring.threads.virtual.enabled=true 时启用，可用 fate.threads.pinning-monitor.enabled=false 关闭。
+ */
+@Component
+@ConditionalOnProperty(name = {"spring.threads.virtual.enabled", "fate.threads.pinning-monitor.enabled"},
+        havingValue = "true")
+public class VirtualThreadPinningMonitor {
+
+    private static final Logger log = LoggerFactory.getLogger(VirtualThreadPinningMonitor.class);
+
+    private static final String PINNED_EVENT = "jdk.VirtualThreadPinned";
+    private static final List<String> HTTP_CLIENT_PACKAGES = List.of(
+            "java.net.", "sun.net.", "jdk.internal.net.http.", "org.springframework.http.client.",
+            "org.springframework.web.client.", "org.springframework.ai.openai.");
+    private static final int MAX_FRAMES = 12;
+
+    private final AtomicLong pinnedTotal = new AtomicLong();
+    private final AtomicLong pinnedInHttpClient = new AtomicLong();
+    private final AtomicLong lastLoggedAt = new AtomicLong();
+
+    @Value("${fate.threads.pinning-threshold:5ms}")
+    private Duration threshold;
+
+    @Value("${fate.threads.pinning-log-interval:10s}")
+    private Duration logInterval;
+
+    private RecordingStream stream;
+
+    @PostConstruct
+    public void start() {
+        stream = new RecordingStream();
+        stream.enable(PINNED_EVENT).withThreshold(threshold).withStackTrace();
+        stream.onEvent(PINNED_EVENT, this::onPinned);
+        stream.startAsync();
+        log.info("virtual thread pinning monitor started, threshold={}", threshold);
+    }
+
+    @PreDestroy
+    public void stop() {
+        if (stream != null) {
+            stream.close();
+        }
+        log.info("virtual thread pinning monitor stopped: pinned={} inHttpClient={}",
+                pinnedTotal.get(), pinnedInHttpClient.get());
+    }
+
+    public long pinnedTotal() {
+        return pinnedTotal.get();
+    }
+
+    public long pinnedInHttpClient() {
+        return pinnedInHttpClient.get();
+    }
+
+    private void onPinned(RecordedEvent event) {
+        pinnedTotal.incrementAndGet();
+        List<RecordedFrame> frames = event.getStackTrace() == null ? List.of() : event.getStackTrace().getFrames();
+        boolean http = false;
+        StringBuilder stack = new StringBuilder();
+        for (int i = 0; i < frames.size(); i++) {
+            String type = frames.get(i).getMethod().getType().getName();
+            if (HTTP_CLIENT_PACKAGES.stream().anyMatch(type::startsWith)) {
+                http = true;
+            }
+            if (i < MAX_FRAMES) {
+                stack.append("\n    at ").append(type).append('.').append(frames.get(i).getMethod().getName())
+                        .append(':').append(frames.get(i).getLineNumber());
+            }
+        }
+        if (http) {
+            pinnedInHttpClient.incrementAndGet();
+        }
+        long now = System.currentTimeMillis();
+        long last = lastLoggedAt.get();
+        if (now - last >= logInterval.toMillis() && lastLoggedAt.compareAndSet(last, now)) {
+            log.warn("virtual thread pinned for {}ms (httpClient={}, total={}, inHttpClient={}):{}",
+                    event.getDuration().toMillis(), http, pinnedTotal.get(), pinnedInHttpClient.get(), stack);
+        }
+    }
+}
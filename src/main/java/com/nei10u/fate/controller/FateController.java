@@ -1,23 +1,41 @@
 package com.nei10u.fate.controller;
 
-import com.nei10u.fate.model.FateAnalysisReport;
-import com.nei10u.fate.model.FateKLinePoint;
 import com.nei10u.fate.model.FateRequest;
 import com.nei10u.fate.model.FateResponse;
+import com.nei10u.fate.model.JobStatusResponse;
 import com.nei10u.fate.model.KLineRequest;
 import com.nei10u.fate.model.StepResponse;
-import com.nei10u.fate.model.YearlyBatchResult;
-import com.nei10u.fate.service.FateAiService;
+import com.nei10u.fate.service.FateJob;
+import com.nei10u.fate.service.FateJobService;
 import com.nei10u.fate.service.FateSessionCache;
+import com.nei10u.fate.service.FateWorkflowService;
+import com.nei10u.fate.service.ModelOverloadedException;
+import com.nei10u.fate.service.session.CompactSeries;
+import com.nei10u.fate.service.session.PreparedBody;
 import lombok.RequiredArgsConstructor;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.http.CacheControl;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.InvalidMediaTypeException;
+import org.springframework.http.MediaType;
 import org.springframework.http.ResponseEntity;
 import org.springframework.web.bind.annotation.*;
+import org.springframework.web.context.request.async.DeferredResult;
+import org.springframework.web.servlet.mvc.method.annotation.SseEmitter;
+import reactor.core.Disposable;
+import reactor.core.publisher.Flux;
 
-import java.util.List;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.net.URI;
+import java.time.Duration;
+import java.util.Map;
 import java.util.Optional;
 import java.util.UUID;
+import java.util.concurrent.atomic.AtomicInteger;
 
 @RestController
 @RequestMapping("/api/fate")
@@ -26,45 +44,53 @@ import java.util.UUID;
 public class FateController {
 
     private static final Logger log = LoggerFactory.getLogger(FateController.class);
-    private final FateAiService fateAiService;
+    private final FateWorkflowService fateWorkflowService;
     private final FateSessionCache fateSessionCache;
+    private final FateJobService fateJobService;
+
+    @Value("${fate.stream.timeout:300s}")
+    private Duration streamTimeout;
+
+    @Value("${fate.jobs.max-wait:30s}")
+    private Duration jobMaxWait;
 
     @PostMapping("/analyze")
     public ResponseEntity<FateResponse> analyze(@RequestBody FateRequest request) {
-        return ResponseEntity.ok(fateAiService.analyze(request));
+        return ResponseEntity.ok(fateWorkflowService.analyze(request));
     }
 
+    /**
+     * async=true 时进入 job 模式：立即返回 202 + jobId，结果通过 GET /jobs/{requestId}/{step} 获取。
+     */
     @PostMapping("/bazi")
-    public ResponseEntity<StepResponse> bazi(@RequestBody FateRequest request) {
+    public ResponseEntity<?> bazi(@RequestBody FateRequest request,
+                                  @RequestParam(name = "async", defaultValue = "false") boolean async) {
         String rid = ensureRequestId(request);
-        log.info("[{}] step-bazi start", rid);
-        FateResponse.BaZiInfo bazi = fateAiService.calculateBaZi(request);
-        // 第一段：定盘 baseline（命格长期均值 μ）
-        // 注意：baseline 不需要回传给前端（保持接口不变），但会写入缓存供 /kline 使用。
-        FateAiService.BaselineResult baseline = fateAiService.generateBaseline(bazi, request.getGender(), rid);
-        fateSessionCache.upsertBaseline(rid, bazi, baseline.getBaseline(), baseline.getAnalysis());
-        log.info("[{}] step-bazi done", rid);
-        StepResponse resp = new StepResponse();
-        resp.setRequestId(rid);
-        resp.setBaziInfo(bazi);
-        return ResponseEntity.ok(resp);
+        if (async) {
+            return accepted(fateJobService.submit(rid, FateWorkflowService.STAGE_BAZI, () -> runBazi(request, rid)));
+        }
+        return ResponseEntity.ok(runBazi(request, rid));
     }
 
     @PostMapping("/report")
-    public ResponseEntity<StepResponse> report(@RequestBody FateRequest request) {
+    public ResponseEntity<?> report(@RequestBody FateRequest request,
+                                    @RequestParam(name = "async", defaultValue = "false") boolean async) {
         String rid = ensureRequestId(request);
-        log.info("[{}] step-report start", rid);
-        FateResponse.BaZiInfo bazi = fateAiService.calculateBaZi(request);
-        FateAnalysisReport report = fateAiService.generateReport(bazi, request.getGender());
-        log.info("[{}] step-report done", rid);
-        StepResponse resp = new StepResponse();
-        resp.setRequestId(rid);
-        resp.setAnalysisReport(report);
-        return ResponseEntity.ok(resp);
+        if (async) {
+            return accepted(fateJobService.submit(rid, FateWorkflowService.STAGE_REPORT, () -> runReport(request, rid)));
+        }
+        return ResponseEntity.ok(runReport(request, rid));
     }
 
+    /**
+     * 纯缓存读取。/kline 完成时已预生成响应体（原文 + 可选 gzip 副本 + ETag）：命中时只做字节拷贝，
+     * If-None-Match 匹配返回 304；客户端只接受 JSONB 或未预生成时按原方式组装。
+     */
     @PostMapping("/yearly")
-    public ResponseEntity<StepResponse> yearly(@RequestBody FateRequest request) {
+    public ResponseEntity<?> yearly(@RequestBody FateRequest request,
+                                    @RequestHeader(value = HttpHeaders.IF_NONE_MATCH, required = false) String ifNoneMatch,
+                                    @RequestHeader(value = HttpHeaders.ACCEPT_ENCODING, required = false) String acceptEncoding,
+                                    @RequestHeader(value = HttpHeaders.ACCEPT, required = false) String accept) {
         String rid = ensureRequestId(request);
         log.info("[{}] step-yearly start (from cache)", rid);
         Optional<FateSessionCache.CacheEntry> cached = fateSessionCache.get(rid);
@@ -74,18 +100,42 @@ public class FateController {
             resp.setRequestId(rid);
             return ResponseEntity.status(409).body(resp);
         }
+        PreparedBody body = cached.get().yearlyBody();
+        if (body != null && acceptsJson(accept)) {
+            boolean gzip = body.hasGzip() && acceptsGzip(acceptEncoding);
+            if (body.matches(ifNoneMatch)) {
+                log.info("[{}] step-yearly not modified", rid);
+                return ResponseEntity.status(HttpStatus.NOT_MODIFIED)
+                        .eTag(body.etag(gzip))
+                        .varyBy(HttpHeaders.ACCEPT_ENCODING)
+                        .build();
+            }
+            ResponseEntity.BodyBuilder ok = ResponseEntity.ok()
+                    .contentType(MediaType.APPLICATION_JSON)
+                    .eTag(body.etag(gzip))
+                    .cacheControl(CacheControl.noCache())
+                    .varyBy(HttpHeaders.ACCEPT_ENCODING);
+            if (gzip) {
+                ok.header(HttpHeaders.CONTENT_ENCODING, "gzip");
+            }
+            log.info("[{}] step-yearly done (prepared) bytes={} gzip={}", rid, body.length(), gzip);
+            return ok.body(gzip ? body.gzip() : body.raw());
+        }
         StepResponse resp = new StepResponse();
         resp.setRequestId(rid);
         // 前端表格展示使用 kLineData（包含 description），同时也带上 yearlyItems 备用
-        resp.setKLineData(cached.get().kLineData());
-        resp.setYearlyItems(cached.get().yearlyItems());
-        log.info("[{}] step-yearly done size={}", rid,
-                cached.get().yearlyItems() == null ? 0 : cached.get().yearlyItems().size());
+        CompactSeries.Views views = cached.get().series().views();
+        resp.setKLineData(views.kLineData());
+        resp.setYearlyItems(views.yearlyItems());
+        resp.setKlineVersion(cached.get().klineVersion());
+        resp.setKlineProvisional(cached.get().klineProvisional());
+        log.info("[{}] step-yearly done size={}", rid, cached.get().series().yearlyItemCount());
         return ResponseEntity.ok(resp);
     }
 
     @PostMapping("/kline")
-    public ResponseEntity<StepResponse> kline(@RequestBody KLineRequest payload) {
+    public ResponseEntity<?> kline(@RequestBody KLineRequest payload,
+                                   @RequestParam(name = "async", defaultValue = "false") boolean async) {
         FateRequest request = payload.getRequest();
         String rid = payload.getRequestId();
         if (rid == null || rid.isBlank()) {
@@ -93,33 +143,206 @@ public class FateController {
         } else {
             request.setRequestId(rid);
         }
-        log.info("[{}] step-kline start (llm+build)", rid);
-        // 优先复用 step1 缓存的 baseline/bazi，避免重复定盘
-        Optional<FateSessionCache.CacheEntry> cached = fateSessionCache.get(rid);
-        FateResponse.BaZiInfo bazi = cached.flatMap(e -> Optional.ofNullable(e.baziInfo()))
-                .orElseGet(() -> fateAiService.calculateBaZi(request));
-        Integer baseline = cached.map(FateSessionCache.CacheEntry::baseline).orElse(null);
-        if (baseline == null) {
-            // 兜底：若未先走 /bazi，也可在 /kline 内补定盘
-            FateAiService.BaselineResult base = fateAiService.generateBaseline(bazi, request.getGender(), rid);
-            baseline = base.getBaseline();
-            fateSessionCache.upsertBaseline(rid, bazi, baseline, base.getAnalysis());
-        }
-
-        // 三段式：事实层 -> 规则层 -> 执行层（LLM 输出仍会被后端做“产品级兜底”后处理）
-        List<YearlyBatchResult.YearlyItem> aiItems = payload.getYearlyItems();
-        if (aiItems == null || aiItems.isEmpty()) {
-            // 回到“一次性生成年度分数”的方案：模型只输出 score+content，K线连贯/红绿由后端派生
-            aiItems = fateAiService.generateYearlyScoresOneShot(bazi, request.getGender(), baseline, rid);
-        }
-        List<FateKLinePoint> kLine = fateAiService.buildKLineFromYearlyScores(request.getYear(), bazi.getDaYunList(),
-                aiItems, baseline);
-        fateSessionCache.upsertKline(rid, aiItems, kLine);
-        log.info("[{}] step-kline done size={}", rid, kLine.size());
+        String requestId = rid;
+        if (async) {
+            return accepted(fateJobService.submit(requestId, FateWorkflowService.STAGE_KLINE,
+                    () -> runKline(payload, requestId)));
+        }
+        return ResponseEntity.ok(runKline(payload, requestId));
+    }
+
+    /**
+     * K 线版本：/kline 返回临时结果（klineProvisional=true）后，客户端轮询此接口，版本号变化即重新拉取 /yearly。
+     * 只读会话条目的两个字段，不组装 K 线。
+     */
+    @GetMapping("/kline/{requestId}/version")
+    public ResponseEntity<StepResponse> klineVersion(@PathVariable String requestId) {
+        Optional<FateSessionCache.CacheEntry> cached = fateSessionCache.get(requestId);
+        if (cached.isEmpty() || cached.get().klineVersion() == 0) {
+            return ResponseEntity.notFound().build();
+        }
         StepResponse resp = new StepResponse();
-        resp.setRequestId(rid);
-        resp.setKLineData(kLine);
-        return ResponseEntity.ok(resp);
+        resp.setRequestId(requestId);
+        resp.setKlineVersion(cached.get().klineVersion());
+        resp.setKlineProvisional(cached.get().klineProvisional());
+        return ResponseEntity.ok().cacheControl(CacheControl.noCache()).body(resp);
+    }
+
+    /**
+     * 查询 job 状态；waitMs > 0 时长轮询：任务结束立即返回，否则最多挂起 waitMs（不占用 servlet 线程）。
+     * 已结束返回 200，仍在排队/执行返回 202。
+     */
+    @GetMapping("/jobs/{requestId}/{step}")
+    public DeferredResult<ResponseEntity<JobStatusResponse>> job(@PathVariable String requestId,
+                                                                 @PathVariable String step,
+                                                                 @RequestParam(name = "waitMs", defaultValue = "0") long waitMs) {
+        Optional<FateJob> found = fateJobService.find(requestId, step);
+        if (found.isEmpty()) {
+            DeferredResult<ResponseEntity<JobStatusResponse>> notFound = new DeferredResult<>();
+            notFound.setResult(ResponseEntity.notFound().build());
+            return notFound;
+        }
+        FateJob job = found.get();
+        long wait = Math.max(0, Math.min(waitMs, jobMaxWait.toMillis()));
+        if (job.isFinished() || wait == 0) {
+            DeferredResult<ResponseEntity<JobStatusResponse>> now = new DeferredResult<>();
+            now.setResult(jobStatus(job));
+            return now;
+        }
+        DeferredResult<ResponseEntity<JobStatusResponse>> deferred = new DeferredResult<>(wait, () -> jobStatus(job));
+        job.completion().thenAccept(j -> deferred.setResult(jobStatus(j)));
+        return deferred;
+    }
+
+    private StepResponse runBazi(FateRequest request, String rid) {
+        log.info("[{}] step-bazi start", rid);
+        // 第一段：定盘 baseline（命格长期均值 μ），由流水线写入缓存供 /kline 使用
+        StepResponse resp = fateWorkflowService.bazi(request, rid);
+        log.info("[{}] step-bazi done", rid);
+        return resp;
+    }
+
+    private StepResponse runReport(FateRequest request, String rid) {
+        log.info("[{}] step-report start", rid);
+        StepResponse resp = fateWorkflowService.report(request, rid);
+        log.info("[{}] step-report done", rid);
+        return resp;
+    }
+
+    private StepResponse runKline(KLineRequest payload, String rid) {
+        log.info("[{}] step-kline start (llm+build)", rid);
+        // 优先复用 step1 缓存的 baseline/bazi，避免重复定盘；
+        // 回到“一次性生成年度分数”的方案：模型只输出 score+content，K线连贯/红绿由后端派生
+        StepResponse resp = fateWorkflowService.kline(payload.getRequest(), payload.getYearlyItems(), rid);
+        log.info("[{}] step-kline done size={}", rid, resp.getKLineData().size());
+        return resp;
+    }
+
+    private ResponseEntity<JobStatusResponse> accepted(FateJob job) {
+        if (job.isFinished()) {
+            return jobStatus(job);
+        }
+        return ResponseEntity.accepted()
+                .location(URI.create("/api/fate/jobs/" + job.jobId()))
+                .body(fateJobService.toResponse(job));
+    }
+
+    private ResponseEntity<JobStatusResponse> jobStatus(FateJob job) {
+        JobStatusResponse body = fateJobService.toResponse(job);
+        return job.isFinished() ? ResponseEntity.ok(body) : ResponseEntity.accepted().body(body);
+    }
+
+    /**
+     * /kline 的流式版本（SSE）：模型每输出完一个年度条目，就推送一个 point 事件；
+     * 结束时推送 done 事件，最终结果同样写入会话缓存，/yearly 照常可用。
+     */
+    @PostMapping(value = "/kline/stream", produces = MediaType.TEXT_EVENT_STREAM_VALUE)
+    public SseEmitter klineStream(@RequestBody KLineRequest payload) {
+        FateRequest request = payload.getRequest();
+        String rid = payload.getRequestId();
+        if (rid == null || rid.isBlank()) {
+            rid = ensureRequestId(request);
+        } else {
+            request.setRequestId(rid);
+        }
+        String requestId = rid;
+        log.info("[{}] step-kline-stream start", requestId);
+        return sse(requestId, "step-kline-stream", "point",
+                fateWorkflowService.streamKline(request, payload.getYearlyItems(), requestId));
+    }
+
+    /**
+     * /report 的流式版本（SSE）：七个板块并发生成，每完成一个推送一个 section 事件
+     * （{key, title, section, degraded}，失败/超时的板块 degraded=true，不影响其他板块）；结束时推送 done 事件。
+     */
+    @PostMapping(value = "/report/stream", produces = MediaType.TEXT_EVENT_STREAM_VALUE)
+    public SseEmitter reportStream(@RequestBody FateRequest request) {
+        String requestId = ensureRequestId(request);
+        log.info("[{}] step-report-stream start", requestId);
+        return sse(requestId, "step-report-stream", "section", fateWorkflowService.streamReport(request, requestId));
+    }
+
+    /**
+     * Flux -> SSE：每个元素推送一个 eventName 事件，结束推送 done（requestId + 条数）。
+     * 模型准入被拒时响应头已发出、无法再改为 429：推送 overloaded 事件（stage + retryAfterSeconds，
+     * 同时以 SSE retry 字段给出重连间隔）后正常结束。
+     * 客户端断开/超时：取消上游模型调用，避免继续消耗 token。
+     */
+    private SseEmitter sse(String requestId, String step, String eventName, Flux<?> events) {
+        SseEmitter emitter = new SseEmitter(streamTimeout.toMillis());
+        AtomicInteger sent = new AtomicInteger();
+        Disposable subscription = events.subscribe(
+                event -> {
+                    sendEvent(emitter, eventName, event);
+                    sent.incrementAndGet();
+                },
+                err -> {
+                    if (err instanceof ModelOverloadedException overloaded) {
+                        log.warn("[{}] {} overloaded: {}", requestId, step, err.getMessage());
+                        try {
+                            sendOverloaded(emitter, requestId, overloaded);
+                            emitter.complete();
+                        } catch (UncheckedIOException ex) {
+                            emitter.completeWithError(ex);
+                        }
+                        return;
+                    }
+                    log.error("[{}] {} failed: {}", requestId, step, err.getMessage(), err);
+                    emitter.completeWithError(err);
+                },
+                () -> {
+                    sendEvent(emitter, "done", Map.of("requestId", requestId, "size", sent.get()));
+                    emitter.complete();
+                    log.info("[{}] {} done size={}", requestId, step, sent.get());
+                });
+        emitter.onCompletion(subscription::dispose);
+        emitter.onTimeout(subscription::dispose);
+        emitter.onError(e -> subscription.dispose());
+        return emitter;
+    }
+
+    private void sendOverloaded(SseEmitter emitter, String requestId, ModelOverloadedException e) {
+        long retryAfterSeconds = e.getRetryAfterSeconds();
+        try {
+            emitter.send(SseEmitter.event().name("overloaded")
+                    .reconnectTime(retryAfterSeconds * 1000)
+                    .data(Map.of("requestId", requestId, "stage", e.getStage(), "retryAfterSeconds", retryAfterSeconds),
+                            MediaType.APPLICATION_JSON));
+        } catch (IOException ex) {
+            throw new UncheckedIOException(ex);
+        }
+    }
+
+    private void sendEvent(SseEmitter emitter, String name, Object data) {
+        try {
+            emitter.send(SseEmitter.event().name(name).data(data, MediaType.APPLICATION_JSON));
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    private static boolean acceptsJson(String accept) {
+        if (accept == null || accept.isBlank()) {
+            return true;
+        }
+        try {
+            return MediaType.parseMediaTypes(accept).stream().anyMatch(m -> m.includes(MediaType.APPLICATION_JSON));
+        } catch (InvalidMediaTypeException e) {
+            return true;
+        }
+    }
+
+    private static boolean acceptsGzip(String acceptEncoding) {
+        if (acceptEncoding == null) {
+            return false;
+        }
+        for (String coding : acceptEncoding.split(",")) {
+            String[] parts = coding.trim().split(";");
+            if (parts[0].trim().equalsIgnoreCase("gzip")) {
+                return parts.length == 1 || !parts[1].trim().matches("q=0(\\.0*)?");
+            }
+        }
+        return false;
     }
 
     private String ensureRequestId(FateRequest request) {
@@ -0,0 +1,42 @@
+package com.nei10u.fate.controller;
+
+import com.nei10u.fate.service.ModelOverloadedException;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.ProblemDetail;
+import org.springframework.http.ResponseEntity;
+import org.springframework.web.bind.annotation.ExceptionHandler;
+import org.springframework.web.bind.annotation.RestControllerAdvice;
+
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ExecutionException;
+
+/**
+ * 模型准入被拒统一映射为 429 + Retry-After。流水线经 join() 抛出时外面包着 CompletionException，先解包再判断；
+ * 其他异常原样交回 Spring 默认处理。
+ */
+@RestControllerAdvice
+public class FateExceptionHandler {
+
+    @ExceptionHandler(ModelOverloadedException.class)
+    public ResponseEntity<ProblemDetail> overloaded(ModelOverloadedException e) {
+        ProblemDetail body = ProblemDetail.forStatusAndDetail(HttpStatus.TOO_MANY_REQUESTS, e.getMessage());
+        body.setProperty("stage", e.getStage());
+        body.setProperty("retryAfterSeconds", e.getRetryAfterSeconds());
+        return ResponseEntity.status(HttpStatus.TOO_MANY_REQUESTS)
+                .header(HttpHeaders.RETRY_AFTER, String.valueOf(e.getRetryAfterSeconds()))
+                .body(body);
+    }
+
+    @ExceptionHandler(CompletionException.class)
+    public ResponseEntity<ProblemDetail> completion(CompletionException e) throws Throwable {
+        Throwable cause = e;
+        while ((cause instanceof CompletionException || cause instanceof ExecutionException) && cause.getCause() != null) {
+            cause = cause.getCause();
+        }
+        if (cause instanceof ModelOverloadedException overloaded) {
+            return overloaded(overloaded);
+        }
+        throw e;
+    }
+}
@@ -2,6 +2,7 @@ package com.nei10u.fate.model;
 
 import lombok.Data;
 import java.util.List;
+import java.util.Map;
 
 @Data
 public class FateResponse {
@@ -9,6 +10,7 @@ public class FateResponse {
     private BaZiInfo baziInfo;
     private FateAnalysisReport analysisReport;
     private List<FateKLinePoint> kLineData;
+    private Map<String, Long> stageTimings; // 各阶段耗时（毫秒）
 
     @Data
     public static class BaZiInfo {
@@ -0,0 +1,15 @@
+package com.nei10u.fate.model;
+
+import lombok.Data;
+
+@Data
+public class JobStatusResponse {
+    private String jobId;
+    private String requestId;
+    private String step;         // bazi / report / kline
+    private String status;       // QUEUED / RUNNING / DONE / FAILED
+    private Long queuedMillis;   // 排队耗时
+    private Long runMillis;      // 执行耗时（未结束时为已运行时长）
+    private StepResponse result; // 仅 DONE 时有值
+    private String error;        // 仅 FAILED 时有值
+}
@@ -3,6 +3,7 @@ package com.nei10u.fate.model;
 import lombok.Data;
 
 import java.util.List;
+import java.util.Map;
 
 @Data
 public class StepResponse {
@@ -11,5 +12,8 @@ public class StepResponse {
     private FateAnalysisReport analysisReport;
     private List<YearlyBatchResult.YearlyItem> yearlyItems;
     private List<FateKLinePoint> kLineData;
+    private Map<String, Long> stageTimings; // 本次请求实际执行的阶段耗时（毫秒）
+    private Integer klineVersion; // 会话中 K 线的版本号，临时结果被模型结果替换时递增
+    private Boolean klineProvisional; // true = 模型未在时限内返回，当前为本地规则生成的临时 K 线
 }
 
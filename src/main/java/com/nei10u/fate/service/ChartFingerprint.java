@@ -0,0 +1,47 @@
+package com.nei10u.fate.service;
+
+import com.nei10u.fate.model.FateResponse;
+
+import java.util.List;
+
+/**
+ * 命盘指纹：所有 Prompt 只依赖四柱、性别、大运序列与 baseline，与姓名/城市/requestId 无关。
+ * <p>
+ * 规范化规则：
+ * - 四柱按 年/月/日/时 顺序拼接
+ * - 性别归一为 男/女
+ * - 大运只取 起运年龄 + 干支（起运年份随出生年变化，不影响命理语义）
+ */
+public record ChartFingerprint(String value) {
+
+    public static ChartFingerprint of(FateResponse.BaZiInfo bazi, String gender) {
+        StringBuilder sb = new StringBuilder(96);
+        sb.append(bazi.getYearPillar()).append(bazi.getMonthPillar())
+                .append(bazi.getDayPillar()).append(bazi.getHourPillar())
+                .append('|').append("男".equals(gender) ? "男" : "女")
+                .append('|');
+        List<FateResponse.DaYunInfo> daYuns = bazi.getDaYunList();
+        if (daYuns != null) {
+            for (FateResponse.DaYunInfo dy : daYuns) {
+                sb.append(dy.getStartAge()).append(dy.getGanZhi()).append(',');
+            }
+        }
+        return new ChartFingerprint(sb.toString());
+    }
+
+    public ChartFingerprint withBaseline(int baseline) {
+        return new ChartFingerprint(value + "|b" + baseline);
+    }
+
+    /**
+     * 阶段 + 指纹：同一命盘不同阶段的结果互不混用。
+     */
+    public String key(String stage) {
+        return stage + ":" + value;
+    }
+
+    @Override
+    public String toString() {
+        return value;
+    }
+}
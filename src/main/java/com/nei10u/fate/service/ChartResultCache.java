@@ -0,0 +1,135 @@
+package com.nei10u.fate.service;
+
+import com.github.benmanes.caffeine.cache.Cache;
+import com.github.benmanes.caffeine.cache.Caffeine;
+import com.github.benmanes.caffeine.cache.stats.CacheStats;
+import com.nei10u.fate.model.FateAnalysisReport;
+import com.nei10u.fate.model.YearlyBatchResult;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.binder.cache.CaffeineCacheMetrics;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import java.time.Duration;
+import java.util.Collection;
+import java.util.Map;
+import java.util.Optional;
+
+/**
+ * 跨用户的命盘级结果缓存：key = 阶段 + 命盘指纹（见 {@link ChartFingerprint}），与 requestId 无关。
+ * <p>
+ * - 同一八字/性别/大运的不同用户复用同一份 LLM 结果
+ * - 同时受条数上限与估算字节上限约束，过期策略为写入后 TTL
+ * - 命中/未命中/淘汰统计通过 Micrometer 暴露：cache.gets{cache=fate.chart, result=hit|miss} 等
+ * - 每个值附带生成它时各阶段实际作答的模型，命中方据此记入自己的会话（见 {@link ModelLedger}）
+ * <p>
+ * 缓存值在多个请求之间共享引用，调用方只读，不得修改；会话条目不引用缓存值，而是另存紧凑副本
+ * （见 {@link FateSessionCache}）。
+ */
+@Component
+public class ChartResultCache {
+
+    static final String CACHE_NAME = "fate.chart";
+
+    private final boolean enabled;
+    private final Cache<String, Attributed<?>> cache;
+
+    /**
+     * 缓存值及生成它的模型（阶段 -> 模型 id，多个以逗号合并）。
+     */
+    public record Attributed<T>(T value, Map<String, String> models) {
+    }
+
+    public ChartResultCache(@Value("${fate.chart-cache.enabled:true}") boolean enabled,
+                            @Value("${fate.chart-cache.max-entries:2000}") long maxEntries,
+                            @Value("${fate.chart-cache.max-weight-mb:64}") long maxWeightMb,
+                            @Value("${fate.chart-cache.ttl:24h}") Duration ttl,
+                            MeterRegistry meterRegistry) {
+        this.enabled = enabled;
+        long maxWeight = Math.max(1, maxWeightMb) * 1024 * 1024;
+        // Caffeine 不能同时设置 maximumSize 与 maximumWeight：
+        // 每条至少按 maxWeight / maxEntries 计重，字节上限因此同时约束了条数。
+        int minWeight = (int) Math.min(Integer.MAX_VALUE, Math.max(1, maxWeight / Math.max(1, maxEntries)));
+        this.cache = Caffeine.newBuilder()
+                .maximumWeight(maxWeight)
+                .weigher((String key, Attributed<?> value) ->
+                        (int) Math.min(Integer.MAX_VALUE, Math.max(minWeight, estimateBytes(key, value))))
+                .expireAfterWrite(ttl)
+                .recordStats()
+                .build();
+        CaffeineCacheMetrics.monitor(meterRegistry, cache, CACHE_NAME);
+    }
+
+    public <T> Optional<T> get(String key) {
+        return this.<T>getAttributed(key).map(Attributed::value);
+    }
+
+    @SuppressWarnings("unchecked")
+    public <T> Optional<Attributed<T>> getAttributed(String key) {
+        if (!enabled) {
+            return Optional.empty();
+        }
+        return Optional.ofNullable((Attributed<T>) cache.getIfPresent(key));
+    }
+
+    public void put(String key, Object value, Map<String, String> models) {
+        if (enabled && value != null) {
+            cache.put(key, new Attributed<>(value, models));
+        }
+    }
+
+    public CacheStats stats() {
+        return cache.stats();
+    }
+
+    public long size() {
+        return cache.estimatedSize();
+    }
+
+    /**
+     * 粗略估算占用字节（对象头 + 字符串按 UTF-16 计），仅用于权重淘汰，不追求精确。
+     */
+    static long estimateBytes(String key, Attributed<?> value) {
+        long models = 0;
+        for (Map.Entry<String, String> e : value.models().entrySet()) {
+            models += 32 + stringBytes(e.getKey()) + stringBytes(e.getValue());
+        }
+        return 64 + stringBytes(key) + valueBytes(value.value()) + models;
+    }
+
+    private static long valueBytes(Object value) {
+        if (value instanceof FateAiService.BaselineResult baseline) {
+            return 32 + stringBytes(baseline.getAnalysis());
+        }
+        if (value instanceof FateAnalysisReport report) {
+            return 32 + sectionBytes(report.getOverall()) + sectionBytes(report.getInvestment())
+                    + sectionBytes(report.getCareer()) + sectionBytes(report.getWealth())
+                    + sectionBytes(report.getLove()) + sectionBytes(report.getHealth())
+                    + sectionBytes(report.getFamily());
+        }
+        if (value instanceof Collection<?> items) {
+            long total = 32;
+            for (Object item : items) {
+                total += item instanceof YearlyBatchResult.YearlyItem yi ? yearlyItemBytes(yi) : 64;
+            }
+            return total;
+        }
+        return 64;
+    }
+
+    private static long sectionBytes(FateAnalysisReport.Section section) {
+        if (section == null) {
+            return 0;
+        }
+        return 32 + stringBytes(section.getContent()) + stringBytes(section.getSummary());
+    }
+
+    private static long yearlyItemBytes(YearlyBatchResult.YearlyItem item) {
+        return 80 + stringBytes(item.getContent()) + stringBytes(item.getTrend())
+                + stringBytes(item.getGanZhi()) + stringBytes(item.getDaYun());
+    }
+
+    private static long stringBytes(String s) {
+        return s == null ? 0 : 40 + 2L * s.length();
+    }
+}
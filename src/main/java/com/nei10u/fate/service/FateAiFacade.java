@@ -0,0 +1,222 @@
+package com.nei10u.fate.service;
+
+import com.nei10u.fate.model.FateAnalysisReport;
+import com.nei10u.fate.model.FateResponse;
+import com.nei10u.fate.model.YearlyBatchResult;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Service;
+import reactor.core.publisher.Flux;
+
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.function.Predicate;
+import java.util.function.Supplier;
+
+/**
+ * FateAiService 的前置层：按“阶段 + 命盘指纹”复用已完成结果、合并进行中的相同 LLM 请求。
+ * <p>
+ * - 命盘级缓存（{@link ChartResultCache}）命中时直接返回共享结果，不调用模型
+ * - 未命中时，双击、前端重试、或不同 requestId 但出生信息相同的并发请求，只会触发一次模型调用，
+ *   其余调用挂在同一个进行中的结果上
+ * - 兜底/不完整的结果不写入命盘缓存，避免把一次失败扩散给同命盘的所有用户
+ * - 结果与生成它的模型一同共享：命中命盘缓存或合并到他人调用的请求，也会把作答模型记入自己的 {@link ModelLedger}
+ * <p>
+ * 指标：fate.singleflight.calls{stage, result=leader|coalesced}，命中率 = coalesced / 总数；
+ * 命盘缓存见 cache.gets{cache=fate.chart}。
+ * <p>
+ * 年度分数按 fate.ai.yearly-mode 生成：oneshot = 一次调用生成 80 年；sharded = 按大运分段并发（{@link YearlyShardGenerator}）。
+ * 报告按 fate.ai.report-mode 生成：oneshot = 一次生成七个板块；sections = 按板块并发（{@link ReportSectionGenerator}）。
+ */
+@Service
+public class FateAiFacade {
+
+    private static final Logger log = LoggerFactory.getLogger(FateAiFacade.class);
+
+    static final String STAGE_BASELINE = "baseline";
+    static final String STAGE_REPORT = "report";
+    static final String STAGE_YEARLY = "yearly";
+
+    private final FateAiService fateAiService;
+    private final YearlyShardGenerator yearlyShardGenerator;
+    private final ReportSectionGenerator reportSectionGenerator;
+    private final ChartResultCache chartResultCache;
+    private final ModelLedger modelLedger;
+    private final MeterRegistry meterRegistry;
+    private final boolean shardedYearly;
+    private final boolean sectionedReport;
+    private final SingleFlight<String, ChartResultCache.Attributed<?>> singleFlight = new SingleFlight<>();
+
+    public FateAiFacade(FateAiService fateAiService,
+                        YearlyShardGenerator yearlyShardGenerator,
+                        ReportSectionGenerator reportSectionGenerator,
+                        ChartResultCache chartResultCache,
+                        ModelLedger modelLedger,
+                        MeterRegistry meterRegistry,
+                        @Value("${fate.ai.yearly-mode:sharded}") String yearlyMode,
+                        @Value("${fate.ai.report-mode:sections}") String reportMode) {
+        this.fateAiService = fateAiService;
+        this.yearlyShardGenerator = yearlyShardGenerator;
+        this.reportSectionGenerator = reportSectionGenerator;
+        this.chartResultCache = chartResultCache;
+        this.modelLedger = modelLedger;
+        this.meterRegistry = meterRegistry;
+        this.shardedYearly = "sharded".equalsIgnoreCase(yearlyMode);
+        this.sectionedReport = "sections".equalsIgnoreCase(reportMode);
+        Gauge.builder("fate.singleflight.inflight", singleFlight, SingleFlight::inFlightCount)
+                .description("进行中的去重 LLM 请求数")
+                .register(meterRegistry);
+    }
+
+    public FateAiService.BaselineResult generateBaseline(FateResponse.BaZiInfo bazi, String gender, String requestId) {
+        ChartFingerprint fp = ChartFingerprint.of(bazi, gender);
+        return cachedOrCoalesce(STAGE_BASELINE, fp, requestId,
+                () -> fateAiService.generateBaseline(bazi, gender, requestId),
+                baseline -> !baseline.isDegraded());
+    }
+
+    public FateAnalysisReport generateReport(FateResponse.BaZiInfo bazi, String gender, String requestId) {
+        ChartFingerprint fp = ChartFingerprint.of(bazi, gender);
+        return cachedOrCoalesce(STAGE_REPORT, fp, requestId,
+                () -> sectionedReport
+                        ? reportSectionGenerator.generate(bazi, gender, requestId)
+                        : fateAiService.generateReport(bazi, gender, requestId),
+                FateAiFacade::isCompleteReport);
+    }
+
+    /**
+     * 按板块流式生成报告：命盘缓存命中时整份回放；否则各板块完成即下发，七块均成功后回填命盘缓存。
+     */
+    public Flux<ReportSectionGenerator.SectionResult> streamReport(FateResponse.BaZiInfo bazi, String gender,
+                                                                   String requestId) {
+        String key = ChartFingerprint.of(bazi, gender).key(STAGE_REPORT);
+        return Flux.defer(() -> {
+            Optional<ChartResultCache.Attributed<FateAnalysisReport>> cached = chartResultCache.getAttributed(key);
+            if (cached.isPresent()) {
+                log.info("[{}] {} served from chart cache", requestId, STAGE_REPORT);
+                modelLedger.recordAll(requestId, cached.get().models());
+                return Flux.fromIterable(ReportSectionGenerator.split(cached.get().value()));
+            }
+            FateAnalysisReport assembled = new FateAnalysisReport();
+            return reportSectionGenerator.stream(bazi, gender, requestId)
+                    .doOnNext(result -> ReportSection.of(result.key()).set(assembled, result.section()))
+                    .doOnComplete(() -> {
+                        if (isCompleteReport(assembled)) {
+                            chartResultCache.put(key, assembled, modelLedger.models(requestId, STAGE_REPORT));
+                        }
+                    });
+        });
+    }
+
+    public List<YearlyBatchResult.YearlyItem> generateYearlyScores(FateResponse.BaZiInfo bazi,
+                                                                  String gender,
+                                                                  int baseline,
+                                                                  String requestId) {
+        ChartFingerprint fp = ChartFingerprint.of(bazi, gender).withBaseline(baseline);
+        return cachedOrCoalesce(STAGE_YEARLY, fp, requestId,
+                () -> Collections.unmodifiableList(shardedYearly
+                        ? yearlyShardGenerator.generate(bazi, gender, baseline, requestId)
+                        : fateAiService.generateYearlyScoresOneShot(bazi, gender, baseline, requestId)),
+                items -> items.size() >= KLineSeriesBuilder.YEARS);
+    }
+
+    /**
+     * 仅查询命盘缓存中的模型定盘结果（local-first 策略命中时直接使用，不再本地估算）。
+     */
+    public Optional<FateAiService.BaselineResult> cachedBaseline(FateResponse.BaZiInfo bazi, String gender,
+                                                                 String requestId) {
+        return cached(ChartFingerprint.of(bazi, gender).key(STAGE_BASELINE), requestId);
+    }
+
+    /**
+     * 仅查询命盘缓存中的年度分数（流式接口命中时直接回放，不再调用模型）。
+     */
+    public Optional<List<YearlyBatchResult.YearlyItem>> cachedYearlyScores(FateResponse.BaZiInfo bazi,
+                                                                          String gender,
+                                                                          int baseline,
+                                                                          String requestId) {
+        ChartFingerprint fp = ChartFingerprint.of(bazi, gender).withBaseline(baseline);
+        return cached(fp.key(STAGE_YEARLY), requestId);
+    }
+
+    /**
+     * 流式接口完整收到年度分数后回填命盘缓存（不完整的结果忽略）。
+     */
+    public void rememberYearlyScores(FateResponse.BaZiInfo bazi, String gender, int baseline,
+                                     List<YearlyBatchResult.YearlyItem> items, String requestId) {
+        if (items.size() >= KLineSeriesBuilder.YEARS) {
+            ChartFingerprint fp = ChartFingerprint.of(bazi, gender).withBaseline(baseline);
+            chartResultCache.put(fp.key(STAGE_YEARLY), Collections.unmodifiableList(items),
+                    modelLedger.models(requestId, STAGE_YEARLY));
+        }
+    }
+
+    /**
+     * 命盘缓存命中时把生成该结果的模型记到本请求名下。
+     */
+    private <T> Optional<T> cached(String key, String requestId) {
+        Optional<ChartResultCache.Attributed<T>> cached = chartResultCache.getAttributed(key);
+        cached.ifPresent(hit -> modelLedger.recordAll(requestId, hit.models()));
+        return cached.map(ChartResultCache.Attributed::value);
+    }
+
+    private <T> T cachedOrCoalesce(String stage, ChartFingerprint fp, String requestId,
+                                   Supplier<T> work, Predicate<T> cacheable) {
+        String key = fp.key(stage);
+        Optional<T> cached = cached(key, requestId);
+        if (cached.isPresent()) {
+            log.info("[{}] {} served from chart cache", requestId, stage);
+            return cached.get();
+        }
+        // 在 leader 内写缓存：single-flight 释放前结果已可见，后到的请求不会再穿透到模型
+        return coalesce(stage, key, requestId, () -> {
+            T value = work.get();
+            Map<String, String> models = modelLedger.models(requestId, stage);
+            if (value != null && cacheable.test(value)) {
+                chartResultCache.put(key, value, models);
+            }
+            return new ChartResultCache.Attributed<>(value, models);
+        });
+    }
+
+    /**
+     * 合并到进行中的调用时，领头者的作答模型一并记到本请求名下。
+     */
+    @SuppressWarnings("unchecked")
+    private <T> T coalesce(String stage, String key, String requestId,
+                           Supplier<ChartResultCache.Attributed<T>> work) {
+        SingleFlight.Outcome<ChartResultCache.Attributed<?>> outcome = singleFlight.execute(key, work::get);
+        ChartResultCache.Attributed<T> result = (ChartResultCache.Attributed<T>) outcome.value();
+        if (outcome.coalesced()) {
+            log.info("[{}] {} coalesced onto in-flight request", requestId, stage);
+            modelLedger.recordAll(requestId, result.models());
+        }
+        Counter.builder("fate.singleflight.calls")
+                .description("LLM 阶段调用数（leader=实际调用模型，coalesced=合并到进行中的请求）")
+                .tag("stage", stage)
+                .tag("result", outcome.coalesced() ? "coalesced" : "leader")
+                .register(meterRegistry)
+                .increment();
+        return result.value();
+    }
+
+    /**
+     * 七个板块均有评分才视为完整报告；兜底报告的评分保持为 0。
+     */
+    private static boolean isCompleteReport(FateAnalysisReport report) {
+        return hasScore(report.getOverall()) && hasScore(report.getInvestment())
+                && hasScore(report.getCareer()) && hasScore(report.getWealth())
+                && hasScore(report.getLove()) && hasScore(report.getHealth())
+                && hasScore(report.getFamily());
+    }
+
+    private static boolean hasScore(FateAnalysisReport.Section section) {
+        return section != null && section.getScore() > 0;
+    }
+}
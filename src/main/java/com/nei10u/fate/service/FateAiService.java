@@ -7,12 +7,17 @@ import com.nei10u.fate.model.FateKLinePoint;
 import com.nei10u.fate.model.FateRequest;
 import com.nei10u.fate.model.FateResponse;
 import com.nei10u.fate.model.YearlyBatchResult;
+import com.nei10u.fate.service.ganzhi.BaselineEstimator;
+import com.nei10u.fate.service.ganzhi.DaYunIndex;
+import com.nei10u.fate.service.ganzhi.LocalFactsEngine;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
-import org.springframework.ai.chat.client.ChatClient;
 import org.springframework.beans.factory.annotation.Value;
 import org.springframework.stereotype.Service;
 import org.springframework.util.StringUtils;
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Mono;
+import reactor.core.scheduler.Schedulers;
 
 import java.util.ArrayList;
 import java.util.Collections;
@@ -20,7 +25,9 @@ import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
 import java.util.Random;
-import java.util.UUID;
+import java.util.Set;
+import java.util.TreeMap;
+import java.util.function.Predicate;
 import java.util.stream.Collectors;
 
 @Service
@@ -50,6 +57,14 @@ public class FateAiService {
     public static class BaselineResult {
         private Integer baseline;
         private String analysis;
+        /**
+         * 是否为兜底/补齐产生的结果（解析失败、内容缺失、生成失败）；此类结果不进入命盘共享缓存。
+         */
+        private boolean degraded;
+        /**
+         * local-first 策略下的本地估算值：模型定盘完成后会被替换。
+         */
+        private boolean provisional;
 
         public Integer getBaseline() {
             return baseline;
@@ -66,6 +81,22 @@ public class FateAiService {
         public void setAnalysis(String analysis) {
             this.analysis = analysis;
         }
+
+        public boolean isDegraded() {
+            return degraded;
+        }
+
+        public void setDegraded(boolean degraded) {
+            this.degraded = degraded;
+        }
+
+        public boolean isProvisional() {
+            return provisional;
+        }
+
+        public void setProvisional(boolean provisional) {
+            this.provisional = provisional;
+        }
     }
 
     /**
@@ -272,40 +303,34 @@ public class FateAiService {
         }
     }
 
-    private final ChatClient chatClient;
+    private final ModelClient modelClient;
     private final FateCalculationService calcService;
+    private final LocalFactsEngine localFactsEngine;
+    private final BaselineEstimator baselineEstimator;
 
     @Value("${fate.ai.fallback-enabled:true}")
     private boolean fallbackEnabled;
 
-    public FateAiService(ChatClient.Builder builder, FateCalculationService calcService) {
-        this.chatClient = builder.build();
-        this.calcService = calcService;
-    }
+    /**
+     * 年度事实表来源：local = 本地干支关系引擎（默认，零模型调用）；llm = Prompt① 由模型推演（含更丰富的文字批注）。
+     */
+    @Value("${fate.ai.facts-mode:local}")
+    private String factsMode;
 
     /**
-     * 兼容旧接口：一次性返回全量数据
+     * 年度输出不完整（截断/局部损坏）时，是否只为缺失的年龄区间补请求一次模型。
      */
-    public FateResponse analyze(FateRequest req) {
-        String requestId = resolveRequestId(req);
-        log.info("[{}] analyze start", requestId);
-        FateResponse.BaZiInfo bazi = calculateBaZi(req);
-        log.info("[{}] bazi calculated: {} {} {} {}", requestId, bazi.getYearPillar(), bazi.getMonthPillar(), bazi.getDayPillar(), bazi.getHourPillar());
-        BaselineResult baseline = generateBaseline(bazi, req.getGender(), requestId);
-        FateAnalysisReport report = generateReport(bazi, req.getGender());
-        log.info("[{}] report generated", requestId);
-        List<YearlyBatchResult.YearlyItem> yearlyItems = generateYearlyScoresOneShot(bazi, req.getGender(), baseline.getBaseline(), requestId);
-        log.info("[{}] yearly score items size={}", requestId, yearlyItems.size());
-        List<FateKLinePoint> kLineData = buildKLineFromYearlyScores(req.getYear(), bazi.getDaYunList(), yearlyItems, baseline.getBaseline());
-        log.info("[{}] kline built: {} points", requestId, kLineData.size());
-
-        FateResponse response = new FateResponse();
-        response.setRequestId(requestId);
-        response.setBaziInfo(bazi);
-        response.setAnalysisReport(report);
-        response.setKLineData(kLineData);
-        log.info("[{}] analyze done", requestId);
-        return response;
+    @Value("${fate.ai.yearly-repair.enabled:true}")
+    private boolean yearlyRepairEnabled;
+
+    public FateAiService(ModelClient modelClient,
+                         FateCalculationService calcService,
+                         LocalFactsEngine localFactsEngine,
+                         BaselineEstimator baselineEstimator) {
+        this.modelClient = modelClient;
+        this.calcService = calcService;
+        this.localFactsEngine = localFactsEngine;
+        this.baselineEstimator = baselineEstimator;
     }
 
     /**
@@ -318,7 +343,7 @@ public class FateAiService {
     /**
      * 任务 A: 生成总体报告（使用 fastjson2 解析 LLM 输出）
      */
-    public FateAnalysisReport generateReport(FateResponse.BaZiInfo bazi, String gender) {
+    public FateAnalysisReport generateReport(FateResponse.BaZiInfo bazi, String gender, String requestId) {
         String prompt = String.format("""
                         你是一位精通《子平真诠》与现代金融的命理大师。
                         用户八字：%s %s %s %s (性别：%s)。
@@ -340,8 +365,9 @@ public class FateAiService {
         );
 
         try {
-            String raw = chatClient.prompt().user(prompt).call().content();
-            log.info("report raw: {}", abbreviate(raw));
+            String raw = modelClient.call("report", prompt, requestId,
+                    parsesTo(FateAnalysisReport.class, report -> true));
+            log.info("[{}] report raw: {}", requestId, abbreviate(raw));
             FateAnalysisReport parsed = parseWithFastjson(raw, FateAnalysisReport.class);
             if (parsed == null) {
                 String msg = "AI 输出非 JSON 或解析失败（请检查 OpenRouter 配置/模型输出）";
@@ -352,6 +378,9 @@ public class FateAiService {
                 return ensureSections(null, msg);
             }
             return ensureSections(parsed, null);
+        } catch (ModelOverloadedException e) {
+            // 准入被拒不兜底：交给调用方以 429 返回，避免繁忙时兜底文案铺满所有响应
+            throw e;
         } catch (Exception e) {
             String msg = "AI 报告生成失败（请检查 OpenRouter API Key / HTTP-Referer / 模型配额）";
             log.error("{}: {}", msg, e.getMessage(), e);
@@ -362,6 +391,55 @@ public class FateAiService {
         }
     }
 
+    /**
+     * 分板块生成（{@link ReportSectionGenerator}）：只生成一个板块，输出约为整份报告的 1/7。
+     * 输出无法解析或评分缺失时抛出异常，是否兜底由调用方按板块决定（不影响其他板块）。
+     */
+    public FateAnalysisReport.Section generateReportSection(FateResponse.BaZiInfo bazi, String gender,
+                                                           ReportSection section, String requestId) {
+        String prompt = String.format("""
+                        你是一位精通《子平真诠》与现代金融的命理大师。
+                        用户八字：%s %s %s %s (性别：%s)。
+                        大运排盘：%s
+
+                        这是一份【投资人生运势报告】中的一个板块，请只写【%s】：%s。
+                        要求：
+                        1. score 为 1-10 的整数评分。
+                        2. content 为详细分析（可使用 Markdown），summary 为一句话总结。
+                        3. 必须严格返回 JSON，不要包含 Markdown 代码块、额外引号或注释，不要输出其他板块。
+
+                        输出格式（严格遵守键名）：
+                        {"score": 0, "content": "", "summary": ""}
+                        """,
+                bazi.getYearPillar(), bazi.getMonthPillar(), bazi.getDayPillar(), bazi.getHourPillar(), gender,
+                bazi.getDaYunList() == null ? "[]" : bazi.getDaYunList().toString(),
+                section.title(), section.focus()
+        );
+        String stage = "report-" + section.key();
+        String raw = modelClient.call("report-section", prompt, requestId,
+                parsesTo(FateAnalysisReport.Section.class, FateAiService::isUsableSection));
+        log.info("[{}] {} raw: {}", requestId, stage, abbreviate(raw));
+        FateAnalysisReport.Section parsed = parseWithFastjson(raw, FateAnalysisReport.Section.class);
+        if (parsed == null || !isUsableSection(parsed)) {
+            throw new IllegalStateException("板块 " + section.key() + " 输出非 JSON 或缺少评分");
+        }
+        parsed.setScore(Math.max(1, Math.min(10, parsed.getScore())));
+        return parsed;
+    }
+
+    private static boolean isUsableSection(FateAnalysisReport.Section section) {
+        return section.getScore() > 0 && StringUtils.hasText(section.getContent());
+    }
+
+    /**
+     * 板块兜底：评分保持 0（前端据此识别“不可用”），文本为失败原因。
+     */
+    public FateAnalysisReport.Section fallbackSection(String message) {
+        FateAnalysisReport.Section section = new FateAnalysisReport.Section();
+        applyFallbackMessage(section, message);
+        return section;
+    }
+
     /**
      * 第一段（定盘）：生成命格基线 baseline（长期均值 μ）。
      *
@@ -423,31 +501,79 @@ public class FateAiService {
         );
 
         try {
-            String raw = chatClient.prompt().user(prompt).call().content();
+            String raw = modelClient.call("baseline", prompt, requestId,
+                    parsesTo(BaselineResult.class, parsed -> parsed.getBaseline() != null));
             // baseline 输出仅用于调试，避免日志过长
             log.info("[{}] baseline raw: {}", requestId, abbreviate(raw));
-            BaselineResult parsed = parseWithFastjson(raw, BaselineResult.class);
-            BaselineResult safe = parsed != null ? parsed : new BaselineResult();
-            int base = safe.getBaseline() == null ? 50 : safe.getBaseline();
+            BaselineResult safe = parseWithFastjson(raw, BaselineResult.class);
+            if (safe == null || safe.getBaseline() == null) {
+                log.warn("[{}] baseline 解析失败，改用本地规则估算", requestId);
+                return fallbackBaseline(bazi);
+            }
+            int base = safe.getBaseline();
             // 强制约束：20..80
             base = Math.max(20, Math.min(80, base));
             safe.setBaseline(base);
             if (!StringUtils.hasText(safe.getAnalysis())) {
                 safe.setAnalysis("baseline 已生成（内容为空，可能是模型输出缺失）。");
+                safe.setDegraded(true);
             }
             return safe;
+        } catch (ModelOverloadedException e) {
+            throw e;
         } catch (Exception e) {
             log.error("[{}] baseline 生成失败: {}", requestId, e.getMessage(), e);
             if (!fallbackEnabled) {
                 throw e instanceof RuntimeException re ? re : new RuntimeException(e);
             }
-            BaselineResult fallback = new BaselineResult();
-            fallback.setBaseline(50);
-            fallback.setAnalysis("baseline 生成失败，已使用默认值 50。");
-            return fallback;
+            return fallbackBaseline(bazi);
+        }
+    }
+
+    public boolean isFallbackEnabled() {
+        return fallbackEnabled;
+    }
+
+    /**
+     * 本地规则估算 baseline（毫秒级，不调用模型），见 BaselineEstimator。
+     */
+    public BaselineResult estimateBaseline(FateResponse.BaZiInfo bazi) {
+        return baselineEstimator.estimate(bazi);
+    }
+
+    /**
+     * baseline 兜底（生成失败或阶段超时）：优先使用本地规则估算，估算也失败时才用默认值 50。
+     */
+    public BaselineResult fallbackBaseline(FateResponse.BaZiInfo bazi) {
+        try {
+            BaselineResult estimated = baselineEstimator.estimate(bazi);
+            estimated.setAnalysis("baseline 生成失败，已使用本地规则估算。" + estimated.getAnalysis());
+            estimated.setDegraded(true);
+            return estimated;
+        } catch (RuntimeException e) {
+            log.warn("baseline 本地估算失败: {}", e.getMessage());
+            return fallbackBaseline();
         }
     }
 
+    /**
+     * baseline 兜底（无八字可用时）：使用默认值 50。
+     */
+    public BaselineResult fallbackBaseline() {
+        BaselineResult fallback = new BaselineResult();
+        fallback.setBaseline(50);
+        fallback.setAnalysis("baseline 生成失败，已使用默认值 50。");
+        fallback.setDegraded(true);
+        return fallback;
+    }
+
+    /**
+     * 报告兜底（生成失败或阶段超时）：七个板块均填充提示信息。
+     */
+    public FateAnalysisReport fallbackReport(String message) {
+        return ensureSections(null, message);
+    }
+
     /**
      * 单次生成（回到“最初一次生成”的方案）：
      * - LLM 只输出 1-100 岁每年的“绝对分数 score（1-100）+批注 content”
@@ -463,8 +589,230 @@ public class FateAiService {
                                                                          String gender,
                                                                          int baseline,
                                                                          String requestId) {
+        String prompt = yearlyScoresPrompt(bazi, baseline);
+        try {
+            String raw = modelClient.call("yearly", prompt, requestId, yearlyScoresComplete());
+            log.info("[{}] yearly-score raw: {}", requestId, raw);
+            return completeYearly(bazi, baseline, parseYearlyItems(raw, requestId), 1, KLineSeriesBuilder.YEARS,
+                    requestId);
+        } catch (ModelOverloadedException e) {
+            throw e;
+        } catch (Exception e) {
+            log.error("[{}] yearly-score 生成失败: {}", requestId, e.getMessage(), e);
+            if (!fallbackEnabled) {
+                throw (RuntimeException) e;
+            }
+            return Collections.emptyList();
+        }
+    }
+
+    /**
+     * 分段生成（{@link YearlyShardGenerator}）：只生成 [fromAge, toAge] 这一段，输出长度约为单次生成的 1/8。
+     * 段内条目同样只取绝对分数，段与段之间的 open 衔接由 K 线构建统一处理。
+     */
+    public List<YearlyBatchResult.YearlyItem> generateYearlyShard(FateResponse.BaZiInfo bazi,
+                                                                  String gender,
+                                                                  int baseline,
+                                                                  YearlyShardGenerator.Shard shard,
+                                                                  String requestId) {
+        String stage = "yearly-" + shard.fromAge() + "-" + shard.toAge();
+        String prompt = yearlyShardPrompt(bazi, baseline, shard);
+        try {
+            String raw = modelClient.call("yearly-shard", prompt, requestId, parsesTo(YearlyBatchResult.class,
+                    parsed -> parsed.getItems() != null
+                            && parsed.getItems().stream().filter(it -> shard.contains(it.getAge())).count() >= shard.years()));
+            log.info("[{}] {} raw: {}", requestId, stage, abbreviate(raw));
+            // 模型偶尔越界多写几年：只保留本段，避免与相邻段重复
+            return completeYearly(bazi, baseline, parseYearlyItems(raw, requestId), shard.fromAge(), shard.toAge(),
+                    requestId);
+        } catch (ModelOverloadedException e) {
+            throw e;
+        } catch (Exception e) {
+            log.error("[{}] {} 生成失败: {}", requestId, stage, e.getMessage(), e);
+            if (!fallbackEnabled) {
+                throw e instanceof RuntimeException re ? re : new RuntimeException(e);
+            }
+            return Collections.emptyList();
+        }
+    }
+
+    /**
+     * 流式版本的单次生成：基于模型流式输出（ModelClient#stream），模型每输出完一个 {"age","open","close","content"}
+     * 条目（收到其闭合 '}'）就立即解析并下发，无需等待整段 JSON 生成完毕。
+     * 与单次生成共用同一 prompt，本地存储命中时整段回放。
+     * 流正常结束但年份不全（输出被截断）时，只为缺失区间补请求一次，补回的条目追加在流末尾（K 线构建按年龄重排）。
+     * <p>
+     * 失败处理交给订阅方（是否兜底取决于 fate.ai.fallback-enabled）。
+     */
+    public Flux<YearlyBatchResult.YearlyItem> streamYearlyScoresOneShot(FateResponse.BaZiInfo bazi,
+                                                                       String gender,
+                                                                       int baseline,
+                                                                       String requestId) {
+        String prompt = yearlyScoresPrompt(bazi, baseline);
+        return Flux.defer(() -> {
+            JsonArrayItemExtractor extractor = new JsonArrayItemExtractor();
+            Map<Integer, YearlyBatchResult.YearlyItem> seen = new HashMap<>();
+            return modelClient.stream("yearly", prompt, requestId, yearlyScoresComplete())
+                    .concatMapIterable(extractor::feed)
+                    .<YearlyBatchResult.YearlyItem>handle((json, sink) -> {
+                        YearlyBatchResult.YearlyItem item = parseItem(json);
+                        // 越界年龄（0、81……）不下发也不计入已收年份，否则会占掉名额让缺失的年份跳过补请求；
+                        // 重复年龄只取第一条
+                        if (item != null && item.getAge() >= 1 && item.getAge() <= KLineSeriesBuilder.YEARS
+                                && seen.putIfAbsent(item.getAge(), item) == null) {
+                            fillScoreFromClose(item);
+                            sink.next(item);
+                        }
+                    })
+                    .doOnComplete(() -> log.info("[{}] yearly-score stream completed", requestId))
+                    // seen 只含 1..YEARS 内的年龄：满 YEARS 条即每一年都已到齐
+                    .concatWith(Flux.defer(() -> !yearlyRepairEnabled || seen.size() == KLineSeriesBuilder.YEARS
+                            ? Flux.empty()
+                            : Mono.fromCallable(() -> repairMissingAges(bazi, baseline, seen, 1,
+                                            KLineSeriesBuilder.YEARS, requestId))
+                                    .subscribeOn(Schedulers.boundedElastic())
+                                    .flatMapIterable(items -> items)));
+        });
+    }
+
+    /**
+     * 兼容模型输出仅包含 open/close/content（未显式输出 score）的情况：
+     * - 后端的 K 线构建依赖“年度绝对分数”，此时可将 close 视为年度分数。
+     */
+    private void fillScoreFromClose(YearlyBatchResult.YearlyItem it) {
+        if (it == null) {
+            return;
+        }
+        if (it.getScore() <= 0 && it.getClose() != null) {
+            it.setScore(it.getClose());
+        }
+    }
+
+    private YearlyBatchResult.YearlyItem parseItem(String json) {
+        try {
+            return JSON.parseObject(json, YearlyBatchResult.YearlyItem.class, JSON_FEATURES);
+        } catch (Exception ex) {
+            log.warn("yearly item 解析失败，已跳过: {}", abbreviate(json));
+            return null;
+        }
+    }
+
+    /**
+     * 容错解析年度条目：整体解析失败（常见于 80 条输出被 max_tokens 截断、或中间某条损坏）时，
+     * 逐条取回所有完整闭合的条目，而不是整段作废。
+     */
+    List<YearlyBatchResult.YearlyItem> parseYearlyItems(String raw, String requestId) {
+        YearlyBatchResult result = parseWithFastjson(raw, YearlyBatchResult.class);
+        List<YearlyBatchResult.YearlyItem> items = new ArrayList<>(KLineSeriesBuilder.YEARS);
+        if (result != null && result.getItems() != null) {
+            for (YearlyBatchResult.YearlyItem it : result.getItems()) {
+                if (it != null) {
+                    fillScoreFromClose(it);
+                    items.add(it);
+                }
+            }
+            return items;
+        }
+        for (String json : JsonArrayItemExtractor.extractAll(raw)) {
+            YearlyBatchResult.YearlyItem it = parseItem(json);
+            if (it != null) {
+                fillScoreFromClose(it);
+                items.add(it);
+            }
+        }
+        log.warn("[{}] yearly 输出不完整，逐条取回 {} 条", requestId, items.size());
+        return items;
+    }
+
+    /**
+     * 只保留 [fromAge, toAge] 内的条目（同一年龄以先到者为准，按年龄排序）；
+     * 年份不全时为缺失区间补请求一次并合并，补请求失败则返回已有条目（缺失年份由 K 线构建持平补齐）。
+     */
+    List<YearlyBatchResult.YearlyItem> completeYearly(FateResponse.BaZiInfo bazi,
+                                                      int baseline,
+                                                      List<YearlyBatchResult.YearlyItem> items,
+                                                      int fromAge,
+                                                      int toAge,
+                                                      String requestId) {
+        TreeMap<Integer, YearlyBatchResult.YearlyItem> byAge = new TreeMap<>();
+        for (YearlyBatchResult.YearlyItem it : items) {
+            if (it.getAge() >= fromAge && it.getAge() <= toAge) {
+                byAge.putIfAbsent(it.getAge(), it);
+            }
+        }
+        if (yearlyRepairEnabled && byAge.size() < toAge - fromAge + 1) {
+            for (YearlyBatchResult.YearlyItem it : repairMissingAges(bazi, baseline, byAge, fromAge, toAge, requestId)) {
+                byAge.putIfAbsent(it.getAge(), it);
+            }
+        }
+        return new ArrayList<>(byAge.values());
+    }
+
+    /**
+     * 把 [fromAge, toAge] 内缺失的年龄合并为连续区间，一次请求只生成这些区间（附带相邻年份的 close 作为衔接参考）。
+     * 返回补回的条目（只含缺失年龄）；失败时返回空列表。
+     */
+    List<YearlyBatchResult.YearlyItem> repairMissingAges(FateResponse.BaZiInfo bazi,
+                                                         int baseline,
+                                                         Map<Integer, YearlyBatchResult.YearlyItem> have,
+                                                         int fromAge,
+                                                         int toAge,
+                                                         String requestId) {
+        List<YearlyShardGenerator.Shard> gaps = missingRanges(have.keySet(), fromAge, toAge,
+                DaYunIndex.of(bazi.getDaYunList()));
+        if (gaps.isEmpty()) {
+            return Collections.emptyList();
+        }
+        int missing = gaps.stream().mapToInt(YearlyShardGenerator.Shard::years).sum();
+        String ranges = gaps.stream().map(g -> g.fromAge() + "-" + g.toAge()).collect(Collectors.joining(","));
+        log.info("[{}] yearly 缺 {} 年 [{}]，补请求缺失区间", requestId, missing, ranges);
+        try {
+            String raw = modelClient.call("yearly-repair", yearlyRepairPrompt(bazi, baseline, gaps, have), requestId,
+                    parsesTo(YearlyBatchResult.class, parsed -> parsed.getItems() != null
+                            && parsed.getItems().stream().filter(it -> inRanges(gaps, it.getAge())).count() >= missing));
+            List<YearlyBatchResult.YearlyItem> repaired = new ArrayList<>(missing);
+            for (YearlyBatchResult.YearlyItem it : parseYearlyItems(raw, requestId)) {
+                if (inRanges(gaps, it.getAge()) && !have.containsKey(it.getAge())) {
+                    repaired.add(it);
+                }
+            }
+            log.info("[{}] yearly-repair 补回 {}/{} 年", requestId, repaired.size(), missing);
+            return repaired;
+        } catch (Exception e) {
+            log.warn("[{}] yearly-repair 失败，缺失年份持平补齐: {}", requestId, e.getMessage());
+            return Collections.emptyList();
+        }
+    }
+
+    static List<YearlyShardGenerator.Shard> missingRanges(Set<Integer> present, int fromAge, int toAge,
+                                                          DaYunIndex index) {
+        List<YearlyShardGenerator.Shard> gaps = new ArrayList<>();
+        int start = -1;
+        for (int age = fromAge; age <= toAge + 1; age++) {
+            boolean missing = age <= toAge && !present.contains(age);
+            if (missing && start < 0) {
+                start = age;
+            } else if (!missing && start >= 0) {
+                gaps.add(new YearlyShardGenerator.Shard(start, age - 1,
+                        YearlyShardGenerator.daYunLabel(index, start, age - 1)));
+                start = -1;
+            }
+        }
+        return gaps;
+    }
+
+    private static boolean inRanges(List<YearlyShardGenerator.Shard> gaps, int age) {
+        for (YearlyShardGenerator.Shard gap : gaps) {
+            if (gap.contains(age)) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    private String yearlyScoresPrompt(FateResponse.BaZiInfo bazi, int baseline) {
         int safeBaseline = Math.max(20, Math.min(80, baseline));
-        String prompt = String.format("""
+        return String.format("""
                         你是一位精通“八字命理”与“金融数据分析”的专家。请基于我提供的八字信息，模拟生成一份长达 80 年的“人生运势 K 线数据”。
                                                 
                         # Input Data (八字)
@@ -506,91 +854,133 @@ public class FateAiService {
                 bazi.getDaYunList().toString(),
                 safeBaseline
         );
+    }
 
-        try {
-            String raw = chatClient.prompt().user(prompt).call().content();
-            log.info("[{}] yearly-score raw: {}", requestId, raw);
-            YearlyBatchResult result = parseWithFastjson(raw, YearlyBatchResult.class);
-            if (result == null || result.getItems() == null) {
-                return Collections.emptyList();
-            }
-            // 兼容模型输出仅包含 open/close/content（未显式输出 score）的情况：
-            // - 后端的 K 线构建依赖“年度绝对分数”，此时可将 close 视为年度分数。
-            for (YearlyBatchResult.YearlyItem it : result.getItems()) {
-                if (it == null) {
-                    continue;
-                }
-                if (it.getScore() <= 0 && it.getClose() != null) {
-                    it.setScore(it.getClose());
-                }
+    private String yearlyShardPrompt(FateResponse.BaZiInfo bazi, int baseline, YearlyShardGenerator.Shard shard) {
+        int safeBaseline = Math.max(20, Math.min(80, baseline));
+        return String.format("""
+                        你是一位精通“八字命理”与“金融数据分析”的专家。请基于我提供的八字信息，生成“人生运势 K 线数据”中的一段：
+                        只生成 %d 岁到 %d 岁，共 %d 条（其余年份由其他请求生成，不要输出）。
+
+                        # Input Data (八字)
+                        - 年柱：%s
+                        - 月柱：%s
+                        - 日柱：%s
+                        - 时柱：%s
+                        - 大运序列参考：
+                          %s
+                        - 本段所处大运：%s
+
+                        # Algorithms (评分逻辑)
+                        1. **基础分 (Base):** 命格基础分为 %s，分数围绕它上下波动。
+                        2. **大运分 (Trend):** 根据本段所处大运设定底分区间。例如“癸酉/壬申”运底分在 80-90，“甲戌/庚午”运底分在 40-50。
+                        3. **流年波动 (Volatility):**
+                           - 遇到“金/水”流年（如申、酉、亥、子、庚、辛、壬、癸），当年分数显著上涨。
+                           - 遇到“火/土”流年（如巳、午、未、戌、丙、丁、戊、己），当年分数下跌或调整。
+                        4. **K线连续性规则:**
+                           - 段内第 N 年的 `open` 等于第 N-1 年的 `close`；本段第一年的 `open` 取你对上一年的估计即可。
+                           - `close` 由当年的运势打分决定（1-100 的绝对分数），`score` 直接取 `close`。
+                        5. **content 必须包含命理依据 + 现实影响（结合年龄阶段）**
+
+                        # Output Format (严格 JSON)
+                        请仅输出一个 JSON 对象，包含一个 "items" 数组。不要包含任何 Markdown 代码块标记（如 ```json），也不要包含任何解释性文字。
+
+                        JSON 结构示例：
+                        {
+                          "items": [
+                            {"age": %d, "open": 50, "close": 55, "content": "..."},
+                            // ... 直到 age %d
+                          ]
+                        }
+                        请开始生成JSON数据
+                        """,
+                shard.fromAge(), shard.toAge(), shard.years(),
+                bazi.getYearPillar(), bazi.getMonthPillar(), bazi.getDayPillar(), bazi.getHourPillar(),
+                bazi.getDaYunList().toString(),
+                shard.daYun(),
+                safeBaseline,
+                shard.fromAge(), shard.toAge()
+        );
+    }
+
+    private String yearlyRepairPrompt(FateResponse.BaZiInfo bazi, int baseline, List<YearlyShardGenerator.Shard> gaps,
+                                      Map<Integer, YearlyBatchResult.YearlyItem> have) {
+        int safeBaseline = Math.max(20, Math.min(80, baseline));
+        StringBuilder ranges = new StringBuilder();
+        for (YearlyShardGenerator.Shard gap : gaps) {
+            ranges.append("  - ").append(gap.fromAge()).append(" 岁到 ").append(gap.toAge()).append(" 岁（大运：")
+                    .append(gap.daYun()).append("）");
+            YearlyBatchResult.YearlyItem prev = have.get(gap.fromAge() - 1);
+            YearlyBatchResult.YearlyItem next = have.get(gap.toAge() + 1);
+            if (prev != null) {
+                ranges.append("，前一年 close=").append(closeOf(prev));
             }
-            return result.getItems();
-        } catch (Exception e) {
-            log.error("[{}] yearly-score 生成失败: {}", requestId, e.getMessage(), e);
-            if (!fallbackEnabled) {
-                throw (RuntimeException) e;
+            if (next != null) {
+                ranges.append("，后一年 close=").append(closeOf(next));
             }
-            return Collections.emptyList();
+            ranges.append('\n');
         }
+        return String.format("""
+                        你是一位精通“八字命理”与“金融数据分析”的专家。下面这份“人生运势 K 线数据”已生成了大部分年份，
+                        请只补齐以下缺失的年龄区间，共 %d 条（其余年份已有，不要输出）：
+                        %s
+                        # Input Data (八字)
+                        - 年柱：%s
+                        - 月柱：%s
+                        - 日柱：%s
+                        - 时柱：%s
+                        - 大运序列参考：
+                          %s
+
+                        # Algorithms (评分逻辑)
+                        1. **基础分 (Base):** 命格基础分为 %s，分数围绕它上下波动。
+                        2. **大运分 (Trend):** 根据所处大运设定底分区间。例如“癸酉/壬申”运底分在 80-90，“甲戌/庚午”运底分在 40-50。
+                        3. **流年波动 (Volatility):**
+                           - 遇到“金/水”流年（如申、酉、亥、子、庚、辛、壬、癸），当年分数显著上涨。
+                           - 遇到“火/土”流年（如巳、午、未、戌、丙、丁、戊、己），当年分数下跌或调整。
+                        4. **衔接:** 区间第一年的 `open` 取前一年 close；区间内与给出的前后年份平滑衔接。
+                           `close` 为当年 1-100 的绝对分数，`score` 直接取 `close`。
+                        5. **content 必须包含命理依据 + 现实影响（结合年龄阶段）**
+
+                        # Output Format (严格 JSON)
+                        请仅输出一个 JSON 对象，包含一个 "items" 数组，条目格式为 {"age": 1, "open": 50, "close": 55, "content": "..."}。
+                        不要包含任何 Markdown 代码块标记，也不要包含任何解释性文字。
+                        """,
+                gaps.stream().mapToInt(YearlyShardGenerator.Shard::years).sum(),
+                ranges,
+                bazi.getYearPillar(), bazi.getMonthPillar(), bazi.getDayPillar(), bazi.getHourPillar(),
+                bazi.getDaYunList().toString(),
+                safeBaseline
+        );
+    }
+
+    private static int closeOf(YearlyBatchResult.YearlyItem item) {
+        return item.getClose() != null ? item.getClose() : item.getScore();
     }
 
     /**
      * 将“年度绝对分数序列”映射为 K 线点位（后端保证连续性与颜色判定一致性）。
+     * 分段生成的结果按年龄合并后同样走这里：每段首年的 open 取上一段末年的 close，整条序列连续。
      */
     public List<FateKLinePoint> buildKLineFromYearlyScores(int birthYear,
                                                           List<FateResponse.DaYunInfo> daYuns,
                                                           List<YearlyBatchResult.YearlyItem> aiItems,
                                                           int baseline) {
-        Map<Integer, YearlyBatchResult.YearlyItem> aiMap = aiItems == null
-                ? new HashMap<>()
-                : aiItems.stream().collect(Collectors.toMap(YearlyBatchResult.YearlyItem::getAge, it -> it, (a, b) -> a));
-
-        int prevClose = Math.max(20, Math.min(80, baseline));
-        List<FateKLinePoint> points = new ArrayList<>(80);
-
-        for (int age = 1; age <= 80; age++) {
-            int currentYear = birthYear + (age - 1);
-            String ganZhi = calcService.getYearGanZhi(currentYear);
-
-            String currentDaYun = "童限";
-            for (FateResponse.DaYunInfo dy : daYuns) {
-                if (age >= dy.getStartAge()) {
-                    currentDaYun = dy.getGanZhi();
-                }
+        KLineSeriesBuilder series = newKLineSeries(birthYear, daYuns, baseline);
+        if (aiItems != null) {
+            for (YearlyBatchResult.YearlyItem item : aiItems) {
+                series.offer(item);
             }
-
-            YearlyBatchResult.YearlyItem ai = aiMap.get(age);
-            // 兼容模型输出：
-            // - 若输出了 close（绝对分数），优先使用 close
-            // - 否则退化为 score
-            Integer modelClose = ai != null ? ai.getClose() : null;
-            int closeScore = modelClose != null ? modelClose : (ai != null ? ai.getScore() : prevClose);
-            closeScore = Math.max(1, Math.min(100, closeScore));
-
-            int open = prevClose;
-            int close = closeScore;
-            String trend = close > open ? "Bullish" : "Bearish";
-            int score = Math.abs(close - open);
-
-            String desc = ai != null && StringUtils.hasText(ai.getContent()) ? ai.getContent() : "当年运势已生成。";
-            String finalGanZhi = ai != null && StringUtils.hasText(ai.getGanZhi()) ? ai.getGanZhi() : ganZhi;
-            String finalDaYun = ai != null && StringUtils.hasText(ai.getDaYun()) ? ai.getDaYun() : currentDaYun;
-
-            FateKLinePoint point = FateKLinePoint.builder()
-                    .age(age)
-                    .year(currentYear)
-                    .ganZhi(finalGanZhi)
-                    .daYun(finalDaYun)
-                    .score(score)
-                    .open(open)
-                    .close(close)
-                    .trend(trend)
-                    .description(desc)
-                    .build();
-            points.add(point);
-            prevClose = close;
         }
-        return points;
+        series.finish();
+        return series.points();
+    }
+
+    /**
+     * 逐点 K 线构建器（流式场景下每收到一条年度条目就产出可确定的点位）。
+     */
+    public KLineSeriesBuilder newKLineSeries(int birthYear, List<FateResponse.DaYunInfo> daYuns, int baseline) {
+        return new KLineSeriesBuilder(birthYear, daYuns, baseline, calcService);
     }
 
     /**
@@ -604,6 +994,7 @@ public class FateAiService {
                                                                           String gender,
                                                                           int baseline,
                                                                           String requestId) {
+        // 第一步“事实层”默认由本地干支关系引擎计算（fate.ai.facts-mode=local），不调用 LLM
         YearlyFactsResult facts = generateYearlyFacts(bazi, gender, requestId);
         // 第二步“量化规则层”固定：不再调用 LLM（可复现、可调参）
         // 第三步“执行层”由后端代码执行（避免模型输出 open/close 长序列失控）
@@ -611,9 +1002,33 @@ public class FateAiService {
     }
 
     /**
-     * Prompt①：八字 -> 逐年大运事实表（禁止任何数值/K线字段）
+     * 本地临时年度条目（零模型调用，与 facts-mode 无关）：本地事实表 -> 固定量化规则 -> normalizeKlineItems 兜底，取前 80 年。
+     * 模型未在 fate.kline.model-deadline 内返回时先行展示，模型结果到达后替换。
+     */
+    public List<YearlyBatchResult.YearlyItem> provisionalYearlyItems(FateResponse.BaZiInfo bazi, int baseline) {
+        List<YearlyBatchResult.YearlyItem> items = normalizeKlineItems(
+                executeKlineFromFactsWithFixedRules(localFactsEngine.facts(bazi), baseline), baseline);
+        return new ArrayList<>(items.subList(0, Math.min(items.size(), KLineSeriesBuilder.YEARS)));
+    }
+
+    /**
+     * 八字 -> 逐年大运事实表：按 fate.ai.facts-mode 选择本地引擎或 LLM。
      */
     public YearlyFactsResult generateYearlyFacts(FateResponse.BaZiInfo bazi, String gender, String requestId) {
+        if (!"llm".equalsIgnoreCase(factsMode)) {
+            long start = System.nanoTime();
+            YearlyFactsResult facts = localFactsEngine.facts(bazi);
+            log.info("[{}] facts computed locally items={} in {}us", requestId, facts.getItems().size(),
+                    (System.nanoTime() - start) / 1_000);
+            return facts;
+        }
+        return generateYearlyFactsWithLlm(bazi, gender, requestId);
+    }
+
+    /**
+     * Prompt①：八字 -> 逐年大运事实表（禁止任何数值/K线字段）
+     */
+    private YearlyFactsResult generateYearlyFactsWithLlm(FateResponse.BaZiInfo bazi, String gender, String requestId) {
         String prompt = String.format("""
                         你是一位精通中国命理学、熟读《子平真诠》《三命通会》《穷通宝鉴》的老先生。
 
@@ -671,10 +1086,13 @@ public class FateAiService {
         );
 
         try {
-            String raw = chatClient.prompt().user(prompt).call().content();
+            String raw = modelClient.call("facts", prompt, requestId,
+                    parsesTo(YearlyFactsResult.class, parsed -> parsed.getItems() != null && !parsed.getItems().isEmpty()));
             log.info("[{}] facts raw: {}", requestId, abbreviate(raw));
             YearlyFactsResult parsed = parseWithFastjson(raw, YearlyFactsResult.class);
             return parsed != null ? parsed : new YearlyFactsResult();
+        } catch (ModelOverloadedException e) {
+            throw e;
         } catch (Exception e) {
             log.error("[{}] facts 生成失败: {}", requestId, e.getMessage(), e);
             if (!fallbackEnabled) {
@@ -693,7 +1111,7 @@ public class FateAiService {
      * - “量化规则”已固定到代码（FixedQuantRules），因此执行完全可复现
      * - 生成出的 items 仍会被 normalizeKlineItems(...) 再做产品级兜底
      */
-    private List<YearlyBatchResult.YearlyItem> executeKlineFromFactsWithFixedRules(YearlyFactsResult facts, int baseline) {
+    List<YearlyBatchResult.YearlyItem> executeKlineFromFactsWithFixedRules(YearlyFactsResult facts, int baseline) {
         Map<Integer, YearlyFactItem> factMap = new HashMap<>();
         if (facts != null && facts.getItems() != null) {
             for (YearlyFactItem it : facts.getItems()) {
@@ -866,18 +1284,13 @@ public class FateAiService {
                                                       int baseline) {
         List<YearlyBatchResult.YearlyItem> normalizedItems = normalizeKlineItems(aiItems, baseline);
         List<FateKLinePoint> points = new ArrayList<>(normalizedItems.size());
+        DaYunIndex daYunIndex = DaYunIndex.of(daYuns);
 
         for (YearlyBatchResult.YearlyItem item : normalizedItems) {
             int age = item.getAge();
             int currentYear = birthYear + (age - 1);
             String ganZhi = calcService.getYearGanZhi(currentYear);
-
-            String currentDaYun = "童限";
-            for (FateResponse.DaYunInfo dy : daYuns) {
-                if (age >= dy.getStartAge()) {
-                    currentDaYun = dy.getGanZhi();
-                }
-            }
+            String currentDaYun = daYunIndex.at(age);
 
             String finalGanZhi = StringUtils.hasText(item.getGanZhi()) ? item.getGanZhi() : ganZhi;
             String finalDaYun = StringUtils.hasText(item.getDaYun()) ? item.getDaYun() : currentDaYun;
@@ -898,7 +1311,7 @@ public class FateAiService {
         return points;
     }
 
-    private List<YearlyBatchResult.YearlyItem> normalizeKlineItems(List<YearlyBatchResult.YearlyItem> aiItems, int baseline) {
+    List<YearlyBatchResult.YearlyItem> normalizeKlineItems(List<YearlyBatchResult.YearlyItem> aiItems, int baseline) {
         // 允许 LLM 输出不完整：这里做“最小更正”，确保 K 线模型永远可用。
         Map<Integer, YearlyBatchResult.YearlyItem> aiMap = aiItems == null
                 ? new HashMap<>()
@@ -1010,7 +1423,22 @@ public class FateAiService {
         return 4;
     }
 
-    private <T> T parseWithFastjson(String raw, Class<T> clazz) {
+    /**
+     * 原始输出能解析且内容完整时才持久化（见 ModelClient），坏输出下次仍会重新请求模型。
+     */
+    private <T> Predicate<String> parsesTo(Class<T> clazz, Predicate<T> complete) {
+        return raw -> {
+            T parsed = parseWithFastjson(raw, clazz);
+            return parsed != null && complete.test(parsed);
+        };
+    }
+
+    private Predicate<String> yearlyScoresComplete() {
+        return parsesTo(YearlyBatchResult.class,
+                parsed -> parsed.getItems() != null && parsed.getItems().size() >= KLineSeriesBuilder.YEARS);
+    }
+
+    <T> T parseWithFastjson(String raw, Class<T> clazz) {
         String normalized = normalizeJson(raw);
         if (!StringUtils.hasText(normalized)) {
             return null;
@@ -1023,7 +1451,7 @@ public class FateAiService {
         }
     }
 
-    private String normalizeJson(String raw) {
+    String normalizeJson(String raw) {
         if (!StringUtils.hasText(raw)) {
             return "";
         }
@@ -1054,15 +1482,6 @@ public class FateAiService {
         return clean.length() > 200 ? clean.substring(0, 200) + "..." : clean;
     }
 
-    private String resolveRequestId(FateRequest req) {
-        if (req.getRequestId() != null && !req.getRequestId().isBlank()) {
-            return req.getRequestId();
-        }
-        String rid = UUID.randomUUID().toString();
-        req.setRequestId(rid);
-        return rid;
-    }
-
     private FateAnalysisReport ensureSections(FateAnalysisReport report, String fallbackMessage) {
         FateAnalysisReport safe = report != null ? report : new FateAnalysisReport();
         if (safe.getOverall() == null) {
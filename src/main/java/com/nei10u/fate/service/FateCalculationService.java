@@ -1,22 +1,74 @@
 package com.nei10u.fate.service;
 
+import com.github.benmanes.caffeine.cache.Cache;
+import com.github.benmanes.caffeine.cache.Caffeine;
 import com.nei10u.fate.model.FateRequest;
 import com.nei10u.fate.model.FateResponse;
+import com.nei10u.fate.service.ganzhi.GanZhiRelations;
 import com.nlf.calendar.EightChar;
 import com.nlf.calendar.Lunar;
 import com.nlf.calendar.Solar;
 import com.nlf.calendar.eightchar.DaYun;
 import com.nlf.calendar.eightchar.Yun;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.binder.cache.CaffeineCacheMetrics;
+import org.springframework.beans.factory.annotation.Value;
 import org.springframework.stereotype.Service;
 
 import java.util.ArrayList;
 import java.util.Calendar;
 import java.util.List;
 
+/**
+ * 排盘计算。
+ * <p>
+ * - 流年干支：1800–2200 年启动时预计算为字节表（六十甲子序号），查询不再逐年构造 Lunar 对象
+ * - 八字：按“真太阳时校正后的分钟 + 性别”做有界缓存。经度只通过校正后的时间影响排盘，
+ *   因此该 key 已覆盖出生时间与经度，同一出生输入在各 step 接口间只排盘一次
+ * <p>
+ * 缓存的 BaZiInfo 在请求间共享引用，调用方只读，不得修改。
+ */
 @Service
 public class FateCalculationService {
 
+    static final int TABLE_FIRST_YEAR = 1800;
+    static final int TABLE_LAST_YEAR = 2200;
+
+    private static final byte[] YEAR_GANZHI = new byte[TABLE_LAST_YEAR - TABLE_FIRST_YEAR + 1];
+
+    static {
+        for (int year = TABLE_FIRST_YEAR; year <= TABLE_LAST_YEAR; year++) {
+            // 以 Lunar 的结果为准填表，保证与逐年计算完全一致；识别不了的记 -1，查询时回退
+            YEAR_GANZHI[year - TABLE_FIRST_YEAR] = (byte) GanZhiRelations.index(Lunar.fromYmd(year, 1, 1).getYearInGanZhi());
+        }
+    }
+
+    private final Cache<BirthKey, FateResponse.BaZiInfo> memo;
+
+    public FateCalculationService(@Value("${fate.bazi-memo.max-entries:10000}") long maxEntries,
+                                  MeterRegistry meterRegistry) {
+        this.memo = Caffeine.newBuilder()
+                .maximumSize(Math.max(0, maxEntries))
+                .recordStats()
+                .build();
+        CaffeineCacheMetrics.monitor(meterRegistry, memo, "fate.bazi");
+    }
+
     public FateResponse.BaZiInfo calculate(FateRequest req) {
+        Calendar c = trueSolarTime(req);
+        // gender: 1男，0女
+        int gender = "男".equals(req.getGender()) ? 1 : 0;
+        BirthKey key = new BirthKey(
+                c.get(Calendar.YEAR),
+                c.get(Calendar.MONTH) + 1,
+                c.get(Calendar.DAY_OF_MONTH),
+                c.get(Calendar.HOUR_OF_DAY),
+                c.get(Calendar.MINUTE),
+                gender);
+        return memo.get(key, this::compute);
+    }
+
+    private Calendar trueSolarTime(FateRequest req) {
         // 1. 基础阳历时间
         Calendar c = Calendar.getInstance();
         c.set(req.getYear(), req.getMonth() - 1, req.getDay(), req.getHour(), req.getMinute(), 0);
@@ -27,16 +79,12 @@ public class FateCalculationService {
             c.add(Calendar.MINUTE, (int) offsetMinutes);
             // 这里更新时间用于排盘
         }
+        return c;
+    }
 
+    private FateResponse.BaZiInfo compute(BirthKey key) {
         // 使用调整后的时间生成 Solar 对象
-        Solar solar = Solar.fromYmdHms(
-                c.get(Calendar.YEAR),
-                c.get(Calendar.MONTH) + 1,
-                c.get(Calendar.DAY_OF_MONTH),
-                c.get(Calendar.HOUR_OF_DAY),
-                c.get(Calendar.MINUTE),
-                0
-        );
+        Solar solar = Solar.fromYmdHms(key.year(), key.month(), key.day(), key.hour(), key.minute(), 0);
 
         // 3. 转阴历并获取八字
         Lunar lunar = solar.getLunar();
@@ -46,9 +94,7 @@ public class FateCalculationService {
         eightChar.setSect(2);
 
         // 4. 起大运
-        // gender: 1男，0女
-        int gender = "男".equals(req.getGender()) ? 1 : 0;
-        Yun yun = eightChar.getYun(gender);
+        Yun yun = eightChar.getYun(key.gender());
 
         // 5. 封装结果
         FateResponse.BaZiInfo info = new FateResponse.BaZiInfo();
@@ -83,6 +129,15 @@ public class FateCalculationService {
      * 获取指定年份的干支（用于流年K线）
      */
     public String getYearGanZhi(int year) {
+        if (year >= TABLE_FIRST_YEAR && year <= TABLE_LAST_YEAR) {
+            int index = YEAR_GANZHI[year - TABLE_FIRST_YEAR];
+            if (index >= 0) {
+                return GanZhiRelations.name(index);
+            }
+        }
         return Lunar.fromYmd(year, 1, 1).getYearInGanZhi();
     }
-}
\ No newline at end of file
+
+    private record BirthKey(int year, int month, int day, int hour, int minute, int gender) {
+    }
+}
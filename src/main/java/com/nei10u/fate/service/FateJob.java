@@ -0,0 +1,103 @@
+package com.nei10u.fate.service;
+
+import com.nei10u.fate.model.StepResponse;
+
+import java.util.concurrent.CompletableFuture;
+
+/**
+ * 异步分步任务（/bazi、/report、/kline 的 job 模式）。
+ * <p>
+ * 状态流转：QUEUED -> RUNNING -> DONE / FAILED；completion 在终态时完成，供长轮询挂起等待。
+ */
+public final class FateJob {
+
+    public enum Status {
+        QUEUED,
+        RUNNING,
+        DONE,
+        FAILED
+    }
+
+    private final String requestId;
+    private final String step;
+    private final long submittedAtMillis;
+    private final CompletableFuture<FateJob> completion = new CompletableFuture<>();
+
+    private volatile Status status = Status.QUEUED;
+    private volatile long startedAtMillis;
+    private volatile long finishedAtMillis;
+    private volatile StepResponse result;
+    private volatile String error;
+
+    public FateJob(String requestId, String step) {
+        this.requestId = requestId;
+        this.step = step;
+        this.submittedAtMillis = System.currentTimeMillis();
+    }
+
+    public String jobId() {
+        return requestId + "/" + step;
+    }
+
+    public String requestId() {
+        return requestId;
+    }
+
+    public String step() {
+        return step;
+    }
+
+    public Status status() {
+        return status;
+    }
+
+    public boolean isFinished() {
+        return status == Status.DONE || status == Status.FAILED;
+    }
+
+    public long submittedAtMillis() {
+        return submittedAtMillis;
+    }
+
+    public long startedAtMillis() {
+        return startedAtMillis;
+    }
+
+    public long finishedAtMillis() {
+        return finishedAtMillis;
+    }
+
+    public StepResponse result() {
+        return result;
+    }
+
+    public String error() {
+        return error;
+    }
+
+    public CompletableFuture<FateJob> completion() {
+        return completion;
+    }
+
+    void markRunning() {
+        startedAtMillis = System.currentTimeMillis();
+        status = Status.RUNNING;
+    }
+
+    void markDone(StepResponse result) {
+        this.result = result;
+        finishedAtMillis = System.currentTimeMillis();
+        status = Status.DONE;
+        completion.complete(this);
+    }
+
+    void markFailed(String error) {
+        this.error = error;
+        finishedAtMillis = System.currentTimeMillis();
+        if (startedAtMillis == 0) {
+            startedAtMillis = finishedAtMillis;
+        }
+        status = Status.FAILED;
+        completion.complete(this);
+    }
+}
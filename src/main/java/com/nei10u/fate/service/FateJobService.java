@@ -0,0 +1,90 @@
+package com.nei10u.fate.service;
+
+import com.nei10u.fate.model.JobStatusResponse;
+import com.nei10u.fate.model.StepResponse;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Qualifier;
+import org.springframework.stereotype.Service;
+
+import java.util.Optional;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.function.Supplier;
+
+/**
+ * 异步 job 模式：耗时步骤提交到有界工作池执行，servlet 线程立即返回 202。
+ * <p>
+ * 任务状态登记在 {@link FateSessionCache} 中（与分步结果同一个 requestId），
+ * 因此 job 模式与同步分步流程共用同一份会话数据。
+ */
+@Service
+public class FateJobService {
+
+    private static final Logger log = LoggerFactory.getLogger(FateJobService.class);
+
+    private final FateSessionCache fateSessionCache;
+    private final ExecutorService jobExecutor;
+
+    public FateJobService(FateSessionCache fateSessionCache,
+                          @Qualifier("fateJobExecutor") ExecutorService jobExecutor) {
+        this.fateSessionCache = fateSessionCache;
+        this.jobExecutor = jobExecutor;
+    }
+
+    /**
+     * 提交步骤任务；同一 requestId + step 已在排队/执行时直接返回已有任务。
+     * 工作池满载时任务立即标记为 FAILED。
+     */
+    public FateJob submit(String requestId, String step, Supplier<StepResponse> work) {
+        FateJob created = new FateJob(requestId, step);
+        FateJob job = fateSessionCache.registerJob(created);
+        if (job != created) {
+            log.info("[{}] job {} already {}, reuse", requestId, step, job.status());
+            return job;
+        }
+        try {
+            jobExecutor.execute(() -> run(job, work));
+            log.info("[{}] job {} queued", requestId, step);
+        } catch (RejectedExecutionException e) {
+            log.warn("[{}] job {} rejected: worker pool saturated", requestId, step);
+            job.markFailed("服务繁忙，任务队列已满，请稍后重试");
+        }
+        return job;
+    }
+
+    public Optional<FateJob> find(String requestId, String step) {
+        return fateSessionCache.getJob(requestId, step);
+    }
+
+    public JobStatusResponse toResponse(FateJob job) {
+        long now = System.currentTimeMillis();
+        JobStatusResponse resp = new JobStatusResponse();
+        resp.setJobId(job.jobId());
+        resp.setRequestId(job.requestId());
+        resp.setStep(job.step());
+        resp.setStatus(job.status().name());
+        long startedAt = job.startedAtMillis();
+        resp.setQueuedMillis((startedAt > 0 ? startedAt : now) - job.submittedAtMillis());
+        if (startedAt > 0) {
+            long end = job.finishedAtMillis() > 0 ? job.finishedAtMillis() : now;
+            resp.setRunMillis(end - startedAt);
+        }
+        resp.setResult(job.result());
+        resp.setError(job.error());
+        return resp;
+    }
+
+    private void run(FateJob job, Supplier<StepResponse> work) {
+        job.markRunning();
+        log.info("[{}] job {} running", job.requestId(), job.step());
+        try {
+            job.markDone(work.get());
+            log.info("[{}] job {} done in {}ms", job.requestId(), job.step(),
+                    job.finishedAtMillis() - job.startedAtMillis());
+        } catch (Exception e) {
+            log.error("[{}] job {} failed: {}", job.requestId(), job.step(), e.getMessage(), e);
+            job.markFailed(e.getMessage() == null ? e.getClass().getSimpleName() : e.getMessage());
+        }
+    }
+}
@@ -1,83 +1,275 @@
 package com.nei10u.fate.service;
 
+import com.alibaba.fastjson2.JSONWriter;
+import com.github.benmanes.caffeine.cache.Cache;
+import com.github.benmanes.caffeine.cache.Caffeine;
+import com.github.benmanes.caffeine.cache.Scheduler;
+import com.nei10u.fate.config.FastJsonConfiguration;
 import com.nei10u.fate.model.FateKLinePoint;
 import com.nei10u.fate.model.FateResponse;
+import com.nei10u.fate.model.StepResponse;
 import com.nei10u.fate.model.YearlyBatchResult;
+import com.nei10u.fate.service.session.CompactSeries;
+import com.nei10u.fate.service.session.PreparedBody;
+import com.nei10u.fate.service.session.SessionExpiry;
+import com.nei10u.fate.service.session.SessionStore;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.binder.cache.CaffeineCacheMetrics;
+import org.springframework.beans.factory.annotation.Value;
 import org.springframework.stereotype.Component;
 
 import java.time.Duration;
+import java.util.Arrays;
+import java.util.HashMap;
 import java.util.List;
+import java.util.Map;
+import java.util.Objects;
 import java.util.Optional;
-import java.util.concurrent.ConcurrentHashMap;
 
 /**
- * 简单的进程内缓存：用于分步执行时在 /kline 与 /yearly 之间传递结果。
+ * 会话缓存：用于分步执行时在 /kline 与 /yearly 之间传递结果。
  * 以 requestId 为 key，避免二次调用 LLM。
+ * <p>
+ * 条目存放在 {@link SessionStore} 中（fate.session.store=memory | redis），这里只负责合并规则；
+ * 异步任务持有进程内的 Future，始终登记在本节点（自创建起 fate.session.job-ttl 过期）。
+ * <p>
+ * K 线结果写入时即转为列式紧凑表示（fate.session.compress-text 控制文本块是否压缩），每个会话一份副本。
+ * 这是有意为之：早先会话条目直接引用命盘缓存（{@link ChartResultCache}）中的共享列表，但条目还要经
+ * {@link SessionStore} 编码写入 Redis / 本地快照，共享引用只在单节点内存存储下成立；而且被会话引用的列表
+ * 在命盘缓存淘汰后仍常驻，缓存的字节上限管不到。紧凑副本远小于原始对象列表，换来会话与命盘缓存的生命周期互不牵连。
+ * 同时预先生成 /yearly 的 JSON 响应体（原文 + 可选 gzip 副本 + ETag，fate.yearly.prepared-body / prepared-gzip），
+ * 重复读取只做字节拷贝。
+ * <p>
+ * 各阶段实际作答的模型先登记在本节点的 {@link ModelLedger}，随本请求下一次阶段结果写入（upsertBaseline / upsertKline）
+ * 合入条目的 stageModels，不为每次模型调用单独更新存储；结果不写会话的阶段（report）完成时由
+ * {@link #recordStageModels} 单独合入一次。
  */
 @Component
 public class FateSessionCache {
 
-    private static final Duration TTL = Duration.ofMinutes(30);
-    private final ConcurrentHashMap<String, CacheEntry> store = new ConcurrentHashMap<>();
+    private final SessionStore store;
+    private final ModelLedger modelLedger;
+    private final boolean compressText;
+    /**
+     * 与 HTTP 输出一致的 JSON 特性；为 null 表示不预生成 /yearly 响应体。
+     */
+    private final JSONWriter.Feature[] yearlyBodyFeatures;
+    private final boolean yearlyBodyGzip;
+    private final Cache<String, FateJob> jobs;
+
+    public FateSessionCache(SessionStore store,
+                            ModelLedger modelLedger,
+                            @Value("${fate.session.compress-text:true}") boolean compressText,
+                            @Value("${fate.yearly.prepared-body:true}") boolean prepareYearlyBody,
+                            @Value("${fate.yearly.prepared-gzip:true}") boolean prepareYearlyGzip,
+                            @Value("${fate.json.pretty:true}") boolean prettyJson,
+                            @Value("${fate.json.write-nulls:true}") boolean writeNulls,
+                            @Value("${fate.session.job-ttl:30m}") Duration jobTtl,
+                            @Value("${fate.session.max-jobs:20000}") long maxJobs,
+                            MeterRegistry meterRegistry) {
+        this.store = store;
+        this.modelLedger = modelLedger;
+        this.compressText = compressText;
+        this.yearlyBodyFeatures = prepareYearlyBody
+                ? FastJsonConfiguration.fastJsonConfig(prettyJson, writeNulls).getWriterFeatures()
+                : null;
+        this.yearlyBodyGzip = prepareYearlyGzip;
+        this.jobs = Caffeine.newBuilder()
+                .maximumSize(Math.max(1, maxJobs))
+                .expireAfter(SessionExpiry.sinceCreated(FateJob::submittedAtMillis, jobTtl))
+                .scheduler(Scheduler.systemScheduler())
+                .recordStats()
+                .build();
+        CaffeineCacheMetrics.monitor(meterRegistry, jobs, "fate.session.jobs");
+    }
 
     /**
      * 仅更新 K 线相关结果（用于 /kline -> /yearly 的分步复用）。
      * baseline/bazi 等字段不会被覆盖。
      */
-    public void upsertKline(String requestId, List<YearlyBatchResult.YearlyItem> yearlyItems, List<FateKLinePoint> kLineData) {
+    public int upsertKline(String requestId, List<YearlyBatchResult.YearlyItem> yearlyItems, List<FateKLinePoint> kLineData) {
+        return upsertKline(requestId, yearlyItems, kLineData, false);
+    }
+
+    /**
+     * provisional = 模型未在时限内返回时的本地规则 K 线，模型结果到达后以非临时结果覆盖。
+     * 每次写入 K 线版本号加一并返回新版本，客户端据此（或 /yearly 的 ETag）判断结果是否已升级。
+     */
+    public int upsertKline(String requestId, List<YearlyBatchResult.YearlyItem> yearlyItems,
+                           List<FateKLinePoint> kLineData, boolean provisional) {
         if (requestId == null || requestId.isBlank()) {
-            return;
+            return 0;
         }
-        store.compute(requestId, (_k, old) -> {
+        // 在 update 之外编码：并发冲突重试时不重复压缩；版本号按当前条目预估，与实际不符时（并发写入）再重新生成响应体
+        CompactSeries series = CompactSeries.of(yearlyItems, kLineData, compressText);
+        int expected = store.get(requestId).map(e -> e.klineVersion + 1).orElse(1);
+        PreparedBody expectedBody = prepareYearlyBody(requestId, series, expected, provisional);
+        Map<String, String> models = modelLedger.models(requestId);
+        CacheEntry updated = store.update(requestId, old -> {
             long now = System.currentTimeMillis();
-            if (old == null || isExpired(old.createdAtMillis)) {
-                return new CacheEntry(now, null, null, null, yearlyItems, kLineData);
+            int version = old == null ? 1 : old.klineVersion + 1;
+            PreparedBody yearlyBody = version == expected
+                    ? expectedBody
+                    : prepareYearlyBody(requestId, series, version, provisional);
+            if (old == null) {
+                return new CacheEntry(now, null, null, null, false, series, yearlyBody, version, provisional, models);
             }
-            return new CacheEntry(old.createdAtMillis, old.baziInfo, old.baseline, old.baselineAnalysis, yearlyItems, kLineData);
+            return new CacheEntry(old.createdAtMillis, old.baziInfo, old.baseline, old.baselineAnalysis,
+                    old.baselineProvisional, series, yearlyBody, version, provisional,
+                    mergeModels(old.stageModels, models));
         });
+        return updated == null ? 0 : updated.klineVersion;
+    }
+
+    /**
+     * 从紧凑表示还原后再序列化，保证与未命中预生成时 /yearly 现场组装的响应逐字节一致。
+     */
+    private PreparedBody prepareYearlyBody(String requestId, CompactSeries series, int version, boolean provisional) {
+        if (yearlyBodyFeatures == null) {
+            return null;
+        }
+        CompactSeries.Views views = series.views();
+        StepResponse resp = new StepResponse();
+        resp.setRequestId(requestId);
+        resp.setKLineData(views.kLineData());
+        resp.setYearlyItems(views.yearlyItems());
+        resp.setKlineVersion(version);
+        resp.setKlineProvisional(provisional);
+        return PreparedBody.json(resp, yearlyBodyGzip, yearlyBodyFeatures);
     }
 
     /**
      * 更新 baseline（命格基线）与八字（供 /kline 直接复用，避免重复计算）。
      */
     public void upsertBaseline(String requestId, FateResponse.BaZiInfo baziInfo, Integer baseline, String baselineAnalysis) {
+        upsertBaseline(requestId, baziInfo, baseline, baselineAnalysis, false);
+    }
+
+    /**
+     * provisional = 本地估算的临时 baseline（local-first 策略）：同一八字已有模型定盘结果时不覆盖，
+     * 避免后台模型结果先到、随后又被临时值写回。
+     */
+    public void upsertBaseline(String requestId, FateResponse.BaZiInfo baziInfo, Integer baseline,
+                               String baselineAnalysis, boolean provisional) {
         if (requestId == null || requestId.isBlank()) {
             return;
         }
-        store.compute(requestId, (_k, old) -> {
+        Map<String, String> models = modelLedger.models(requestId);
+        store.update(requestId, old -> {
             long now = System.currentTimeMillis();
-            if (old == null || isExpired(old.createdAtMillis)) {
-                return new CacheEntry(now, baziInfo, baseline, baselineAnalysis, null, null);
+            if (old == null) {
+                return new CacheEntry(now, baziInfo, baseline, baselineAnalysis, provisional, CompactSeries.EMPTY, null,
+                        0, false, models);
             }
-            return new CacheEntry(old.createdAtMillis, baziInfo, baseline, baselineAnalysis, old.yearlyItems, old.kLineData);
+            if (provisional && old.baseline != null && !old.baselineProvisional
+                    && Objects.equals(old.baziInfo, baziInfo)) {
+                return old;
+            }
+            return new CacheEntry(old.createdAtMillis, baziInfo, baseline, baselineAnalysis, provisional,
+                    old.series, old.yearlyBody, old.klineVersion, old.klineProvisional,
+                    mergeModels(old.stageModels, models));
         });
     }
 
-    public Optional<CacheEntry> get(String requestId) {
+    /**
+     * 只把某阶段的作答模型合入已有的会话条目（report 等结果不写会话的阶段完成时调用），其余字段不变。
+     * 条目不存在时不创建（/yearly 仍返回 409），模型留在登记簿里随之后的阶段结果写入；已合入过则不访问存储。
+     */
+    public void recordStageModels(String requestId, String stage) {
         if (requestId == null || requestId.isBlank()) {
-            return Optional.empty();
+            return;
         }
-        CacheEntry entry = store.get(requestId);
-        if (entry == null) {
-            return Optional.empty();
+        Map<String, String> models = modelLedger.models(requestId, stage);
+        Optional<CacheEntry> current = store.get(requestId);
+        if (models.isEmpty() || current.isEmpty()
+                || mergeModels(current.get().stageModels, models) == current.get().stageModels) {
+            return;
+        }
+        store.update(requestId, old -> {
+            if (old == null) {
+                return null;
+            }
+            Map<String, String> merged = mergeModels(old.stageModels, models);
+            if (merged == old.stageModels) {
+                return old;
+            }
+            return new CacheEntry(old.createdAtMillis, old.baziInfo, old.baseline, old.baselineAnalysis,
+                    old.baselineProvisional, old.series, old.yearlyBody, old.klineVersion, old.klineProvisional,
+                    merged);
+        });
+    }
+
+    /**
+     * 合并作答模型：同一阶段以逗号合并、已有的不重复；没有新增时返回原 Map。
+     */
+    static Map<String, String> mergeModels(Map<String, String> current, Map<String, String> recorded) {
+        Map<String, String> merged = null;
+        for (Map.Entry<String, String> e : recorded.entrySet()) {
+            String joined = (merged != null ? merged : current).get(e.getKey());
+            for (String model : e.getValue().split(",")) {
+                if (joined != null && Arrays.asList(joined.split(",")).contains(model)) {
+                    continue;
+                }
+                joined = joined == null ? model : joined + "," + model;
+                if (merged == null) {
+                    merged = new HashMap<>(current);
+                }
+                merged.put(e.getKey(), joined);
+            }
         }
-        if (isExpired(entry.createdAtMillis)) {
-            store.remove(requestId);
+        return merged == null ? current : Map.copyOf(merged);
+    }
+
+    public Optional<CacheEntry> get(String requestId) {
+        if (requestId == null || requestId.isBlank()) {
             return Optional.empty();
         }
-        return Optional.of(entry);
+        return store.get(requestId);
     }
 
-    private boolean isExpired(long createdAtMillis) {
-        long now = System.currentTimeMillis();
-        return now - createdAtMillis > TTL.toMillis();
+    /**
+     * 登记异步任务：与会话结果同 requestId 归档，过期策略一致。
+     * 同一 requestId + step 已有未结束的任务时返回已有任务（双击/重试不会重复提交）。
+     */
+    public FateJob registerJob(FateJob job) {
+        return jobs.asMap().compute(job.jobId(), (_k, old) -> {
+            if (old != null && !old.isFinished()) {
+                return old;
+            }
+            return job;
+        });
+    }
+
+    public Optional<FateJob> getJob(String requestId, String step) {
+        if (requestId == null || requestId.isBlank()) {
+            return Optional.empty();
+        }
+        return Optional.ofNullable(jobs.getIfPresent(requestId + "/" + step));
     }
 
+    /**
+     * K 线点位与年度条目以列式 {@link CompactSeries} 保存，yearlyItems() / kLineData() 每次调用都会重新还原。
+     * yearlyBody 为 /yearly 预生成的响应体，与 series 同时写入；未启用或尚无 K 线时为 null。
+     * klineVersion 每次写入 K 线递增（0 = 尚无 K 线）；klineProvisional = 当前为本地规则生成的临时 K 线。
+     * stageModels 为各阶段（baseline / report / yearly / facts）实际作答的模型 id。
+     */
     public record CacheEntry(long createdAtMillis,
                              FateResponse.BaZiInfo baziInfo,
                              Integer baseline,
                              String baselineAnalysis,
-                             List<YearlyBatchResult.YearlyItem> yearlyItems,
-                             List<FateKLinePoint> kLineData) {
+                             boolean baselineProvisional,
+                             CompactSeries series,
+                             PreparedBody yearlyBody,
+                             int klineVersion,
+                             boolean klineProvisional,
+                             Map<String, String> stageModels) {
+
+        public List<YearlyBatchResult.YearlyItem> yearlyItems() {
+            return series.yearlyItems();
+        }
+
+        public List<FateKLinePoint> kLineData() {
+            return series.kLineData();
+        }
     }
 }
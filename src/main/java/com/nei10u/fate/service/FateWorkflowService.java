@@ -0,0 +1,464 @@
+package com.nei10u.fate.service;
+
+import com.nei10u.fate.model.FateAnalysisReport;
+import com.nei10u.fate.model.FateKLinePoint;
+import com.nei10u.fate.model.FateRequest;
+import com.nei10u.fate.model.FateResponse;
+import com.nei10u.fate.model.StepResponse;
+import com.nei10u.fate.model.YearlyBatchResult;
+import com.nei10u.fate.service.pipeline.PipelineResult;
+import com.nei10u.fate.service.pipeline.StageGraph;
+import com.nei10u.fate.service.pipeline.StagePipelineExecutor;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Qualifier;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Service;
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Mono;
+
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.UUID;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.function.Function;
+import java.util.function.Supplier;
+
+/**
+ * 命理分析流程编排：把 bazi -> {baseline, report} -> yearly -> kline 建模为阶段 DAG。
+ * <p>
+ * - /analyze 一次跑完整张图：report 与 baseline/yearly 并发，端到端延迟约等于关键路径而非各阶段之和
+ * - 分步接口只调度各自需要的目标阶段，会话缓存中已有的结果作为预置阶段（不再重复计算）
+ * - /bazi 完成后即推测执行 report 与 yearly（{@link SpeculationService}），随后的 /report、/kline 挂接到推测结果上
+ * - /kline 有时延预算（fate.kline.model-deadline）：超时先返回本地规则的临时 K 线，模型结果到达后替换会话并递增版本号
+ */
+@Service
+public class FateWorkflowService {
+
+    private static final Logger log = LoggerFactory.getLogger(FateWorkflowService.class);
+
+    public static final String STAGE_BAZI = "bazi";
+    public static final String STAGE_BASELINE = "baseline";
+    public static final String STAGE_REPORT = "report";
+    public static final String STAGE_YEARLY = "yearly";
+    public static final String STAGE_KLINE = "kline";
+
+    private final FateAiService fateAiService;
+    private final FateAiFacade fateAiFacade;
+    private final FateSessionCache fateSessionCache;
+    private final StagePipelineExecutor pipelineExecutor;
+    private final SpeculationService speculationService;
+    private final ExecutorService refineExecutor;
+
+    /**
+     * baseline 策略：llm = 模型定盘；local = 本地规则估算；
+     * local-first = 立即返回本地估算，后台请求模型定盘，完成后回写会话缓存。
+     */
+    @Value("${fate.ai.baseline-strategy:local-first}")
+    private String baselineStrategy;
+
+    @Value("${fate.pipeline.timeout.bazi:10s}")
+    private Duration baziTimeout;
+
+    @Value("${fate.pipeline.timeout.baseline:90s}")
+    private Duration baselineTimeout;
+
+    @Value("${fate.pipeline.timeout.report:120s}")
+    private Duration reportTimeout;
+
+    @Value("${fate.pipeline.timeout.yearly:180s}")
+    private Duration yearlyTimeout;
+
+    @Value("${fate.pipeline.timeout.kline:10s}")
+    private Duration klineTimeout;
+
+    /**
+     * /kline 等待模型的时限；0 = 不设时限（一直等到 yearly 阶段完成或超时）。
+     */
+    @Value("${fate.kline.model-deadline:0s}")
+    private Duration klineModelDeadline;
+
+    public FateWorkflowService(FateAiService fateAiService,
+                               FateAiFacade fateAiFacade,
+                               FateSessionCache fateSessionCache,
+                               StagePipelineExecutor pipelineExecutor,
+                               SpeculationService speculationService,
+                               @Qualifier("fateStageExecutor") ExecutorService refineExecutor) {
+        this.fateAiService = fateAiService;
+        this.fateAiFacade = fateAiFacade;
+        this.fateSessionCache = fateSessionCache;
+        this.pipelineExecutor = pipelineExecutor;
+        this.speculationService = speculationService;
+        this.refineExecutor = refineExecutor;
+    }
+
+    /**
+     * 兼容旧接口：一次性返回全量数据
+     */
+    public FateResponse analyze(FateRequest req) {
+        String requestId = resolveRequestId(req);
+        log.info("[{}] analyze start", requestId);
+        PipelineResult result = pipelineExecutor.execute(requestId, graph(req, requestId), Map.of(),
+                List.of(STAGE_REPORT, STAGE_KLINE));
+
+        FateResponse response = new FateResponse();
+        response.setRequestId(requestId);
+        response.setBaziInfo(result.require(STAGE_BAZI));
+        response.setAnalysisReport(result.require(STAGE_REPORT));
+        response.setKLineData(result.require(STAGE_KLINE));
+        response.setStageTimings(result.timingsMillis());
+        log.info("[{}] analyze done", requestId);
+        return response;
+    }
+
+    /**
+     * 第一步：排盘 + 定盘 baseline，并写入会话缓存供 /kline 复用；随后后台推测执行 report 与 yearly。
+     */
+    public StepResponse bazi(FateRequest req, String requestId) {
+        PipelineResult result = pipelineExecutor.execute(requestId, graph(req, requestId), Map.of(),
+                List.of(STAGE_BASELINE));
+        FateResponse.BaZiInfo bazi = result.require(STAGE_BAZI);
+        FateAiService.BaselineResult baseline = result.require(STAGE_BASELINE);
+        // baseline 不需要回传给前端（保持接口不变），但会写入缓存供 /kline 使用。
+        fateSessionCache.upsertBaseline(requestId, bazi, baseline.getBaseline(), baseline.getAnalysis(),
+                baseline.isProvisional());
+        // 以会话中最终生效的 baseline 推测（后台模型定盘可能已先写入），与随后 /kline 使用的一致
+        int sessionBaseline = fateSessionCache.get(requestId)
+                .map(FateSessionCache.CacheEntry::baseline)
+                .orElse(baseline.getBaseline());
+        speculationService.start(requestId, bazi, req.getGender(), sessionBaseline);
+
+        StepResponse resp = new StepResponse();
+        resp.setRequestId(requestId);
+        resp.setBaziInfo(bazi);
+        resp.setStageTimings(result.timingsMillis());
+        return resp;
+    }
+
+    /**
+     * 第二步：总体报告（只依赖八字，可与 /bazi 的 baseline 并行推进）。
+     */
+    public StepResponse report(FateRequest req, String requestId) {
+        // 推测进行中时 report 阶段经 single-flight 合并到推测调用上，已完成则命中命盘缓存
+        speculationService.attachReport(requestId);
+        Map<String, Object> seeds = new HashMap<>();
+        fateSessionCache.get(requestId)
+                .map(FateSessionCache.CacheEntry::baziInfo)
+                .ifPresent(bazi -> seeds.put(STAGE_BAZI, bazi));
+        PipelineResult result = pipelineExecutor.execute(requestId, graph(req, requestId), seeds,
+                List.of(STAGE_REPORT));
+
+        StepResponse resp = new StepResponse();
+        resp.setRequestId(requestId);
+        resp.setAnalysisReport(result.require(STAGE_REPORT));
+        resp.setStageTimings(result.timingsMillis());
+        return resp;
+    }
+
+    /**
+     * 流式第二步：报告按板块并发生成，每个板块完成即下发（八字优先复用会话缓存）。
+     * 已有推测任务时等待其结果整份回放；推测失败/被取消则照常流式生成。
+     */
+    public Flux<ReportSectionGenerator.SectionResult> streamReport(FateRequest req, String requestId) {
+        return Flux.defer(() -> {
+            FateResponse.BaZiInfo bazi = fateSessionCache.get(requestId)
+                    .map(FateSessionCache.CacheEntry::baziInfo)
+                    .orElseGet(() -> fateAiService.calculateBaZi(req));
+            Flux<ReportSectionGenerator.SectionResult> fresh = fateAiFacade.streamReport(bazi, req.getGender(), requestId);
+            return speculationService.attachReport(requestId)
+                    .map(speculated -> Mono.fromFuture(speculated, true)
+                            .flatMapIterable(ReportSectionGenerator::split)
+                            .onErrorResume(e -> fresh))
+                    .orElse(fresh)
+                    .doOnComplete(() -> fateSessionCache.recordStageModels(requestId, STAGE_REPORT));
+        });
+    }
+
+    /**
+     * 第三步：年度分数 -> K 线。优先复用 /bazi 缓存的八字与 baseline；
+     * 若调用方已携带 yearlyItems，则跳过 LLM 生成。
+     * <p>
+     * 设置了 fate.kline.model-deadline 时，模型在时限内未返回则立即返回本地规则生成的临时 K 线（klineProvisional=true）；
+     * 流水线在后台继续，完成后替换会话中的 K 线并递增 klineVersion（客户端轮询 /kline/{requestId}/version 或带 ETag 轮询 /yearly）。
+     */
+    public StepResponse kline(FateRequest req, List<YearlyBatchResult.YearlyItem> providedItems, String requestId) {
+        Map<String, Object> seeds = sessionSeeds(requestId);
+        boolean provided = providedItems != null && !providedItems.isEmpty();
+        if (provided) {
+            seeds.put(STAGE_YEARLY, providedItems);
+        } else if (seeds.get(STAGE_BASELINE) instanceof FateAiService.BaselineResult baseline) {
+            // 同 baseline 的推测进行中时 yearly 阶段经 single-flight 合并上去，已完成则命中命盘缓存
+            speculationService.attachYearly(requestId, baseline.getBaseline());
+        }
+
+        CompletableFuture<PipelineResult> pipeline = pipelineExecutor.submit(requestId, graph(req, requestId), seeds,
+                List.of(STAGE_KLINE));
+        PipelineResult result;
+        if (provided || klineModelDeadline.isZero() || klineModelDeadline.isNegative()) {
+            result = pipeline.join();
+        } else {
+            try {
+                result = pipeline.get(klineModelDeadline.toMillis(), TimeUnit.MILLISECONDS);
+            } catch (TimeoutException e) {
+                return provisionalKline(req, seeds, pipeline, requestId);
+            } catch (ExecutionException e) {
+                throw new CompletionException(e.getCause());
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                throw new CompletionException(e);
+            }
+        }
+        storeBaselineIfComputed(result, requestId);
+        List<YearlyBatchResult.YearlyItem> items = result.require(STAGE_YEARLY);
+        List<FateKLinePoint> kLine = result.require(STAGE_KLINE);
+        int version = fateSessionCache.upsertKline(requestId, items, kLine);
+
+        StepResponse resp = new StepResponse();
+        resp.setRequestId(requestId);
+        resp.setKLineData(kLine);
+        resp.setStageTimings(result.timingsMillis());
+        resp.setKlineVersion(version);
+        resp.setKlineProvisional(false);
+        return resp;
+    }
+
+    /**
+     * 模型超出时限：用本地事实表 + 固定规则生成临时 K 线写入会话，流水线完成后再以模型结果替换。
+     * 先写临时结果、再挂接后台回调，保证模型结果总是后写入。
+     */
+    private StepResponse provisionalKline(FateRequest req, Map<String, Object> seeds,
+                                          CompletableFuture<PipelineResult> pipeline, String requestId) {
+        long start = System.nanoTime();
+        FateResponse.BaZiInfo bazi = seeds.get(STAGE_BAZI) instanceof FateResponse.BaZiInfo seeded
+                ? seeded
+                : fateAiService.calculateBaZi(req);
+        int baseline = seeds.get(STAGE_BASELINE) instanceof FateAiService.BaselineResult seeded
+                ? seeded.getBaseline()
+                : fateAiService.estimateBaseline(bazi).getBaseline();
+        List<YearlyBatchResult.YearlyItem> items = fateAiService.provisionalYearlyItems(bazi, baseline);
+        List<FateKLinePoint> kLine = fateAiService.buildKLineFromYearlyScores(req.getYear(), bazi.getDaYunList(),
+                items, baseline);
+        int version = fateSessionCache.upsertKline(requestId, items, kLine, true);
+        log.info("[{}] kline model deadline {}ms exceeded, provisional v{} built in {}us", requestId,
+                klineModelDeadline.toMillis(), version, (System.nanoTime() - start) / 1_000);
+
+        pipeline.whenComplete((result, err) -> {
+            if (err != null) {
+                log.warn("[{}] kline upgrade failed, keeping provisional v{}: {}", requestId, version, err.getMessage());
+                return;
+            }
+            storeBaselineIfComputed(result, requestId);
+            List<YearlyBatchResult.YearlyItem> modelItems = result.require(STAGE_YEARLY);
+            if (modelItems.isEmpty()) {
+                // 模型失败后的兜底是持平的空序列，不如本地规则结果：保留临时 K 线
+                log.warn("[{}] kline upgrade skipped: no model items, keeping provisional v{}", requestId, version);
+                return;
+            }
+            int upgraded = fateSessionCache.upsertKline(requestId, modelItems, result.require(STAGE_KLINE));
+            log.info("[{}] kline upgraded v{} -> v{} items={}", requestId, version, upgraded, modelItems.size());
+        });
+
+        StepResponse resp = new StepResponse();
+        resp.setRequestId(requestId);
+        resp.setKLineData(kLine);
+        resp.setKlineVersion(version);
+        resp.setKlineProvisional(true);
+        return resp;
+    }
+
+    /**
+     * 流式第三步：baseline 就绪后订阅模型流式输出，每个年度条目闭合即按连续性规则产出一个 K 线点位。
+     * <p>
+     * 流结束后补齐缺失年份，并把最终结果写入会话缓存（/yearly 照常可用）。
+     * 命盘缓存已有同命盘的年度分数时直接回放，不再调用模型。
+     */
+    public Flux<FateKLinePoint> streamKline(FateRequest req,
+                                            List<YearlyBatchResult.YearlyItem> providedItems,
+                                            String requestId) {
+        CompletableFuture<PipelineResult> prepared = pipelineExecutor.submit(requestId, graph(req, requestId),
+                sessionSeeds(requestId), List.of(STAGE_BASELINE));
+        return Mono.fromFuture(prepared).flatMapMany(result -> {
+            storeBaselineIfComputed(result, requestId);
+            FateResponse.BaZiInfo bazi = result.require(STAGE_BAZI);
+            FateAiService.BaselineResult baseline = result.require(STAGE_BASELINE);
+            KLineSeriesBuilder series = fateAiService.newKLineSeries(req.getYear(), bazi.getDaYunList(),
+                    baseline.getBaseline());
+            List<YearlyBatchResult.YearlyItem> collected = new ArrayList<>(KLineSeriesBuilder.YEARS);
+
+            List<YearlyBatchResult.YearlyItem> replay = providedItems != null && !providedItems.isEmpty()
+                    ? providedItems
+                    : fateAiFacade.cachedYearlyScores(bazi, req.getGender(), baseline.getBaseline(),
+                            requestId).orElse(null);
+            Flux<YearlyBatchResult.YearlyItem> items;
+            if (replay != null) {
+                items = Flux.fromIterable(replay);
+            } else {
+                Flux<YearlyBatchResult.YearlyItem> fresh = fateAiService.streamYearlyScoresOneShot(bazi,
+                        req.getGender(), baseline.getBaseline(), requestId);
+                // 推测进行中：等它完成后整段回放；推测失败/被取消则照常流式生成
+                items = speculationService.attachYearly(requestId, baseline.getBaseline())
+                        .map(speculated -> Mono.fromFuture(speculated, true)
+                                .flatMapIterable(list -> list)
+                                .onErrorResume(e -> fresh))
+                        .orElse(fresh);
+            }
+            if (fateAiService.isFallbackEnabled()) {
+                items = items.onErrorResume(e -> {
+                    log.error("[{}] yearly-score stream 失败，已按缺失年份持平补齐: {}", requestId, e.getMessage(), e);
+                    return Flux.empty();
+                });
+            }
+            return items
+                    .doOnNext(collected::add)
+                    .concatMapIterable(series::offer)
+                    .concatWith(Flux.defer(() -> Flux.fromIterable(series.finish())))
+                    .doOnComplete(() -> {
+                        if (replay == null) {
+                            fateAiFacade.rememberYearlyScores(bazi, req.getGender(), baseline.getBaseline(), collected,
+                                    requestId);
+                        }
+                        fateSessionCache.upsertKline(requestId, collected, series.points());
+                        log.info("[{}] kline stream done size={} yearlyItems={}", requestId,
+                                series.points().size(), collected.size());
+                    });
+        });
+    }
+
+    /**
+     * 会话缓存中已有的八字与 baseline 作为预置阶段，避免重复排盘/定盘。
+     */
+    private Map<String, Object> sessionSeeds(String requestId) {
+        Map<String, Object> seeds = new HashMap<>();
+        Optional<FateSessionCache.CacheEntry> cached = fateSessionCache.get(requestId);
+        cached.map(FateSessionCache.CacheEntry::baziInfo).ifPresent(bazi -> seeds.put(STAGE_BAZI, bazi));
+        cached.filter(e -> e.baseline() != null).ifPresent(e -> {
+            FateAiService.BaselineResult baseline = new FateAiService.BaselineResult();
+            baseline.setBaseline(e.baseline());
+            baseline.setAnalysis(e.baselineAnalysis());
+            baseline.setProvisional(e.baselineProvisional());
+            seeds.put(STAGE_BASELINE, baseline);
+        });
+        return seeds;
+    }
+
+    private void storeBaselineIfComputed(PipelineResult result, String requestId) {
+        if (result.executed(STAGE_BASELINE)) {
+            // 兜底：若未先走 /bazi，也可在 /kline 内补定盘
+            FateAiService.BaselineResult baseline = result.require(STAGE_BASELINE);
+            fateSessionCache.upsertBaseline(requestId, result.require(STAGE_BAZI),
+                    baseline.getBaseline(), baseline.getAnalysis(), baseline.isProvisional());
+        }
+    }
+
+    /**
+     * 按 fate.ai.baseline-strategy 定盘。local-first 时命盘缓存已有模型结果则直接使用，
+     * 否则先返回本地估算（毫秒级），并在后台请求模型。
+     */
+    private FateAiService.BaselineResult baseline(FateResponse.BaZiInfo bazi, String gender, String requestId) {
+        if ("llm".equalsIgnoreCase(baselineStrategy)) {
+            return fateAiFacade.generateBaseline(bazi, gender, requestId);
+        }
+        if ("local".equalsIgnoreCase(baselineStrategy)) {
+            return fateAiService.estimateBaseline(bazi);
+        }
+        Optional<FateAiService.BaselineResult> refined = fateAiFacade.cachedBaseline(bazi, gender, requestId);
+        if (refined.isPresent()) {
+            return refined.get();
+        }
+        FateAiService.BaselineResult local = fateAiService.estimateBaseline(bazi);
+        local.setProvisional(true);
+        refineBaselineInBackground(bazi, gender, requestId, local.getBaseline());
+        return local;
+    }
+
+    /**
+     * 后台模型定盘：成功后覆盖会话中的临时 baseline（结果同时进入命盘缓存，同命盘后续请求直接命中）；
+     * 失败或兜底结果则保留本地估算。
+     */
+    private void refineBaselineInBackground(FateResponse.BaZiInfo bazi, String gender, String requestId, int provisional) {
+        try {
+            CompletableFuture.supplyAsync(() -> fateAiFacade.generateBaseline(bazi, gender, requestId), refineExecutor)
+                    .whenComplete((refined, err) -> {
+                        if (err != null || refined.isDegraded()) {
+                            log.warn("[{}] baseline refinement unavailable, keeping local={}: {}", requestId,
+                                    provisional, err != null ? err.getMessage() : "degraded");
+                            return;
+                        }
+                        fateSessionCache.upsertBaseline(requestId, bazi, refined.getBaseline(), refined.getAnalysis());
+                        log.info("[{}] baseline refined local={} llm={}", requestId, provisional, refined.getBaseline());
+                        speculationService.rebase(requestId, refined.getBaseline());
+                    });
+        } catch (RejectedExecutionException e) {
+            log.warn("[{}] baseline refinement skipped: executor saturated", requestId);
+        }
+    }
+
+    private StageGraph graph(FateRequest req, String requestId) {
+        String gender = req.getGender();
+        return StageGraph.builder()
+                .stage(STAGE_BAZI, List.of(), baziTimeout,
+                        ctx -> fateAiService.calculateBaZi(req))
+                .stage(STAGE_BASELINE, List.of(STAGE_BAZI), baselineTimeout,
+                        ctx -> baseline(ctx.get(STAGE_BAZI), gender, requestId),
+                        fallbackOr(() -> fateAiService.fallbackBaseline(fateAiService.calculateBaZi(req))))
+                .stage(STAGE_REPORT, List.of(STAGE_BAZI), reportTimeout,
+                        ctx -> {
+                            FateAnalysisReport report = fateAiFacade.generateReport(ctx.get(STAGE_BAZI), gender,
+                                    requestId);
+                            // 报告不写会话：单独把作答模型合入会话条目（与 kline 并行，可能晚于 upsertKline 完成）
+                            fateSessionCache.recordStageModels(requestId, STAGE_REPORT);
+                            return report;
+                        },
+                        fallbackOr(() -> fateAiService.fallbackReport("AI 报告生成超时（请检查 OpenRouter 配置/模型配额）")))
+                .stage(STAGE_YEARLY, List.of(STAGE_BAZI, STAGE_BASELINE), yearlyTimeout,
+                        ctx -> {
+                            FateAiService.BaselineResult baseline = ctx.get(STAGE_BASELINE);
+                            List<YearlyBatchResult.YearlyItem> items = fateAiFacade.generateYearlyScores(
+                                    ctx.get(STAGE_BAZI), gender, baseline.getBaseline(), requestId);
+                            log.info("[{}] yearly score items size={}", requestId, items.size());
+                            return items;
+                        },
+                        fallbackOr(Collections::emptyList))
+                .stage(STAGE_KLINE, List.of(STAGE_BAZI, STAGE_BASELINE, STAGE_YEARLY), klineTimeout,
+                        ctx -> {
+                            FateResponse.BaZiInfo bazi = ctx.get(STAGE_BAZI);
+                            FateAiService.BaselineResult baseline = ctx.get(STAGE_BASELINE);
+                            return fateAiService.buildKLineFromYearlyScores(req.getYear(), bazi.getDaYunList(),
+                                    ctx.get(STAGE_YEARLY), baseline.getBaseline());
+                        })
+                .build();
+    }
+
+    /**
+     * 阶段超时/失败时的兜底：遵循 fate.ai.fallback-enabled，关闭时把失败原样抛给调用方。
+     * 模型准入被拒（{@link ModelOverloadedException}）始终原样抛出，由控制器返回 429。
+     */
+    private Function<Throwable, Object> fallbackOr(Supplier<Object> fallback) {
+        return err -> {
+            if (!fateAiService.isFallbackEnabled() || err instanceof ModelOverloadedException) {
+                throw err instanceof RuntimeException re ? re : new IllegalStateException(err);
+            }
+            return fallback.get();
+        };
+    }
+
+    private String resolveRequestId(FateRequest req) {
+        if (req.getRequestId() != null && !req.getRequestId().isBlank()) {
+            return req.getRequestId();
+        }
+        String rid = UUID.randomUUID().toString();
+        req.setRequestId(rid);
+        return rid;
+    }
+}
@@ -0,0 +1,163 @@
+package com.nei10u.fate.service;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * 增量 JSON 条目提取器：逐块喂入模型输出，数组中的对象一旦闭合（收到对应的 '}'）即吐出其原文。
+ * <p>
+ * 只跟踪括号层级与字符串/转义状态，不做完整解析：
+ * - 兼容 {"items":[...]} 与裸数组 [...] 两种形态
+ * - 代码块围栏、前后缀说明文字等非 JSON 内容会被自然跳过
+ * - 非线程安全：一个实例只服务一次模型输出
+ * <p>
+ * 也用于非流式输出的容错解析：被截断（max_tokens）或局部损坏的数组，仍能取回其中每个完整闭合的条目。
+ * <p>
+ * 重新同步：合法 JSON 的字符串里引号必须转义，{"age" 这一字面序列只会出现在年度条目开头。
+ * 某个条目缺少 '}' 或引号不成对时，层级/字符串状态会一直错下去并吞掉后续条目；
+ * 因此在数组内遇到新的 {"age" 时丢弃当前未闭合的条目，从该处重新开始捕获，只损失坏掉的那一条。
+ */
+public final class JsonArrayItemExtractor {
+
+    private static final String BOUNDARY_KEY = "\"age\"";
+
+    private final StringBuilder stack = new StringBuilder();
+    private final StringBuilder current = new StringBuilder(256);
+    private int captureDepth = -1;
+    private boolean inString;
+    private boolean escaped;
+
+    /**
+     * {"age" 识别：boundary 为候选 '{' 起的原文，matched 为已匹配的 "age" 字符数（0 = 还在 '{' 后的空白里）。
+     * 与上面的状态机独立运行，不受其（可能已错乱的）字符串状态影响。
+     */
+    private final StringBuilder boundary = new StringBuilder(16);
+    private int matched = -1;
+    private boolean boundaryStartedCapture;
+
+    /**
+     * 一次性提取完整输出中所有已闭合的数组条目（截断的末尾条目自然丢弃）。
+     */
+    public static List<String> extractAll(CharSequence raw) {
+        return new JsonArrayItemExtractor().feed(raw);
+    }
+
+    public List<String> feed(CharSequence chunk) {
+        if (chunk == null || chunk.isEmpty()) {
+            return Collections.emptyList();
+        }
+        List<String> out = null;
+        for (int i = 0; i < chunk.length(); i++) {
+            char c = chunk.charAt(i);
+            if (captureDepth >= 0) {
+                current.append(c);
+            }
+            boolean capturing = captureDepth >= 0;
+            track(c);
+            if (inString) {
+                if (escaped) {
+                    escaped = false;
+                } else if (c == '\\') {
+                    escaped = true;
+                } else if (c == '"') {
+                    inString = false;
+                }
+            } else {
+                switch (c) {
+                    case '"' -> {
+                        // 容器外的引号属于说明文字，忽略
+                        if (!stack.isEmpty()) {
+                            inString = true;
+                        }
+                    }
+                    case '{' -> {
+                        if (captureDepth < 0 && top() == '[') {
+                            captureDepth = stack.length();
+                            current.setLength(0);
+                            current.append(c);
+                            boundaryStartedCapture = true;
+                        }
+                        stack.append('{');
+                    }
+                    case '[' -> stack.append('[');
+                    case '}', ']' -> {
+                        char open = c == '}' ? '{' : '[';
+                        if (top() == open) {
+                            stack.setLength(stack.length() - 1);
+                            if (c == '}' && captureDepth == stack.length()) {
+                                if (out == null) {
+                                    out = new ArrayList<>(2);
+                                }
+                                out.add(current.toString());
+                                captureDepth = -1;
+                            }
+                        }
+                        // 不匹配的闭合符：容错忽略
+                    }
+                    default -> {
+                    }
+                }
+            }
+            if (matched == BOUNDARY_KEY.length()) {
+                matched = -1;
+                resync(capturing);
+            }
+        }
+        return out == null ? Collections.emptyList() : out;
+    }
+
+    /**
+     * 推进 {"age" 识别。
+     */
+    private void track(char c) {
+        if (c == '{') {
+            boundary.setLength(0);
+            boundary.append(c);
+            matched = 0;
+            boundaryStartedCapture = false;
+            return;
+        }
+        if (matched < 0) {
+            return;
+        }
+        if (matched == 0 && Character.isWhitespace(c)) {
+            boundary.append(c);
+        } else if (c == BOUNDARY_KEY.charAt(matched)) {
+            boundary.append(c);
+            matched++;
+        } else {
+            matched = -1;
+        }
+    }
+
+    /**
+     * 刚读完一个 {"age"：若它不是当前条目自己的开头，说明此前的条目没有正常闭合（或根本没进入捕获），
+     * 丢弃未闭合部分，把层级恢复到所在数组内，从该 '{' 起重新捕获。
+     */
+    private void resync(boolean wasCapturing) {
+        if (wasCapturing && boundaryStartedCapture) {
+            return;
+        }
+        int arrayDepth;
+        if (wasCapturing) {
+            arrayDepth = captureDepth;
+        } else {
+            arrayDepth = stack.lastIndexOf("[") + 1;
+            if (arrayDepth == 0) {
+                return;
+            }
+        }
+        stack.setLength(arrayDepth);
+        stack.append('{');
+        captureDepth = arrayDepth;
+        current.setLength(0);
+        current.append(boundary);
+        inString = false;
+        escaped = false;
+    }
+
+    private char top() {
+        return stack.isEmpty() ? 0 : stack.charAt(stack.length() - 1);
+    }
+}
@@ -0,0 +1,121 @@
+package com.nei10u.fate.service;
+
+import com.nei10u.fate.model.FateKLinePoint;
+import com.nei10u.fate.model.FateResponse;
+import com.nei10u.fate.model.YearlyBatchResult;
+import com.nei10u.fate.service.ganzhi.DaYunIndex;
+import org.springframework.util.StringUtils;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * 年度绝对分数 -> K 线点位的逐点构建器（后端保证连续性与颜色判定一致性）。
+ * <p>
+ * 批量构建（buildKLineFromYearlyScores）与流式构建（SSE）共用同一套规则：
+ * - 第 1 年 open = baseline；第 N 年 open = 第 N-1 年 close
+ * - close 优先取模型 close（绝对分数），否则退化为 score，缺失年份持平
+ * - close > open => Bullish（绿）；否则 Bearish（红）
+ * <p>
+ * 乱序到达的条目先缓冲，保证按年龄顺序逐点产出；同一年龄以先到者为准。非线程安全。
+ */
+public final class KLineSeriesBuilder {
+
+    public static final int YEARS = 80;
+
+    private final int birthYear;
+    private final DaYunIndex daYunIndex;
+    private final FateCalculationService calcService;
+    private final Map<Integer, YearlyBatchResult.YearlyItem> pending = new HashMap<>();
+    private final List<FateKLinePoint> points = new ArrayList<>(YEARS);
+    private int prevClose;
+    private int nextAge = 1;
+
+    KLineSeriesBuilder(int birthYear,
+                       List<FateResponse.DaYunInfo> daYuns,
+                       int baseline,
+                       FateCalculationService calcService) {
+        this.birthYear = birthYear;
+        this.daYunIndex = DaYunIndex.of(daYuns);
+        this.calcService = calcService;
+        this.prevClose = Math.max(20, Math.min(80, baseline));
+    }
+
+    /**
+     * 喂入一条模型条目，返回因此可以确定的连续点位（可能为空，也可能一次补出多年）。
+     */
+    public List<FateKLinePoint> offer(YearlyBatchResult.YearlyItem item) {
+        if (item == null || item.getAge() < nextAge || item.getAge() > YEARS) {
+            return Collections.emptyList();
+        }
+        pending.putIfAbsent(item.getAge(), item);
+        if (!pending.containsKey(nextAge)) {
+            return Collections.emptyList();
+        }
+        List<FateKLinePoint> out = new ArrayList<>(1);
+        while (pending.containsKey(nextAge)) {
+            out.add(next(pending.remove(nextAge)));
+        }
+        return out;
+    }
+
+    /**
+     * 输入结束：补齐剩余年份（缺失年份持平），返回本次补出的点位。
+     */
+    public List<FateKLinePoint> finish() {
+        List<FateKLinePoint> out = new ArrayList<>(YEARS - nextAge + 1);
+        while (nextAge <= YEARS) {
+            out.add(next(pending.remove(nextAge)));
+        }
+        return out;
+    }
+
+    /**
+     * 已产出的全部点位（按年龄升序）。
+     */
+    public List<FateKLinePoint> points() {
+        return points;
+    }
+
+    private FateKLinePoint next(YearlyBatchResult.YearlyItem ai) {
+        int age = nextAge++;
+        int currentYear = birthYear + (age - 1);
+        String ganZhi = calcService.getYearGanZhi(currentYear);
+
+        String currentDaYun = daYunIndex.at(age);
+
+        // 兼容模型输出：
+        // - 若输出了 close（绝对分数），优先使用 close
+        // - 否则退化为 score
+        Integer modelClose = ai != null ? ai.getClose() : null;
+        int closeScore = modelClose != null ? modelClose : (ai != null ? ai.getScore() : prevClose);
+        closeScore = Math.max(1, Math.min(100, closeScore));
+
+        int open = prevClose;
+        int close = closeScore;
+        String trend = close > open ? "Bullish" : "Bearish";
+        int score = Math.abs(close - open);
+
+        String desc = ai != null && StringUtils.hasText(ai.getContent()) ? ai.getContent() : "当年运势已生成。";
+        String finalGanZhi = ai != null && StringUtils.hasText(ai.getGanZhi()) ? ai.getGanZhi() : ganZhi;
+        String finalDaYun = ai != null && StringUtils.hasText(ai.getDaYun()) ? ai.getDaYun() : currentDaYun;
+
+        FateKLinePoint point = FateKLinePoint.builder()
+                .age(age)
+                .year(currentYear)
+                .ganZhi(finalGanZhi)
+                .daYun(finalDaYun)
+                .score(score)
+                .open(open)
+                .close(close)
+                .trend(trend)
+                .description(desc)
+                .build();
+        points.add(point);
+        prevClose = close;
+        return point;
+    }
+}
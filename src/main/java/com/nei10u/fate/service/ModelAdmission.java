@@ -0,0 +1,284 @@
+package com.nei10u.fate.service;
+
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import java.time.Duration;
+import java.util.Comparator;
+import java.util.Optional;
+import java.util.PriorityQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.locks.Condition;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.function.LongSupplier;
+
+/**
+ * 模型调用准入控制：全局并发上限 + 有界优先级等待队列，所有未命中持久化存储的模型调用都先在这里取得许可。
+ * <p>
+ * - 优先级：baseline / facts（输出短，且后续阶段都依赖它）先于 yearly，yearly 先于报告正文；同级先来先服务
+ * - 交接：释放许可时直接交给队首等待者，新到的调用不会插队
+ * - 快速拒绝：队列已满，或按前面排队数与平均调用耗时估算的等待时间超过调用方预算时，
+ *   立即抛出 {@link ModelOverloadedException}（429 + Retry-After），不占着线程等到超时；排队超过预算同样拒绝
+ * - 预算：调用方所在阶段的剩余时间（{@link com.nei10u.fate.service.pipeline.StageDeadline}）；
+ *   不在带超时的阶段内时（如 SSE、后台回写）用 fate.llm.admission.max-wait
+ * <p>
+ * 指标：fate.llm.admission.queue{stage}（排队耗时）、fate.llm.admission.rejected{stage, reason}、
+ * fate.llm.admission.inflight、fate.llm.admission.queued
+ */
+@Component
+public class ModelAdmission {
+
+    private static final Logger log = LoggerFactory.getLogger(ModelAdmission.class);
+
+    /**
+     * 平均调用耗时的平滑系数（EWMA）。
+     */
+    private static final double ALPHA = 0.2;
+
+    private final int limit;
+    private final int queueCapacity;
+    private final Duration maxWait;
+    private final MeterRegistry meterRegistry;
+    private final LongSupplier clock;
+    private final ReentrantLock lock = new ReentrantLock();
+    private final PriorityQueue<Waiter> waiting = new PriorityQueue<>(
+            Comparator.comparingInt(Waiter::priority).thenComparingLong(Waiter::seq));
+    private int inUse;
+    private long seq;
+    private long avgServiceNanos;
+
+    @Autowired
+    public ModelAdmission(MeterRegistry meterRegistry,
+                          @Value("${fate.llm.admission.max-concurrency:8}") int limit,
+                          @Value("${fate.llm.admission.queue-capacity:32}") int queueCapacity,
+                          @Value("${fate.llm.admission.max-wait:15s}") Duration maxWait) {
+        this(meterRegistry, limit, queueCapacity, maxWait, System::nanoTime);
+    }
+
+    /**
+     * clock 为纳秒时钟（测试中可控）；预计等待、排队截止与平均调用耗时都按它计算。
+     */
+    ModelAdmission(MeterRegistry meterRegistry, int limit, int queueCapacity, Duration maxWait, LongSupplier clock) {
+        this.meterRegistry = meterRegistry;
+        this.clock = clock;
+        this.limit = limit;
+        this.queueCapacity = Math.max(0, queueCapacity);
+        this.maxWait = maxWait;
+        Gauge.builder("fate.llm.admission.inflight", this, a -> a.snapshot(true))
+                .description("占用许可的模型调用数")
+                .register(meterRegistry);
+        Gauge.builder("fate.llm.admission.queued", this, a -> a.snapshot(false))
+                .description("排队等待许可的模型调用数")
+                .register(meterRegistry);
+    }
+
+    /**
+     * 阶段优先级，数值越小越先获得许可。
+     */
+    static int priorityOf(String stage) {
+        if (stage.startsWith("baseline") || stage.startsWith("facts")) {
+            return 0;
+        }
+        if (stage.startsWith("yearly")) {
+            return 1;
+        }
+        return 2;
+    }
+
+    /**
+     * 取得一次模型调用的许可（阻塞直到获得，或被拒绝）；调用结束后必须 close()。
+     * budget 为调用方阶段的剩余时间，预计等待或实际排队超过它即拒绝；为 null 时用 fate.llm.admission.max-wait。
+     * fate.llm.admission.max-concurrency <= 0 时不做限制。
+     */
+    public Permit acquire(String stage, String requestId, Duration budget) {
+        if (limit <= 0) {
+            return new Permit(this, clock.getAsLong(), false);
+        }
+        Duration wait = budget != null ? budget : maxWait;
+        long enqueuedAt = clock.getAsLong();
+        Waiter waiter;
+        lock.lock();
+        try {
+            if (inUse < limit && waiting.isEmpty()) {
+                inUse++;
+                return granted(stage, enqueuedAt);
+            }
+            int priority = priorityOf(stage);
+            int ahead = 0;
+            for (Waiter w : waiting) {
+                if (w.priority() <= priority) {
+                    ahead++;
+                }
+            }
+            Duration projected = projectedWait(ahead);
+            if (waiting.size() >= queueCapacity) {
+                throw reject(stage, requestId, "queue-full", projected, wait);
+            }
+            if (projected.compareTo(wait) > 0) {
+                throw reject(stage, requestId, "projected", projected, wait);
+            }
+            waiter = new Waiter(priority, seq++, lock.newCondition());
+            waiting.add(waiter);
+        } finally {
+            lock.unlock();
+        }
+
+        long deadline = enqueuedAt + wait.toNanos();
+        lock.lock();
+        try {
+            while (!waiter.granted) {
+                long remaining = deadline - clock.getAsLong();
+                if (remaining <= 0) {
+                    waiting.remove(waiter);
+                    throw reject(stage, requestId, "timeout", projectedWait(waiting.size()), wait);
+                }
+                waiter.signal.awaitNanos(remaining);
+            }
+        } catch (InterruptedException e) {
+            // 阶段超时中断：已交到手的许可立即转交下一位
+            if (waiter.granted) {
+                releaseLocked();
+            } else {
+                waiting.remove(waiter);
+            }
+            Thread.currentThread().interrupt();
+            throw new IllegalStateException("等待模型调用许可时被中断", e);
+        } finally {
+            lock.unlock();
+        }
+        return granted(stage, enqueuedAt);
+    }
+
+    /**
+     * 非阻塞取许可（对冲请求用）：有空闲且无人排队时才给；繁忙时宁可不对冲，也不与排队的调用争抢。
+     */
+    public Optional<Permit> tryAcquire() {
+        if (limit <= 0) {
+            return Optional.of(new Permit(this, clock.getAsLong(), false));
+        }
+        lock.lock();
+        try {
+            if (inUse < limit && waiting.isEmpty()) {
+                inUse++;
+                return Optional.of(new Permit(this, clock.getAsLong(), true));
+            }
+            return Optional.empty();
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    private Permit granted(String stage, long enqueuedAt) {
+        long now = clock.getAsLong();
+        Timer.builder("fate.llm.admission.queue")
+                .description("模型调用等待许可的时间")
+                .tag("stage", stage)
+                .register(meterRegistry)
+                .record(now - enqueuedAt, TimeUnit.NANOSECONDS);
+        return new Permit(this, now, true);
+    }
+
+    private void release(long startedAt) {
+        long elapsed = clock.getAsLong() - startedAt;
+        lock.lock();
+        try {
+            avgServiceNanos = avgServiceNanos == 0 ? elapsed : (long) (ALPHA * elapsed + (1 - ALPHA) * avgServiceNanos);
+            releaseLocked();
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    private void releaseLocked() {
+        Waiter next = waiting.poll();
+        if (next == null) {
+            inUse--;
+            return;
+        }
+        next.granted = true;
+        next.signal.signal();
+    }
+
+    /**
+     * 前面有 ahead 个调用排队时的预计等待：每个许可依次服务 (ahead + 1) / limit 轮。尚无耗时样本时不做预测。
+     */
+    private Duration projectedWait(int ahead) {
+        return Duration.ofNanos(avgServiceNanos * (ahead + 1) / limit);
+    }
+
+    private ModelOverloadedException reject(String stage, String requestId, String reason, Duration projected,
+                                            Duration budget) {
+        Counter.builder("fate.llm.admission.rejected")
+                .description("被准入控制拒绝的模型调用（queue-full / projected=预计等待超预算 / timeout=排队超预算）")
+                .tag("stage", stage)
+                .tag("reason", reason)
+                .register(meterRegistry)
+                .increment();
+        log.warn("[{}] {} rejected by admission: {} inflight={} queued={} projected={}ms budget={}ms", requestId,
+                stage, reason, inUse, waiting.size(), projected.toMillis(), budget.toMillis());
+        return new ModelOverloadedException(stage, projected.isZero() ? maxWait : projected,
+                "模型调用繁忙（" + stage + "），请稍后重试");
+    }
+
+    private int snapshot(boolean inflight) {
+        lock.lock();
+        try {
+            return inflight ? inUse : waiting.size();
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    private static final class Waiter {
+
+        private final int priority;
+        private final long seq;
+        private final Condition signal;
+        private boolean granted;
+
+        Waiter(int priority, long seq, Condition signal) {
+            this.priority = priority;
+            this.seq = seq;
+            this.signal = signal;
+        }
+
+        int priority() {
+            return priority;
+        }
+
+        long seq() {
+            return seq;
+        }
+    }
+
+    /**
+     * 一次调用的许可；重复 close() 无副作用。
+     */
+    public static final class Permit implements AutoCloseable {
+
+        private final ModelAdmission owner;
+        private final long startedAt;
+        private final AtomicBoolean held;
+
+        private Permit(ModelAdmission owner, long startedAt, boolean held) {
+            this.owner = owner;
+            this.startedAt = startedAt;
+            this.held = new AtomicBoolean(held);
+        }
+
+        @Override
+        public void close() {
+            if (held.compareAndSet(true, false)) {
+                owner.release(startedAt);
+            }
+        }
+    }
+}
@@ -0,0 +1,11 @@
+package com.nei10u.fate.service;
+
+/**
+ * 模型调用熔断中：与普通调用失败一样按 fate.ai.fallback-enabled 走本地兜底，只是不再等待上游。
+ */
+public class ModelCircuitOpenException extends RuntimeException {
+
+    public ModelCircuitOpenException(String message) {
+        super(message);
+    }
+}
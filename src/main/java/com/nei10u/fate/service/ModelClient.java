@@ -0,0 +1,341 @@
+package com.nei10u.fate.service;
+
+import com.nei10u.fate.service.pipeline.StageDeadline;
+import com.nei10u.fate.service.store.LlmResponseStore;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.MeterRegistry;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.ai.chat.client.ChatClient;
+import org.springframework.beans.factory.annotation.Qualifier;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+import org.springframework.util.StringUtils;
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Mono;
+import reactor.core.scheduler.Schedulers;
+
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Optional;
+import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Future;
+import java.util.concurrent.FutureTask;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Predicate;
+
+/**
+ * 统一的模型调用入口：调用 OpenRouter 前先查本地持久化存储（key = 模型 id + prompt 哈希）。
+ * <p>
+ * - 命中直接返回原始输出，重启/发布后同一 prompt 不再重复付费
+ * - 只有调用方确认可用（能解析）的输出才落盘，避免把一次坏输出永久回放
+ * - 未命中时先经 {@link ModelAdmission} 取得并发许可，繁忙时抛出 {@link ModelOverloadedException}
+ * - 模型与请求参数由 {@link ModelRouter} 按阶段决定（主模型超出 SLO 时改走备用模型），实际作答的模型登记到
+ *   {@link ModelLedger}（只在内存中，随该请求的阶段结果写入会话）
+ * - 上游调用受 {@link ModelResilience} 约束：按阶段 p95 自适应超时；超过 p95 仍未返回时发出对冲请求
+ *   （fate.llm.hedge.alternate-model 非空时发往备用模型），先到先用、落选的一方中断；该阶段熔断打开时直接抛出
+ *   {@link ModelCircuitOpenException}，由生成方法走本地兜底
+ * <p>
+ * 指标：fate.llm.store.lookups{stage, result=hit|miss}
+ */
+@Component
+public class ModelClient {
+
+    private static final Logger log = LoggerFactory.getLogger(ModelClient.class);
+
+    private final ChatClient chatClient;
+    private final LlmResponseStore store;
+    private final ModelAdmission admission;
+    private final ModelResilience resilience;
+    private final ModelRouter router;
+    private final ModelLedger modelLedger;
+    private final ExecutorService modelExecutor;
+    private final MeterRegistry meterRegistry;
+    /**
+     * 对冲请求的目标模型；为 null 时发往本次路由选中的模型。
+     */
+    private final String hedgeModel;
+
+    public ModelClient(ChatClient.Builder builder,
+                       LlmResponseStore store,
+                       ModelAdmission admission,
+                       ModelResilience resilience,
+                       ModelRouter router,
+                       ModelLedger modelLedger,
+                       @Qualifier("fateModelExecutor") ExecutorService modelExecutor,
+                       MeterRegistry meterRegistry,
+                       @Value("${fate.llm.hedge.alternate-model:}") String hedgeModel) {
+        this.chatClient = builder.build();
+        this.store = store;
+        this.admission = admission;
+        this.resilience = resilience;
+        this.router = router;
+        this.modelLedger = modelLedger;
+        this.modelExecutor = modelExecutor;
+        this.meterRegistry = meterRegistry;
+        this.hedgeModel = StringUtils.hasText(hedgeModel) ? hedgeModel : null;
+    }
+
+    /**
+     * 一次调用的结果及实际作答的模型（路由或对冲到备用模型时与主模型不同）。
+     */
+    private record Answer(String model, String raw) {
+    }
+
+    /**
+     * 一次已发出的上游请求（主请求或对冲），launchedAt 为该请求自己的发出时间。
+     */
+    private record Attempt(String model, long launchedAt, Future<?> future) {
+
+        long elapsedNanos() {
+            return System.nanoTime() - launchedAt;
+        }
+    }
+
+    /**
+     * 先返回的请求的结果；elapsedNanos 从该请求自己发出时计起（对冲请求不含发出前等待主请求的时间）。
+     */
+    private record Won(Answer answer, Attempt attempt, long elapsedNanos) {
+    }
+
+    /**
+     * 同步调用；storable 判定原始输出是否值得持久化。
+     */
+    public String call(String stage, String prompt, String requestId, Predicate<String> storable) {
+        ModelRouter.Route route = router.route(stage);
+        Optional<Answer> stored = lookup(stage, route, prompt, requestId);
+        if (stored.isPresent()) {
+            modelLedger.record(requestId, route.name(), stored.get().model());
+            return stored.get().raw();
+        }
+        resilience.checkBreaker(stage, requestId);
+        String selected = router.select(stage, route);
+        Answer answer = callUpstream(stage, route, selected, prompt, requestId);
+        // 按实际作答的模型落盘：备用模型的输出不会冒充主模型的缓存
+        remember(LlmResponseStore.hash(answer.model(), prompt), answer.raw(), storable);
+        modelLedger.record(requestId, route.name(), answer.model());
+        return answer.raw();
+    }
+
+    /**
+     * 主请求在模型线程池上执行，当前线程按自适应超时等待；超过 p95 后在有空闲许可时发出对冲请求。
+     * <p>
+     * 每个请求按自己的发出时间计时：胜出者以自身耗时计入延迟窗口；被对冲胜出而取消的主请求按取消时已耗时长
+     * 记为 TIMEOUT，主模型的 p95 随之上升，路由据此看到 SLO 超标。
+     */
+    private Answer callUpstream(String stage, ModelRouter.Route route, String model, String prompt, String requestId) {
+        // 排队预算 = 调用方阶段的剩余时间：排到时阶段已超时的调用不值得排队
+        ModelAdmission.Permit permit = admission.acquire(stage, requestId, StageDeadline.remaining());
+        long start = System.nanoTime();
+        Duration timeout = resilience.timeout(stage, model, route.defaultTimeout());
+        CompletableFuture<Won> winner = new CompletableFuture<>();
+        AtomicInteger pending = new AtomicInteger(1);
+        List<Attempt> attempts = new ArrayList<>(2);
+        try {
+            attempts.add(launch(route, model, prompt, permit, winner, pending));
+        } catch (RejectedExecutionException e) {
+            // 模型线程池满载：在当前线程直接调用（不对冲，超时交给阶段超时）
+            log.warn("[{}] {} calling inline: model executor saturated", requestId, stage);
+            try (permit) {
+                String raw = chatClient.prompt().options(route.options(model)).user(prompt).call().content();
+                resilience.record(stage, model, System.nanoTime() - start, ModelResilience.Outcome.OK);
+                return new Answer(model, raw);
+            } catch (RuntimeException ex) {
+                resilience.record(stage, model, System.nanoTime() - start, ModelResilience.Outcome.ERROR);
+                throw ex;
+            }
+        }
+        Attempt primary = attempts.get(0);
+        try {
+            long deadline = start + timeout.toNanos();
+            Duration hedgeDelay = resilience.hedgeDelay(stage, model);
+            Won won = null;
+            if (hedgeDelay != null && hedgeDelay.compareTo(timeout) < 0) {
+                try {
+                    won = winner.get(hedgeDelay.toNanos(), TimeUnit.NANOSECONDS);
+                } catch (TimeoutException e) {
+                    String target = hedgeModel != null ? hedgeModel : model;
+                    hedge(stage, route, target, prompt, requestId, hedgeDelay, winner, pending).ifPresent(attempts::add);
+                }
+            }
+            if (won == null) {
+                won = winner.get(Math.max(0, deadline - System.nanoTime()), TimeUnit.NANOSECONDS);
+            }
+            resilience.record(stage, won.answer().model(), won.elapsedNanos(), ModelResilience.Outcome.OK);
+            if (won.attempt() != primary) {
+                // 主请求输给对冲而被取消：按取消时已耗时长记为超时，否则慢的主模型在窗口里永远没有样本
+                resilience.record(stage, model, primary.elapsedNanos(), ModelResilience.Outcome.TIMEOUT);
+                log.info("[{}] {} answered by hedge model={} in {}ms, primary cancelled after {}ms", requestId, stage,
+                        won.answer().model(), TimeUnit.NANOSECONDS.toMillis(won.elapsedNanos()),
+                        TimeUnit.NANOSECONDS.toMillis(primary.elapsedNanos()));
+            }
+            return won.answer();
+        } catch (TimeoutException e) {
+            // 超时按各请求已等待的时长计入延迟窗口：持续超时会推高 p95 与下一次的超时，而不是一直被截在旧超时上
+            attempts.forEach(a -> resilience.record(stage, a.model(), a.elapsedNanos(), ModelResilience.Outcome.TIMEOUT));
+            throw new IllegalStateException(stage + " 模型调用超时（" + timeout.toMillis() + "ms）", e);
+        } catch (ExecutionException e) {
+            // 全部请求都失败才会走到这里
+            attempts.forEach(a -> resilience.record(stage, a.model(), a.elapsedNanos(), ModelResilience.Outcome.ERROR));
+            Throwable cause = e.getCause();
+            throw cause instanceof RuntimeException re ? re : new IllegalStateException(cause);
+        } catch (InterruptedException e) {
+            // 阶段超时中断：不计入熔断统计，未完成的请求一并取消
+            Thread.currentThread().interrupt();
+            throw new IllegalStateException(stage + " 模型调用被中断", e);
+        } finally {
+            attempts.forEach(a -> a.future().cancel(true));
+        }
+    }
+
+    /**
+     * 发出对冲请求：主请求仍在进行且有空闲许可时才发，否则继续等主请求。
+     */
+    private Optional<Attempt> hedge(String stage, ModelRouter.Route route, String model, String prompt,
+                                    String requestId, Duration hedgeDelay, CompletableFuture<Won> winner,
+                                    AtomicInteger pending) {
+        if (winner.isDone()) {
+            return Optional.empty();
+        }
+        Optional<ModelAdmission.Permit> permit = admission.tryAcquire();
+        if (permit.isEmpty()) {
+            count(stage, "skipped");
+            return Optional.empty();
+        }
+        pending.incrementAndGet();
+        try {
+            Attempt attempt = launch(route, model, prompt, permit.get(), winner, pending);
+            count(stage, "sent");
+            log.info("[{}] {} hedged after {}ms model={}", requestId, stage, hedgeDelay.toMillis(), model);
+            return Optional.of(attempt);
+        } catch (RejectedExecutionException e) {
+            pending.decrementAndGet();
+            permit.get().close();
+            count(stage, "skipped");
+            return Optional.empty();
+        }
+    }
+
+    /**
+     * 在模型线程池上执行一次请求，结束时归还许可；全部请求都失败时 winner 以最后一个错误结束。
+     */
+    private Attempt launch(ModelRouter.Route route, String model, String prompt, ModelAdmission.Permit permit,
+                           CompletableFuture<Won> winner, AtomicInteger pending) {
+        long launchedAt = System.nanoTime();
+        Attempt[] self = new Attempt[1];
+        FutureTask<Void> task = new FutureTask<>(() -> {
+            try (permit) {
+                String raw = chatClient.prompt().options(route.options(model)).user(prompt).call().content();
+                winner.complete(new Won(new Answer(model, raw), self[0], System.nanoTime() - launchedAt));
+            } catch (RuntimeException e) {
+                if (pending.decrementAndGet() == 0) {
+                    winner.completeExceptionally(e);
+                }
+            }
+            return null;
+        });
+        self[0] = new Attempt(model, launchedAt, task);
+        modelExecutor.execute(task);
+        return self[0];
+    }
+
+    /**
+     * 流式调用：命中时把完整原始输出作为单个分片下发；未命中时在流正常结束后整体落盘。
+     */
+    public Flux<String> stream(String stage, String prompt, String requestId, Predicate<String> storable) {
+        return Flux.defer(() -> {
+            ModelRouter.Route route = router.route(stage);
+            Optional<Answer> stored = lookup(stage, route, prompt, requestId);
+            if (stored.isPresent()) {
+                modelLedger.record(requestId, route.name(), stored.get().model());
+                return Flux.just(stored.get().raw());
+            }
+            resilience.checkBreaker(stage, requestId);
+            String model = router.select(stage, route);
+            StringBuilder whole = new StringBuilder();
+            // 流式不做对冲（已下发的分片无法撤回），只按整条流的自适应超时截止
+            Duration timeout = resilience.timeout(stage, model, route.defaultTimeout());
+            // 阶段截止时间在订阅线程上取，切到 boundedElastic 之后就取不到了
+            Duration budget = StageDeadline.remaining();
+            // 等待许可会阻塞，放到 boundedElastic 上订阅；流结束、出错或取消时归还许可
+            return Flux.using(() -> admission.acquire(stage, requestId, budget),
+                            permit -> {
+                                long start = System.nanoTime();
+                                long deadline = start + timeout.toNanos();
+                                return chatClient.prompt().options(route.options(model)).user(prompt).stream().content()
+                                        .timeout(Mono.delay(timeout), chunk -> Mono.delay(
+                                                Duration.ofNanos(Math.max(0, deadline - System.nanoTime()))))
+                                        .doOnNext(whole::append)
+                                        .doOnComplete(() -> {
+                                            resilience.record(stage, model, System.nanoTime() - start,
+                                                    ModelResilience.Outcome.OK);
+                                            remember(LlmResponseStore.hash(model, prompt), whole.toString(), storable);
+                                            modelLedger.record(requestId, route.name(), model);
+                                        })
+                                        .doOnError(e -> resilience.record(stage, model, System.nanoTime() - start,
+                                                e instanceof TimeoutException
+                                                        ? ModelResilience.Outcome.TIMEOUT
+                                                        : ModelResilience.Outcome.ERROR));
+                            },
+                            ModelAdmission.Permit::close)
+                    .subscribeOn(Schedulers.boundedElastic());
+        });
+    }
+
+    /**
+     * 依次查主模型、备用模型（曾因超出 SLO 改走备用模型时写入）、对冲模型（对冲请求先返回时写入）的落盘输出。
+     */
+    private Optional<Answer> lookup(String stage, ModelRouter.Route route, String prompt, String requestId) {
+        if (!store.isOpen()) {
+            return Optional.empty();
+        }
+        Set<String> candidates = new LinkedHashSet<>(3);
+        candidates.add(route.model());
+        if (route.fallbackModel() != null) {
+            candidates.add(route.fallbackModel());
+        }
+        if (hedgeModel != null) {
+            candidates.add(hedgeModel);
+        }
+        Optional<Answer> found = Optional.empty();
+        for (String model : candidates) {
+            Optional<String> raw = store.get(LlmResponseStore.hash(model, prompt));
+            if (raw.isPresent()) {
+                found = Optional.of(new Answer(model, raw.get()));
+                break;
+            }
+        }
+        Counter.builder("fate.llm.store.lookups")
+                .description("持久化模型输出查询（hit=免调用模型）")
+                .tag("stage", stage)
+                .tag("result", found.isPresent() ? "hit" : "miss")
+                .register(meterRegistry)
+                .increment();
+        found.ifPresent(answer ->
+                log.info("[{}] {} served from llm-store model={}", requestId, stage, answer.model()));
+        return found;
+    }
+
+    private void count(String stage, String result) {
+        Counter.builder("fate.llm.hedge")
+                .description("对冲请求（sent / skipped=无空闲许可或线程池满）")
+                .tag("stage", stage)
+                .tag("result", result)
+                .register(meterRegistry)
+                .increment();
+    }
+
+    private void remember(byte[] key, String raw, Predicate<String> storable) {
+        if (StringUtils.hasText(raw) && storable.test(raw)) {
+            store.put(key, raw);
+        }
+    }
+}
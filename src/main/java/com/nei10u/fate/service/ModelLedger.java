@@ -0,0 +1,86 @@
+package com.nei10u.fate.service;
+
+import com.github.benmanes.caffeine.cache.Cache;
+import com.github.benmanes.caffeine.cache.Caffeine;
+import com.github.benmanes.caffeine.cache.Scheduler;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.binder.cache.CaffeineCacheMetrics;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import java.time.Duration;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CopyOnWriteArraySet;
+
+/**
+ * 各请求在每个阶段（路由名 baseline / report / yearly / facts）实际作答的模型，只在本节点内存中登记。
+ * <p>
+ * 模型调用、命盘缓存命中与单飞合并只写这里（无存储往返）；{@link FateSessionCache} 在写入该请求的阶段结果时
+ * 一并合入会话条目，因此不会为了记模型而单独更新存储，也不会凭空创建没有结果的会话条目。
+ * 条目自最后一次登记起 fate.session.ttl 过期。
+ */
+@Component
+public class ModelLedger {
+
+    private final Cache<String, Map<String, Set<String>>> ledger;
+
+    public ModelLedger(@Value("${fate.session.ttl:30m}") Duration ttl,
+                       @Value("${fate.session.model-ledger.max-entries:20000}") long maxEntries,
+                       MeterRegistry meterRegistry) {
+        this.ledger = Caffeine.newBuilder()
+                .maximumSize(Math.max(1, maxEntries))
+                .expireAfterWrite(ttl)
+                .scheduler(Scheduler.systemScheduler())
+                .recordStats()
+                .build();
+        CaffeineCacheMetrics.monitor(meterRegistry, ledger, "fate.session.model-ledger");
+    }
+
+    /**
+     * 登记一次作答；同一阶段用到多个模型时（如 yearly 分段）按首次出现的顺序保留。
+     */
+    public void record(String requestId, String stage, String model) {
+        if (requestId == null || requestId.isBlank() || model == null) {
+            return;
+        }
+        // 重新 put 以刷新写入时间：长时间进行中的请求不会在结果写入前过期
+        Map<String, Set<String>> stages = ledger.get(requestId, k -> new ConcurrentHashMap<>());
+        stages.computeIfAbsent(stage, k -> new CopyOnWriteArraySet<>()).add(model);
+        ledger.put(requestId, stages);
+    }
+
+    /**
+     * 把另一份结果的作答模型（命盘缓存命中、单飞合并到他人的调用）记到本请求名下。
+     */
+    public void recordAll(String requestId, Map<String, String> models) {
+        models.forEach((stage, joined) -> {
+            for (String model : joined.split(",")) {
+                record(requestId, stage, model);
+            }
+        });
+    }
+
+    /**
+     * 本请求全部阶段的作答模型，同一阶段的多个模型以逗号合并。
+     */
+    public Map<String, String> models(String requestId) {
+        Map<String, Set<String>> stages = requestId == null ? null : ledger.getIfPresent(requestId);
+        if (stages == null) {
+            return Map.of();
+        }
+        Map<String, String> out = new HashMap<>();
+        stages.forEach((stage, models) -> out.put(stage, String.join(",", models)));
+        return Map.copyOf(out);
+    }
+
+    /**
+     * 本请求某一阶段的作答模型（为空表示该阶段没有模型作答）。
+     */
+    public Map<String, String> models(String requestId, String stage) {
+        String joined = models(requestId).get(stage);
+        return joined == null ? Map.of() : Map.of(stage, joined);
+    }
+}
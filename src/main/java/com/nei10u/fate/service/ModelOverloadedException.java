@@ -0,0 +1,29 @@
+package com.nei10u.fate.service;
+
+import java.time.Duration;
+
+/**
+ * 模型调用准入被拒（并发已满且预计排队时间超出预算）：不走兜底，直接以 429 + Retry-After 返回给客户端。
+ */
+public class ModelOverloadedException extends RuntimeException {
+
+    private final String stage;
+    private final Duration retryAfter;
+
+    public ModelOverloadedException(String stage, Duration retryAfter, String message) {
+        super(message);
+        this.stage = stage;
+        this.retryAfter = retryAfter;
+    }
+
+    public String getStage() {
+        return stage;
+    }
+
+    /**
+     * 建议的重试间隔（向上取整到秒，至少 1 秒）。
+     */
+    public long getRetryAfterSeconds() {
+        return Math.max(1, (retryAfter.toMillis() + 999) / 1000);
+    }
+}
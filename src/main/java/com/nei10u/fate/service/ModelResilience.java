@@ -0,0 +1,364 @@
+package com.nei10u.fate.service;
+
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import java.time.Duration;
+import java.util.Arrays;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.function.LongSupplier;
+
+/**
+ * 模型调用的韧性参数：按阶段与模型观测延迟分位数，给出自适应超时与对冲延迟，并按阶段维护熔断器。
+ * <p>
+ * - 延迟窗口：每个阶段 + 模型保留最近 10 分钟内的调用耗时（{@link LatencyWindow}），p95 与样本数都只看窗口内；
+ *   超时的调用以已等待的时长计入（真实耗时只会更长），慢到超时的模型会把 p95 推高，而不是被超时截掉后看起来更快
+ * - 超时：p95 × fate.llm.timeout.p95-multiplier，限制在 [min, max]；窗口内样本不足 min-samples 时用阶段路由的
+ *   default-timeout（fate.llm.routes.&lt;阶段&gt;.default-timeout），未配置时用 fate.llm.timeout.default
+ * - 对冲：调用超过 p95（不低于 fate.llm.hedge.min-delay）仍未返回时，由 {@link ModelClient} 再发一次，先到先用
+ * - 熔断：每个阶段一个熔断器，最近 fate.llm.breaker.window 次上游调用的失败率达到 failure-rate 时打开 open-duration，
+ *   期间该阶段直接抛出 {@link ModelCircuitOpenException}，生成方法据此走本地兜底，其他阶段不受影响；
+ *   到期后放行一次探测，成功则关闭
+ * <p>
+ * 指标：fate.llm.latency{stage, model, result=ok|error|timeout}（含 p50/p95/p99）、
+ * fate.llm.breaker.state{stage}（0 关闭 / 1 打开 / 2 半开）、fate.llm.breaker.rejected{stage}
+ */
+@Component
+public class ModelResilience {
+
+    private static final Logger log = LoggerFactory.getLogger(ModelResilience.class);
+
+    /**
+     * 延迟窗口的时长（与 fate.llm.latency 分位数的过期时间一致）与每个窗口最多保留的样本数。
+     */
+    static final Duration WINDOW = Duration.ofMinutes(10);
+    private static final int WINDOW_SAMPLES = 256;
+
+    /**
+     * 一次上游调用的结果：TIMEOUT 以已等待的时长计入延迟窗口，ERROR（快速失败）不计入；两者都算熔断失败。
+     */
+    public enum Outcome { OK, ERROR, TIMEOUT }
+
+    private final MeterRegistry meterRegistry;
+    private final Duration defaultTimeout;
+    private final Duration minTimeout;
+    private final Duration maxTimeout;
+    private final double p95Multiplier;
+    private final long minSamples;
+    private final boolean hedgeEnabled;
+    private final Duration hedgeMinDelay;
+    private final int breakerWindow;
+    private final int breakerMinCalls;
+    private final double breakerFailureRate;
+    private final long breakerOpenNanos;
+    private final LongSupplier clock;
+    private final Map<String, Breaker> breakers = new ConcurrentHashMap<>();
+    private final Map<String, LatencyWindow> windows = new ConcurrentHashMap<>();
+
+    @Autowired
+    public ModelResilience(MeterRegistry meterRegistry,
+                           @Value("${fate.llm.timeout.default:60s}") Duration defaultTimeout,
+                           @Value("${fate.llm.timeout.min:10s}") Duration minTimeout,
+                           @Value("${fate.llm.timeout.max:180s}") Duration maxTimeout,
+                           @Value("${fate.llm.timeout.p95-multiplier:2.0}") double p95Multiplier,
+                           @Value("${fate.llm.timeout.min-samples:20}") long minSamples,
+                           @Value("${fate.llm.hedge.enabled:true}") boolean hedgeEnabled,
+                           @Value("${fate.llm.hedge.min-delay:2s}") Duration hedgeMinDelay,
+                           @Value("${fate.llm.breaker.window:20}") int window,
+                           @Value("${fate.llm.breaker.min-calls:10}") int minCalls,
+                           @Value("${fate.llm.breaker.failure-rate:0.5}") double failureRate,
+                           @Value("${fate.llm.breaker.open-duration:30s}") Duration openDuration) {
+        this(meterRegistry, defaultTimeout, minTimeout, maxTimeout, p95Multiplier, minSamples, hedgeEnabled,
+                hedgeMinDelay, window, minCalls, failureRate, openDuration, System::nanoTime);
+    }
+
+    /**
+     * clock 为纳秒时钟（测试中可控）；延迟窗口的过期与熔断器的打开时长都按它计算。
+     */
+    ModelResilience(MeterRegistry meterRegistry, Duration defaultTimeout, Duration minTimeout, Duration maxTimeout,
+                    double p95Multiplier, long minSamples, boolean hedgeEnabled, Duration hedgeMinDelay, int window,
+                    int minCalls, double failureRate, Duration openDuration, LongSupplier clock) {
+        this.clock = clock;
+        this.meterRegistry = meterRegistry;
+        this.defaultTimeout = defaultTimeout;
+        this.minTimeout = minTimeout;
+        this.maxTimeout = maxTimeout;
+        this.p95Multiplier = p95Multiplier;
+        this.minSamples = minSamples;
+        this.hedgeEnabled = hedgeEnabled;
+        this.hedgeMinDelay = hedgeMinDelay;
+        this.breakerWindow = Math.max(1, window);
+        this.breakerMinCalls = Math.max(1, minCalls);
+        this.breakerFailureRate = failureRate;
+        this.breakerOpenNanos = openDuration.toNanos();
+    }
+
+    /**
+     * 本阶段调用该模型的超时；stageDefault 为阶段路由配置的样本不足时的超时（null = fate.llm.timeout.default）。
+     */
+    public Duration timeout(String stage, String model, Duration stageDefault) {
+        Duration p95 = p95(stage, model);
+        if (p95 == null) {
+            return stageDefault != null ? stageDefault : defaultTimeout;
+        }
+        return clamp(Duration.ofNanos((long) (p95.toNanos() * p95Multiplier)), minTimeout, maxTimeout);
+    }
+
+    /**
+     * 发出对冲请求前的等待时间；未开启或样本不足时返回 null（不对冲）。
+     */
+    public Duration hedgeDelay(String stage, String model) {
+        if (!hedgeEnabled) {
+            return null;
+        }
+        Duration p95 = p95(stage, model);
+        return p95 == null ? null : clamp(p95, hedgeMinDelay, maxTimeout);
+    }
+
+    /**
+     * 调用模型前检查本阶段的熔断器：打开时抛出 {@link ModelCircuitOpenException}。
+     */
+    public void checkBreaker(String stage, String requestId) {
+        if (!breaker(stage).allow()) {
+            Counter.builder("fate.llm.breaker.rejected")
+                    .description("熔断期间直接走本地兜底的模型调用")
+                    .tag("stage", stage)
+                    .register(meterRegistry)
+                    .increment();
+            log.warn("[{}] {} short-circuited: stage breaker open", requestId, stage);
+            throw new ModelCircuitOpenException("模型调用熔断中（" + stage + "），已切换本地兜底");
+        }
+    }
+
+    /**
+     * 记录一次上游调用的结果：成功与超时计入延迟窗口，失败与超时计入本阶段的熔断统计。
+     */
+    public void record(String stage, String model, long elapsedNanos, Outcome outcome) {
+        latency(stage, model, outcome.name().toLowerCase()).record(elapsedNanos, TimeUnit.NANOSECONDS);
+        if (outcome != Outcome.ERROR) {
+            windows.computeIfAbsent(stage + "|" + model, k -> new LatencyWindow(WINDOW_SAMPLES, WINDOW.toNanos(), clock))
+                    .add(elapsedNanos);
+        }
+        Breaker breaker = breaker(stage);
+        Breaker.State before = breaker.state();
+        Breaker.State after = breaker.record(outcome == Outcome.OK);
+        if (before != after) {
+            log.warn("model breaker {} -> {} (stage={})", before, after, stage);
+        }
+    }
+
+    /**
+     * 延迟窗口内的 p95（含超时样本）；窗口内样本不足 min-samples 时返回 null。
+     */
+    Duration p95(String stage, String model) {
+        LatencyWindow window = windows.get(stage + "|" + model);
+        if (window == null) {
+            return null;
+        }
+        long p95 = window.percentile(0.95, minSamples);
+        return p95 < 0 ? null : Duration.ofNanos(p95);
+    }
+
+    private Breaker breaker(String stage) {
+        Breaker breaker = breakers.get(stage);
+        if (breaker != null) {
+            return breaker;
+        }
+        return breakers.computeIfAbsent(stage, s -> {
+            Breaker created = new Breaker(breakerWindow, breakerMinCalls, breakerFailureRate, breakerOpenNanos,
+                    clock);
+            Gauge.builder("fate.llm.breaker.state", created, Breaker::stateCode)
+                    .description("模型调用熔断器状态（0 关闭 / 1 打开 / 2 半开）")
+                    .tag("stage", s)
+                    .register(meterRegistry);
+            return created;
+        });
+    }
+
+    private Timer latency(String stage, String model, String result) {
+        return Timer.builder("fate.llm.latency")
+                .description("模型上游调用耗时（命中持久化存储的不计入）")
+                .tag("stage", stage)
+                .tag("model", model)
+                .tag("result", result)
+                .publishPercentiles(0.5, 0.95, 0.99)
+                .distributionStatisticExpiry(WINDOW)
+                .register(meterRegistry);
+    }
+
+    private static Duration clamp(Duration value, Duration min, Duration max) {
+        return value.compareTo(min) < 0 ? min : value.compareTo(max) > 0 ? max : value;
+    }
+
+    /**
+     * 最近 capacity 次调用的耗时环，只统计 expiry 内的样本（只用 j.u.c 锁，虚拟线程上不会钉住载体线程）。
+     */
+    static final class LatencyWindow {
+
+        private final ReentrantLock lock = new ReentrantLock();
+        private final long[] at;
+        private final long[] nanos;
+        private final long expiryNanos;
+        private final LongSupplier clock;
+        private int next;
+        private int size;
+
+        LatencyWindow(int capacity, long expiryNanos, LongSupplier clock) {
+            this.at = new long[capacity];
+            this.nanos = new long[capacity];
+            this.expiryNanos = expiryNanos;
+            this.clock = clock;
+        }
+
+        void add(long elapsedNanos) {
+            lock.lock();
+            try {
+                at[next] = clock.getAsLong();
+                nanos[next] = elapsedNanos;
+                next = (next + 1) % at.length;
+                size = Math.min(size + 1, at.length);
+            } finally {
+                lock.unlock();
+            }
+        }
+
+        /**
+         * 窗口内样本的分位数（nearest-rank）；样本数少于 minSamples 时返回 -1。
+         */
+        long percentile(double p, long minSamples) {
+            long[] live = new long[at.length];
+            int n = 0;
+            lock.lock();
+            try {
+                long now = clock.getAsLong();
+                for (int i = 0; i < size; i++) {
+                    if (now - at[i] <= expiryNanos) {
+                        live[n++] = nanos[i];
+                    }
+                }
+            } finally {
+                lock.unlock();
+            }
+            if (n == 0 || n < minSamples) {
+                return -1;
+            }
+            Arrays.sort(live, 0, n);
+            return live[Math.max(0, (int) Math.ceil(p * n) - 1)];
+        }
+    }
+
+    /**
+     * 基于最近 window 次结果的计数型熔断器（只用 j.u.c 锁，虚拟线程上不会钉住载体线程）。
+     */
+    static final class Breaker {
+
+        enum State { CLOSED, OPEN, HALF_OPEN }
+
+        private final ReentrantLock lock = new ReentrantLock();
+        private final boolean[] failures;
+        private final int minCalls;
+        private final double failureRate;
+        private final long openNanos;
+        private final LongSupplier clock;
+        private int next;
+        private int size;
+        private int failed;
+        private State state = State.CLOSED;
+        private long openedAt;
+        private boolean probing;
+        private long probeAt;
+
+        Breaker(int window, int minCalls, double failureRate, long openNanos, LongSupplier clock) {
+            this.failures = new boolean[window];
+            this.minCalls = Math.min(minCalls, window);
+            this.failureRate = failureRate;
+            this.openNanos = openNanos;
+            this.clock = clock;
+        }
+
+        boolean allow() {
+            lock.lock();
+            try {
+                long now = clock.getAsLong();
+                if (state == State.OPEN && now - openedAt >= openNanos) {
+                    state = State.HALF_OPEN;
+                    probing = false;
+                }
+                if (state == State.CLOSED) {
+                    return true;
+                }
+                // 半开：只放行一次探测，结果出来前其余调用仍走兜底；探测被取消而没有结果时，隔一个 open-duration 再放行
+                if (state == State.HALF_OPEN && (!probing || now - probeAt >= openNanos)) {
+                    probing = true;
+                    probeAt = now;
+                    return true;
+                }
+                return false;
+            } finally {
+                lock.unlock();
+            }
+        }
+
+        /**
+         * 记录结果，返回记录后的状态。
+         */
+        State record(boolean success) {
+            lock.lock();
+            try {
+                if (state == State.HALF_OPEN) {
+                    if (success) {
+                        state = State.CLOSED;
+                        next = size = failed = 0;
+                    } else {
+                        open();
+                    }
+                    probing = false;
+                    return state;
+                }
+                if (size == failures.length && failures[next]) {
+                    failed--;
+                }
+                failures[next] = !success;
+                if (!success) {
+                    failed++;
+                }
+                next = (next + 1) % failures.length;
+                size = Math.min(size + 1, failures.length);
+                if (state == State.CLOSED && size >= minCalls && failed >= failureRate * size) {
+                    open();
+                }
+                return state;
+            } finally {
+                lock.unlock();
+            }
+        }
+
+        private void open() {
+            state = State.OPEN;
+            openedAt = clock.getAsLong();
+        }
+
+        State state() {
+            lock.lock();
+            try {
+                return state;
+            } finally {
+                lock.unlock();
+            }
+        }
+
+        double stateCode() {
+            return state().ordinal();
+        }
+    }
+}
@@ -0,0 +1,29 @@
+package com.nei10u.fate.service;
+
+import org.springframework.boot.context.properties.ConfigurationProperties;
+
+import java.time.Duration;
+import java.util.Map;
+
+/**
+ * 按阶段的模型路由配置（fate.llm.routes.&lt;阶段&gt;.*），由 {@link ModelRouter} 使用。
+ * 时长与数值在绑定时完成类型转换，格式错误在启动时即报出。
+ */
+@ConfigurationProperties("fate.llm")
+public record ModelRouteProperties(Map<String, Route> routes) {
+
+    public ModelRouteProperties {
+        routes = routes == null ? Map.of() : Map.copyOf(routes);
+    }
+
+    /**
+     * 单个阶段的配置；任一项为空表示沿用默认（见 {@link ModelRouter}）。
+     */
+    public record Route(String model,
+                        Integer maxTokens,
+                        Double temperature,
+                        Duration slo,
+                        String fallbackModel,
+                        Duration defaultTimeout) {
+    }
+}
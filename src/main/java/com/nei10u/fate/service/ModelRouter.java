@@ -0,0 +1,115 @@
+package com.nei10u.fate.service;
+
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.MeterRegistry;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.ai.openai.OpenAiChatOptions;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+import org.springframework.util.StringUtils;
+
+import java.time.Duration;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * 按阶段路由模型：baseline / report / yearly / facts 各自配置模型、max-tokens、temperature、延迟 SLO
+ * 与样本不足时的默认超时（fate.llm.routes.&lt;阶段&gt;.*，绑定为 {@link ModelRouteProperties}；未配置的项沿用
+ * spring.ai.openai.chat.options 的默认模型、模型默认参数与 fate.llm.timeout.default）。
+ * <p>
+ * 主模型在该阶段的近期 p95（{@link ModelResilience} 的延迟窗口）超出 SLO 且配置了 fallback-model 时，
+ * 新调用改走备用模型；主模型的旧样本随分位数窗口过期后自动切回。
+ * 细分阶段（report-section、yearly-shard、yearly-repair）按前缀归入对应路由。
+ * <p>
+ * 指标：fate.llm.routed{route, model, reason=primary|slo}
+ */
+@Component
+public class ModelRouter {
+
+    private static final Logger log = LoggerFactory.getLogger(ModelRouter.class);
+
+    static final List<String> ROUTES = List.of("baseline", "report", "yearly", "facts");
+
+    private final ModelResilience resilience;
+    private final MeterRegistry meterRegistry;
+    private final Route defaults;
+    private final Map<String, Route> routes = new HashMap<>();
+    private final Set<String> degraded = ConcurrentHashMap.newKeySet();
+
+    public ModelRouter(ModelRouteProperties properties,
+                       ModelResilience resilience,
+                       MeterRegistry meterRegistry,
+                       @Value("${spring.ai.openai.chat.options.model}") String defaultModel) {
+        this.resilience = resilience;
+        this.meterRegistry = meterRegistry;
+        this.defaults = new Route("default", defaultModel, null, null, null, null, null);
+        for (String name : ROUTES) {
+            ModelRouteProperties.Route configured = properties.routes().get(name);
+            Route route = configured == null
+                    ? new Route(name, defaultModel, null, null, null, null, null)
+                    : new Route(name,
+                            StringUtils.hasText(configured.model()) ? configured.model().trim() : defaultModel,
+                            configured.maxTokens(),
+                            configured.temperature(),
+                            configured.slo(),
+                            StringUtils.hasText(configured.fallbackModel()) ? configured.fallbackModel().trim() : null,
+                            configured.defaultTimeout());
+            routes.put(name, route);
+            log.info("model route {}", route);
+        }
+    }
+
+    /**
+     * 一个阶段的路由配置；maxTokens / temperature / slo / fallbackModel / defaultTimeout 为 null 表示不设置。
+     * defaultTimeout 为延迟样本不足时该阶段单次模型调用的超时（见 {@link ModelResilience#timeout}）。
+     */
+    public record Route(String name, String model, Integer maxTokens, Double temperature, Duration slo,
+                        String fallbackModel, Duration defaultTimeout) {
+
+        /**
+         * 本阶段调用 modelId 时的请求参数。
+         */
+        public OpenAiChatOptions options(String modelId) {
+            return OpenAiChatOptions.builder()
+                    .model(modelId)
+                    .maxTokens(maxTokens)
+                    .temperature(temperature)
+                    .build();
+        }
+    }
+
+    public Route route(String stage) {
+        int dash = stage.indexOf('-');
+        return routes.getOrDefault(dash < 0 ? stage : stage.substring(0, dash), defaults);
+    }
+
+    /**
+     * 本次调用使用的模型：主模型近期 p95 超出 SLO 时改用备用模型。
+     */
+    public String select(String stage, Route route) {
+        boolean breached = false;
+        if (route.slo() != null && route.fallbackModel() != null) {
+            Duration p95 = resilience.p95(stage, route.model());
+            breached = p95 != null && p95.compareTo(route.slo()) > 0;
+            String key = route.name() + "/" + stage;
+            if (breached ? degraded.add(key) : degraded.remove(key)) {
+                log.warn("model route {} stage={} {} (primary p95={}ms slo={}ms)", route.name(), stage,
+                        breached ? "-> " + route.fallbackModel() : "back to " + route.model(),
+                        p95 == null ? -1 : p95.toMillis(), route.slo().toMillis());
+            }
+        }
+        String model = breached ? route.fallbackModel() : route.model();
+        Counter.builder("fate.llm.routed")
+                .description("按阶段路由的模型调用（slo=主模型近期 p95 超出 SLO，改走备用模型）")
+                .tag("route", route.name())
+                .tag("model", model)
+                .tag("reason", breached ? "slo" : "primary")
+                .register(meterRegistry)
+                .increment();
+        return model;
+    }
+}
@@ -0,0 +1,72 @@
+package com.nei10u.fate.service;
+
+import com.nei10u.fate.model.FateAnalysisReport;
+
+import java.util.function.BiConsumer;
+import java.util.function.Function;
+
+/**
+ * 报告的七个板块：分板块生成时每块一次模型调用，key 与 {@link FateAnalysisReport} 的字段名一致。
+ */
+public enum ReportSection {
+
+    OVERALL("overall", "命理总评", "分析格局高低、日主强弱与喜用神",
+            FateAnalysisReport::getOverall, FateAnalysisReport::setOverall),
+    INVESTMENT("investment", "投资运势", "结合“偏财”“七杀”等十神心性，判断适合做 Holder 还是 Degen，以及风险偏好",
+            FateAnalysisReport::getInvestment, FateAnalysisReport::setInvestment),
+    CAREER("career", "事业分析", "结合官杀、印星与食伤，分析适合的行业方向、职场位置与事业高峰期",
+            FateAnalysisReport::getCareer, FateAnalysisReport::setCareer),
+    WEALTH("wealth", "财富层级", "结合财星强弱与身财关系，判断财富层级与聚财、破财的节点",
+            FateAnalysisReport::getWealth, FateAnalysisReport::setWealth),
+    LOVE("love", "情感婚姻", "简述感情模式、配偶特征与婚姻稳定性",
+            FateAnalysisReport::getLove, FateAnalysisReport::setLove),
+    HEALTH("health", "身体健康", "简述五行偏枯对应的体质弱项与需要留意的年龄段",
+            FateAnalysisReport::getHealth, FateAnalysisReport::setHealth),
+    FAMILY("family", "六亲关系", "简述父母、兄弟、子女缘分与助力",
+            FateAnalysisReport::getFamily, FateAnalysisReport::setFamily);
+
+    private final String key;
+    private final String title;
+    private final String focus;
+    private final Function<FateAnalysisReport, FateAnalysisReport.Section> getter;
+    private final BiConsumer<FateAnalysisReport, FateAnalysisReport.Section> setter;
+
+    ReportSection(String key, String title, String focus,
+                  Function<FateAnalysisReport, FateAnalysisReport.Section> getter,
+                  BiConsumer<FateAnalysisReport, FateAnalysisReport.Section> setter) {
+        this.key = key;
+        this.title = title;
+        this.focus = focus;
+        this.getter = getter;
+        this.setter = setter;
+    }
+
+    public static ReportSection of(String key) {
+        for (ReportSection section : values()) {
+            if (section.key.equals(key)) {
+                return section;
+            }
+        }
+        throw new IllegalArgumentException("未知报告板块: " + key);
+    }
+
+    public String key() {
+        return key;
+    }
+
+    public String title() {
+        return title;
+    }
+
+    public String focus() {
+        return focus;
+    }
+
+    public FateAnalysisReport.Section get(FateAnalysisReport report) {
+        return getter.apply(report);
+    }
+
+    public void set(FateAnalysisReport report, FateAnalysisReport.Section section) {
+        setter.accept(report, section);
+    }
+}
@@ -0,0 +1,129 @@
+package com.nei10u.fate.service;
+
+import com.nei10u.fate.model.FateAnalysisReport;
+import com.nei10u.fate.model.FateResponse;
+import com.nei10u.fate.service.pipeline.StageDeadline;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Qualifier;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Mono;
+import reactor.core.scheduler.Scheduler;
+import reactor.core.scheduler.Schedulers;
+
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+/**
+ * 按板块并发生成报告（fate.ai.report-mode=sections，/report/stream 始终使用）。
+ * <p>
+ * - 七个板块各一次模型调用，在报告分板块线程池（fateReportSectionExecutor）上同时进行，先完成的先下发；
+ *   线程池满载被拒的板块按失败降级
+ * - 每块单独超时（fate.ai.report-sections.timeout）；失败或超时只降级该板块（评分 0 + 原因），其余板块照常
+ * - 模型准入被拒（{@link ModelOverloadedException}）不降级：整个流以该异常结束，由调用方返回 429 / overloaded 事件
+ * - 首个板块的到达时间约为一块短输出的生成时间，不再等待整份报告
+ */
+@Component
+public class ReportSectionGenerator {
+
+    private static final Logger log = LoggerFactory.getLogger(ReportSectionGenerator.class);
+
+    private final FateAiService fateAiService;
+    private final Scheduler scheduler;
+    private final Duration sectionTimeout;
+
+    public ReportSectionGenerator(FateAiService fateAiService,
+                                  @Qualifier("fateReportSectionExecutor") ExecutorService executor,
+                                  @Value("${fate.ai.report-sections.timeout:60s}") Duration sectionTimeout) {
+        this.fateAiService = fateAiService;
+        this.scheduler = Schedulers.fromExecutorService(executor, "fate-report-section");
+        this.sectionTimeout = sectionTimeout;
+    }
+
+    /**
+     * 一个已完成的板块；degraded = 该板块为兜底内容。
+     */
+    public record SectionResult(String key, String title, FateAnalysisReport.Section section, boolean degraded) {
+
+        static SectionResult of(ReportSection part, FateAnalysisReport.Section section, boolean degraded) {
+            return new SectionResult(part.key(), part.title(), section, degraded);
+        }
+    }
+
+    /**
+     * 按完成顺序下发各板块；取消订阅会一并取消未完成的模型调用。
+     */
+    public Flux<SectionResult> stream(FateResponse.BaZiInfo bazi, String gender, String requestId) {
+        return Flux.defer(() -> {
+            long start = System.nanoTime();
+            ReportSection[] parts = ReportSection.values();
+            return Flux.merge(Flux.fromArray(parts).map(part -> section(part, bazi, gender, requestId, start)),
+                    parts.length);
+        });
+    }
+
+    /**
+     * 阻塞收齐七个板块并组装为完整报告（流水线 report 阶段使用）。
+     */
+    public FateAnalysisReport generate(FateResponse.BaZiInfo bazi, String gender, String requestId) {
+        FateAnalysisReport report = new FateAnalysisReport();
+        List<SectionResult> results = stream(bazi, gender, requestId).collectList().block();
+        if (results != null) {
+            for (SectionResult result : results) {
+                ReportSection.of(result.key()).set(report, result.section());
+            }
+        }
+        return report;
+    }
+
+    /**
+     * 把已有的完整报告拆成板块（命盘缓存命中时整份回放）。
+     */
+    public static List<SectionResult> split(FateAnalysisReport report) {
+        List<SectionResult> out = new ArrayList<>(ReportSection.values().length);
+        for (ReportSection part : ReportSection.values()) {
+            FateAnalysisReport.Section section = part.get(report);
+            out.add(SectionResult.of(part, section, section == null || section.getScore() <= 0));
+        }
+        return out;
+    }
+
+    private Mono<SectionResult> section(ReportSection part, FateResponse.BaZiInfo bazi, String gender,
+                                        String requestId, long start) {
+        AtomicBoolean cancelled = new AtomicBoolean();
+        // 流水线 report 阶段内调用时，板块带上该阶段的截止时间
+        return Mono.fromCallable(StageDeadline.propagate(() -> {
+                    try {
+                        return fateAiService.generateReportSection(bazi, gender, part, requestId);
+                    } catch (RuntimeException e) {
+                        // 超时/取消会中断工作线程：下游已不再订阅，安静结束即可，避免 onErrorDropped 刷 ERROR
+                        if (cancelled.get()) {
+                            return null;
+                        }
+                        throw e;
+                    }
+                }))
+                .subscribeOn(scheduler)
+                .doOnCancel(() -> cancelled.set(true))
+                .timeout(sectionTimeout)
+                .map(section -> SectionResult.of(part, section, false))
+                .onErrorResume(err -> !(err instanceof ModelOverloadedException), err -> {
+                    boolean timedOut = err instanceof TimeoutException;
+                    log.warn("[{}] report section {} {}: {}", requestId, part.key(), timedOut ? "timeout" : "failed",
+                            err.getMessage());
+                    if (!fateAiService.isFallbackEnabled()) {
+                        return Mono.error(err);
+                    }
+                    String reason = part.title() + (timedOut ? "生成超时" : "生成失败") + "（其他板块不受影响）";
+                    return Mono.just(SectionResult.of(part, fateAiService.fallbackSection(reason), true));
+                })
+                .doOnNext(result -> log.info("[{}] report section {} ready degraded={} at {}ms", requestId,
+                        part.key(), result.degraded(), (System.nanoTime() - start) / 1_000_000));
+    }
+}
@@ -0,0 +1,75 @@
+package com.nei10u.fate.service;
+
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutionException;
+import java.util.function.Supplier;
+
+/**
+ * 单飞（single-flight）合并：同一 key 同时只执行一次，后到的并发调用挂在进行中的结果上。
+ * <p>
+ * 失败语义：
+ * - 领头调用真实失败：跟随者拿到同一个异常（避免失败时的重试风暴）
+ * - 领头调用被中断/取消（例如其阶段超时）：跟随者不继承取消，而是重新竞争成为新的领头者
+ * - 跟随者自身被中断：只停止等待，不影响领头调用
+ */
+public final class SingleFlight<K, V> {
+
+    /**
+     * 调用结果：value 与本次是否为合并命中。
+     */
+    public record Outcome<V>(V value, boolean coalesced) {
+    }
+
+    private final ConcurrentHashMap<K, CompletableFuture<V>> inFlight = new ConcurrentHashMap<>();
+
+    public Outcome<V> execute(K key, Supplier<V> work) {
+        while (true) {
+            CompletableFuture<V> mine = new CompletableFuture<>();
+            CompletableFuture<V> existing = inFlight.putIfAbsent(key, mine);
+            if (existing == null) {
+                return new Outcome<>(lead(key, mine, work), false);
+            }
+            try {
+                return new Outcome<>(existing.get(), true);
+            } catch (CancellationException e) {
+                // 领头者被取消：重新竞争
+            } catch (ExecutionException e) {
+                Throwable cause = e.getCause();
+                if (!(cause instanceof CancellationException)) {
+                    throw cause instanceof RuntimeException re ? re : new IllegalStateException(cause);
+                }
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                throw new CancellationException("等待进行中的相同请求时被中断");
+            }
+        }
+    }
+
+    public int inFlightCount() {
+        return inFlight.size();
+    }
+
+    private V lead(K key, CompletableFuture<V> mine, Supplier<V> work) {
+        try {
+            V value = work.get();
+            if (Thread.currentThread().isInterrupted()) {
+                // 领头者已被中断（其结果多半是兜底值）：不把它分享给仍有时间预算的跟随者
+                mine.cancel(false);
+            } else {
+                mine.complete(value);
+            }
+            return value;
+        } catch (RuntimeException | Error e) {
+            if (Thread.currentThread().isInterrupted()) {
+                mine.cancel(false);
+            } else {
+                mine.completeExceptionally(e);
+            }
+            throw e;
+        } finally {
+            inFlight.remove(key, mine);
+        }
+    }
+}
@@ -0,0 +1,270 @@
+package com.nei10u.fate.service;
+
+import com.github.benmanes.caffeine.cache.Cache;
+import com.github.benmanes.caffeine.cache.Caffeine;
+import com.github.benmanes.caffeine.cache.RemovalCause;
+import com.github.benmanes.caffeine.cache.Scheduler;
+import com.nei10u.fate.model.FateAnalysisReport;
+import com.nei10u.fate.model.FateResponse;
+import com.nei10u.fate.model.YearlyBatchResult;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Qualifier;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Service;
+
+import java.time.Duration;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.Optional;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.FutureTask;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.Semaphore;
+
+/**
+ * 推测执行：/bazi 写入 baseline 后立即在后台生成 report 与 yearly（前端随后必然按序请求这两步）。
+ * <p>
+ * - 挂接：推测走与 /report、/kline 相同的 FateAiFacade 调用，同一命盘指纹进行中的推测被 single-flight 合并，
+ *   已完成的直接命中命盘缓存；流式接口通过 {@link #attachReport} / {@link #attachYearly} 等待推测结果
+ * - 预算：全局最多 fate.speculation.max-inflight 个推测任务，预算用尽时不推测（退化为按需生成）
+ * - 放弃：requestId 在 fate.speculation.abandon-after 内没有后续请求即视为会话被放弃，取消尚未被挂接的推测（中断模型调用）
+ * - baseline 被后台模型定盘覆盖后（local-first），按新 baseline 重新推测 yearly，旧任务取消
+ * <p>
+ * 指标：fate.speculation.tasks{stage, result=started|skipped|attached|cancelled}，fate.speculation.inflight
+ */
+@Service
+public class SpeculationService {
+
+    private static final Logger log = LoggerFactory.getLogger(SpeculationService.class);
+
+    private final FateAiFacade fateAiFacade;
+    private final ExecutorService executor;
+    private final MeterRegistry meterRegistry;
+    private final boolean enabled;
+    private final Semaphore budget;
+    private final Cache<String, Session> sessions;
+
+    public SpeculationService(FateAiFacade fateAiFacade,
+                              @Qualifier("fateStageExecutor") ExecutorService executor,
+                              MeterRegistry meterRegistry,
+                              @Value("${fate.speculation.enabled:true}") boolean enabled,
+                              @Value("${fate.speculation.max-inflight:8}") int maxInflight,
+                              @Value("${fate.speculation.abandon-after:90s}") Duration abandonAfter) {
+        this.fateAiFacade = fateAiFacade;
+        this.executor = executor;
+        this.meterRegistry = meterRegistry;
+        this.enabled = enabled;
+        int permits = Math.max(1, maxInflight);
+        this.budget = new Semaphore(permits);
+        // 访问即续期：每次后续请求（挂接）都重新计时，超时未访问由调度器主动过期并取消未挂接的任务
+        this.sessions = Caffeine.newBuilder()
+                .expireAfterAccess(abandonAfter)
+                .scheduler(Scheduler.systemScheduler())
+                .removalListener((String requestId, Session session, RemovalCause cause) -> {
+                    if (session != null && cause.wasEvicted()) {
+                        abandon(requestId, session);
+                    }
+                })
+                .build();
+        Gauge.builder("fate.speculation.inflight", budget, b -> permits - b.availablePermits())
+                .description("进行中的推测任务数")
+                .register(meterRegistry);
+    }
+
+    /**
+     * /bazi 完成后调用：后台开始生成报告与年度分数。
+     */
+    public void start(String requestId, FateResponse.BaZiInfo bazi, String gender, int baseline) {
+        if (!enabled || requestId == null || requestId.isBlank()) {
+            return;
+        }
+        // 同一 requestId 重复 /bazi（双击、重试）沿用已有推测；出生信息变了则旧推测作废
+        Session session = sessions.asMap().compute(requestId, (k, old) -> {
+            if (old != null && Objects.equals(old.bazi, bazi) && Objects.equals(old.gender, gender)) {
+                return old;
+            }
+            if (old != null) {
+                abandon(requestId, old);
+            }
+            return new Session(bazi, gender);
+        });
+        if (!session.tasks.containsKey(FateAiFacade.STAGE_REPORT)) {
+            submit(requestId, session, FateAiFacade.STAGE_REPORT, 0,
+                    () -> fateAiFacade.generateReport(bazi, gender, requestId));
+        }
+        Task<?> yearly = session.tasks.get(FateAiFacade.STAGE_YEARLY);
+        if (yearly == null || (!yearly.attached && yearly.baseline != baseline)) {
+            submitYearly(requestId, session, baseline);
+        }
+    }
+
+    /**
+     * 会话 baseline 被后台模型定盘覆盖：旧 baseline 的 yearly 推测已无法命中，换成新 baseline 重新推测。
+     */
+    public void rebase(String requestId, int baseline) {
+        Session session = sessions.policy().getIfPresentQuietly(requestId);
+        if (session == null) {
+            return;
+        }
+        Task<?> yearly = session.tasks.get(FateAiFacade.STAGE_YEARLY);
+        if (yearly == null || yearly.attached || yearly.baseline == baseline) {
+            return;
+        }
+        log.info("[{}] speculation yearly rebased {} -> {}", requestId, yearly.baseline, baseline);
+        // 先取消旧任务归还预算，再按新 baseline 提交
+        if (yearly.cancel(true)) {
+            count(FateAiFacade.STAGE_YEARLY, "cancelled");
+        }
+        submitYearly(requestId, session, baseline);
+    }
+
+    /**
+     * /report 到达：标记已挂接（不再因放弃而取消），返回进行中或已完成的推测结果。
+     */
+    @SuppressWarnings("unchecked")
+    public Optional<CompletableFuture<FateAnalysisReport>> attachReport(String requestId) {
+        return attach(requestId, FateAiFacade.STAGE_REPORT, null)
+                .map(task -> (CompletableFuture<FateAnalysisReport>) task.result);
+    }
+
+    /**
+     * /kline 到达：baseline 与推测时一致才挂接；不一致的推测已无用，直接取消。
+     */
+    @SuppressWarnings("unchecked")
+    public Optional<CompletableFuture<List<YearlyBatchResult.YearlyItem>>> attachYearly(String requestId, int baseline) {
+        return attach(requestId, FateAiFacade.STAGE_YEARLY, baseline)
+                .map(task -> (CompletableFuture<List<YearlyBatchResult.YearlyItem>>) task.result);
+    }
+
+    private Optional<Task<?>> attach(String requestId, String stage, Integer baseline) {
+        if (requestId == null || requestId.isBlank()) {
+            return Optional.empty();
+        }
+        Session session = sessions.getIfPresent(requestId);
+        if (session == null) {
+            return Optional.empty();
+        }
+        Task<?> task = session.tasks.get(stage);
+        if (task == null) {
+            return Optional.empty();
+        }
+        if (baseline != null && task.baseline != baseline) {
+            if (session.tasks.remove(stage, task) && task.cancel(true)) {
+                count(stage, "cancelled");
+            }
+            log.info("[{}] speculation {} discarded: baseline {} != {}", requestId, stage, task.baseline, baseline);
+            return Optional.empty();
+        }
+        if (!task.attached) {
+            task.attached = true;
+            count(stage, "attached");
+            log.info("[{}] {} attached to speculation done={}", requestId, stage, task.isDone());
+        }
+        if (session.tasks.values().stream().allMatch(t -> t.attached)) {
+            sessions.invalidate(requestId);
+        }
+        return Optional.of(task);
+    }
+
+    private void submitYearly(String requestId, Session session, int baseline) {
+        submit(requestId, session, FateAiFacade.STAGE_YEARLY, baseline,
+                () -> fateAiFacade.generateYearlyScores(session.bazi, session.gender, baseline, requestId));
+    }
+
+    private <T> void submit(String requestId, Session session, String stage, int baseline, Callable<T> work) {
+        if (!budget.tryAcquire()) {
+            count(stage, "skipped");
+            log.info("[{}] speculation {} skipped: budget exhausted", requestId, stage);
+            return;
+        }
+        Task<T> task = new Task<>(baseline, work);
+        Task<?> previous = session.tasks.put(stage, task);
+        if (previous != null && previous.cancel(true)) {
+            count(stage, "cancelled");
+        }
+        try {
+            executor.execute(task);
+        } catch (RejectedExecutionException e) {
+            // 未执行的任务不会触发 done()，在这里归还预算
+            session.tasks.remove(stage, task);
+            budget.release();
+            count(stage, "skipped");
+            log.info("[{}] speculation {} skipped: executor saturated", requestId, stage);
+            return;
+        }
+        count(stage, "started");
+        log.info("[{}] speculation {} started", requestId, stage);
+    }
+
+    private void abandon(String requestId, Session session) {
+        for (Map.Entry<String, Task<?>> e : session.tasks.entrySet()) {
+            Task<?> task = e.getValue();
+            if (!task.attached && task.cancel(true)) {
+                count(e.getKey(), "cancelled");
+                log.info("[{}] speculation {} cancelled: session abandoned or superseded", requestId, e.getKey());
+            }
+        }
+    }
+
+    private void count(String stage, String result) {
+        Counter.builder("fate.speculation.tasks")
+                .description("推测任务数（started / skipped=预算或线程池满 / attached=被真实请求挂接 / cancelled）")
+                .tag("stage", stage)
+                .tag("result", result)
+                .register(meterRegistry)
+                .increment();
+    }
+
+    private static final class Session {
+
+        final FateResponse.BaZiInfo bazi;
+        final String gender;
+        final Map<String, Task<?>> tasks = new ConcurrentHashMap<>();
+
+        Session(FateResponse.BaZiInfo bazi, String gender) {
+            this.bazi = bazi;
+            this.gender = gender;
+        }
+    }
+
+    /**
+     * 可中断的推测任务：cancel(true) 中断正在等待模型的线程；结束（含取消）时归还预算，并把结果转给 {@link #result}。
+     */
+    private final class Task<T> extends FutureTask<T> {
+
+        final int baseline;
+        final CompletableFuture<T> result = new CompletableFuture<>();
+        volatile boolean attached;
+
+        Task(int baseline, Callable<T> work) {
+            super(work);
+            this.baseline = baseline;
+        }
+
+        @Override
+        protected void done() {
+            budget.release();
+            if (isCancelled()) {
+                result.cancel(false);
+                return;
+            }
+            try {
+                result.complete(get());
+            } catch (ExecutionException e) {
+                result.completeExceptionally(e.getCause());
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                result.cancel(false);
+            }
+        }
+    }
+}
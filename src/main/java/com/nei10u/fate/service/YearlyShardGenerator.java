@@ -0,0 +1,166 @@
+package com.nei10u.fate.service;
+
+import com.nei10u.fate.model.FateResponse;
+import com.nei10u.fate.model.YearlyBatchResult;
+import com.nei10u.fate.service.ganzhi.DaYunIndex;
+import com.nei10u.fate.service.pipeline.StageDeadline;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Qualifier;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+import java.util.StringJoiner;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Future;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.Semaphore;
+
+/**
+ * 按大运分段并发生成年度分数（fate.ai.yearly-mode=sharded）。
+ * <p>
+ * - 切分：在 DaYunInfo.startAge 处切开，每步大运一段（约 10 年）；起运前的童限或末尾零头不足
+ *   fate.ai.yearly-shards.min-span 年时并入相邻一段
+ * - 并发：每个请求最多同时 fate.ai.yearly-shards.parallelism 段，在专用执行器上运行；执行器满载时在当前线程顺序执行
+ * - 拼接：各段按年龄合并，连续性（open = 上一年 close，含段与段之间）由 {@link KLineSeriesBuilder} 统一保证
+ * <p>
+ * 输出长度决定模型延迟，/kline 的墙钟时间由“80 年一次生成”降为约一段的生成时间。
+ * 单段失败按 fate.ai.fallback-enabled 处理：开启时该段为空（K 线持平补齐），结果不完整也就不会进入命盘缓存。
+ */
+@Component
+public class YearlyShardGenerator {
+
+    private static final Logger log = LoggerFactory.getLogger(YearlyShardGenerator.class);
+
+    private final FateAiService fateAiService;
+    private final ExecutorService shardExecutor;
+    private final int parallelism;
+    private final int minSpan;
+
+    public YearlyShardGenerator(FateAiService fateAiService,
+                                @Qualifier("fateShardExecutor") ExecutorService shardExecutor,
+                                @Value("${fate.ai.yearly-shards.parallelism:10}") int parallelism,
+                                @Value("${fate.ai.yearly-shards.min-span:5}") int minSpan) {
+        this.fateAiService = fateAiService;
+        this.shardExecutor = shardExecutor;
+        this.parallelism = Math.max(1, parallelism);
+        this.minSpan = Math.max(1, minSpan);
+    }
+
+    /**
+     * 一段年龄区间 [fromAge, toAge]（含两端）及其所处大运（跨两步时以“、”分隔）。
+     */
+    public record Shard(int fromAge, int toAge, String daYun) {
+
+        public int years() {
+            return toAge - fromAge + 1;
+        }
+
+        public boolean contains(int age) {
+            return age >= fromAge && age <= toAge;
+        }
+    }
+
+    public List<YearlyBatchResult.YearlyItem> generate(FateResponse.BaZiInfo bazi, String gender, int baseline,
+                                                       String requestId) {
+        List<Shard> shards = plan(bazi.getDaYunList(), KLineSeriesBuilder.YEARS, minSpan);
+        long start = System.nanoTime();
+        List<Future<List<YearlyBatchResult.YearlyItem>>> futures = new ArrayList<>(shards.size());
+        Semaphore permits = new Semaphore(parallelism);
+        try {
+            for (Shard shard : shards) {
+                permits.acquire();
+                try {
+                    // 分段带上 yearly 阶段的截止时间，准入控制按阶段剩余预算判断是否值得排队
+                    futures.add(shardExecutor.submit(StageDeadline.propagate(() -> {
+                        try {
+                            return fateAiService.generateYearlyShard(bazi, gender, baseline, shard, requestId);
+                        } finally {
+                            permits.release();
+                        }
+                    })));
+                } catch (RejectedExecutionException e) {
+                    permits.release();
+                    log.warn("[{}] yearly shard {}-{} running inline: shard executor saturated", requestId,
+                            shard.fromAge(), shard.toAge());
+                    futures.add(CompletableFuture.completedFuture(
+                            fateAiService.generateYearlyShard(bazi, gender, baseline, shard, requestId)));
+                }
+            }
+            List<YearlyBatchResult.YearlyItem> merged = new ArrayList<>(KLineSeriesBuilder.YEARS);
+            for (Future<List<YearlyBatchResult.YearlyItem>> future : futures) {
+                merged.addAll(future.get());
+            }
+            merged.sort(Comparator.comparingInt(YearlyBatchResult.YearlyItem::getAge));
+            log.info("[{}] yearly shards done shards={} items={} in {}ms", requestId, shards.size(), merged.size(),
+                    (System.nanoTime() - start) / 1_000_000);
+            return merged;
+        } catch (InterruptedException e) {
+            // 阶段超时会中断当前线程：未完成的分段一并取消，不再继续消耗 token
+            futures.forEach(f -> f.cancel(true));
+            Thread.currentThread().interrupt();
+            throw new IllegalStateException("yearly 分段生成被中断", e);
+        } catch (ExecutionException e) {
+            futures.forEach(f -> f.cancel(true));
+            Throwable cause = e.getCause();
+            throw cause instanceof RuntimeException re ? re : new IllegalStateException(cause);
+        }
+    }
+
+    /**
+     * 在大运交接处切分 1..years；没有大运信息时按 10 年等分。
+     */
+    static List<Shard> plan(List<FateResponse.DaYunInfo> daYuns, int years, int minSpan) {
+        List<Integer> starts = new ArrayList<>();
+        if (daYuns != null) {
+            for (FateResponse.DaYunInfo dy : daYuns) {
+                if (dy.getStartAge() > 1 && dy.getStartAge() <= years
+                        && (starts.isEmpty() || dy.getStartAge() > starts.get(starts.size() - 1))) {
+                    starts.add(dy.getStartAge());
+                }
+            }
+        }
+        if (starts.isEmpty()) {
+            for (int age = 11; age <= years; age += 10) {
+                starts.add(age);
+            }
+        }
+        // 童限、末尾不足 minSpan 年的零头并入相邻一段，避免为三五年单独付一次 prompt
+        if (starts.get(0) - 1 < minSpan) {
+            starts.remove(0);
+        }
+        if (!starts.isEmpty() && years - starts.get(starts.size() - 1) + 1 < minSpan) {
+            starts.remove(starts.size() - 1);
+        }
+        DaYunIndex index = DaYunIndex.of(daYuns);
+        List<Shard> shards = new ArrayList<>(starts.size() + 1);
+        int from = 1;
+        for (int next : starts) {
+            shards.add(new Shard(from, next - 1, daYunLabel(index, from, next - 1)));
+            from = next;
+        }
+        shards.add(new Shard(from, years, daYunLabel(index, from, years)));
+        return shards;
+    }
+
+    /**
+     * 段内经过的大运（合并段可能跨两步），如“童限、丁卯”。
+     */
+    static String daYunLabel(DaYunIndex index, int fromAge, int toAge) {
+        StringJoiner label = new StringJoiner("、");
+        String last = null;
+        for (int age = fromAge; age <= toAge; age++) {
+            String current = index.at(age);
+            if (!current.equals(last)) {
+                label.add(current);
+                last = current;
+            }
+        }
+        return label.toString();
+    }
+}
@@ -0,0 +1,159 @@
+package com.nei10u.fate.service.ganzhi;
+
+import com.nei10u.fate.model.FateResponse;
+import com.nei10u.fate.service.FateAiService;
+import org.springframework.stereotype.Component;
+
+import java.util.List;
+
+/**
+ * 本地命格基线估算：按日主旺衰 + 原局结构 + 大运走向给出 20–80 的 baseline，毫秒内完成、结果确定。
+ * <p>
+ * - 旺衰：月令（旺相休囚死）+ 通根（藏干本/中/余气加权，印星折半）+ 天干帮扶
+ * - 结构：原局地支冲刑害合、五行齐备度、喜用（身弱取印比，身强取食财官）在其余七字中的占比
+ * - 大运：前七步大运对日主的扶抑，按喜忌方向计分（身弱喜扶，身强喜抑）
+ * <p>
+ * 只是对 LLM 定盘的近似，用作快速路径与失败兜底，不替代模型的文字分析。
+ */
+@Component
+public class BaselineEstimator {
+
+    private static final double[] SEASON = {3, 2, -1, -1.5, -2}; // 旺 相 休 囚 死
+    private static final double[] HIDDEN_WEIGHT = {1.0, 0.5, 0.3};
+    private static final double BALANCE_POINT = 2.5;
+    private static final int DAYUN_STEPS = 7;
+
+    public FateAiService.BaselineResult estimate(FateResponse.BaZiInfo bazi) {
+        int[] pillars = {
+                GanZhiRelations.index(bazi.getYearPillar()),
+                GanZhiRelations.index(bazi.getMonthPillar()),
+                GanZhiRelations.index(bazi.getDayPillar()),
+                GanZhiRelations.index(bazi.getHourPillar())
+        };
+        for (int p : pillars) {
+            if (p < 0) {
+                throw new IllegalArgumentException("无法识别的四柱: " + bazi.getYearPillar() + bazi.getMonthPillar()
+                        + bazi.getDayPillar() + bazi.getHourPillar());
+            }
+        }
+        int dayStem = GanZhiRelations.stem(pillars[2]);
+        int me = GanZhiRelations.stemElement(dayStem);
+
+        // 1. 旺衰
+        int monthElement = GanZhiRelations.branchElement(GanZhiRelations.branch(pillars[1]));
+        double season = SEASON[seasonState(monthElement, me)];
+        double root = 0;
+        for (int p : pillars) {
+            int[] hidden = GanZhiRelations.hiddenStems(GanZhiRelations.branch(p));
+            for (int i = 0; i < hidden.length; i++) {
+                int e = GanZhiRelations.stemElement(hidden[i]);
+                if (e == me) {
+                    root += HIDDEN_WEIGHT[i];
+                } else if (GanZhiRelations.generates(e, me)) {
+                    root += HIDDEN_WEIGHT[i] * 0.5;
+                }
+            }
+        }
+        double stems = 0;
+        for (int i = 0; i < pillars.length; i++) {
+            if (i != 2) {
+                stems += stemSupport(GanZhiRelations.stemElement(GanZhiRelations.stem(pillars[i])), me);
+            }
+        }
+        double strength = season + root + stems;
+        boolean strong = strength > BALANCE_POINT;
+        double balance = -Math.min(12, Math.abs(strength - BALANCE_POINT) * 1.5);
+
+        // 2. 结构
+        int chong = 0;
+        int xing = 0;
+        int hai = 0;
+        int he = 0;
+        for (int i = 0; i < pillars.length; i++) {
+            for (int j = i + 1; j < pillars.length; j++) {
+                int bits = GanZhiRelations.relations(pillars[i], pillars[j]);
+                if ((bits & GanZhiRelations.BRANCH_CHONG) != 0) chong++;
+                if ((bits & GanZhiRelations.BRANCH_XING) != 0) xing++;
+                if ((bits & GanZhiRelations.BRANCH_HAI) != 0) hai++;
+                if ((bits & (GanZhiRelations.BRANCH_HE | GanZhiRelations.BRANCH_BANHE)) != 0) he++;
+            }
+        }
+        boolean[] present = new boolean[5];
+        int favorable = 0;
+        for (int i = 0; i < pillars.length; i++) {
+            int stemElement = GanZhiRelations.stemElement(GanZhiRelations.stem(pillars[i]));
+            int branchElement = GanZhiRelations.branchElement(GanZhiRelations.branch(pillars[i]));
+            present[stemElement] = true;
+            present[branchElement] = true;
+            if (i != 2 && isFavorable(stemElement, me, strong)) favorable++;
+            if (isFavorable(branchElement, me, strong)) favorable++;
+        }
+        int distinct = 0;
+        for (boolean b : present) {
+            if (b) distinct++;
+        }
+        double structure = -3.0 * chong - 1.5 * xing - 1.0 * hai + 1.0 * Math.min(he, 2)
+                + 2.0 * (distinct - 3) + 10.0 * (favorable / 7.0 - 0.5);
+        structure = Math.max(-12, Math.min(12, structure));
+
+        // 3. 大运
+        List<FateResponse.DaYunInfo> daYuns = bazi.getDaYunList() != null ? bazi.getDaYunList() : List.of();
+        double daYunSum = 0;
+        int steps = 0;
+        for (FateResponse.DaYunInfo dy : daYuns) {
+            int idx = GanZhiRelations.index(dy.getGanZhi());
+            if (idx < 0) {
+                continue;
+            }
+            daYunSum += GanZhiRelations.supportTwice(idx, dayStem) / 2.0;
+            if (++steps >= DAYUN_STEPS) {
+                break;
+            }
+        }
+        double daYunFavor = steps == 0 ? 0 : (strong ? -daYunSum : daYunSum) / steps;
+        double daYunScore = Math.max(-8, Math.min(8, daYunFavor * 4));
+
+        // 中心取 56：旺衰偏离项恒为非正，使随机命盘的中位数落在 50 附近
+        int baseline = (int) Math.round(56 + balance + structure + daYunScore);
+        baseline = Math.max(20, Math.min(80, baseline));
+
+        FateAiService.BaselineResult result = new FateAiService.BaselineResult();
+        result.setBaseline(baseline);
+        result.setAnalysis(String.format(
+                "日主%s%s，生于%s月（%s），通根%.1f、天干帮扶%.1f，综合判为%s；原局冲%d刑%d害%d合%d，五行见%d种，喜用占%d/7；"
+                        + "前%d步大运整体%s。本地规则估算 baseline=%d。",
+                GanZhiRelations.STEMS.charAt(dayStem), GanZhiRelations.ELEMENTS.charAt(me),
+                GanZhiRelations.BRANCHES.charAt(GanZhiRelations.branch(pillars[1])),
+                "旺相休囚死".charAt(seasonState(monthElement, me)),
+                root, stems, strong ? "身强" : "身弱",
+                chong, xing, hai, he, distinct, favorable,
+                steps, daYunFavor > 0.25 ? "顺（喜用得运）" : daYunFavor < -0.25 ? "逆（忌神当令）" : "平",
+                baseline));
+        return result;
+    }
+
+    /**
+     * 0 旺（同类）1 相（生我）2 休（我生）3 囚（我克）4 死（克我）。
+     */
+    private static int seasonState(int season, int me) {
+        if (season == me) return 0;
+        if (GanZhiRelations.generates(season, me)) return 1;
+        if (GanZhiRelations.generates(me, season)) return 2;
+        if (GanZhiRelations.controls(me, season)) return 3;
+        return 4;
+    }
+
+    private static double stemSupport(int element, int me) {
+        return switch (seasonState(element, me)) {
+            case 0, 1 -> 1.0;
+            case 2 -> -0.5;
+            case 3 -> -0.7;
+            default -> -1.0;
+        };
+    }
+
+    private static boolean isFavorable(int element, int me, boolean strong) {
+        boolean supportive = element == me || GanZhiRelations.generates(element, me);
+        return strong != supportive;
+    }
+}
@@ -0,0 +1,49 @@
+package com.nei10u.fate.service.ganzhi;
+
+import com.nei10u.fate.model.FateResponse;
+
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * 年龄 -> 所处大运 的索引：每张命盘构建一次，之后按年龄直接取数组，替代逐年线性扫描大运列表。
+ * <p>
+ * 语义与原扫描一致：取列表中最后一个 startAge 不超过当年年龄的大运，起运前为“童限”。
+ */
+public final class DaYunIndex {
+
+    public static final String CHILDHOOD = "童限";
+
+    private static final int MAX_AGE = 120;
+
+    private final String[] byAge;
+    private final List<FateResponse.DaYunInfo> daYuns;
+
+    private DaYunIndex(List<FateResponse.DaYunInfo> daYuns) {
+        this.daYuns = daYuns;
+        this.byAge = new String[MAX_AGE + 1];
+        Arrays.fill(byAge, CHILDHOOD);
+        for (FateResponse.DaYunInfo dy : daYuns) {
+            for (int age = Math.max(0, dy.getStartAge()); age <= MAX_AGE; age++) {
+                byAge[age] = dy.getGanZhi();
+            }
+        }
+    }
+
+    public static DaYunIndex of(List<FateResponse.DaYunInfo> daYuns) {
+        return new DaYunIndex(daYuns == null ? List.of() : daYuns);
+    }
+
+    public String at(int age) {
+        if (age >= 0 && age <= MAX_AGE) {
+            return byAge[age];
+        }
+        String current = CHILDHOOD;
+        for (FateResponse.DaYunInfo dy : daYuns) {
+            if (age >= dy.getStartAge()) {
+                current = dy.getGanZhi();
+            }
+        }
+        return current;
+    }
+}
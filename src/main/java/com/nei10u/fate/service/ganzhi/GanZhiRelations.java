@@ -0,0 +1,212 @@
+package com.nei10u.fate.service.ganzhi;
+
+/**
+ * 六十甲子关系表：启动时预计算 60×60 位图，查询只是一次数组访问。
+ * <p>
+ * 约定：relations(a, b) 描述“作用方 a（流年/大运）对受方 b（原局柱）”的关系，
+ * 生/克带方向（a 生 b 与 b 生 a 分开记位），合/冲/害/刑/半合 为对称关系。
+ * <p>
+ * 干支序号：甲子=0 … 癸亥=59；天干 i%10，地支 i%12。
+ */
+public final class GanZhiRelations {
+
+    public static final String STEMS = "甲乙丙丁戊己庚辛壬癸";
+    public static final String BRANCHES = "子丑寅卯辰巳午未申酉戌亥";
+    public static final String ELEMENTS = "木火土金水";
+
+    // 天干
+    public static final int STEM_HE = 1;          // 五合：甲己 乙庚 丙辛 丁壬 戊癸
+    public static final int STEM_CHONG = 1 << 1;  // 相冲：甲庚 乙辛 丙壬 丁癸
+    public static final int STEM_SHENG = 1 << 2;  // a 生 b
+    public static final int STEM_KE = 1 << 3;     // a 克 b
+    public static final int STEM_SHENG_BY = 1 << 4; // b 生 a
+    public static final int STEM_KE_BY = 1 << 5;  // b 克 a
+    public static final int STEM_SAME = 1 << 6;   // 同五行（比和）
+    // 地支
+    public static final int BRANCH_HE = 1 << 7;   // 六合
+    public static final int BRANCH_CHONG = 1 << 8; // 六冲
+    public static final int BRANCH_HAI = 1 << 9;  // 六害
+    public static final int BRANCH_XING = 1 << 10; // 刑（三刑、子卯、自刑）
+    public static final int BRANCH_BANHE = 1 << 11; // 三合局中的两支（半合）
+    // 整柱
+    public static final int FUYIN = 1 << 12;      // 伏吟：干支全同
+    public static final int FANYIN = 1 << 13;     // 反吟：天克（或天干相冲）地冲
+
+    /**
+     * 天干五行：木0 火1 土2 金3 水4。
+     */
+    private static final int[] STEM_ELEMENT = {0, 0, 1, 1, 2, 2, 3, 3, 4, 4};
+    /**
+     * 地支本气五行。
+     */
+    private static final int[] BRANCH_ELEMENT = {4, 2, 0, 0, 2, 1, 1, 2, 3, 3, 2, 4};
+    /**
+     * 地支藏干（本气、中气、余气）。
+     */
+    private static final int[][] HIDDEN_STEMS = {
+            {9}, {5, 9, 7}, {0, 2, 4}, {1}, {4, 1, 9}, {2, 6, 4},
+            {3, 5}, {5, 3, 1}, {6, 8, 4}, {7}, {4, 7, 3}, {8, 0}
+    };
+
+    private static final short[] TABLE = new short[60 * 60];
+    private static final String[] NAMES = new String[60];
+
+    static {
+        for (int i = 0; i < 60; i++) {
+            NAMES[i] = "" + STEMS.charAt(stem(i)) + BRANCHES.charAt(branch(i));
+        }
+        for (int a = 0; a < 60; a++) {
+            for (int b = 0; b < 60; b++) {
+                TABLE[a * 60 + b] = (short) compute(a, b);
+            }
+        }
+    }
+
+    private GanZhiRelations() {
+    }
+
+    /**
+     * 干支文本（如“甲子”）转序号，无法识别返回 -1。
+     */
+    public static int index(String ganZhi) {
+        if (ganZhi == null || ganZhi.length() < 2) {
+            return -1;
+        }
+        int stem = STEMS.indexOf(ganZhi.charAt(0));
+        int branch = BRANCHES.indexOf(ganZhi.charAt(1));
+        if (stem < 0 || branch < 0 || stem % 2 != branch % 2) {
+            return -1;
+        }
+        return Math.floorMod(6 * stem - 5 * branch, 60);
+    }
+
+    /**
+     * 序号转干支文本，返回预先构造的共享字符串。
+     */
+    public static String name(int index) {
+        return NAMES[index];
+    }
+
+    public static int stem(int index) {
+        return index % 10;
+    }
+
+    public static int branch(int index) {
+        return index % 12;
+    }
+
+    public static int stemElement(int stem) {
+        return STEM_ELEMENT[stem];
+    }
+
+    public static int branchElement(int branch) {
+        return BRANCH_ELEMENT[branch];
+    }
+
+    /**
+     * 藏干按本气、中气、余气排列。
+     */
+    public static int[] hiddenStems(int branch) {
+        return HIDDEN_STEMS[branch].clone();
+    }
+
+    public static boolean generates(int fromElement, int toElement) {
+        return (fromElement + 1) % 5 == toElement;
+    }
+
+    public static boolean controls(int fromElement, int toElement) {
+        return (fromElement + 2) % 5 == toElement;
+    }
+
+    public static int relations(int a, int b) {
+        return TABLE[a * 60 + b];
+    }
+
+    /**
+     * 柱对日主的扶抑：天干、地支本气各计一票，同类/生我 +1，克我 -1，我生/我克（泄耗）-0.5，取 2 倍整数。
+     */
+    public static int supportTwice(int pillar, int dayStem) {
+        int me = STEM_ELEMENT[dayStem];
+        return elementSupportTwice(STEM_ELEMENT[stem(pillar)], me)
+                + elementSupportTwice(BRANCH_ELEMENT[branch(pillar)], me);
+    }
+
+    private static int elementSupportTwice(int element, int me) {
+        if (element == me || generates(element, me)) {
+            return 2;
+        }
+        if (controls(element, me)) {
+            return -2;
+        }
+        return -1;
+    }
+
+    private static int compute(int a, int b) {
+        int sa = stem(a);
+        int sb = stem(b);
+        int ba = branch(a);
+        int bb = branch(b);
+        int ea = STEM_ELEMENT[sa];
+        int eb = STEM_ELEMENT[sb];
+        int bits = 0;
+
+        if (Math.abs(sa - sb) == 5) {
+            bits |= STEM_HE;
+        }
+        boolean stemChong = Math.abs(sa - sb) == 6 && Math.min(sa, sb) < 4;
+        if (stemChong) {
+            bits |= STEM_CHONG;
+        }
+        if (ea == eb) {
+            bits |= STEM_SAME;
+        } else if (generates(ea, eb)) {
+            bits |= STEM_SHENG;
+        } else if (generates(eb, ea)) {
+            bits |= STEM_SHENG_BY;
+        } else if (controls(ea, eb)) {
+            bits |= STEM_KE;
+        } else if (controls(eb, ea)) {
+            bits |= STEM_KE_BY;
+        }
+
+        if ((ba + bb) % 12 == 1) {
+            bits |= BRANCH_HE;
+        }
+        boolean branchChong = Math.abs(ba - bb) == 6;
+        if (branchChong) {
+            bits |= BRANCH_CHONG;
+        }
+        if ((ba + bb) % 12 == 7) {
+            bits |= BRANCH_HAI;
+        }
+        if (isXing(ba, bb)) {
+            bits |= BRANCH_XING;
+        }
+        // 申子辰 / 巳酉丑 / 寅午戌 / 亥卯未：序号模 4 相同即同一三合局
+        if (ba != bb && ba % 4 == bb % 4) {
+            bits |= BRANCH_BANHE;
+        }
+
+        if (a == b) {
+            bits |= FUYIN;
+        }
+        if (branchChong && (stemChong || controls(ea, eb) || controls(eb, ea))) {
+            bits |= FANYIN;
+        }
+        return bits;
+    }
+
+    /**
+     * 寅巳申、丑戌未（两两相刑）、子卯相刑、辰午酉亥自刑。
+     */
+    private static boolean isXing(int x, int y) {
+        if (x == y) {
+            return x == 4 || x == 6 || x == 9 || x == 11;
+        }
+        int lo = Math.min(x, y);
+        int hi = Math.max(x, y);
+        return (lo == 2 && hi == 5) || (lo == 5 && hi == 8) || (lo == 2 && hi == 8)
+                || (lo == 1 && hi == 10) || (lo == 7 && hi == 10) || (lo == 1 && hi == 7)
+                || (lo == 0 && hi == 3);
+    }
+}
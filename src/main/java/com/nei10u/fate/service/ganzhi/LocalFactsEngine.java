@@ -0,0 +1,172 @@
+package com.nei10u.fate.service.ganzhi;
+
+import com.nei10u.fate.model.FateResponse;
+import com.nei10u.fate.service.FateAiService;
+import org.springframework.stereotype.Component;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * 本地命理事实引擎：按干支关系表逐年推出 dayun / dayun_effect / liunian / relations / judgement，
+ * 替代 Prompt① 的 LLM 事实推演，结果确定、可复现，单次 100 年耗时在微秒级。
+ * <p>
+ * 规则：
+ * - 流年：以年柱为 1 岁，逐岁顺推六十甲子
+ * - 大运：起运前为“童限”（以月柱论扶抑），之后取起运年龄不超过当年的最后一步
+ * - dayun_effect：大运干、支本气对日主的扶抑（同类/生我为扶，克我为克，泄耗折半）
+ * - relations：流年对原局四柱、对大运的 合/冲/害/刑/半合、伏吟/反吟，以及流年天干对日主的生克
+ * - judgement：运的扶抑 + 流年扶抑 + 冲日柱/大运（减）与合日支（加）综合取号
+ * <p>
+ * 关系文案刻意不含“相冲/相害/相生”前缀，以便 FixedQuantRules 按具体关系取放大系数。
+ */
+@Component
+public class LocalFactsEngine {
+
+    public static final int YEARS = 100;
+
+    private static final String[] PILLAR_NAMES = {"年", "月", "日", "时"};
+
+    public FateAiService.YearlyFactsResult facts(FateResponse.BaZiInfo bazi) {
+        int[] natal = {
+                GanZhiRelations.index(bazi.getYearPillar()),
+                GanZhiRelations.index(bazi.getMonthPillar()),
+                GanZhiRelations.index(bazi.getDayPillar()),
+                GanZhiRelations.index(bazi.getHourPillar())
+        };
+        for (int p : natal) {
+            if (p < 0) {
+                throw new IllegalArgumentException("无法识别的四柱: " + bazi.getYearPillar() + bazi.getMonthPillar()
+                        + bazi.getDayPillar() + bazi.getHourPillar());
+            }
+        }
+        int dayStem = GanZhiRelations.stem(natal[2]);
+        DaYunIndex daYunIndex = DaYunIndex.of(bazi.getDaYunList());
+
+        List<FateAiService.YearlyFactItem> items = new ArrayList<>(YEARS);
+        for (int age = 1; age <= YEARS; age++) {
+            String daYunName = daYunIndex.at(age);
+            // 童限不是干支，index 返回 -1
+            int daYun = GanZhiRelations.index(daYunName);
+            int liuNian = (natal[0] + age - 1) % 60;
+            items.add(yearFact(age, natal, dayStem, daYun, daYunName, liuNian));
+        }
+
+        FateAiService.YearlyFactsResult result = new FateAiService.YearlyFactsResult();
+        result.setItems(items);
+        return result;
+    }
+
+    private FateAiService.YearlyFactItem yearFact(int age, int[] natal, int dayStem,
+                                                  int daYun, String daYunName, int liuNian) {
+        List<String> relations = new ArrayList<>(6);
+        int judgement = 0;
+
+        for (int i = 0; i < natal.length; i++) {
+            int bits = GanZhiRelations.relations(liuNian, natal[i]);
+            String pillar = PILLAR_NAMES[i];
+            if ((bits & GanZhiRelations.FUYIN) != 0) {
+                relations.add("伏吟" + pillar + "柱");
+            }
+            if ((bits & GanZhiRelations.FANYIN) != 0) {
+                relations.add("反吟" + pillar + "柱");
+            }
+            if ((bits & GanZhiRelations.BRANCH_CHONG) != 0) {
+                relations.add("冲" + pillar + "支");
+            }
+            if ((bits & GanZhiRelations.BRANCH_HAI) != 0) {
+                relations.add("害" + pillar + "支");
+            }
+            if ((bits & GanZhiRelations.BRANCH_XING) != 0) {
+                relations.add("刑" + pillar + "支");
+            }
+            if ((bits & GanZhiRelations.BRANCH_HE) != 0) {
+                relations.add("六合" + pillar + "支");
+            } else if ((bits & GanZhiRelations.BRANCH_BANHE) != 0) {
+                relations.add("半合" + pillar + "支");
+            }
+            if ((bits & GanZhiRelations.STEM_HE) != 0) {
+                relations.add("合" + pillar + "干");
+            }
+            if (i == 2) {
+                if ((bits & (GanZhiRelations.BRANCH_CHONG | GanZhiRelations.FANYIN)) != 0) {
+                    judgement--;
+                } else if ((bits & (GanZhiRelations.BRANCH_HE | GanZhiRelations.BRANCH_BANHE)) != 0) {
+                    judgement++;
+                }
+            }
+        }
+
+        int stemToDayMaster = GanZhiRelations.relations(liuNian, natal[2]);
+        if ((stemToDayMaster & GanZhiRelations.STEM_SHENG) != 0) {
+            relations.add("流年生日主");
+        } else if ((stemToDayMaster & GanZhiRelations.STEM_KE) != 0) {
+            relations.add("流年克日主");
+        } else if ((stemToDayMaster & GanZhiRelations.STEM_SAME) != 0) {
+            relations.add("比劫助身");
+        }
+
+        if (daYun >= 0) {
+            int bits = GanZhiRelations.relations(liuNian, daYun);
+            if ((bits & GanZhiRelations.FUYIN) != 0) {
+                relations.add("岁运并临");
+            }
+            if ((bits & GanZhiRelations.FANYIN) != 0) {
+                relations.add("反吟大运");
+            }
+            if ((bits & GanZhiRelations.BRANCH_CHONG) != 0) {
+                relations.add("冲大运");
+                judgement--;
+            }
+            if ((bits & GanZhiRelations.BRANCH_HE) != 0) {
+                relations.add("六合大运");
+            }
+        }
+
+        // 童限以月柱论扶抑
+        int effectScore = GanZhiRelations.supportTwice(daYun >= 0 ? daYun : natal[1], dayStem);
+        String effect = effectScore >= 3 ? "扶身" : effectScore <= -3 ? "克身" : "中性";
+        judgement += effectScore >= 3 ? 1 : effectScore <= -3 ? -1 : 0;
+        int yearScore = GanZhiRelations.supportTwice(liuNian, dayStem);
+        judgement += yearScore >= 3 ? 1 : yearScore <= -3 ? -1 : 0;
+        String verdict = judgement > 0 ? "偏吉" : judgement < 0 ? "偏凶" : "中平";
+
+        String liuNianName = GanZhiRelations.name(liuNian);
+        String daYunText = daYun >= 0 ? daYunName : DaYunIndex.CHILDHOOD;
+
+        FateAiService.YearlyFactItem item = new FateAiService.YearlyFactItem();
+        item.setAge(age);
+        item.setDayun(daYunText);
+        item.setDayun_effect(effect);
+        item.setLiunian(liuNianName);
+        item.setRelations(relations);
+        item.setJudgement(verdict);
+        item.setComment(comment(age, daYunText, effect, liuNianName, relations, verdict));
+        return item;
+    }
+
+    private String comment(int age, String daYun, String effect, String liuNian, List<String> relations, String verdict) {
+        StringBuilder sb = new StringBuilder(48);
+        sb.append(daYun).append("运").append(effect).append("，").append(liuNian).append("年");
+        if (relations.isEmpty()) {
+            sb.append("与原局无明显刑冲合害");
+        } else {
+            sb.append(String.join("、", relations.subList(0, Math.min(3, relations.size()))));
+        }
+        sb.append("；").append(lifeStage(age)).append(switch (verdict) {
+            case "偏吉" -> "宜积极进取";
+            case "偏凶" -> "宜稳守防险";
+            default -> "宜循序渐进";
+        });
+        return sb.toString();
+    }
+
+    private String lifeStage(int age) {
+        if (age <= 12) return "成长与健康";
+        if (age <= 22) return "学业";
+        if (age <= 35) return "事业起步与婚恋";
+        if (age <= 55) return "事业与财运";
+        if (age <= 70) return "家庭与健康";
+        return "健康颐养";
+    }
+}
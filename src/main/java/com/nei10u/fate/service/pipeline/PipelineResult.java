@@ -0,0 +1,111 @@
+package com.nei10u.fate.service.pipeline;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * 流水线执行结果：各阶段产出、失败原因与耗时。
+ */
+public final class PipelineResult {
+
+    private final String requestId;
+    private final StageGraph graph;
+    private final Map<String, Object> values;
+    private final Map<String, Throwable> failures;
+    private final Map<String, StageTiming> timings;
+    private final long totalMillis;
+
+    PipelineResult(String requestId,
+                   StageGraph graph,
+                   Map<String, Object> values,
+                   Map<String, Throwable> failures,
+                   Map<String, StageTiming> timings,
+                   long totalMillis) {
+        this.requestId = requestId;
+        this.graph = graph;
+        this.values = values;
+        this.failures = failures;
+        this.timings = timings;
+        this.totalMillis = totalMillis;
+    }
+
+    public String requestId() {
+        return requestId;
+    }
+
+    /**
+     * 获取阶段结果；阶段失败时抛出其失败原因。
+     */
+    @SuppressWarnings("unchecked")
+    public <T> T require(String stage) {
+        Throwable failure = failures.get(stage);
+        if (failure != null) {
+            throw failure instanceof RuntimeException re ? re : new IllegalStateException(failure);
+        }
+        if (!values.containsKey(stage)) {
+            throw new IllegalStateException("阶段未执行: " + stage);
+        }
+        return (T) values.get(stage);
+    }
+
+    public boolean executed(String stage) {
+        StageTiming t = timings.get(stage);
+        return t != null && t.status() != StageTiming.Status.SEEDED;
+    }
+
+    public long totalMillis() {
+        return totalMillis;
+    }
+
+    public List<StageTiming> timings() {
+        return List.copyOf(timings.values());
+    }
+
+    /**
+     * 阶段名 -> 执行耗时（毫秒），用于响应体回传；预置（SEEDED）阶段不计入。
+     */
+    public Map<String, Long> timingsMillis() {
+        Map<String, Long> out = new LinkedHashMap<>();
+        for (StageTiming t : timings.values()) {
+            if (t.status() != StageTiming.Status.SEEDED) {
+                out.put(t.stage(), t.durationMillis());
+            }
+        }
+        return out;
+    }
+
+    /**
+     * 关键路径：从最晚结束的阶段出发，逐级回溯“最晚结束的依赖”。
+     */
+    public List<String> criticalPath() {
+        StageTiming last = null;
+        for (StageTiming t : timings.values()) {
+            if (t.status() == StageTiming.Status.SEEDED) {
+                continue;
+            }
+            if (last == null || t.finishOffsetMillis() >= last.finishOffsetMillis()) {
+                last = t;
+            }
+        }
+        List<String> path = new ArrayList<>();
+        while (last != null) {
+            path.add(last.stage());
+            StageTiming next = null;
+            for (String dep : graph.stage(last.stage()).dependsOn()) {
+                StageTiming t = timings.get(dep);
+                if (t == null || t.status() == StageTiming.Status.SEEDED) {
+                    continue;
+                }
+                if (next == null || t.finishOffsetMillis() > next.finishOffsetMillis()) {
+                    next = t;
+                }
+            }
+            last = next;
+        }
+        Collections.reverse(path);
+        return path;
+    }
+}
@@ -0,0 +1,64 @@
+package com.nei10u.fate.service.pipeline;
+
+import java.time.Duration;
+import java.util.concurrent.Callable;
+
+/**
+ * 当前线程所在阶段的截止时间（由 {@link StagePipelineExecutor} 在阶段开始执行时设置，结束时清除）。
+ * <p>
+ * 模型调用据此得知调用方还剩多少预算（如 {@link com.nei10u.fate.service.ModelAdmission} 的排队判断）；
+ * 阶段内再扇出到其他线程池的子任务需用 {@link #propagate(Callable)} 包装，才能带上同一截止时间。
+ */
+public final class StageDeadline {
+
+    private static final ThreadLocal<Long> DEADLINE = new ThreadLocal<>();
+
+    private StageDeadline() {
+    }
+
+    /**
+     * 距截止时间的剩余预算（已过期为 0）；当前线程不在带超时的阶段内时为 null。
+     */
+    public static Duration remaining() {
+        Long deadline = DEADLINE.get();
+        if (deadline == null) {
+            return null;
+        }
+        return Duration.ofNanos(Math.max(0, deadline - System.nanoTime()));
+    }
+
+    /**
+     * 捕获当前线程的截止时间，在执行 task 的线程上恢复；当前没有截止时间时原样返回。
+     */
+    public static <T> Callable<T> propagate(Callable<T> task) {
+        Long deadline = DEADLINE.get();
+        if (deadline == null) {
+            return task;
+        }
+        return () -> {
+            Long previous = DEADLINE.get();
+            DEADLINE.set(deadline);
+            try {
+                return task.call();
+            } finally {
+                restore(previous);
+            }
+        };
+    }
+
+    static void set(long deadlineNanos) {
+        DEADLINE.set(deadlineNanos);
+    }
+
+    static void clear() {
+        DEADLINE.remove();
+    }
+
+    private static void restore(Long previous) {
+        if (previous == null) {
+            DEADLINE.remove();
+        } else {
+            DEADLINE.set(previous);
+        }
+    }
+}
@@ -0,0 +1,98 @@
+package com.nei10u.fate.service.pipeline;
+
+import java.time.Duration;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.function.Function;
+
+/**
+ * 阶段依赖图（DAG）：描述各阶段的依赖、超时与执行体。
+ * <p>
+ * 约束：依赖必须在声明当前阶段之前声明，因此图天然无环，且插入顺序即拓扑序。
+ */
+public final class StageGraph {
+
+    /**
+     * 阶段执行体：可从上下文读取依赖阶段的结果。
+     */
+    @FunctionalInterface
+    public interface StageTask {
+        Object run(StageContext ctx) throws Exception;
+    }
+
+    /**
+     * 阶段执行上下文：只暴露已完成的依赖结果。
+     */
+    public interface StageContext {
+        String requestId();
+
+        <T> T get(String stage);
+    }
+
+    /**
+     * @param fallback 失败/超时时的兜底（可为空；为空则失败向下游传播）
+     */
+    public record Stage(String name,
+                        List<String> dependsOn,
+                        Duration timeout,
+                        StageTask task,
+                        Function<Throwable, Object> fallback) {
+    }
+
+    private final Map<String, Stage> stages;
+
+    private StageGraph(Map<String, Stage> stages) {
+        this.stages = Collections.unmodifiableMap(stages);
+    }
+
+    public static Builder builder() {
+        return new Builder();
+    }
+
+    public Stage stage(String name) {
+        Stage s = stages.get(name);
+        if (s == null) {
+            throw new IllegalArgumentException("未知阶段: " + name);
+        }
+        return s;
+    }
+
+    /**
+     * 按拓扑序返回全部阶段。
+     */
+    public Collection<Stage> stages() {
+        return stages.values();
+    }
+
+    public static final class Builder {
+        private final Map<String, Stage> stages = new LinkedHashMap<>();
+
+        public Builder stage(String name, List<String> dependsOn, Duration timeout, StageTask task) {
+            return stage(name, dependsOn, timeout, task, null);
+        }
+
+        public Builder stage(String name,
+                             List<String> dependsOn,
+                             Duration timeout,
+                             StageTask task,
+                             Function<Throwable, Object> fallback) {
+            if (stages.containsKey(name)) {
+                throw new IllegalArgumentException("阶段重复声明: " + name);
+            }
+            for (String dep : dependsOn) {
+                if (!stages.containsKey(dep)) {
+                    throw new IllegalArgumentException("阶段 " + name + " 依赖未声明的阶段: " + dep);
+                }
+            }
+            stages.put(name, new Stage(name, List.copyOf(dependsOn), timeout, task, fallback));
+            return this;
+        }
+
+        public StageGraph build() {
+            return new StageGraph(new LinkedHashMap<>(stages));
+        }
+    }
+}
@@ -0,0 +1,232 @@
+package com.nei10u.fate.service.pipeline;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Qualifier;
+import org.springframework.stereotype.Component;
+
+import java.time.Duration;
+import java.util.ArrayDeque;
+import java.util.Collection;
+import java.util.Deque;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Future;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * 阶段流水线执行器：按 {@link StageGraph} 的依赖关系并发执行各阶段。
+ * <p>
+ * - 依赖全部完成后才提交到专用的有界线程池，等待依赖期间不占用任何线程
+ * - 每个阶段独立超时（从开始执行时计起，不含排队）；超时会中断执行线程，并按阶段声明的 fallback 兜底
+ * - 记录每个阶段的启动偏移、排队时间与耗时，并给出关键路径
+ */
+@Component
+public class StagePipelineExecutor {
+
+    private static final Logger log = LoggerFactory.getLogger(StagePipelineExecutor.class);
+
+    private final ExecutorService executor;
+
+    public StagePipelineExecutor(@Qualifier("fateStageExecutor") ExecutorService executor) {
+        this.executor = executor;
+    }
+
+    /**
+     * 同步执行：阻塞到目标阶段（及其依赖）全部结束。
+     */
+    public PipelineResult execute(String requestId, StageGraph graph, Map<String, Object> seeds, Collection<String> targets) {
+        return submit(requestId, graph, seeds, targets).join();
+    }
+
+    /**
+     * 异步执行：仅调度目标阶段及其传递依赖；seeds 中的阶段视为已完成（例如来自会话缓存）。
+     */
+    public CompletableFuture<PipelineResult> submit(String requestId,
+                                                    StageGraph graph,
+                                                    Map<String, Object> seeds,
+                                                    Collection<String> targets) {
+        long t0 = System.nanoTime();
+        Set<String> needed = resolveNeeded(graph, seeds, targets);
+        Map<String, CompletableFuture<Object>> futures = new ConcurrentHashMap<>();
+        Map<String, StageTiming> timings = new ConcurrentHashMap<>();
+
+        StageGraph.StageContext ctx = new StageGraph.StageContext() {
+            @Override
+            public String requestId() {
+                return requestId;
+            }
+
+            @Override
+            @SuppressWarnings("unchecked")
+            public <T> T get(String stage) {
+                CompletableFuture<Object> f = futures.get(stage);
+                return f == null ? null : (T) f.getNow(null);
+            }
+        };
+
+        for (StageGraph.Stage stage : graph.stages()) {
+            String name = stage.name();
+            if (seeds.containsKey(name)) {
+                futures.put(name, CompletableFuture.completedFuture(seeds.get(name)));
+                timings.put(name, new StageTiming(name, StageTiming.Status.SEEDED, 0, 0, 0));
+                continue;
+            }
+            if (!needed.contains(name)) {
+                continue;
+            }
+            CompletableFuture<Object> out = new CompletableFuture<>();
+            futures.put(name, out);
+            CompletableFuture<?>[] deps = stage.dependsOn().stream()
+                    .map(futures::get)
+                    .toArray(CompletableFuture[]::new);
+            CompletableFuture.allOf(deps).whenComplete((ignored, depErr) -> {
+                if (depErr != null) {
+                    long offset = elapsedMillis(t0);
+                    timings.put(name, new StageTiming(name, StageTiming.Status.FAILED, offset, 0, 0));
+                    out.completeExceptionally(unwrap(depErr));
+                    return;
+                }
+                launch(stage, ctx, out, timings, t0);
+            });
+        }
+
+        CompletableFuture<?>[] all = needed.stream()
+                .map(futures::get)
+                .map(f -> f.handle((v, e) -> null))
+                .toArray(CompletableFuture[]::new);
+        return CompletableFuture.allOf(all).thenApply(ignored -> {
+            Map<String, Object> values = new HashMap<>();
+            Map<String, Throwable> failures = new HashMap<>();
+            Map<String, StageTiming> ordered = new LinkedHashMap<>();
+            for (StageGraph.Stage stage : graph.stages()) {
+                CompletableFuture<Object> f = futures.get(stage.name());
+                if (f == null) {
+                    continue;
+                }
+                try {
+                    values.put(stage.name(), f.join());
+                } catch (CompletionException e) {
+                    failures.put(stage.name(), unwrap(e));
+                }
+                StageTiming t = timings.get(stage.name());
+                if (t != null) {
+                    ordered.put(stage.name(), t);
+                }
+            }
+            PipelineResult result = new PipelineResult(requestId, graph, values, failures, ordered, elapsedMillis(t0));
+            log.info("[{}] pipeline done total={}ms critical={} timings={}", requestId, result.totalMillis(),
+                    String.join(">", result.criticalPath()), result.timingsMillis());
+            return result;
+        });
+    }
+
+    private void launch(StageGraph.Stage stage,
+                        StageGraph.StageContext ctx,
+                        CompletableFuture<Object> out,
+                        Map<String, StageTiming> timings,
+                        long t0) {
+        String name = stage.name();
+        long submittedAt = System.nanoTime();
+        AtomicLong startedAt = new AtomicLong(0);
+        CompletableFuture<Object> raw = new CompletableFuture<>();
+        Duration timeout = stage.timeout();
+        Future<?> running;
+        try {
+            running = executor.submit(() -> {
+                long begin = System.nanoTime();
+                startedAt.set(begin);
+                // 超时从真正开始执行时计起，线程池排队时间不占用阶段预算；截止时间同时告知阶段内的模型调用
+                if (timeout != null) {
+                    raw.orTimeout(timeout.toMillis(), TimeUnit.MILLISECONDS);
+                    StageDeadline.set(begin + timeout.toNanos());
+                }
+                try {
+                    raw.complete(stage.task().run(ctx));
+                } catch (Throwable e) {
+                    raw.completeExceptionally(e);
+                } finally {
+                    StageDeadline.clear();
+                }
+            });
+        } catch (RejectedExecutionException e) {
+            running = null;
+            raw.completeExceptionally(e);
+        }
+        Future<?> task = running;
+        raw.whenComplete((value, err) -> {
+            long started = startedAt.get();
+            long start = started == 0 ? submittedAt : started;
+            long queued = TimeUnit.NANOSECONDS.toMillis(start - submittedAt);
+            long offset = TimeUnit.NANOSECONDS.toMillis(start - t0);
+            long duration = started == 0 ? 0 : elapsedMillis(started);
+            if (err == null) {
+                timings.put(name, new StageTiming(name, StageTiming.Status.OK, offset, queued, duration));
+                out.complete(value);
+                return;
+            }
+            Throwable cause = unwrap(err);
+            // 只有声明了超时的阶段才会被 orTimeout 截止；未声明超时的阶段自己抛出的 TimeoutException 按普通失败处理
+            boolean timedOut = cause instanceof TimeoutException && timeout != null;
+            if (timedOut) {
+                if (task != null) {
+                    task.cancel(true);
+                }
+                cause = new IllegalStateException("阶段 " + name + " 超时（" + timeout.toMillis() + "ms）", cause);
+            }
+            log.warn("[{}] stage {} {} after {}ms (queued {}ms): {}", ctx.requestId(), name,
+                    timedOut ? "timeout" : "failed", duration, queued, cause.getMessage());
+            if (stage.fallback() != null) {
+                try {
+                    Object fallback = stage.fallback().apply(cause);
+                    timings.put(name, new StageTiming(name, StageTiming.Status.FALLBACK, offset, queued, duration));
+                    out.complete(fallback);
+                    return;
+                } catch (Throwable fallbackErr) {
+                    cause = fallbackErr;
+                }
+            }
+            timings.put(name, new StageTiming(name,
+                    timedOut ? StageTiming.Status.TIMEOUT : StageTiming.Status.FAILED, offset, queued, duration));
+            out.completeExceptionally(cause);
+        });
+    }
+
+    private Set<String> resolveNeeded(StageGraph graph, Map<String, Object> seeds, Collection<String> targets) {
+        Set<String> needed = new HashSet<>();
+        Deque<String> pending = new ArrayDeque<>(targets);
+        while (!pending.isEmpty()) {
+            String name = pending.pop();
+            if (seeds.containsKey(name) || !needed.add(name)) {
+                continue;
+            }
+            List<String> deps = graph.stage(name).dependsOn();
+            pending.addAll(deps);
+        }
+        return needed;
+    }
+
+    private static long elapsedMillis(long fromNanos) {
+        return TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - fromNanos);
+    }
+
+    private static Throwable unwrap(Throwable e) {
+        Throwable cur = e;
+        while ((cur instanceof CompletionException || cur instanceof ExecutionException) && cur.getCause() != null) {
+            cur = cur.getCause();
+        }
+        return cur;
+    }
+}
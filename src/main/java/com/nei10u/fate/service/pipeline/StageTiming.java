@@ -0,0 +1,23 @@
+package com.nei10u.fate.service.pipeline;
+
+/**
+ * 单个阶段的执行耗时。
+ *
+ * @param startOffsetMillis 相对流水线开始的启动偏移（含排队时间）
+ * @param queueMillis       依赖就绪后在线程池中排队等待的时间
+ * @param durationMillis    阶段自身执行耗时（不含排队）
+ */
+public record StageTiming(String stage, Status status, long startOffsetMillis, long queueMillis, long durationMillis) {
+
+    public enum Status {
+        OK,
+        FALLBACK,
+        FAILED,
+        TIMEOUT,
+        SEEDED
+    }
+
+    public long finishOffsetMillis() {
+        return startOffsetMillis + durationMillis;
+    }
+}
@@ -0,0 +1,483 @@
+package com.nei10u.fate.service.session;
+
+import com.nei10u.fate.model.FateKLinePoint;
+import com.nei10u.fate.model.YearlyBatchResult;
+import com.nei10u.fate.service.ganzhi.GanZhiRelations;
+
+import java.io.ByteArrayOutputStream;
+import java.io.DataInput;
+import java.io.DataOutput;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.zip.DataFormatException;
+import java.util.zip.Deflater;
+import java.util.zip.Inflater;
+
+/**
+ * 会话中 K 线点位与年度条目的紧凑列式表示（不可变）。
+ * <p>
+ * - 数值列：age / open / close / score 为 short（缺失记 {@link #NULL}），year 为 int
+ * - 趋势：Bullish、Bearish 各一个位图，两者皆无为 null
+ * - 干支/大运：byte 编码 0..59，-1 为 null；其他文本（如“童限”）记 -2，原文放在稀疏的 rare 列
+ * - 文本：点位描述与条目批注去重后按 UTF-8 拼成一个块（可选 Deflate 压缩），列里只存序号
+ * <p>
+ * FateKLinePoint / YearlyItem 只在序列化输出时按需还原，每次还原返回新的可变对象。
+ */
+public final class CompactSeries {
+
+    public static final short NULL = Short.MIN_VALUE;
+
+    private static final byte CODE_NULL = -1;
+    private static final byte CODE_RARE = -2;
+    private static final String BULLISH = "Bullish";
+    private static final String BEARISH = "Bearish";
+    private static final int COMPRESS_MIN_BYTES = 512;
+
+    public static final CompactSeries EMPTY = new CompactSeries(null, null, TextPool.EMPTY);
+
+    private final Rows points;
+    private final Rows items;
+    private final TextPool text;
+
+    private CompactSeries(Rows points, Rows items, TextPool text) {
+        this.points = points;
+        this.items = items;
+        this.text = text;
+    }
+
+    public static CompactSeries of(List<YearlyBatchResult.YearlyItem> yearlyItems,
+                                   List<FateKLinePoint> kLineData,
+                                   boolean compressText) {
+        if (yearlyItems == null && kLineData == null) {
+            return EMPTY;
+        }
+        TextPool.Builder text = new TextPool.Builder();
+        Rows points = null;
+        if (kLineData != null) {
+            points = new Rows(kLineData.size(), true);
+            for (int i = 0; i < kLineData.size(); i++) {
+                FateKLinePoint p = kLineData.get(i);
+                points.set(i, p.getAge(), p.getYear(), p.getScore(), p.getOpen(), p.getClose(),
+                        p.getTrend(), p.getGanZhi(), p.getDaYun(), text.add(p.getDescription()));
+            }
+        }
+        Rows items = null;
+        if (yearlyItems != null) {
+            items = new Rows(yearlyItems.size(), false);
+            for (int i = 0; i < yearlyItems.size(); i++) {
+                YearlyBatchResult.YearlyItem it = yearlyItems.get(i);
+                items.set(i, it.getAge(), 0, it.getScore(), it.getOpen(), it.getClose(),
+                        it.getTrend(), it.getGanZhi(), it.getDaYun(), text.add(it.getContent()));
+            }
+        }
+        return new CompactSeries(points, items, text.build(compressText));
+    }
+
+    public boolean hasKLineData() {
+        return points != null;
+    }
+
+    public boolean hasYearlyItems() {
+        return items != null;
+    }
+
+    public int yearlyItemCount() {
+        return items == null ? 0 : items.size;
+    }
+
+    /**
+     * 还原 K 线点位；未写入过返回 null（与原先的 List 字段语义一致）。
+     */
+    public List<FateKLinePoint> kLineData() {
+        return points == null ? null : points(text.decode());
+    }
+
+    public List<YearlyBatchResult.YearlyItem> yearlyItems() {
+        return items == null ? null : items(text.decode());
+    }
+
+    /**
+     * 同时还原两组视图，文本块只解压一次（/yearly 两者都要下发）。
+     */
+    public Views views() {
+        if (points == null && items == null) {
+            return new Views(null, null);
+        }
+        String[] texts = text.decode();
+        return new Views(items == null ? null : items(texts), points == null ? null : points(texts));
+    }
+
+    public record Views(List<YearlyBatchResult.YearlyItem> yearlyItems, List<FateKLinePoint> kLineData) {
+    }
+
+    private List<FateKLinePoint> points(String[] texts) {
+        List<FateKLinePoint> out = new ArrayList<>(points.size);
+        for (int i = 0; i < points.size; i++) {
+            out.add(FateKLinePoint.builder()
+                    .age(points.age[i])
+                    .year(points.year[i])
+                    .score(points.score[i])
+                    .open(points.open[i] == NULL ? 0 : points.open[i])
+                    .close(points.close[i] == NULL ? 0 : points.close[i])
+                    .trend(points.trend(i))
+                    .ganZhi(points.ganZhi(i))
+                    .daYun(points.daYun(i))
+                    .description(points.text(i, texts))
+                    .build());
+        }
+        return out;
+    }
+
+    private List<YearlyBatchResult.YearlyItem> items(String[] texts) {
+        List<YearlyBatchResult.YearlyItem> out = new ArrayList<>(items.size);
+        for (int i = 0; i < items.size; i++) {
+            YearlyBatchResult.YearlyItem it = new YearlyBatchResult.YearlyItem();
+            it.setAge(items.age[i]);
+            it.setScore(items.score[i]);
+            it.setOpen(items.open[i] == NULL ? null : (int) items.open[i]);
+            it.setClose(items.close[i] == NULL ? null : (int) items.close[i]);
+            it.setTrend(items.trend(i));
+            it.setGanZhi(items.ganZhi(i));
+            it.setDaYun(items.daYun(i));
+            it.setContent(items.text(i, texts));
+            out.add(it);
+        }
+        return out;
+    }
+
+    /**
+     * 估算驻留字节（数组体 + 对象头）。
+     */
+    public long sizeInBytes() {
+        return 48 + text.sizeInBytes()
+                + (points == null ? 0 : points.sizeInBytes())
+                + (items == null ? 0 : items.sizeInBytes());
+    }
+
+    public void writeTo(DataOutput out) throws IOException {
+        text.writeTo(out);
+        Rows.writeTo(points, out);
+        Rows.writeTo(items, out);
+    }
+
+    public static CompactSeries readFrom(DataInput in) throws IOException {
+        TextPool text = TextPool.readFrom(in);
+        Rows points = Rows.readFrom(in);
+        Rows items = Rows.readFrom(in);
+        if (points == null && items == null) {
+            return EMPTY;
+        }
+        return new CompactSeries(points, items, text);
+    }
+
+    private static short toShort(Integer value) {
+        return value == null ? NULL : toShort(value.intValue());
+    }
+
+    private static short toShort(int value) {
+        return (short) Math.max(Short.MIN_VALUE + 1, Math.min(Short.MAX_VALUE, value));
+    }
+
+    private static final class Rows {
+        final int size;
+        final short[] age;
+        final int[] year;
+        final short[] score;
+        final short[] open;
+        final short[] close;
+        final long[] bullish;
+        final long[] bearish;
+        final byte[] ganZhi;
+        final byte[] daYun;
+        final int[] text;
+        // 稀疏列：row * 3 + {0 趋势, 1 干支, 2 大运}，全部规范时为 null
+        String[] rare;
+
+        Rows(int size, boolean withYear) {
+            this.size = size;
+            this.age = new short[size];
+            this.year = withYear ? new int[size] : null;
+            this.score = new short[size];
+            this.open = new short[size];
+            this.close = new short[size];
+            this.bullish = new long[(size + 63) >>> 6];
+            this.bearish = new long[(size + 63) >>> 6];
+            this.ganZhi = new byte[size];
+            this.daYun = new byte[size];
+            this.text = new int[size];
+        }
+
+        void set(int i, int age, int year, int score, Integer open, Integer close,
+                 String trend, String ganZhi, String daYun, int text) {
+            this.age[i] = toShort(age);
+            if (this.year != null) {
+                this.year[i] = year;
+            }
+            this.score[i] = toShort(score);
+            this.open[i] = toShort(open);
+            this.close[i] = toShort(close);
+            if (BULLISH.equals(trend)) {
+                bullish[i >>> 6] |= 1L << i;
+            } else if (BEARISH.equals(trend)) {
+                bearish[i >>> 6] |= 1L << i;
+            } else if (trend != null) {
+                rare(i, 0, trend);
+            }
+            this.ganZhi[i] = code(i, 1, ganZhi);
+            this.daYun[i] = code(i, 2, daYun);
+            this.text[i] = text;
+        }
+
+        String trend(int i) {
+            if ((bullish[i >>> 6] & (1L << i)) != 0) {
+                return BULLISH;
+            }
+            if ((bearish[i >>> 6] & (1L << i)) != 0) {
+                return BEARISH;
+            }
+            return rare == null ? null : rare[i * 3];
+        }
+
+        String ganZhi(int i) {
+            return name(i, 1, ganZhi[i]);
+        }
+
+        String daYun(int i) {
+            return name(i, 2, daYun[i]);
+        }
+
+        String text(int i, String[] texts) {
+            return text[i] < 0 ? null : texts[text[i]];
+        }
+
+        private byte code(int row, int column, String value) {
+            if (value == null) {
+                return CODE_NULL;
+            }
+            int index = GanZhiRelations.index(value);
+            if (index >= 0 && value.length() == 2) {
+                return (byte) index;
+            }
+            rare(row, column, value);
+            return CODE_RARE;
+        }
+
+        private String name(int row, int column, byte code) {
+            if (code >= 0) {
+                return GanZhiRelations.name(code);
+            }
+            return code == CODE_RARE ? rare[row * 3 + column] : null;
+        }
+
+        private void rare(int row, int column, String value) {
+            if (rare == null) {
+                rare = new String[size * 3];
+            }
+            rare[row * 3 + column] = value;
+        }
+
+        long sizeInBytes() {
+            long bytes = 96 + size * (2L * 4 + 2 + 4) + (year == null ? 0 : 16 + 4L * size)
+                    + 16L * bullish.length + 10 * 16;
+            if (rare != null) {
+                bytes += 16 + 4L * rare.length;
+                for (String s : rare) {
+                    bytes += s == null ? 0 : 40 + 2L * s.length();
+                }
+            }
+            return bytes;
+        }
+
+        static void writeTo(Rows rows, DataOutput out) throws IOException {
+            if (rows == null) {
+                out.writeInt(-1);
+                return;
+            }
+            out.writeInt(rows.size);
+            out.writeBoolean(rows.year != null);
+            for (int i = 0; i < rows.size; i++) {
+                out.writeShort(rows.age[i]);
+                if (rows.year != null) {
+                    out.writeInt(rows.year[i]);
+                }
+                out.writeShort(rows.score[i]);
+                out.writeShort(rows.open[i]);
+                out.writeShort(rows.close[i]);
+                out.writeByte(rows.ganZhi[i]);
+                out.writeByte(rows.daYun[i]);
+                out.writeInt(rows.text[i]);
+            }
+            for (int w = 0; w < rows.bullish.length; w++) {
+                out.writeLong(rows.bullish[w]);
+                out.writeLong(rows.bearish[w]);
+            }
+            out.writeBoolean(rows.rare != null);
+            if (rows.rare != null) {
+                for (String s : rows.rare) {
+                    out.writeBoolean(s != null);
+                    if (s != null) {
+                        out.writeUTF(s);
+                    }
+                }
+            }
+        }
+
+        static Rows readFrom(DataInput in) throws IOException {
+            int size = in.readInt();
+            if (size < 0) {
+                return null;
+            }
+            Rows rows = new Rows(size, in.readBoolean());
+            for (int i = 0; i < size; i++) {
+                rows.age[i] = in.readShort();
+                if (rows.year != null) {
+                    rows.year[i] = in.readInt();
+                }
+                rows.score[i] = in.readShort();
+                rows.open[i] = in.readShort();
+                rows.close[i] = in.readShort();
+                rows.ganZhi[i] = in.readByte();
+                rows.daYun[i] = in.readByte();
+                rows.text[i] = in.readInt();
+            }
+            for (int w = 0; w < rows.bullish.length; w++) {
+                rows.bullish[w] = in.readLong();
+                rows.bearish[w] = in.readLong();
+            }
+            if (in.readBoolean()) {
+                rows.rare = new String[size * 3];
+                for (int i = 0; i < rows.rare.length; i++) {
+                    rows.rare[i] = in.readBoolean() ? in.readUTF() : null;
+                }
+            }
+            return rows;
+        }
+    }
+
+    /**
+     * 去重后的文本块：UTF-8 拼接 + 偏移表；超过 {@value #COMPRESS_MIN_BYTES} 字节且压缩有收益时整体 Deflate。
+     */
+    private static final class TextPool {
+
+        static final TextPool EMPTY = new TextPool(new byte[0], new int[]{0}, false);
+
+        final byte[] blob;
+        final int[] offsets;
+        final boolean compressed;
+
+        TextPool(byte[] blob, int[] offsets, boolean compressed) {
+            this.blob = blob;
+            this.offsets = offsets;
+            this.compressed = compressed;
+        }
+
+        String[] decode() {
+            byte[] raw = compressed ? inflate(blob, offsets[offsets.length - 1]) : blob;
+            String[] out = new String[offsets.length - 1];
+            for (int i = 0; i < out.length; i++) {
+                out[i] = new String(raw, offsets[i], offsets[i + 1] - offsets[i], StandardCharsets.UTF_8);
+            }
+            return out;
+        }
+
+        long sizeInBytes() {
+            return 32 + 16 + blob.length + 16 + 4L * offsets.length;
+        }
+
+        void writeTo(DataOutput out) throws IOException {
+            out.writeBoolean(compressed);
+            out.writeInt(offsets.length);
+            for (int offset : offsets) {
+                out.writeInt(offset);
+            }
+            out.writeInt(blob.length);
+            out.write(blob);
+        }
+
+        static TextPool readFrom(DataInput in) throws IOException {
+            boolean compressed = in.readBoolean();
+            int[] offsets = new int[in.readInt()];
+            for (int i = 0; i < offsets.length; i++) {
+                offsets[i] = in.readInt();
+            }
+            byte[] blob = new byte[in.readInt()];
+            in.readFully(blob);
+            return new TextPool(blob, offsets, compressed);
+        }
+
+        private static byte[] inflate(byte[] data, int rawLength) {
+            Inflater inflater = new Inflater();
+            try {
+                inflater.setInput(data);
+                byte[] raw = new byte[rawLength];
+                int n = 0;
+                while (n < rawLength && !inflater.finished()) {
+                    n += inflater.inflate(raw, n, rawLength - n);
+                }
+                if (n != rawLength) {
+                    throw new IllegalStateException("会话文本块解压长度不符: " + n + " != " + rawLength);
+                }
+                return raw;
+            } catch (DataFormatException ex) {
+                throw new IllegalStateException("会话文本块损坏", ex);
+            } finally {
+                inflater.end();
+            }
+        }
+
+        static final class Builder {
+            private final Map<String, Integer> index = new HashMap<>();
+            private final ByteArrayOutputStream bytes = new ByteArrayOutputStream(4096);
+            private int[] offsets = new int[64];
+            private int count;
+
+            int add(String s) {
+                if (s == null) {
+                    return -1;
+                }
+                return index.computeIfAbsent(s, k -> {
+                    byte[] utf8 = k.getBytes(StandardCharsets.UTF_8);
+                    if (count + 1 >= offsets.length) {
+                        offsets = Arrays.copyOf(offsets, offsets.length * 2);
+                    }
+                    bytes.writeBytes(utf8);
+                    offsets[++count] = bytes.size();
+                    return count - 1;
+                });
+            }
+
+            TextPool build(boolean compress) {
+                byte[] raw = bytes.toByteArray();
+                int[] finalOffsets = Arrays.copyOf(offsets, count + 1);
+                if (compress && raw.length >= COMPRESS_MIN_BYTES) {
+                    byte[] deflated = deflate(raw);
+                    if (deflated.length < raw.length * 9 / 10) {
+                        return new TextPool(deflated, finalOffsets, true);
+                    }
+                }
+                return new TextPool(raw, finalOffsets, false);
+            }
+
+            private static byte[] deflate(byte[] raw) {
+                Deflater deflater = new Deflater();
+                try {
+                    deflater.setInput(raw);
+                    deflater.finish();
+                    ByteArrayOutputStream out = new ByteArrayOutputStream(raw.length / 2);
+                    byte[] buf = new byte[4096];
+                    while (!deflater.finished()) {
+                        out.write(buf, 0, deflater.deflate(buf));
+                    }
+                    return out.toByteArray();
+                } finally {
+                    deflater.end();
+                }
+            }
+        }
+    }
+}
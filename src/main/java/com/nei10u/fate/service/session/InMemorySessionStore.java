@@ -0,0 +1,201 @@
+package com.nei10u.fate.service.session;
+
+import com.github.benmanes.caffeine.cache.Cache;
+import com.github.benmanes.caffeine.cache.Caffeine;
+import com.github.benmanes.caffeine.cache.Scheduler;
+import com.nei10u.fate.model.FateResponse;
+import com.nei10u.fate.service.FateSessionCache.CacheEntry;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.binder.cache.CaffeineCacheMetrics;
+import jakarta.annotation.PreDestroy;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.stereotype.Component;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.Duration;
+import java.util.Map;
+import java.util.Optional;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.UnaryOperator;
+
+/**
+ * 进程内会话存储（fate.session.store=memory，默认）。
+ * <p>
+ * - 有界：按估算字节计重（K 线为列式紧凑表示），W-TinyLFU 准入/淘汰，一次性扫过的冷会话不会挤掉常用会话
+ * - 过期：自创建起 fate.session.ttl，更新不续期；由后台调度主动清理，不依赖再次 get 同一 key
+ * - 指标：cache.gets / cache.evictions 等（cache=fate.session），以及 fate.session.resident.bytes
+ * - 快照（fate.session.snapshot.enabled）：停机时把未过期条目写入本地文件；启动时只建索引，解码由后台线程完成，
+ *   不阻塞就绪。恢复完成前，被请求到的条目按需先从快照解码，滚动发布时 /yearly 不再因节点重启而 409
+ */
+@Component
+@ConditionalOnProperty(name = "fate.session.store", havingValue = "memory", matchIfMissing = true)
+public class InMemorySessionStore implements SessionStore {
+
+    private static final Logger log = LoggerFactory.getLogger(InMemorySessionStore.class);
+
+    private final Cache<String, CacheEntry> store;
+    private final Duration ttl;
+    private final Path snapshotPath;
+    private final AtomicLong restoredEntries = new AtomicLong();
+    private final AtomicLong restoreMillis = new AtomicLong();
+    /**
+     * 快照恢复进行中时非空；恢复结束置空。
+     */
+    private volatile SessionSnapshot.Restore restoring;
+
+    public InMemorySessionStore(@Value("${fate.session.ttl:30m}") Duration ttl,
+                                @Value("${fate.session.max-weight-mb:96}") long maxWeightMb,
+                                @Value("${fate.session.snapshot.enabled:true}") boolean snapshotEnabled,
+                                @Value("${fate.session.snapshot.path:data/session-snapshot.bin}") Path snapshotPath,
+                                MeterRegistry meterRegistry) {
+        this.ttl = ttl;
+        this.snapshotPath = snapshotEnabled ? snapshotPath : null;
+        this.store = Caffeine.newBuilder()
+                .maximumWeight(Math.max(1, maxWeightMb) * 1024 * 1024)
+                .weigher((String key, CacheEntry entry) -> (int) Math.min(Integer.MAX_VALUE, estimateBytes(key, entry)))
+                .expireAfter(SessionExpiry.sinceCreated(CacheEntry::createdAtMillis, ttl))
+                .scheduler(Scheduler.systemScheduler())
+                .recordStats()
+                .build();
+        CaffeineCacheMetrics.monitor(meterRegistry, store, "fate.session");
+        Gauge.builder("fate.session.resident.bytes", store,
+                        c -> c.policy().eviction().map(e -> e.weightedSize().orElse(0L)).orElse(0L))
+                .description("会话缓存估算驻留字节")
+                .baseUnit("bytes")
+                .register(meterRegistry);
+        Gauge.builder("fate.session.snapshot.restored", restoredEntries, AtomicLong::get)
+                .description("启动时从快照恢复的会话条数")
+                .register(meterRegistry);
+        Gauge.builder("fate.session.snapshot.restore.millis", restoreMillis, AtomicLong::get)
+                .description("快照恢复耗时（毫秒）")
+                .register(meterRegistry);
+        if (this.snapshotPath != null) {
+            openSnapshot();
+        }
+    }
+
+    @Override
+    public Optional<CacheEntry> get(String requestId) {
+        CacheEntry entry = store.getIfPresent(requestId);
+        if (entry == null && restoring != null) {
+            entry = adoptFromSnapshot(requestId);
+        }
+        return Optional.ofNullable(entry);
+    }
+
+    @Override
+    public CacheEntry update(String requestId, UnaryOperator<CacheEntry> update) {
+        if (restoring != null) {
+            // 先并入快照中的旧条目，保证合并规则看到的是恢复后的状态
+            adoptFromSnapshot(requestId);
+        }
+        return store.asMap().compute(requestId, (_k, old) -> update.apply(old));
+    }
+
+    /**
+     * 停机时写快照：Web 容器优雅停机先于单例销毁，进行中的请求此时已结束。
+     */
+    @PreDestroy
+    public void close() {
+        if (snapshotPath == null) {
+            return;
+        }
+        try {
+            SessionSnapshot.Restore pending = restoring;
+            if (pending != null) {
+                for (String key : pending.keys()) {
+                    adoptFromSnapshot(key);
+                }
+            }
+            long start = System.nanoTime();
+            int written = SessionSnapshot.write(snapshotPath, store.asMap(), ttl);
+            log.info("session snapshot written path={} entries={} in {}ms", snapshotPath, written,
+                    (System.nanoTime() - start) / 1_000_000);
+        } catch (IOException | RuntimeException e) {
+            log.warn("会话快照写入失败: {}", e.getMessage(), e);
+        }
+    }
+
+    /**
+     * 启动时只 mmap 并扫描记录头建索引（不解码），之后的请求即可按需命中；逐条解码交给后台线程。
+     */
+    private void openSnapshot() {
+        long start = System.nanoTime();
+        SessionSnapshot.Restore restore;
+        try {
+            restore = SessionSnapshot.open(snapshotPath, ttl);
+        } catch (IOException | RuntimeException e) {
+            log.warn("会话快照不可用，已跳过: {}", e.getMessage(), e);
+            return;
+        }
+        if (restore == null) {
+            return;
+        }
+        restoring = restore;
+        long indexedMicros = (System.nanoTime() - start) / 1_000;
+        Thread worker = new Thread(() -> restoreSnapshot(restore, start, indexedMicros), "fate-session-restore");
+        worker.setDaemon(true);
+        worker.start();
+    }
+
+    private void restoreSnapshot(SessionSnapshot.Restore restore, long start, long indexedMicros) {
+        try {
+            for (String key : restore.keys()) {
+                adoptFromSnapshot(key);
+            }
+            restoreMillis.set((System.nanoTime() - start) / 1_000_000);
+            log.info("session snapshot restored path={} entries={} expired={} index={}us total={}ms", snapshotPath,
+                    restoredEntries.get(), restore.expired, indexedMicros, restoreMillis.get());
+            // 已并入内存，删除避免下次启动重复恢复过时状态
+            Files.deleteIfExists(snapshotPath);
+        } catch (IOException | RuntimeException e) {
+            log.warn("会话快照恢复失败，已跳过: {}", e.getMessage(), e);
+        } finally {
+            restoring = null;
+        }
+    }
+
+    private CacheEntry adoptFromSnapshot(String requestId) {
+        SessionSnapshot.Restore restore = restoring;
+        CacheEntry restored = restore == null ? null : restore.take(requestId);
+        if (restored == null) {
+            return store.getIfPresent(requestId);
+        }
+        restoredEntries.incrementAndGet();
+        // 启动后已有新写入时以新写入为准
+        CacheEntry existing = store.asMap().putIfAbsent(requestId, restored);
+        return existing != null ? existing : restored;
+    }
+
+    /**
+     * 估算条目占用字节：K 线部分取列式表示的实际数组大小，预生成响应体取原文与 gzip 副本的字节数，字符串按 UTF-16 计。
+     */
+    static long estimateBytes(String key, CacheEntry entry) {
+        long bytes = 64 + stringBytes(key) + stringBytes(entry.baselineAnalysis()) + entry.series().sizeInBytes();
+        if (entry.yearlyBody() != null) {
+            bytes += entry.yearlyBody().sizeInBytes();
+        }
+        for (Map.Entry<String, String> e : entry.stageModels().entrySet()) {
+            bytes += 32 + stringBytes(e.getKey()) + stringBytes(e.getValue());
+        }
+        FateResponse.BaZiInfo bazi = entry.baziInfo();
+        if (bazi != null) {
+            bytes += 64 + stringBytes(bazi.getYearPillar()) * 4L + stringBytes(bazi.getSolarTime())
+                    + stringBytes(bazi.getLunarDate());
+            if (bazi.getDaYunList() != null) {
+                bytes += bazi.getDaYunList().size() * 72L;
+            }
+        }
+        return bytes;
+    }
+
+    private static long stringBytes(String s) {
+        return s == null ? 0 : 40 + 2L * s.length();
+    }
+}
@@ -0,0 +1,101 @@
+package com.nei10u.fate.service.session;
+
+import com.alibaba.fastjson2.JSON;
+import com.alibaba.fastjson2.JSONWriter;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.Arrays;
+import java.util.Base64;
+import java.util.zip.GZIPInputStream;
+import java.util.zip.GZIPOutputStream;
+
+/**
+ * 预先序列化好的 JSON 响应体：保存 JSON 原文，可选再保存一份 gzip 副本（/kline 结果压缩后约 2–3KB），随会话条目一起存取。
+ * <p>
+ * ETag 为 JSON 原文的 SHA-256 前 128 位；gzip 表示的 ETag 带 -gz 后缀（强校验要求不同编码的字节对应不同 ETag），
+ * If-None-Match 两者都认。两种表示都是现成字节，重复读取只做拷贝；未保存 gzip 副本时一律返回原文。
+ *
+ * @param gzip 原文的 gzip 副本；未启用（fate.yearly.prepared-gzip=false）时为 null
+ */
+public record PreparedBody(byte[] raw, byte[] gzip, String tag) {
+
+    private static final String GZIP_SUFFIX = "-gz";
+
+    public static PreparedBody json(Object body, boolean withGzip, JSONWriter.Feature... features) {
+        byte[] raw = JSON.toJSONBytes(body, features);
+        return new PreparedBody(raw, withGzip ? gzip(raw) : null, digest(raw));
+    }
+
+    /**
+     * 只有 gzip 字节的旧编码（会话条目版本 2–4）：读取时解压一次还原原文。
+     */
+    static PreparedBody fromGzip(byte[] gzip, int length, String tag) {
+        try (GZIPInputStream in = new GZIPInputStream(new ByteArrayInputStream(gzip), Math.min(length, 8192))) {
+            return new PreparedBody(in.readNBytes(length), gzip, tag);
+        } catch (IOException ex) {
+            throw new UncheckedIOException(ex);
+        }
+    }
+
+    public boolean hasGzip() {
+        return gzip != null;
+    }
+
+    public int length() {
+        return raw.length;
+    }
+
+    public String etag(boolean gzipped) {
+        return "\"" + tag + (gzipped ? GZIP_SUFFIX : "") + "\"";
+    }
+
+    /**
+     * If-None-Match 弱比较：忽略 W/ 前缀，"*" 匹配任意；gzip 与原文两种表示都视为同一内容。
+     */
+    public boolean matches(String ifNoneMatch) {
+        if (ifNoneMatch == null || ifNoneMatch.isBlank()) {
+            return false;
+        }
+        for (String candidate : ifNoneMatch.split(",")) {
+            String etag = candidate.trim();
+            if (etag.equals("*")) {
+                return true;
+            }
+            if (etag.startsWith("W/")) {
+                etag = etag.substring(2);
+            }
+            if (etag.equals(etag(false)) || etag.equals(etag(true))) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    public long sizeInBytes() {
+        return 48 + 16 + raw.length + (gzip == null ? 0 : 16 + gzip.length) + 40 + 2L * tag.length();
+    }
+
+    private static byte[] gzip(byte[] raw) {
+        ByteArrayOutputStream out = new ByteArrayOutputStream(Math.max(256, raw.length / 4));
+        try (GZIPOutputStream gz = new GZIPOutputStream(out)) {
+            gz.write(raw);
+        } catch (IOException ex) {
+            throw new UncheckedIOException(ex);
+        }
+        return out.toByteArray();
+    }
+
+    private static String digest(byte[] raw) {
+        try {
+            byte[] sha = MessageDigest.getInstance("SHA-256").digest(raw);
+            return Base64.getUrlEncoder().withoutPadding().encodeToString(Arrays.copyOf(sha, 16));
+        } catch (NoSuchAlgorithmException ex) {
+            throw new IllegalStateException(ex);
+        }
+    }
+}
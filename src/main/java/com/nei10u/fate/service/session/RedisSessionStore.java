@@ -0,0 +1,200 @@
+package com.nei10u.fate.service.session;
+
+import com.github.benmanes.caffeine.cache.Cache;
+import com.github.benmanes.caffeine.cache.Caffeine;
+import com.nei10u.fate.service.FateSessionCache.CacheEntry;
+import io.lettuce.core.RedisClient;
+import io.lettuce.core.RedisException;
+import io.lettuce.core.RedisURI;
+import io.lettuce.core.SetArgs;
+import io.lettuce.core.TransactionResult;
+import io.lettuce.core.api.StatefulRedisConnection;
+import io.lettuce.core.api.sync.RedisCommands;
+import io.lettuce.core.codec.ByteArrayCodec;
+import io.lettuce.core.codec.RedisCodec;
+import io.lettuce.core.codec.StringCodec;
+import io.lettuce.core.pubsub.RedisPubSubAdapter;
+import io.lettuce.core.pubsub.StatefulRedisPubSubConnection;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.binder.cache.CaffeineCacheMetrics;
+import jakarta.annotation.PreDestroy;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.stereotype.Component;
+
+import java.nio.charset.StandardCharsets;
+import java.time.Duration;
+import java.util.Optional;
+import java.util.UUID;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.LockSupport;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.function.UnaryOperator;
+
+/**
+ * Redis 协议共享会话存储（fate.session.store=redis），多副本共用，任一节点都能读到 /kline 写入的结果。
+ * <p>
+ * - 编码：{@link SessionEntryCodec}（K 线为列式紧凑表示），key = fate:session:{requestId}，PX = 创建时间 + ttl 的剩余毫秒
+ * - 读改写：WATCH / MULTI / EXEC 乐观重试，合并规则由调用方给出
+ * - 近端缓存：本节点写入/读到的条目留在进程内，同节点命中不走网络；
+ *   写入后通过 pub/sub 广播 requestId，其他节点丢弃自己的近端副本（自身消息忽略）。
+ *   广播丢失时最多陈旧 fate.session.near-cache.ttl
+ * - Redis 不可用时降级为仅近端缓存，并打 warn 日志
+ * <p>
+ * fate.session.redis.uri 可指向任何兼容 RESP 的实例（本地 redis-server、容器或内嵌替身）。
+ */
+@Component
+@ConditionalOnProperty(name = "fate.session.store", havingValue = "redis")
+public class RedisSessionStore implements SessionStore {
+
+    private static final Logger log = LoggerFactory.getLogger(RedisSessionStore.class);
+
+    private static final String KEY_PREFIX = "fate:session:";
+    private static final String CHANNEL = "fate:session:invalidate";
+    private static final int MAX_TX_RETRIES = 16;
+
+    private final Duration ttl;
+    private final String nodeId = UUID.randomUUID().toString();
+    private final Cache<String, CacheEntry> nearCache;
+    private final RedisClient client;
+    private final StatefulRedisConnection<String, byte[]> connection;
+    private final StatefulRedisConnection<String, byte[]> txConnection;
+    private final StatefulRedisPubSubConnection<String, String> pubSub;
+    // 事务状态绑定在连接上：读改写串行使用专用连接，普通读写走共享连接
+    private final ReentrantLock txLock = new ReentrantLock();
+
+    public RedisSessionStore(@Value("${fate.session.redis.uri:redis://localhost:6379}") String uri,
+                             @Value("${fate.session.redis.timeout:2s}") Duration timeout,
+                             @Value("${fate.session.ttl:30m}") Duration ttl,
+                             @Value("${fate.session.near-cache.max-entries:10000}") long nearMaxEntries,
+                             @Value("${fate.session.near-cache.ttl:60s}") Duration nearTtl,
+                             MeterRegistry meterRegistry) {
+        this.ttl = ttl;
+        this.nearCache = Caffeine.newBuilder()
+                .maximumSize(Math.max(1, nearMaxEntries))
+                .expireAfterWrite(nearTtl)
+                .recordStats()
+                .build();
+        CaffeineCacheMetrics.monitor(meterRegistry, nearCache, "fate.session.near");
+
+        RedisURI redisUri = RedisURI.create(uri);
+        redisUri.setTimeout(timeout);
+        this.client = RedisClient.create(redisUri);
+        RedisCodec<String, byte[]> codec = RedisCodec.of(StringCodec.UTF8, ByteArrayCodec.INSTANCE);
+        this.connection = client.connect(codec);
+        this.txConnection = client.connect(codec);
+        this.pubSub = client.connectPubSub();
+        pubSub.addListener(new RedisPubSubAdapter<>() {
+            @Override
+            public void message(String channel, String message) {
+                int sep = message.indexOf('|');
+                if (sep > 0 && !message.startsWith(nodeId)) {
+                    nearCache.invalidate(message.substring(sep + 1));
+                }
+            }
+        });
+        pubSub.sync().subscribe(CHANNEL);
+        log.info("redis session store connected uri={} node={}", redisUri.toURI(), nodeId);
+    }
+
+    @Override
+    public Optional<CacheEntry> get(String requestId) {
+        CacheEntry near = nearCache.getIfPresent(requestId);
+        if (near != null) {
+            return live(near) ? Optional.of(near) : Optional.empty();
+        }
+        try {
+            CacheEntry entry = decode(connection.sync().get(KEY_PREFIX + requestId));
+            if (entry != null) {
+                nearCache.put(requestId, entry);
+            }
+            return Optional.ofNullable(entry);
+        } catch (RedisException ex) {
+            log.warn("[{}] redis session get failed: {}", requestId, ex.getMessage());
+            return Optional.empty();
+        }
+    }
+
+    @Override
+    public CacheEntry update(String requestId, UnaryOperator<CacheEntry> update) {
+        String key = KEY_PREFIX + requestId;
+        try {
+            for (int attempt = 1; attempt <= MAX_TX_RETRIES; attempt++) {
+                Written written = tryUpdate(requestId, key, update);
+                if (written != null) {
+                    return written.entry();
+                }
+                // 同一 requestId 被并发写：退避后重读（不持锁等待）
+                LockSupport.parkNanos(TimeUnit.MILLISECONDS.toNanos(ThreadLocalRandom.current().nextInt(1, 2 + attempt * 2)));
+            }
+            throw new IllegalStateException("会话并发更新冲突，重试 " + MAX_TX_RETRIES + " 次仍未成功: " + requestId);
+        } catch (RedisException ex) {
+            log.warn("[{}] redis session update failed, kept on this node only: {}", requestId, ex.getMessage());
+            return nearCache.asMap().compute(requestId, (_k, old) -> update.apply(old != null && live(old) ? old : null));
+        }
+    }
+
+    /**
+     * 一次 WATCH / MULTI / EXEC 的结果；entry 为写入（或未变）后的条目，update 拒绝创建时为 null。
+     */
+    private record Written(CacheEntry entry) {
+    }
+
+    /**
+     * 一次 WATCH / MULTI / EXEC；被其他写入打断时返回 null。
+     */
+    private Written tryUpdate(String requestId, String key, UnaryOperator<CacheEntry> update) {
+        CacheEntry next;
+        txLock.lock();
+        try {
+            RedisCommands<String, byte[]> cmd = txConnection.sync();
+            cmd.watch(key);
+            CacheEntry old = decode(cmd.get(key));
+            next = update.apply(old);
+            if (next == old) {
+                cmd.unwatch();
+                return new Written(next);
+            }
+            long pxMillis = TimeUnit.NANOSECONDS.toMillis(SessionExpiry.remainingNanos(next.createdAtMillis(), ttl));
+            if (pxMillis <= 0) {
+                cmd.unwatch();
+                return new Written(next);
+            }
+            cmd.multi();
+            cmd.set(key, encode(next), SetArgs.Builder.px(pxMillis));
+            TransactionResult result = cmd.exec();
+            if (result.wasDiscarded()) {
+                return null;
+            }
+        } finally {
+            txLock.unlock();
+        }
+        nearCache.put(requestId, next);
+        // 失效广播不等待回执
+        connection.async().publish(CHANNEL, (nodeId + "|" + requestId).getBytes(StandardCharsets.UTF_8));
+        return new Written(next);
+    }
+
+    @PreDestroy
+    public void close() {
+        pubSub.close();
+        txConnection.close();
+        connection.close();
+        client.shutdown();
+    }
+
+    private boolean live(CacheEntry entry) {
+        return SessionExpiry.remainingNanos(entry.createdAtMillis(), ttl) > 0;
+    }
+
+    private static byte[] encode(CacheEntry entry) {
+        return SessionEntryCodec.encode(entry);
+    }
+
+    private static CacheEntry decode(byte[] bytes) {
+        return bytes == null ? null : SessionEntryCodec.decode(bytes);
+    }
+}
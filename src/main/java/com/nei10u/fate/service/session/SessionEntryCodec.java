@@ -0,0 +1,150 @@
+package com.nei10u.fate.service.session;
+
+import com.alibaba.fastjson2.JSONB;
+import com.nei10u.fate.model.FateResponse;
+import com.nei10u.fate.service.FateSessionCache.CacheEntry;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInput;
+import java.io.DataInputStream;
+import java.io.DataOutput;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.charset.StandardCharsets;
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * 会话条目的二进制编码（共享存储与本地快照共用）：
+ * [version][createdAt][bazi JSONB][baseline][analysis UTF-8][provisional][CompactSeries][yearlyBody][klineVersion][klineProvisional]
+ * [stageModels]。
+ * <p>
+ * 版本 2 追加 yearlyBody（预生成的 /yearly 响应体），版本 3 追加 K 线版本号与临时标记，版本 4 追加各阶段作答模型，
+ * 版本 5 起 yearlyBody 保存 JSON 原文 + 可选 gzip 副本（此前只有 gzip）；
+ * 旧版本的条目（旧快照、滚动发布期间旧节点写入）仍可读取，缺失字段取 null / 0 / false。
+ */
+public final class SessionEntryCodec {
+
+    private static final byte VERSION = 5;
+    private static final byte VERSION_WITHOUT_RAW_BODY = 4;
+    private static final byte VERSION_WITHOUT_STAGE_MODELS = 3;
+    private static final byte VERSION_WITHOUT_KLINE_VERSION = 2;
+    private static final byte VERSION_WITHOUT_BODY = 1;
+
+    private SessionEntryCodec() {
+    }
+
+    public static byte[] encode(CacheEntry entry) {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream(4096);
+        try (DataOutputStream out = new DataOutputStream(bytes)) {
+            write(entry, out);
+        } catch (IOException ex) {
+            throw new UncheckedIOException(ex);
+        }
+        return bytes.toByteArray();
+    }
+
+    public static CacheEntry decode(byte[] bytes) {
+        try {
+            return read(new DataInputStream(new ByteArrayInputStream(bytes)));
+        } catch (IOException ex) {
+            throw new IllegalStateException("会话条目解码失败", ex);
+        }
+    }
+
+    public static void write(CacheEntry entry, DataOutput out) throws IOException {
+        out.writeByte(VERSION);
+        out.writeLong(entry.createdAtMillis());
+        writeBytes(out, entry.baziInfo() == null ? null : JSONB.toBytes(entry.baziInfo()));
+        out.writeBoolean(entry.baseline() != null);
+        if (entry.baseline() != null) {
+            out.writeInt(entry.baseline());
+        }
+        writeBytes(out, entry.baselineAnalysis() == null ? null : entry.baselineAnalysis().getBytes(StandardCharsets.UTF_8));
+        out.writeBoolean(entry.baselineProvisional());
+        entry.series().writeTo(out);
+        PreparedBody body = entry.yearlyBody();
+        out.writeBoolean(body != null);
+        if (body != null) {
+            out.writeUTF(body.tag());
+            writeBytes(out, body.raw());
+            writeBytes(out, body.gzip());
+        }
+        out.writeInt(entry.klineVersion());
+        out.writeBoolean(entry.klineProvisional());
+        out.writeShort(entry.stageModels().size());
+        for (Map.Entry<String, String> e : entry.stageModels().entrySet()) {
+            out.writeUTF(e.getKey());
+            out.writeUTF(e.getValue());
+        }
+    }
+
+    public static CacheEntry read(DataInput in) throws IOException {
+        byte version = in.readByte();
+        if (version < VERSION_WITHOUT_BODY || version > VERSION) {
+            throw new IOException("不支持的会话条目版本: " + version);
+        }
+        long createdAtMillis = in.readLong();
+        byte[] bazi = readBytes(in);
+        Integer baseline = in.readBoolean() ? in.readInt() : null;
+        byte[] analysis = readBytes(in);
+        boolean provisional = in.readBoolean();
+        CompactSeries series = CompactSeries.readFrom(in);
+        PreparedBody yearlyBody = null;
+        if (version >= VERSION_WITHOUT_KLINE_VERSION && in.readBoolean()) {
+            String tag = in.readUTF();
+            if (version >= VERSION) {
+                yearlyBody = new PreparedBody(readBytes(in), readBytes(in), tag);
+            } else {
+                int length = in.readInt();
+                yearlyBody = PreparedBody.fromGzip(readBytes(in), length, tag);
+            }
+        }
+        int klineVersion = 0;
+        boolean klineProvisional = false;
+        if (version >= VERSION_WITHOUT_STAGE_MODELS) {
+            klineVersion = in.readInt();
+            klineProvisional = in.readBoolean();
+        } else if (series.hasKLineData()) {
+            klineVersion = 1;
+        }
+        Map<String, String> stageModels = Map.of();
+        if (version >= VERSION_WITHOUT_RAW_BODY) {
+            int count = in.readUnsignedShort();
+            Map<String, String> read = new HashMap<>(count * 2);
+            for (int i = 0; i < count; i++) {
+                read.put(in.readUTF(), in.readUTF());
+            }
+            stageModels = Map.copyOf(read);
+        }
+        return new CacheEntry(createdAtMillis,
+                bazi == null ? null : JSONB.parseObject(bazi, FateResponse.BaZiInfo.class),
+                baseline,
+                analysis == null ? null : new String(analysis, StandardCharsets.UTF_8),
+                provisional,
+                series,
+                yearlyBody,
+                klineVersion,
+                klineProvisional,
+                stageModels);
+    }
+
+    private static void writeBytes(DataOutput out, byte[] value) throws IOException {
+        out.writeInt(value == null ? -1 : value.length);
+        if (value != null) {
+            out.write(value);
+        }
+    }
+
+    private static byte[] readBytes(DataInput in) throws IOException {
+        int length = in.readInt();
+        if (length < 0) {
+            return null;
+        }
+        byte[] value = new byte[length];
+        in.readFully(value);
+        return value;
+    }
+}
@@ -0,0 +1,39 @@
+package com.nei10u.fate.service.session;
+
+import com.github.benmanes.caffeine.cache.Expiry;
+
+import java.time.Duration;
+import java.util.function.ToLongFunction;
+
+/**
+ * 以值自身的创建时间计算剩余寿命：新建与更新都按“创建时间 + ttl”截止，读取不续期。
+ */
+public final class SessionExpiry {
+
+    private SessionExpiry() {
+    }
+
+    public static <V> Expiry<String, V> sinceCreated(ToLongFunction<V> createdAtMillis, Duration ttl) {
+        return new Expiry<>() {
+            @Override
+            public long expireAfterCreate(String key, V value, long currentTime) {
+                return remainingNanos(createdAtMillis.applyAsLong(value), ttl);
+            }
+
+            @Override
+            public long expireAfterUpdate(String key, V value, long currentTime, long currentDuration) {
+                return remainingNanos(createdAtMillis.applyAsLong(value), ttl);
+            }
+
+            @Override
+            public long expireAfterRead(String key, V value, long currentTime, long currentDuration) {
+                return currentDuration;
+            }
+        };
+    }
+
+    public static long remainingNanos(long createdAtMillis, Duration ttl) {
+        long ageNanos = Duration.ofMillis(System.currentTimeMillis() - createdAtMillis).toNanos();
+        return Math.max(0, ttl.toNanos() - ageNanos);
+    }
+}
@@ -0,0 +1,145 @@
+package com.nei10u.fate.service.session;
+
+import com.nei10u.fate.service.FateSessionCache.CacheEntry;
+
+import java.io.BufferedOutputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * 会话快照文件：停机时写出未过期条目，启动时 mmap 后只扫描记录头建索引，条目按需或由后台逐条解码。
+ * <p>
+ * 格式：[MAGIC][VERSION][count] + count × ([keyLen][key UTF-8][createdAt][len][{@link SessionEntryCodec} 字节])。
+ * 先写临时文件再原子替换，停机中途被杀不会留下半个快照。
+ */
+final class SessionSnapshot {
+
+    private static final int MAGIC = 0xFA7E5E55;
+    private static final byte VERSION = 1;
+
+    private SessionSnapshot() {
+    }
+
+    /**
+     * 写出快照，返回写入条数（已过期的跳过）。
+     */
+    static int write(Path path, Map<String, CacheEntry> entries, Duration ttl) throws IOException {
+        Path parent = path.toAbsolutePath().getParent();
+        Files.createDirectories(parent);
+        Path tmp = Files.createTempFile(parent, path.getFileName().toString(), ".tmp");
+        int count = 0;
+        try (DataOutputStream out = new DataOutputStream(new BufferedOutputStream(Files.newOutputStream(tmp), 1 << 16))) {
+            out.writeInt(MAGIC);
+            out.writeByte(VERSION);
+            List<Map.Entry<String, CacheEntry>> live = new ArrayList<>(entries.size());
+            for (Map.Entry<String, CacheEntry> e : entries.entrySet()) {
+                if (SessionExpiry.remainingNanos(e.getValue().createdAtMillis(), ttl) > 0) {
+                    live.add(e);
+                }
+            }
+            out.writeInt(live.size());
+            for (Map.Entry<String, CacheEntry> e : live) {
+                byte[] key = e.getKey().getBytes(StandardCharsets.UTF_8);
+                byte[] value = SessionEntryCodec.encode(e.getValue());
+                out.writeInt(key.length);
+                out.write(key);
+                out.writeLong(e.getValue().createdAtMillis());
+                out.writeInt(value.length);
+                out.write(value);
+                count++;
+            }
+        } catch (IOException | RuntimeException ex) {
+            Files.deleteIfExists(tmp);
+            throw ex;
+        }
+        Files.move(tmp, path, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        return count;
+    }
+
+    /**
+     * 打开快照并建索引（不解码条目）；文件不存在返回 null。
+     */
+    static Restore open(Path path, Duration ttl) throws IOException {
+        if (!Files.isRegularFile(path)) {
+            return null;
+        }
+        MappedByteBuffer buf;
+        try (FileChannel ch = FileChannel.open(path, StandardOpenOption.READ)) {
+            if (ch.size() > Integer.MAX_VALUE) {
+                throw new IOException("会话快照过大: " + ch.size());
+            }
+            buf = ch.map(FileChannel.MapMode.READ_ONLY, 0, ch.size());
+        }
+        if (buf.remaining() < 9 || buf.getInt() != MAGIC || buf.get() != VERSION) {
+            throw new IOException("会话快照格式不符: " + path);
+        }
+        int count = buf.getInt();
+        Map<String, long[]> pending = new ConcurrentHashMap<>(Math.max(16, count * 4 / 3));
+        int expired = 0;
+        for (int i = 0; i < count; i++) {
+            byte[] key = new byte[buf.getInt()];
+            buf.get(key);
+            long createdAtMillis = buf.getLong();
+            int length = buf.getInt();
+            int offset = buf.position();
+            if (length < 0 || offset + length > buf.limit()) {
+                throw new IOException("会话快照记录越界: #" + i);
+            }
+            buf.position(offset + length);
+            if (SessionExpiry.remainingNanos(createdAtMillis, ttl) > 0) {
+                pending.put(new String(key, StandardCharsets.UTF_8), new long[]{offset, length});
+            } else {
+                expired++;
+            }
+        }
+        return new Restore(buf, pending, expired);
+    }
+
+    /**
+     * 尚未解码的快照条目；take 对同一 key 只会成功一次。
+     */
+    static final class Restore {
+
+        private final MappedByteBuffer buf;
+        private final Map<String, long[]> pending;
+        final int indexed;
+        final int expired;
+
+        private Restore(MappedByteBuffer buf, Map<String, long[]> pending, int expired) {
+            this.buf = buf;
+            this.pending = pending;
+            this.indexed = pending.size();
+            this.expired = expired;
+        }
+
+        List<String> keys() {
+            return new ArrayList<>(pending.keySet());
+        }
+
+        boolean isEmpty() {
+            return pending.isEmpty();
+        }
+
+        CacheEntry take(String key) {
+            long[] loc = pending.remove(key);
+            if (loc == null) {
+                return null;
+            }
+            byte[] bytes = new byte[(int) loc[1]];
+            buf.get((int) loc[0], bytes);
+            return SessionEntryCodec.decode(bytes);
+        }
+    }
+}
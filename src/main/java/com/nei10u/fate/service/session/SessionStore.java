@@ -0,0 +1,26 @@
+package com.nei10u.fate.service.session;
+
+import com.nei10u.fate.service.FateSessionCache;
+
+import java.util.Optional;
+import java.util.function.UnaryOperator;
+
+/**
+ * 会话条目存储 SPI（fate.session.store 选择实现）：
+ * - memory：进程内 Caffeine（默认，单节点）
+ * - redis：Redis 协议共享存储 + 本节点近端缓存，多副本间 /kline -> /yearly 不再要求粘性会话
+ * <p>
+ * 合并规则（upsertBaseline / upsertKline 各自保留哪些字段）由 {@link FateSessionCache} 决定，
+ * 存储只负责按 requestId 原子地读改写，以及“自创建起 ttl”的过期。
+ */
+public interface SessionStore {
+
+    Optional<FateSessionCache.CacheEntry> get(String requestId);
+
+    /**
+     * 原子读改写：update 收到当前未过期的条目（没有则为 null），返回新条目；
+     * 返回与入参同一个对象表示不变，不产生写入（入参为 null 时返回 null 即不创建条目，此时本方法返回 null）。
+     * update 可能因并发冲突被重复调用，须无副作用。
+     */
+    FateSessionCache.CacheEntry update(String requestId, UnaryOperator<FateSessionCache.CacheEntry> update);
+}
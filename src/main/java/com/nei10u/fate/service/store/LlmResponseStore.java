@@ -0,0 +1,528 @@
+package com.nei10u.fate.service.store;
+
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import jakarta.annotation.PreDestroy;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+import org.springframework.util.unit.DataSize;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentSkipListMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.stream.Stream;
+import java.util.zip.CRC32;
+
+/**
+ * 模型原始输出的本地持久化存储：追加写段日志 + 内存映射索引，不依赖任何外部服务，重启后仍可命中。
+ * <p>
+ * 目录结构（每个段一对文件）：
+ * - {id}.log：追加写记录 [magic][sha256(32B)][valueLength][crc32][value(UTF-8)]
+ * - {id}.idx：定长索引项 [sha256(32B)][offset(8B)][recordLength(4B)]
+ * <p>
+ * - 启动：内存映射各段 .idx 批量重建内存索引，只对 .idx 未覆盖的 .log 尾部逐条校验（崩溃恢复），截断半写记录
+ * - 运行期读写都走 MappedByteBuffer：不经过可被中断关闭的 FileChannel（阶段超时会 cancel(true) 中断线程）
+ * - 滚动：活动段写满后封存并开新段；封存后由后台线程压缩（存活比例过低或过小的段，把存活记录搬到活动段后删除）
+ * - 容量：总大小超过上限时按写入先后淘汰最旧的封存段
+ */
+@Component
+public class LlmResponseStore {
+
+    private static final Logger log = LoggerFactory.getLogger(LlmResponseStore.class);
+
+    static final int MAGIC = 0xFA7E1107;
+    static final int HASH_BYTES = 32;
+    private static final int HEADER_BYTES = 4 + HASH_BYTES + 4 + 4;
+    private static final int INDEX_ENTRY_BYTES = HASH_BYTES + 8 + 4;
+    private static final int INDEX_CAPACITY = 65_536;
+
+    private final Path dir;
+    private final int segmentBytes;
+    private final long maxBytes;
+    private final double compactLiveRatio;
+
+    private final ConcurrentHashMap<Key, Location> index = new ConcurrentHashMap<>();
+    private final ConcurrentSkipListMap<Long, Segment> segments = new ConcurrentSkipListMap<>();
+    private final ReentrantLock writeLock = new ReentrantLock();
+    private final AtomicBoolean maintenanceScheduled = new AtomicBoolean();
+    private final ExecutorService maintenance = Executors.newSingleThreadExecutor(r -> {
+        Thread t = new Thread(r, "fate-llm-store-maintenance");
+        t.setDaemon(true);
+        return t;
+    });
+
+    /**
+     * 活动段，仅在 writeLock 下修改。
+     */
+    private Segment active;
+    private volatile boolean open;
+
+    public LlmResponseStore(@Value("${fate.llm-store.enabled:true}") boolean enabled,
+                            @Value("${fate.llm-store.dir:data/llm-store}") Path dir,
+                            @Value("${fate.llm-store.segment-size:64MB}") DataSize segmentSize,
+                            @Value("${fate.llm-store.max-size:512MB}") DataSize maxSize,
+                            @Value("${fate.llm-store.compact-live-ratio:0.5}") double compactLiveRatio,
+                            MeterRegistry meterRegistry) {
+        this.dir = dir;
+        // MappedByteBuffer 以 int 寻址，单段上限 1GB
+        this.segmentBytes = (int) Math.max(HEADER_BYTES + 1, Math.min(segmentSize.toBytes(), 1L << 30));
+        this.maxBytes = Math.max(segmentBytes, maxSize.toBytes());
+        this.compactLiveRatio = compactLiveRatio;
+        if (enabled) {
+            try {
+                long start = System.nanoTime();
+                load();
+                this.open = true;
+                scheduleMaintenance();
+                log.info("llm-store opened dir={} segments={} entries={} bytes={} in {}ms", dir,
+                        segments.size(), index.size(), totalBytes(), (System.nanoTime() - start) / 1_000_000);
+            } catch (IOException | RuntimeException e) {
+                log.warn("llm-store 打开失败，已禁用（不影响模型调用）: {}", e.getMessage(), e);
+            }
+        }
+        Gauge.builder("fate.llm.store.entries", index, Map::size)
+                .description("持久化模型输出条数")
+                .register(meterRegistry);
+        Gauge.builder("fate.llm.store.bytes", this, LlmResponseStore::totalBytes)
+                .description("持久化模型输出占用字节")
+                .baseUnit("bytes")
+                .register(meterRegistry);
+    }
+
+    public boolean isOpen() {
+        return open;
+    }
+
+    /**
+     * key = SHA-256(模型 id + '\n' + prompt)。
+     */
+    public static byte[] hash(String model, String prompt) {
+        try {
+            MessageDigest md = MessageDigest.getInstance("SHA-256");
+            md.update(model.getBytes(StandardCharsets.UTF_8));
+            md.update((byte) '\n');
+            return md.digest(prompt.getBytes(StandardCharsets.UTF_8));
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+
+    public Optional<String> get(byte[] hash) {
+        if (!open) {
+            return Optional.empty();
+        }
+        Key key = Key.of(hash);
+        Location loc = index.get(key);
+        if (loc == null) {
+            return Optional.empty();
+        }
+        // 段被压缩/淘汰后文件已删除，但映射在被 GC 前仍然有效，可安全读完
+        MappedByteBuffer buf = loc.segment().log;
+        int valueLength = loc.length() - HEADER_BYTES;
+        if (buf.getInt(loc.offset()) == MAGIC && buf.getInt(loc.offset() + 4 + HASH_BYTES) == valueLength
+                && key.matches(buf, loc.offset() + 4)) {
+            byte[] value = new byte[valueLength];
+            buf.get(loc.offset() + HEADER_BYTES, value);
+            if (crc32(value) == buf.getInt(loc.offset() + 4 + HASH_BYTES + 4)) {
+                return Optional.of(new String(value, StandardCharsets.UTF_8));
+            }
+        }
+        log.warn("llm-store 记录校验失败，已丢弃 segment={} offset={}", loc.segment().id, loc.offset());
+        index.remove(key, loc);
+        return Optional.empty();
+    }
+
+    public void put(byte[] hash, String value) {
+        if (!open || value == null) {
+            return;
+        }
+        byte[] bytes = value.getBytes(StandardCharsets.UTF_8);
+        if (HEADER_BYTES + bytes.length > segmentBytes) {
+            log.warn("llm-store 单条记录超过段大小，已跳过 size={}", bytes.length);
+            return;
+        }
+        ByteBuffer record = ByteBuffer.allocate(HEADER_BYTES + bytes.length)
+                .putInt(MAGIC).put(hash).putInt(bytes.length).putInt(crc32(bytes)).put(bytes);
+        Key key = Key.of(hash);
+        writeLock.lock();
+        try {
+            Location loc = append(hash, record.array());
+            release(index.put(key, loc));
+        } catch (IOException e) {
+            log.warn("llm-store 写入失败: {}", e.getMessage(), e);
+        } finally {
+            writeLock.unlock();
+        }
+    }
+
+    public long totalBytes() {
+        long total = 0;
+        for (Segment s : segments.values()) {
+            total += s.logEnd;
+        }
+        return total;
+    }
+
+    @PreDestroy
+    public void close() {
+        maintenance.shutdownNow();
+        writeLock.lock();
+        try {
+            if (!open) {
+                return;
+            }
+            open = false;
+            Segment current = active;
+            if (current != null) {
+                current.log.force();
+                current.idx.force();
+                seal(current);
+            }
+        } catch (IOException e) {
+            log.warn("llm-store 关闭失败: {}", e.getMessage(), e);
+        } finally {
+            writeLock.unlock();
+        }
+    }
+
+    // ---------------- 启动：重建索引 ----------------
+
+    private void load() throws IOException {
+        Files.createDirectories(dir);
+        List<Long> ids = new ArrayList<>();
+        try (Stream<Path> files = Files.list(dir)) {
+            files.map(p -> p.getFileName().toString())
+                    .filter(n -> n.endsWith(".log"))
+                    .forEach(n -> ids.add(Long.parseLong(n.substring(0, n.length() - 4))));
+        }
+        ids.sort(null);
+        for (long id : ids) {
+            Segment segment = recover(id);
+            segments.put(id, segment);
+        }
+        Segment last = segments.isEmpty() ? null : segments.lastEntry().getValue();
+        if (last != null && last.logEnd < segmentBytes - HEADER_BYTES && last.idxEnd < INDEX_CAPACITY * INDEX_ENTRY_BYTES) {
+            // 最后一段仍有空间：重新映射为可写，继续追加，避免每次重启都产生一个小段
+            mapWritable(last);
+            active = last;
+        } else {
+            active = createSegment(last == null ? 1 : last.id + 1);
+        }
+    }
+
+    /**
+     * 读取一个段：先按 .idx 批量登记，再校验 .idx 之后的 .log 尾部；
+     * 发现未登记或损坏的记录时重写 .idx 并截断 .log，保证下次启动只需读索引。
+     */
+    private Segment recover(long id) throws IOException {
+        Path logPath = logPath(id);
+        Path idxPath = idxPath(id);
+        try (FileChannel logCh = FileChannel.open(logPath, StandardOpenOption.READ, StandardOpenOption.WRITE);
+             FileChannel idxCh = FileChannel.open(idxPath, StandardOpenOption.READ, StandardOpenOption.WRITE,
+                     StandardOpenOption.CREATE)) {
+            long logSize = logCh.size();
+            MappedByteBuffer logMap = logCh.map(FileChannel.MapMode.READ_ONLY, 0, logSize);
+            long idxSize = idxCh.size() - idxCh.size() % INDEX_ENTRY_BYTES;
+            MappedByteBuffer idxMap = idxCh.map(FileChannel.MapMode.READ_ONLY, 0, idxSize);
+
+            Segment segment = new Segment(id);
+            segment.log = logMap;
+            segment.idx = idxMap;
+            int end = 0;
+            int indexed = 0;
+            byte[] hash = new byte[HASH_BYTES];
+            for (int pos = 0; pos + INDEX_ENTRY_BYTES <= idxSize; pos += INDEX_ENTRY_BYTES) {
+                long offset = idxMap.getLong(pos + HASH_BYTES);
+                int length = idxMap.getInt(pos + HASH_BYTES + 8);
+                if (offset != end || length < HEADER_BYTES || offset + length > logSize) {
+                    break;
+                }
+                register(Key.at(idxMap, pos), new Location(segment, end, length));
+                end += length;
+                indexed++;
+            }
+
+            // 尾部扫描：.idx 未覆盖（进程崩溃在写 .log 与写 .idx 之间）的记录逐条校验
+            List<byte[]> tail = new ArrayList<>();
+            while (end + HEADER_BYTES <= logSize && logMap.getInt(end) == MAGIC) {
+                int valueLength = logMap.getInt(end + 4 + HASH_BYTES);
+                if (valueLength < 0 || end + HEADER_BYTES + (long) valueLength > logSize) {
+                    break;
+                }
+                byte[] value = new byte[valueLength];
+                logMap.get(end + HEADER_BYTES, value);
+                if (crc32(value) != logMap.getInt(end + 4 + HASH_BYTES + 4)) {
+                    break;
+                }
+                logMap.get(end + 4, hash);
+                int length = HEADER_BYTES + valueLength;
+                register(Key.of(hash), new Location(segment, end, length));
+                tail.add(indexEntry(hash, end, length));
+                end += length;
+            }
+
+            long indexedBytes = (long) indexed * INDEX_ENTRY_BYTES;
+            segment.logEnd = end;
+            segment.idxEnd = (int) indexedBytes + tail.size() * INDEX_ENTRY_BYTES;
+            if (end != logSize || indexedBytes != idxCh.size() || !tail.isEmpty()) {
+                logCh.truncate(end);
+                idxCh.truncate(indexedBytes);
+                long pos = indexedBytes;
+                for (byte[] entry : tail) {
+                    pos += writeFully(idxCh, ByteBuffer.wrap(entry), pos);
+                }
+                logCh.force(true);
+                idxCh.force(true);
+                // 原映射按旧 .idx 大小建立，补登记的尾部索引项不在其中；按最终大小重新映射，压缩时才能读全
+                segment.idx = idxCh.map(FileChannel.MapMode.READ_ONLY, 0, segment.idxEnd);
+                log.info("llm-store 恢复段 {}: 已索引 {} 条，尾部补登记 {} 条，截断至 {} 字节",
+                        id, indexed, tail.size(), end);
+            }
+            return segment;
+        }
+    }
+
+    private void register(Key key, Location loc) {
+        loc.segment().liveBytes.addAndGet(loc.length());
+        release(index.put(key, loc));
+    }
+
+    // ---------------- 写入与滚动（writeLock 下调用） ----------------
+
+    private Location append(byte[] hash, byte[] record) throws IOException {
+        Segment segment = active;
+        if (segment.logEnd + record.length > segmentBytes || segment.idxEnd + INDEX_ENTRY_BYTES > segment.idx.capacity()) {
+            seal(segment);
+            segment = createSegment(segment.id + 1);
+            active = segment;
+            scheduleMaintenance();
+        }
+        int offset = segment.logEnd;
+        segment.log.put(offset, record);
+        // 先写记录再写索引项：崩溃时最多丢失索引项，启动尾部扫描可补回
+        segment.idx.put(segment.idxEnd, indexEntry(hash, offset, record.length));
+        segment.logEnd = offset + record.length;
+        segment.idxEnd += INDEX_ENTRY_BYTES;
+        segment.liveBytes.addAndGet(record.length);
+        return new Location(segment, offset, record.length);
+    }
+
+    private Segment createSegment(long id) throws IOException {
+        Segment segment = new Segment(id);
+        mapWritable(segment);
+        segments.put(id, segment);
+        return segment;
+    }
+
+    /**
+     * 活动段按段大小预分配并映射为可写；数据真实长度由 logEnd/idxEnd 记录，封存时截断。
+     * 已有段原地换成可写映射，索引中的 Location 无需改写。
+     */
+    private void mapWritable(Segment segment) throws IOException {
+        try (FileChannel logCh = FileChannel.open(logPath(segment.id), StandardOpenOption.READ,
+                StandardOpenOption.WRITE, StandardOpenOption.CREATE);
+             FileChannel idxCh = FileChannel.open(idxPath(segment.id), StandardOpenOption.READ,
+                     StandardOpenOption.WRITE, StandardOpenOption.CREATE)) {
+            segment.idx = idxCh.map(FileChannel.MapMode.READ_WRITE, 0, (long) INDEX_CAPACITY * INDEX_ENTRY_BYTES);
+            segment.log = logCh.map(FileChannel.MapMode.READ_WRITE, 0, segmentBytes);
+        }
+    }
+
+    private void seal(Segment segment) throws IOException {
+        segment.log.force();
+        segment.idx.force();
+        // 只截掉预分配的空白尾部；已映射区域内有效数据都在 logEnd 之前，读取不会越界
+        try (FileChannel logCh = FileChannel.open(logPath(segment.id), StandardOpenOption.WRITE);
+             FileChannel idxCh = FileChannel.open(idxPath(segment.id), StandardOpenOption.WRITE)) {
+            logCh.truncate(segment.logEnd);
+            idxCh.truncate(segment.idxEnd);
+        }
+    }
+
+    // ---------------- 后台维护：压缩 + 容量淘汰 ----------------
+
+    private void scheduleMaintenance() {
+        if (maintenanceScheduled.compareAndSet(false, true)) {
+            try {
+                maintenance.execute(this::maintain);
+            } catch (RuntimeException e) {
+                maintenanceScheduled.set(false);
+            }
+        }
+    }
+
+    /**
+     * 在维护线程上同步执行一轮维护（与后台调度串行），供测试使用。
+     */
+    void runMaintenance() throws Exception {
+        maintenance.submit(this::maintain).get();
+    }
+
+    private void maintain() {
+        maintenanceScheduled.set(false);
+        try {
+            for (Segment segment : List.copyOf(segments.values())) {
+                if (segment == active || !open) {
+                    continue;
+                }
+                boolean small = segment.logEnd < segmentBytes / 4;
+                boolean sparse = segment.liveBytes.get() < segment.logEnd * compactLiveRatio;
+                if (small || sparse) {
+                    compact(segment);
+                }
+            }
+            while (totalBytes() > maxBytes && open) {
+                Map.Entry<Long, Segment> oldest = segments.firstEntry();
+                if (oldest == null || oldest.getValue() == active) {
+                    break;
+                }
+                evict(oldest.getValue());
+            }
+        } catch (IOException | RuntimeException e) {
+            log.warn("llm-store 维护失败: {}", e.getMessage(), e);
+        }
+    }
+
+    /**
+     * 把封存段中仍被索引引用的记录搬到活动段，然后删除该段。
+     */
+    private void compact(Segment segment) throws IOException {
+        long start = System.nanoTime();
+        int moved = 0;
+        byte[] hash = new byte[HASH_BYTES];
+        for (int pos = 0; pos < segment.idxEnd; pos += INDEX_ENTRY_BYTES) {
+            segment.idx.get(pos, hash);
+            int offset = (int) segment.idx.getLong(pos + HASH_BYTES);
+            int length = segment.idx.getInt(pos + HASH_BYTES + 8);
+            Key key = Key.of(hash);
+            writeLock.lock();
+            try {
+                Location loc = index.get(key);
+                if (loc == null || loc.segment() != segment || loc.offset() != offset || !open) {
+                    continue;
+                }
+                byte[] record = new byte[length];
+                segment.log.get(offset, record);
+                Location moved0 = append(hash, record);
+                index.put(key, moved0);
+                release(loc);
+                moved++;
+            } finally {
+                writeLock.unlock();
+            }
+        }
+        delete(segment);
+        log.info("llm-store compacted segment={} moved={} in {}ms", segment.id, moved,
+                (System.nanoTime() - start) / 1_000_000);
+    }
+
+    private void evict(Segment segment) throws IOException {
+        int before = index.size();
+        index.values().removeIf(loc -> loc.segment() == segment);
+        delete(segment);
+        log.info("llm-store evicted segment={} entries={} (超过容量上限 {} 字节)", segment.id,
+                before - index.size(), maxBytes);
+    }
+
+    private void delete(Segment segment) throws IOException {
+        segments.remove(segment.id, segment);
+        Files.deleteIfExists(logPath(segment.id));
+        Files.deleteIfExists(idxPath(segment.id));
+    }
+
+    private void release(Location replaced) {
+        if (replaced != null) {
+            replaced.segment().liveBytes.addAndGet(-replaced.length());
+        }
+    }
+
+    // ---------------- 工具 ----------------
+
+    private Path logPath(long id) {
+        return dir.resolve(String.format("%016d.log", id));
+    }
+
+    private Path idxPath(long id) {
+        return dir.resolve(String.format("%016d.idx", id));
+    }
+
+    private static byte[] indexEntry(byte[] hash, int offset, int length) {
+        return ByteBuffer.allocate(INDEX_ENTRY_BYTES).put(hash).putLong(offset).putInt(length).array();
+    }
+
+    private static int crc32(byte[] bytes) {
+        CRC32 crc = new CRC32();
+        crc.update(bytes);
+        return (int) crc.getValue();
+    }
+
+    private static int writeFully(FileChannel ch, ByteBuffer buf, long position) throws IOException {
+        int written = 0;
+        while (buf.hasRemaining()) {
+            written += ch.write(buf, position + written);
+        }
+        return written;
+    }
+
+    private static final class Segment {
+        final long id;
+        /**
+         * 启动时为只读映射；成为活动段后原地换成可写映射（两者内容一致，读方拿到哪个都可以）。
+         */
+        volatile MappedByteBuffer log;
+        volatile MappedByteBuffer idx;
+        /**
+         * 有效数据末尾；活动段在 writeLock 下推进，读方只会访问已发布到索引的位置。
+         */
+        volatile int logEnd;
+        volatile int idxEnd;
+        final AtomicLong liveBytes = new AtomicLong();
+
+        Segment(long id) {
+            this.id = id;
+        }
+    }
+
+    private record Location(Segment segment, int offset, int length) {
+    }
+
+    /**
+     * SHA-256 的 4 个 long，避免以 byte[]/十六进制字符串作为 HashMap key。
+     */
+    private record Key(long a, long b, long c, long d) {
+
+        static Key of(byte[] hash) {
+            return at(ByteBuffer.wrap(hash), 0);
+        }
+
+        static Key at(ByteBuffer buf, int position) {
+            return new Key(buf.getLong(position), buf.getLong(position + 8),
+                    buf.getLong(position + 16), buf.getLong(position + 24));
+        }
+
+        boolean matches(ByteBuffer buf, int position) {
+            return buf.getLong(position) == a && buf.getLong(position + 8) == b
+                    && buf.getLong(position + 16) == c && buf.getLong(position + 24) == d;
+        }
+    }
+}
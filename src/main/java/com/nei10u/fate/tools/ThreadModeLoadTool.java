@@ -0,0 +1,195 @@
+package com.nei10u.fate.tools;
+
+import com.nei10u.fate.config.BoundedVirtualThreadExecutor;
+import com.nei10u.fate.config.FateExecutorConfiguration;
+import com.nei10u.fate.config.OpenRouterConfig;
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpServer;
+import jdk.jfr.consumer.RecordedThread;
+import jdk.jfr.consumer.RecordingStream;
+import org.springframework.ai.chat.client.ChatClient;
+import org.springframework.ai.openai.OpenAiChatModel;
+import org.springframework.ai.openai.OpenAiChatOptions;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.lang.management.ManagementFactory;
+import java.lang.management.MemoryMXBean;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.net.http.HttpClient;
+import java.nio.charset.StandardCharsets;
+import java.time.Duration;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * 平台线程 vs 虚拟线程：固定堆下“同时在途的分析数”对比。
+ * <p>
+ * 不访问 OpenRouter：在本机启动一个 OpenAI 兼容的桩服务（/chat/completions），响应前阻塞 latencyMs，
+ * 返回与真实请求同量级的内容（80 条 K 线批注）。调用方走与线上完全相同的链路：
+ * ChatClient -> OpenAiChatModel -> OpenAiApi -> RestClient -> JdkClientHttpRequestFactory -> JDK HttpClient
+ * （由 {@link OpenRouterConfig} 的同一组工厂方法构造），因此能反映该链路在虚拟线程上的 pinning 与吞吐。
+ * <p>
+ * 平台线程模式使用与 Tomcat 默认 max-threads 相同的线程数，虚拟线程模式只受并发上限约束；
+ * 两种模式都统计调用方线程上的 JFR jdk.VirtualThreadPinned 事件数（平台线程模式下恒为 0；桩服务线程不计）。
+ * <p>
+ * 用法（堆大小与 dockerfile 保持一致；并发连接数较大时先调高 ulimit -n）：
+ * mvn -q -DskipTests package dependency:build-classpath -Dmdep.outputFile=target/cp.txt
+ * java -Xmx512m -cp target/classes:$(cat target/cp.txt) com.nei10u.fate.tools.ThreadModeLoadTool [requests] [latencyMs] [platformThreads]
+ */
+public class ThreadModeLoadTool {
+
+    private static final int POINTS_PER_ANALYSIS = 80;
+    private static final int DESCRIPTION_CHARS = 200;
+
+    public static void main(String[] args) throws Exception {
+        int requests = args.length > 0 ? Integer.parseInt(args[0]) : 4000;
+        int latencyMs = args.length > 1 ? Integer.parseInt(args[1]) : 2000;
+        int platformThreads = args.length > 2 ? Integer.parseInt(args[2]) : 200;
+
+        HttpServer stub = startStub(requests, latencyMs);
+        String baseUrl = "http://127.0.0.1:" + stub.getAddress().getPort();
+        try {
+            System.out.printf("requests=%d latency=%dms maxHeap=%dMB stub=%s%n", requests, latencyMs,
+                    Runtime.getRuntime().maxMemory() / (1024 * 1024), baseUrl);
+            System.out.printf("%-9s %10s %10s %10s %12s %10s %10s%n",
+                    "mode", "peakInFl", "wallMs", "req/s", "peakHeapMB", "rejected", "pinned");
+            run("platform", FateExecutorConfiguration.boundedPlatformExecutor("load-p-", platformThreads, requests),
+                    chatClient(baseUrl), requests);
+            run("virtual", new BoundedVirtualThreadExecutor("load-v-", requests),
+                    chatClient(baseUrl), requests);
+        } finally {
+            stub.stop(0);
+        }
+    }
+
+    /**
+     * 每种模式使用独立的 HttpClient，避免连接池在两轮之间复用影响对比。
+     */
+    private static ChatClient chatClient(String baseUrl) {
+        HttpClient httpClient = OpenRouterConfig.newHttpClient(Duration.ofSeconds(5));
+        OpenAiChatModel model = OpenAiChatModel.builder()
+                .openAiApi(OpenRouterConfig.newOpenAiApi(httpClient, baseUrl, "stub-key", Duration.ofSeconds(180)))
+                .defaultOptions(OpenAiChatOptions.builder().model("stub").build())
+                .build();
+        return ChatClient.create(model);
+    }
+
+    private static void run(String mode, ExecutorService executor, ChatClient chatClient, int requests)
+            throws Exception {
+        System.gc();
+        MemoryMXBean memory = ManagementFactory.getMemoryMXBean();
+        AtomicInteger inFlight = new AtomicInteger();
+        AtomicInteger peakInFlight = new AtomicInteger();
+        AtomicLong peakHeap = new AtomicLong();
+        AtomicInteger rejected = new AtomicInteger();
+        AtomicInteger failed = new AtomicInteger();
+        AtomicLong pinned = new AtomicLong();
+        CountDownLatch done = new CountDownLatch(requests);
+
+        Thread sampler = new Thread(() -> {
+            while (!Thread.currentThread().isInterrupted()) {
+                peakHeap.accumulateAndGet(memory.getHeapMemoryUsage().getUsed(), Math::max);
+                try {
+                    Thread.sleep(20);
+                } catch (InterruptedException e) {
+                    return;
+                }
+            }
+        });
+        sampler.setDaemon(true);
+        sampler.start();
+
+        try (RecordingStream pinning = new RecordingStream()) {
+            pinning.enable("jdk.VirtualThreadPinned").withThreshold(Duration.ofMillis(1));
+            // 桩服务自身也跑在虚拟线程上：只统计调用方线程（load- 前缀）的 pinning
+            pinning.onEvent("jdk.VirtualThreadPinned", e -> {
+                RecordedThread thread = e.getThread();
+                if (thread != null && thread.getJavaName() != null && thread.getJavaName().startsWith("load-")) {
+                    pinned.incrementAndGet();
+                }
+            });
+            pinning.startAsync();
+
+            long start = System.nanoTime();
+            for (int i = 0; i < requests; i++) {
+                String prompt = "load-" + mode + "-" + i;
+                try {
+                    executor.execute(() -> {
+                        try {
+                            peakInFlight.accumulateAndGet(inFlight.incrementAndGet(), Math::max);
+                            String content = chatClient.prompt().user(prompt).call().content();
+                            if (content == null || content.isEmpty()) {
+                                failed.incrementAndGet();
+                            }
+                        } catch (RuntimeException e) {
+                            failed.incrementAndGet();
+                        } finally {
+                            inFlight.decrementAndGet();
+                            done.countDown();
+                        }
+                    });
+                } catch (RejectedExecutionException e) {
+                    rejected.incrementAndGet();
+                    done.countDown();
+                }
+            }
+            done.await();
+            long wallMs = TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start);
+            sampler.interrupt();
+            executor.shutdownNow();
+
+            System.out.printf("%-9s %10d %10d %10.1f %12d %10d %10d%n", mode, peakInFlight.get(), wallMs,
+                    (requests - rejected.get() - failed.get()) * 1000.0 / Math.max(1, wallMs),
+                    peakHeap.get() / (1024 * 1024), rejected.get(), pinned.get());
+            if (failed.get() > 0) {
+                System.out.printf("%-9s failed=%d%n", mode, failed.get());
+            }
+        }
+    }
+
+    /**
+     * OpenAI 兼容的桩服务：每个请求一个虚拟线程，保证桩本身不是瓶颈。
+     */
+    private static HttpServer startStub(int backlog, int latencyMs) throws IOException {
+        byte[] body = completionBody();
+        HttpServer server = HttpServer.create(new InetSocketAddress(InetAddress.getLoopbackAddress(), 0), backlog);
+        server.setExecutor(Executors.newVirtualThreadPerTaskExecutor());
+        server.createContext("/chat/completions", exchange -> respond(exchange, body, latencyMs));
+        server.start();
+        return server;
+    }
+
+    private static void respond(HttpExchange exchange, byte[] body, int latencyMs) throws IOException {
+        try (exchange; InputStream in = exchange.getRequestBody()) {
+            in.readAllBytes();
+            Thread.sleep(latencyMs);
+            exchange.getResponseHeaders().set("Content-Type", "application/json");
+            exchange.sendResponseHeaders(200, body.length);
+            try (OutputStream out = exchange.getResponseBody()) {
+                out.write(body);
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    private static byte[] completionBody() {
+        StringBuilder content = new StringBuilder();
+        for (int i = 0; i < POINTS_PER_ANALYSIS; i++) {
+            content.append("运".repeat(DESCRIPTION_CHARS)).append(i).append("\\n");
+        }
+        String json = "{\"id\":\"stub\",\"object\":\"chat.completion\",\"created\":0,\"model\":\"stub\","
+                + "\"choices\":[{\"index\":0,\"message\":{\"role\":\"assistant\",\"content\":\"" + content + "\"},"
+                + "\"finish_reason\":\"stop\"}],"
+                + "\"usage\":{\"prompt_tokens\":1,\"completion_tokens\":1,\"total_tokens\":2}}";
+        return json.getBytes(StandardCharsets.UTF_8);
+    }
+}
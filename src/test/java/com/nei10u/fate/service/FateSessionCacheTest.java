@@ -0,0 +1,111 @@
+package com.nei10u.fate.service;
+
+import com.nei10u.fate.model.FateResponse;
+import com.nei10u.fate.service.session.InMemorySessionStore;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.nio.file.Path;
+import java.time.Duration;
+import java.util.List;
+import java.util.Map;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+
+class FateSessionCacheTest {
+
+    @TempDir
+    Path dir;
+
+    private InMemorySessionStore store;
+    private ModelLedger ledger;
+    private FateSessionCache cache;
+
+    @BeforeEach
+    void open() {
+        SimpleMeterRegistry registry = new SimpleMeterRegistry();
+        store = new InMemorySessionStore(Duration.ofMinutes(30), 16, false, dir.resolve("snapshot.bin"), registry);
+        ledger = new ModelLedger(Duration.ofMinutes(30), 100, registry);
+        cache = new FateSessionCache(store, ledger, true, true, true, false, true, Duration.ofMinutes(30), 100,
+                registry);
+    }
+
+    @AfterEach
+    void close() {
+        store.close();
+    }
+
+    @Test
+    void recordingModelsAloneCreatesNoSessionEntry() {
+        ledger.record("r1", "yearly", "model-a");
+        ledger.record("r1", "baseline", "model-b");
+
+        // 没有阶段结果的请求保持“会话不存在”，/yearly 仍返回 409 而不是空数据
+        assertFalse(cache.get("r1").isPresent());
+    }
+
+    @Test
+    void modelsAreWrittenWithTheStageResult() {
+        ledger.record("r2", "baseline", "model-b");
+        cache.upsertBaseline("r2", bazi(), 60, "ok");
+        assertEquals(Map.of("baseline", "model-b"), cache.get("r2").orElseThrow().stageModels());
+
+        ledger.record("r2", "yearly", "model-a");
+        ledger.record("r2", "yearly", "model-c");
+        ledger.record("r2", "yearly", "model-a");
+        cache.upsertKline("r2", List.of(), List.of());
+
+        FateSessionCache.CacheEntry entry = cache.get("r2").orElseThrow();
+        assertEquals(Map.of("baseline", "model-b", "yearly", "model-a,model-c"), entry.stageModels());
+        assertEquals(60, entry.baseline());
+        assertEquals(1, entry.klineVersion());
+    }
+
+    @Test
+    void modelsOfSharedResultAreRecordedForTheConsumer() {
+        // 命盘缓存命中 / 单飞跟随者：领头请求的作答模型记到本请求名下
+        ledger.record("leader", "yearly", "model-a");
+        ledger.recordAll("follower", ledger.models("leader", "yearly"));
+        cache.upsertKline("follower", List.of(), List.of());
+
+        assertEquals(Map.of("yearly", "model-a"), cache.get("follower").orElseThrow().stageModels());
+    }
+
+    @Test
+    void reportModelsFinishingAfterKlineReachTheEntry() {
+        ledger.record("r3", "yearly", "model-a");
+        cache.upsertKline("r3", List.of(), List.of());
+
+        // report 与 kline 并行，晚于 upsertKline 完成：只合入作答模型，不动已写入的结果
+        ledger.record("r3", "report", "model-b");
+        cache.recordStageModels("r3", "report");
+
+        FateSessionCache.CacheEntry entry = cache.get("r3").orElseThrow();
+        assertEquals(Map.of("yearly", "model-a", "report", "model-b"), entry.stageModels());
+        assertEquals(1, entry.klineVersion());
+    }
+
+    @Test
+    void reportModelsAloneCreateNoSessionEntry() {
+        ledger.record("r4", "report", "model-b");
+        cache.recordStageModels("r4", "report");
+
+        assertFalse(cache.get("r4").isPresent());
+        // 之后的阶段结果写入时一并带上
+        cache.upsertKline("r4", List.of(), List.of());
+        assertEquals(Map.of("report", "model-b"), cache.get("r4").orElseThrow().stageModels());
+    }
+
+    private static FateResponse.BaZiInfo bazi() {
+        FateResponse.BaZiInfo bazi = new FateResponse.BaZiInfo();
+        bazi.setYearPillar("甲子");
+        bazi.setMonthPillar("丙寅");
+        bazi.setDayPillar("戊辰");
+        bazi.setHourPillar("庚申");
+        return bazi;
+    }
+}
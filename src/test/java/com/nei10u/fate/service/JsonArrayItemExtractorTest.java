@@ -0,0 +1,95 @@
+package com.nei10u.fate.service;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+class JsonArrayItemExtractorTest {
+
+    @Test
+    void extractsItemsFromWrapperAndBareArray() {
+        String wrapped = "{\"items\":[{\"age\":1,\"close\":50},{\"age\":2,\"close\":55}]}";
+        String bare = "[{\"age\":1,\"close\":50},{\"age\":2,\"close\":55}]";
+        List<String> expected = List.of("{\"age\":1,\"close\":50}", "{\"age\":2,\"close\":55}");
+
+        assertEquals(expected, JsonArrayItemExtractor.extractAll(wrapped));
+        assertEquals(expected, JsonArrayItemExtractor.extractAll(bare));
+    }
+
+    @Test
+    void skipsFencesAndSurroundingText() {
+        String raw = "好的，结果如下 \"注意\"：\n```json\n{\"items\":[{\"age\":1,\"close\":50}]}\n```\n以上。";
+
+        assertEquals(List.of("{\"age\":1,\"close\":50}"), JsonArrayItemExtractor.extractAll(raw));
+    }
+
+    @Test
+    void dropsTruncatedTrailingItem() {
+        String raw = "{\"items\":[{\"age\":1,\"close\":50},{\"age\":2,\"close\":55},{\"age\":3,\"content\":\"大运";
+
+        assertEquals(List.of("{\"age\":1,\"close\":50}", "{\"age\":2,\"close\":55}"),
+                JsonArrayItemExtractor.extractAll(raw));
+    }
+
+    @Test
+    void keepsBracesAndEscapedQuotesInsideStrings() {
+        String item = "{\"age\":1,\"content\":\"他说 \\\"{\\\"age\\\":9}\\\" 不算数 ] }\"}";
+        String raw = "[" + item + ",{\"age\":2}]";
+
+        assertEquals(List.of(item, "{\"age\":2}"), JsonArrayItemExtractor.extractAll(raw));
+    }
+
+    @Test
+    void resynchronisesAfterItemMissingClosingBrace() {
+        String raw = "{\"items\":[{\"age\":1,\"close\":50},"
+                + "{\"age\":2,\"close\":55,"
+                + "{\"age\":3,\"close\":60},"
+                + "{ \"age\":4,\"close\":65}]}";
+
+        assertEquals(List.of("{\"age\":1,\"close\":50}", "{\"age\":3,\"close\":60}", "{ \"age\":4,\"close\":65}"),
+                JsonArrayItemExtractor.extractAll(raw));
+    }
+
+    @Test
+    void resynchronisesAfterUnbalancedQuote() {
+        String raw = "{\"items\":[{\"age\":1,\"content\":\"ok\"},"
+                + "{\"age\":2,\"content\":\"少了结尾引号},"
+                + "{\"age\":3,\"content\":\"ok\"},"
+                + "{\"age\":4,\"content\":\"ok\"}]}";
+
+        assertEquals(List.of("{\"age\":1,\"content\":\"ok\"}", "{\"age\":3,\"content\":\"ok\"}",
+                "{\"age\":4,\"content\":\"ok\"}"), JsonArrayItemExtractor.extractAll(raw));
+    }
+
+    @Test
+    void resynchronisesAfterStrayQuoteBetweenItems() {
+        String raw = "[{\"age\":1},\"多余, {\"age\":2},{\"age\":3}]";
+
+        assertEquals(List.of("{\"age\":1}", "{\"age\":2}", "{\"age\":3}"), JsonArrayItemExtractor.extractAll(raw));
+    }
+
+    /**
+     * SSE 路径按模型流式输出的任意切分逐块喂入，结果必须与一次性提取一致。
+     */
+    @Test
+    void streamingInAnyChunkSizeMatchesOneShot() {
+        String raw = "```json\n{\"items\":[{\"age\":1,\"content\":\"a \\\"q\\\" }\"},"
+                + "{\"age\":2,\"close\":55,"
+                + "{\n  \"age\":3,\"content\":\"少了结尾引号},"
+                + "{\"age\":4,\"close\":70},{\"age\":5,\"close\"";
+        List<String> expected = JsonArrayItemExtractor.extractAll(raw);
+        assertEquals(List.of("{\"age\":1,\"content\":\"a \\\"q\\\" }\"}", "{\"age\":4,\"close\":70}"), expected);
+
+        for (int size = 1; size <= 7; size++) {
+            JsonArrayItemExtractor extractor = new JsonArrayItemExtractor();
+            List<String> streamed = new ArrayList<>();
+            for (int i = 0; i < raw.length(); i += size) {
+                streamed.addAll(extractor.feed(raw.substring(i, Math.min(raw.length(), i + size))));
+            }
+            assertEquals(expected, streamed, "chunk size " + size);
+        }
+    }
+}
@@ -0,0 +1,126 @@
+package com.nei10u.fate.service;
+
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+
+import java.time.Duration;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+import static org.awaitility.Awaitility.await;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertInstanceOf;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class ModelAdmissionTest {
+
+    private static final Duration LONG_BUDGET = Duration.ofMinutes(5);
+
+    private final AtomicLong now = new AtomicLong();
+    private final SimpleMeterRegistry registry = new SimpleMeterRegistry();
+    private final ExecutorService callers = Executors.newCachedThreadPool();
+
+    @AfterEach
+    void close() {
+        callers.shutdownNow();
+    }
+
+    @Test
+    void higherPriorityStageIsServedFirstAndReleaseHandsOff() throws Exception {
+        ModelAdmission admission = admission(1, 8);
+        ModelAdmission.Permit held = admission.acquire("yearly", "r0", LONG_BUDGET);
+        List<String> order = new CopyOnWriteArrayList<>();
+
+        CompletableFuture<ModelAdmission.Permit> report = waitFor(admission, "report-section", order);
+        awaitQueued(1);
+        CompletableFuture<ModelAdmission.Permit> baseline = waitFor(admission, "baseline", order);
+        awaitQueued(2);
+
+        held.close();
+        ModelAdmission.Permit first = baseline.get(5, TimeUnit.SECONDS);
+        // 许可直接交给队首，释放瞬间不会空出来给新到的调用
+        assertTrue(admission.tryAcquire().isEmpty());
+        assertFalse(report.isDone());
+
+        first.close();
+        report.get(5, TimeUnit.SECONDS).close();
+        assertEquals(List.of("baseline", "report-section"), order);
+        assertTrue(admission.tryAcquire().isPresent());
+    }
+
+    @Test
+    void projectedWaitBeyondBudgetIsRejectedImmediately() {
+        ModelAdmission admission = admission(1, 8);
+        ModelAdmission.Permit first = admission.acquire("yearly", "r1", LONG_BUDGET);
+        now.addAndGet(Duration.ofSeconds(10).toNanos());
+        first.close();
+        admission.acquire("yearly", "r2", LONG_BUDGET);
+
+        // 平均调用 10s、一个许可：排到时已超出 5s 的预算，不进队列
+        ModelOverloadedException rejected = assertThrows(ModelOverloadedException.class,
+                () -> admission.acquire("report", "r3", Duration.ofSeconds(5)));
+        assertEquals(10, rejected.getRetryAfterSeconds());
+        assertEquals(1.0, rejectedCount("projected"));
+        assertEquals(0.0, registry.get("fate.llm.admission.queued").gauge().value());
+    }
+
+    @Test
+    void fullQueueIsRejected() {
+        ModelAdmission admission = admission(1, 0);
+        admission.acquire("yearly", "r1", LONG_BUDGET);
+
+        assertThrows(ModelOverloadedException.class, () -> admission.acquire("baseline", "r2", LONG_BUDGET));
+        assertEquals(1.0, rejectedCount("queue-full"));
+    }
+
+    @Test
+    void queuedCallIsRejectedOnceItsBudgetPasses() throws Exception {
+        ModelAdmission admission = admission(1, 8);
+        admission.acquire("yearly", "r1", LONG_BUDGET);
+        CompletableFuture<ModelAdmission.Permit> queued = waitFor(admission, "report", new CopyOnWriteArrayList<>(),
+                Duration.ofMillis(100));
+        awaitQueued(1);
+
+        now.addAndGet(Duration.ofMillis(150).toNanos());
+
+        Exception failure = assertThrows(Exception.class, () -> queued.get(5, TimeUnit.SECONDS));
+        assertInstanceOf(ModelOverloadedException.class, failure.getCause());
+        assertEquals(1.0, rejectedCount("timeout"));
+        assertEquals(0.0, registry.get("fate.llm.admission.queued").gauge().value());
+    }
+
+    private ModelAdmission admission(int limit, int queueCapacity) {
+        return new ModelAdmission(registry, limit, queueCapacity, Duration.ofSeconds(15), now::get);
+    }
+
+    private CompletableFuture<ModelAdmission.Permit> waitFor(ModelAdmission admission, String stage,
+                                                             List<String> order) {
+        return waitFor(admission, stage, order, LONG_BUDGET);
+    }
+
+    private CompletableFuture<ModelAdmission.Permit> waitFor(ModelAdmission admission, String stage,
+                                                             List<String> order, Duration budget) {
+        return CompletableFuture.supplyAsync(() -> {
+            ModelAdmission.Permit permit = admission.acquire(stage, "r-" + stage, budget);
+            order.add(stage);
+            return permit;
+        }, callers);
+    }
+
+    private void awaitQueued(int expected) {
+        await().atMost(Duration.ofSeconds(5))
+                .until(() -> registry.get("fate.llm.admission.queued").gauge().value() == expected);
+    }
+
+    private double rejectedCount(String reason) {
+        return registry.get("fate.llm.admission.rejected").tag("reason", reason).counter().count();
+    }
+}
@@ -0,0 +1,135 @@
+package com.nei10u.fate.service;
+
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.Test;
+
+import java.time.Duration;
+import java.util.concurrent.atomic.AtomicLong;
+
+import static org.junit.jupiter.api.Assertions.assertDoesNotThrow;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class ModelResilienceTest {
+
+    private static final long MS = 1_000_000L;
+    private static final long OPEN_NANOS = Duration.ofSeconds(30).toNanos();
+
+    private final AtomicLong now = new AtomicLong();
+
+    @Test
+    void latencyWindowOnlyCountsLiveSamples() {
+        ModelResilience.LatencyWindow window = new ModelResilience.LatencyWindow(256,
+                ModelResilience.WINDOW.toNanos(), now::get);
+        for (int i = 1; i <= 100; i++) {
+            window.add(i * MS);
+        }
+        assertEquals(95 * MS, window.percentile(0.95, 20));
+        assertEquals(-1, window.percentile(0.95, 101));
+
+        // 十分钟后旧样本全部过期，p95 只看新样本
+        now.addAndGet(ModelResilience.WINDOW.toNanos() + 1);
+        assertEquals(-1, window.percentile(0.95, 1));
+        for (int i = 0; i < 20; i++) {
+            window.add(5_000 * MS);
+        }
+        assertEquals(5_000 * MS, window.percentile(0.95, 20));
+    }
+
+    @Test
+    void latencyWindowKeepsTheMostRecentCapacitySamples() {
+        ModelResilience.LatencyWindow window = new ModelResilience.LatencyWindow(4, ModelResilience.WINDOW.toNanos(),
+                now::get);
+        window.add(900 * MS);
+        for (int i = 0; i < 4; i++) {
+            window.add(10 * MS);
+        }
+        assertEquals(10 * MS, window.percentile(1.0, 4));
+    }
+
+    @Test
+    void timeoutFollowsWindowedP95IncludingTimeouts() {
+        ModelResilience resilience = resilience();
+        assertEquals(Duration.ofSeconds(90), resilience.timeout("yearly", "m", Duration.ofSeconds(90)));
+        assertEquals(Duration.ofSeconds(60), resilience.timeout("yearly", "m", null));
+        assertNull(resilience.hedgeDelay("yearly", "m"));
+
+        for (int i = 0; i < 20; i++) {
+            resilience.record("yearly", "m", Duration.ofSeconds(10).toNanos(), ModelResilience.Outcome.OK);
+        }
+        assertEquals(Duration.ofSeconds(20), resilience.timeout("yearly", "m", Duration.ofSeconds(90)));
+        assertEquals(Duration.ofSeconds(10), resilience.hedgeDelay("yearly", "m"));
+
+        // 超时样本按已等待时长计入，把 p95 与下一次超时推高；快速失败不计入延迟
+        for (int i = 0; i < 5; i++) {
+            resilience.record("yearly", "m", Duration.ofSeconds(60).toNanos(), ModelResilience.Outcome.TIMEOUT);
+            resilience.record("yearly", "m", MS, ModelResilience.Outcome.ERROR);
+        }
+        assertEquals(Duration.ofSeconds(60), resilience.p95("yearly", "m"));
+        assertEquals(Duration.ofSeconds(120), resilience.timeout("yearly", "m", null));
+
+        now.addAndGet(ModelResilience.WINDOW.toNanos() + 1);
+        assertNull(resilience.p95("yearly", "m"));
+    }
+
+    @Test
+    void breakerOpensThenProbesOnceWhenHalfOpen() {
+        ModelResilience.Breaker breaker = new ModelResilience.Breaker(10, 4, 0.5, OPEN_NANOS, now::get);
+        breaker.record(true);
+        breaker.record(true);
+        breaker.record(false);
+        assertEquals(ModelResilience.Breaker.State.OPEN, breaker.record(false));
+        assertFalse(breaker.allow());
+
+        now.addAndGet(OPEN_NANOS);
+        assertTrue(breaker.allow());
+        assertEquals(ModelResilience.Breaker.State.HALF_OPEN, breaker.state());
+        assertFalse(breaker.allow());
+
+        // 探测失败：重新打开一个完整的 open-duration
+        assertEquals(ModelResilience.Breaker.State.OPEN, breaker.record(false));
+        now.addAndGet(OPEN_NANOS - 1);
+        assertFalse(breaker.allow());
+        now.addAndGet(1);
+        assertTrue(breaker.allow());
+
+        assertEquals(ModelResilience.Breaker.State.CLOSED, breaker.record(true));
+        assertTrue(breaker.allow());
+        assertTrue(breaker.allow());
+    }
+
+    @Test
+    void probeWithoutResultIsRetriedAfterOpenDuration() {
+        ModelResilience.Breaker breaker = new ModelResilience.Breaker(4, 1, 1.0, OPEN_NANOS, now::get);
+        breaker.record(false);
+        now.addAndGet(OPEN_NANOS);
+        assertTrue(breaker.allow());
+        // 探测被取消、没有结果：其余调用仍走兜底，直到再过一个 open-duration
+        assertFalse(breaker.allow());
+        now.addAndGet(OPEN_NANOS);
+        assertTrue(breaker.allow());
+    }
+
+    @Test
+    void breakersArePerStage() {
+        ModelResilience resilience = resilience();
+        for (int i = 0; i < 10; i++) {
+            resilience.record("report-section", "m", MS, ModelResilience.Outcome.ERROR);
+        }
+        assertThrows(ModelCircuitOpenException.class, () -> resilience.checkBreaker("report-section", "r1"));
+        assertDoesNotThrow(() -> resilience.checkBreaker("yearly", "r1"));
+
+        now.addAndGet(OPEN_NANOS);
+        assertDoesNotThrow(() -> resilience.checkBreaker("report-section", "r2"));
+        assertThrows(ModelCircuitOpenException.class, () -> resilience.checkBreaker("report-section", "r3"));
+    }
+
+    private ModelResilience resilience() {
+        return new ModelResilience(new SimpleMeterRegistry(), Duration.ofSeconds(60), Duration.ofSeconds(10),
+                Duration.ofSeconds(180), 2.0, 20, true, Duration.ofSeconds(2), 20, 10, 0.5, Duration.ofSeconds(30),
+                now::get);
+    }
+}
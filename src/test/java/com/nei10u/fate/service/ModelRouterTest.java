@@ -0,0 +1,72 @@
+package com.nei10u.fate.service;
+
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.Test;
+import org.springframework.boot.context.properties.bind.Binder;
+import org.springframework.boot.context.properties.source.MapConfigurationPropertySource;
+
+import java.time.Duration;
+import java.util.Map;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNull;
+
+class ModelRouterTest {
+
+    private static final int MIN_SAMPLES = 20;
+
+    @Test
+    void routesAreBoundWithTypedValuesAndDefaults() {
+        ModelRouter router = router(Map.of(
+                "fate.llm.routes.yearly.model", "",
+                "fate.llm.routes.yearly.max-tokens", "8192",
+                "fate.llm.routes.yearly.temperature", "0.6",
+                "fate.llm.routes.yearly.slo", "90s",
+                "fate.llm.routes.yearly.fallback-model", "backup",
+                "fate.llm.routes.yearly.default-timeout", "3m",
+                "fate.llm.routes.report.model", "report-model"));
+
+        ModelRouter.Route yearly = router.route("yearly-shard");
+        assertEquals(new ModelRouter.Route("yearly", "primary", 8192, 0.6, Duration.ofSeconds(90), "backup",
+                Duration.ofMinutes(3)), yearly);
+        assertEquals(new ModelRouter.Route("report", "report-model", null, null, null, null, null),
+                router.route("report-section"));
+        // 未配置的阶段沿用默认模型
+        ModelRouter.Route facts = router.route("facts");
+        assertEquals("primary", facts.model());
+        assertNull(facts.slo());
+        assertEquals("default", router.route("other").name());
+    }
+
+    @Test
+    void fallsBackToSecondaryModelOnlyWhenP95ExceedsSlo() {
+        ModelResilience resilience = resilience();
+        ModelRouter router = router(Map.of(
+                "fate.llm.routes.baseline.slo", "1s",
+                "fate.llm.routes.baseline.fallback-model", "backup"), resilience);
+        ModelRouter.Route baseline = router.route("baseline");
+
+        // 样本不足时没有 p95，走主模型
+        assertEquals("primary", router.select("baseline", baseline));
+        for (int i = 0; i < MIN_SAMPLES; i++) {
+            resilience.record("baseline", "primary", Duration.ofSeconds(2).toNanos(), ModelResilience.Outcome.OK);
+        }
+        assertEquals("backup", router.select("baseline", baseline));
+    }
+
+    private static ModelRouter router(Map<String, String> properties) {
+        return router(properties, resilience());
+    }
+
+    private static ModelRouter router(Map<String, String> properties, ModelResilience resilience) {
+        ModelRouteProperties bound = new Binder(new MapConfigurationPropertySource(properties))
+                .bindOrCreate("fate.llm", ModelRouteProperties.class);
+        return new ModelRouter(bound, resilience, new SimpleMeterRegistry(), "primary");
+    }
+
+    private static ModelResilience resilience() {
+        return new ModelResilience(new SimpleMeterRegistry(), Duration.ofSeconds(60), Duration.ofSeconds(10),
+                Duration.ofSeconds(180), 2.0, MIN_SAMPLES, true, Duration.ofSeconds(2), 20, 10, 0.5,
+                Duration.ofSeconds(30));
+    }
+}
@@ -0,0 +1,148 @@
+package com.nei10u.fate.service;
+
+import org.junit.jupiter.api.Test;
+
+import java.time.Duration;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Supplier;
+
+import static org.awaitility.Awaitility.await;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertSame;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class SingleFlightTest {
+
+    private final SingleFlight<String, String> flight = new SingleFlight<>();
+
+    @Test
+    void followersShareTheLeadersValue() throws Exception {
+        CountDownLatch release = new CountDownLatch(1);
+        Caller leader = start(() -> {
+            awaitLatch(release);
+            return "leader";
+        });
+        awaitInFlight();
+        AtomicInteger followerWork = new AtomicInteger();
+        Caller follower = start(() -> {
+            followerWork.incrementAndGet();
+            return "follower";
+        });
+        awaitParked(follower);
+
+        release.countDown();
+        assertEquals(new SingleFlight.Outcome<>("leader", false), leader.result.get(5, TimeUnit.SECONDS));
+        assertEquals(new SingleFlight.Outcome<>("leader", true), follower.result.get(5, TimeUnit.SECONDS));
+        assertEquals(0, followerWork.get());
+        assertEquals(0, flight.inFlightCount());
+    }
+
+    @Test
+    void followersShareTheLeadersError() throws Exception {
+        CountDownLatch release = new CountDownLatch(1);
+        IllegalStateException boom = new IllegalStateException("upstream failed");
+        Caller leader = start(() -> {
+            awaitLatch(release);
+            throw boom;
+        });
+        awaitInFlight();
+        AtomicInteger followerWork = new AtomicInteger();
+        Caller follower = start(() -> {
+            followerWork.incrementAndGet();
+            return "follower";
+        });
+        awaitParked(follower);
+
+        release.countDown();
+        Exception leaderErr = assertThrows(Exception.class, () -> leader.result.get(5, TimeUnit.SECONDS));
+        Exception followerErr = assertThrows(Exception.class, () -> follower.result.get(5, TimeUnit.SECONDS));
+        assertSame(boom, leaderErr.getCause());
+        // 跟随者拿到同一个异常，不会各自重试
+        assertSame(boom, followerErr.getCause());
+        assertEquals(0, followerWork.get());
+        assertEquals(0, flight.inFlightCount());
+    }
+
+    @Test
+    void followerRacesAgainWhenTheLeaderIsCancelled() throws Exception {
+        Caller leader = start(() -> {
+            try {
+                Thread.sleep(Duration.ofMinutes(1));
+                return "leader";
+            } catch (InterruptedException e) {
+                // 阶段超时中断：生成方法返回兜底值并保留中断标记
+                Thread.currentThread().interrupt();
+                return "fallback";
+            }
+        });
+        awaitInFlight();
+        Caller follower = start(() -> "follower");
+        awaitParked(follower);
+
+        leader.thread.interrupt();
+        assertEquals(new SingleFlight.Outcome<>("fallback", false), leader.result.get(5, TimeUnit.SECONDS));
+        // 兜底值不分享给跟随者：跟随者成为新的领头者，自己执行
+        assertEquals(new SingleFlight.Outcome<>("follower", false), follower.result.get(5, TimeUnit.SECONDS));
+        assertEquals(0, flight.inFlightCount());
+    }
+
+    @Test
+    void interruptedFollowerStopsWaitingWithoutCancellingTheLeader() throws Exception {
+        CountDownLatch release = new CountDownLatch(1);
+        Caller leader = start(() -> {
+            awaitLatch(release);
+            return "leader";
+        });
+        awaitInFlight();
+        Caller follower = start(() -> "follower");
+        awaitParked(follower);
+
+        follower.thread.interrupt();
+        assertThrows(Exception.class, () -> follower.result.get(5, TimeUnit.SECONDS));
+        assertFalse(leader.result.isDone());
+        release.countDown();
+        assertEquals("leader", leader.result.get(5, TimeUnit.SECONDS).value());
+    }
+
+    private record Caller(Thread thread, CompletableFuture<SingleFlight.Outcome<String>> result) {
+    }
+
+    private Caller start(Supplier<String> work) {
+        CompletableFuture<SingleFlight.Outcome<String>> result = new CompletableFuture<>();
+        Thread thread = new Thread(() -> {
+            try {
+                result.complete(flight.execute("chart", work));
+            } catch (Throwable e) {
+                result.completeExceptionally(e);
+            }
+        });
+        thread.setDaemon(true);
+        thread.start();
+        return new Caller(thread, result);
+    }
+
+    private void awaitInFlight() {
+        await().atMost(Duration.ofSeconds(5)).until(() -> flight.inFlightCount() == 1);
+    }
+
+    /**
+     * 跟随者已挂在领头者的结果上（阻塞等待中）。
+     */
+    private static void awaitParked(Caller caller) {
+        await().atMost(Duration.ofSeconds(5)).until(() -> caller.thread.getState() == Thread.State.WAITING);
+    }
+
+    private static void awaitLatch(CountDownLatch latch) {
+        try {
+            assertTrue(latch.await(5, TimeUnit.SECONDS));
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IllegalStateException(e);
+        }
+    }
+}
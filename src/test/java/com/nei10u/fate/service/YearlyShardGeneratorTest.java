@@ -0,0 +1,101 @@
+package com.nei10u.fate.service;
+
+import com.nei10u.fate.model.FateResponse;
+import com.nei10u.fate.service.YearlyShardGenerator.Shard;
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+class YearlyShardGeneratorTest {
+
+    private static final String[] GAN_ZHI = {"丁卯", "戊辰", "己巳", "庚午", "辛未", "壬申", "癸酉", "甲戌"};
+
+    @Test
+    void shardsAreCutAtDaYunStarts() {
+        List<Shard> shards = YearlyShardGenerator.plan(daYuns(8), 80, 5);
+
+        assertEquals(List.of(
+                new Shard(1, 7, "童限"),
+                new Shard(8, 17, "丁卯"),
+                new Shard(18, 27, "戊辰"),
+                new Shard(28, 37, "己巳"),
+                new Shard(38, 47, "庚午"),
+                new Shard(48, 57, "辛未"),
+                new Shard(58, 67, "壬申"),
+                // 78..80 只有 3 年，并入前一段
+                new Shard(68, 80, "癸酉、甲戌")), shards);
+        assertCovers(shards, 80);
+    }
+
+    @Test
+    void shortChildhoodIsMergedIntoTheFirstDaYun() {
+        List<Shard> shards = YearlyShardGenerator.plan(daYuns(3), 80, 5);
+
+        // 童限 1..2 不足 5 年，与第一步大运合为一段
+        assertEquals(new Shard(1, 12, "童限、丁卯"), shards.get(0));
+        assertEquals(new Shard(13, 22, "戊辰"), shards.get(1));
+        // 73..80 有 8 年，单独成段
+        assertEquals(new Shard(73, 80, "甲戌"), shards.get(shards.size() - 1));
+        assertEquals(8, shards.size());
+        assertCovers(shards, 80);
+    }
+
+    @Test
+    void withoutDaYunsShardsAreTenYearsEach() {
+        List<Shard> shards = YearlyShardGenerator.plan(null, 80, 5);
+
+        assertEquals(8, shards.size());
+        for (int i = 0; i < shards.size(); i++) {
+            assertEquals(new Shard(i * 10 + 1, i * 10 + 10, "童限"), shards.get(i));
+        }
+    }
+
+    @Test
+    void startsOutsideTheAgeRangeAreIgnored() {
+        List<FateResponse.DaYunInfo> daYuns = new ArrayList<>();
+        daYuns.add(daYun(1, "丁卯"));
+        daYuns.add(daYun(20, "戊辰"));
+        daYuns.add(daYun(40, "庚午"));
+        daYuns.add(daYun(90, "辛未"));
+
+        // 1 岁起运不产生空的童限段，超出 years 的大运不产生切点
+
+        List<Shard> shards = YearlyShardGenerator.plan(daYuns, 60, 5);
+
+        assertEquals(List.of(
+                new Shard(1, 19, "丁卯"),
+                new Shard(20, 39, "戊辰"),
+                new Shard(40, 60, "庚午")), shards);
+        assertCovers(shards, 60);
+    }
+
+    private static void assertCovers(List<Shard> shards, int years) {
+        int next = 1;
+        for (Shard shard : shards) {
+            assertEquals(next, shard.fromAge());
+            next = shard.toAge() + 1;
+        }
+        assertEquals(years + 1, next);
+    }
+
+    /**
+     * 八步大运，从 firstStart 岁起每十年一步。
+     */
+    private static List<FateResponse.DaYunInfo> daYuns(int firstStart) {
+        List<FateResponse.DaYunInfo> out = new ArrayList<>();
+        for (int i = 0; i < GAN_ZHI.length; i++) {
+            out.add(daYun(firstStart + i * 10, GAN_ZHI[i]));
+        }
+        return out;
+    }
+
+    private static FateResponse.DaYunInfo daYun(int startAge, String ganZhi) {
+        FateResponse.DaYunInfo dy = new FateResponse.DaYunInfo();
+        dy.setStartAge(startAge);
+        dy.setGanZhi(ganZhi);
+        return dy;
+    }
+}
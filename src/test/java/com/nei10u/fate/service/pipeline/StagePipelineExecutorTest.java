@@ -0,0 +1,57 @@
+package com.nei10u.fate.service.pipeline;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+
+import java.time.Duration;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertInstanceOf;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+class StagePipelineExecutorTest {
+
+    private final ExecutorService pool = Executors.newFixedThreadPool(2);
+    private final StagePipelineExecutor executor = new StagePipelineExecutor(pool);
+
+    @AfterEach
+    void close() {
+        pool.shutdownNow();
+    }
+
+    @Test
+    void timeoutThrownByStageWithoutTimeoutIsAPlainFailure() throws Exception {
+        StageGraph graph = StageGraph.builder()
+                .stage("a", List.of(), null, ctx -> {
+                    throw new TimeoutException("upstream");
+                })
+                .build();
+
+        PipelineResult result = executor.submit("r1", graph, Map.of(), List.of("a")).get(5, TimeUnit.SECONDS);
+
+        assertEquals(StageTiming.Status.FAILED, result.timings().get(0).status());
+        IllegalStateException failure = assertThrows(IllegalStateException.class, () -> result.require("a"));
+        assertInstanceOf(TimeoutException.class, failure.getCause());
+    }
+
+    @Test
+    void stageTimeoutFallsBack() throws Exception {
+        StageGraph graph = StageGraph.builder()
+                .stage("a", List.of(), Duration.ofMillis(50), ctx -> {
+                    Thread.sleep(5_000);
+                    return "late";
+                }, err -> "fallback")
+                .build();
+
+        PipelineResult result = executor.submit("r2", graph, Map.of(), List.of("a")).get(5, TimeUnit.SECONDS);
+
+        assertEquals("fallback", result.require("a"));
+        assertEquals(StageTiming.Status.FALLBACK, result.timings().get(0).status());
+    }
+}
@@ -0,0 +1,99 @@
+package com.nei10u.fate.service.session;
+
+import com.nei10u.fate.model.FateKLinePoint;
+import com.nei10u.fate.model.YearlyBatchResult;
+import org.junit.jupiter.api.Test;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertSame;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class CompactSeriesTest {
+
+    @Test
+    void missingOpenAndCloseStayNull() throws IOException {
+        YearlyBatchResult.YearlyItem item = item(1, 60, null, null, null, "甲子", "丙寅", "平稳");
+        CompactSeries series = roundTrip(CompactSeries.of(List.of(item), null, true));
+
+        YearlyBatchResult.YearlyItem decoded = series.yearlyItems().get(0);
+        assertNull(decoded.getOpen());
+        assertNull(decoded.getClose());
+        assertNull(decoded.getTrend());
+        assertEquals(item, decoded);
+        assertNull(series.kLineData());
+    }
+
+    @Test
+    void nonSexagenaryTextGoesThroughTheRareColumn() throws IOException {
+        List<YearlyBatchResult.YearlyItem> items = List.of(
+                item(1, 50, 50, 52, "Bullish", "甲子", "童限", "起运前"),
+                item(2, 52, 52, 51, "Sideways", "乙丑年", null, null),
+                item(3, 51, 51, 49, "Bearish", null, "丙寅", ""));
+        CompactSeries series = roundTrip(CompactSeries.of(items, null, false));
+
+        assertEquals(items, series.yearlyItems());
+    }
+
+    @Test
+    void compressedAndPlainTextBlocksDecodeTheSame() throws IOException {
+        List<YearlyBatchResult.YearlyItem> items = new ArrayList<>();
+        List<FateKLinePoint> points = new ArrayList<>();
+        // 80 行跨越位图的 64 位边界；文本足够长才会触发压缩
+        for (int age = 1; age <= 80; age++) {
+            String trend = age % 2 == 0 ? "Bullish" : "Bearish";
+            String content = "运势平稳，宜守不宜攻。".repeat(4) + age;
+            items.add(item(age, 50 + age % 7, 50, 50 + age % 7, trend, "甲子", "丙寅", content));
+            points.add(FateKLinePoint.builder().age(age).year(1990 + age).score(50 + age % 7).open(50)
+                    .close(50 + age % 7).trend(trend).ganZhi("乙丑").daYun(age < 8 ? "童限" : "丁卯")
+                    .description(content).build());
+        }
+
+        CompactSeries compressed = CompactSeries.of(items, points, true);
+        CompactSeries plain = CompactSeries.of(items, points, false);
+        assertTrue(compressed.sizeInBytes() < plain.sizeInBytes());
+
+        for (CompactSeries series : List.of(roundTrip(compressed), roundTrip(plain))) {
+            CompactSeries.Views views = series.views();
+            assertEquals(items, views.yearlyItems());
+            assertEquals(points, views.kLineData());
+            assertEquals(points, series.kLineData());
+        }
+    }
+
+    @Test
+    void emptySeriesDecodesToTheSharedEmptyInstance() throws IOException {
+        assertSame(CompactSeries.EMPTY, CompactSeries.of(null, null, true));
+        assertSame(CompactSeries.EMPTY, roundTrip(CompactSeries.EMPTY));
+    }
+
+    static YearlyBatchResult.YearlyItem item(int age, int score, Integer open, Integer close, String trend,
+                                             String ganZhi, String daYun, String content) {
+        YearlyBatchResult.YearlyItem item = new YearlyBatchResult.YearlyItem();
+        item.setAge(age);
+        item.setScore(score);
+        item.setOpen(open);
+        item.setClose(close);
+        item.setTrend(trend);
+        item.setGanZhi(ganZhi);
+        item.setDaYun(daYun);
+        item.setContent(content);
+        return item;
+    }
+
+    private static CompactSeries roundTrip(CompactSeries series) throws IOException {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        try (DataOutputStream out = new DataOutputStream(bytes)) {
+            series.writeTo(out);
+        }
+        return CompactSeries.readFrom(new DataInputStream(new ByteArrayInputStream(bytes.toByteArray())));
+    }
+}
@@ -0,0 +1,190 @@
+package com.nei10u.fate.service.session;
+
+import com.nei10u.fate.model.FateResponse;
+import com.nei10u.fate.service.FateSessionCache;
+import com.nei10u.fate.service.FateSessionCache.CacheEntry;
+import com.nei10u.fate.service.ModelLedger;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.testcontainers.DockerClientFactory;
+import org.testcontainers.containers.GenericContainer;
+import org.testcontainers.junit.jupiter.Container;
+import org.testcontainers.junit.jupiter.Testcontainers;
+import org.testcontainers.utility.DockerImageName;
+
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.UUID;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+import static org.awaitility.Awaitility.await;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+/**
+ * 两个 {@link RedisSessionStore} 实例（模拟两个副本）共用一个容器内的 redis-server。
+ * 近端缓存 ttl 设得足够长，跨节点看到新值只能依赖 pub/sub 失效广播。
+ */
+@Testcontainers(disabledWithoutDocker = true)
+class RedisSessionStoreTest {
+
+    @Container
+    private static final GenericContainer<?> REDIS = new GenericContainer<>(DockerImageName.parse("redis:7-alpine"))
+            .withExposedPorts(6379);
+
+    private RedisSessionStore nodeA;
+    private RedisSessionStore nodeB;
+
+    @BeforeEach
+    void connect() {
+        nodeA = newStore();
+        nodeB = newStore();
+    }
+
+    @AfterEach
+    void close() {
+        nodeA.close();
+        nodeB.close();
+    }
+
+    @Test
+    void entryWrittenOnOneNodeIsReadOnTheOther() {
+        String id = newRequestId();
+        nodeA.update(id, old -> entry(old == null ? 1 : old.klineVersion() + 1));
+
+        Optional<CacheEntry> read = nodeB.get(id);
+        assertTrue(read.isPresent());
+        assertEquals(1, read.get().klineVersion());
+        assertFalse(nodeB.get(newRequestId()).isPresent());
+    }
+
+    @Test
+    void writeInvalidatesOtherNodesNearCache() {
+        String id = newRequestId();
+        nodeA.update(id, old -> entry(1));
+        // B 读入近端缓存，此后 B 的读取不再访问 redis
+        assertEquals(1, nodeB.get(id).orElseThrow().klineVersion());
+
+        nodeA.update(id, old -> entry(old.klineVersion() + 1));
+
+        await().atMost(Duration.ofSeconds(5))
+                .until(() -> nodeB.get(id).map(CacheEntry::klineVersion).orElse(0) == 2);
+    }
+
+    @Test
+    void concurrentUpdatesOfSameKeyAcrossNodesAreNotLost() throws Exception {
+        String id = newRequestId();
+        int threadsPerNode = 4;
+        int updatesPerThread = 25;
+        ExecutorService pool = Executors.newFixedThreadPool(threadsPerNode * 2);
+        CountDownLatch start = new CountDownLatch(1);
+        List<Future<?>> futures = new ArrayList<>();
+        try {
+            for (RedisSessionStore node : List.of(nodeA, nodeB)) {
+                for (int t = 0; t < threadsPerNode; t++) {
+                    futures.add(pool.submit(() -> {
+                        start.await();
+                        for (int i = 0; i < updatesPerThread; i++) {
+                            node.update(id, old -> entry(old == null ? 1 : old.klineVersion() + 1));
+                        }
+                        return null;
+                    }));
+                }
+            }
+            start.countDown();
+            for (Future<?> f : futures) {
+                f.get();
+            }
+        } finally {
+            pool.shutdownNow();
+        }
+
+        int expected = threadsPerNode * 2 * updatesPerThread;
+        await().atMost(Duration.ofSeconds(5))
+                .until(() -> nodeA.get(id).orElseThrow().klineVersion() == expected
+                        && nodeB.get(id).orElseThrow().klineVersion() == expected);
+    }
+
+    @Test
+    void provisionalBaselineDoesNotOverwriteModelBaselineFromAnotherNode() {
+        FateSessionCache cacheA = sessionCache(nodeA);
+        FateSessionCache cacheB = sessionCache(nodeB);
+        String id = newRequestId();
+        FateResponse.BaZiInfo bazi = bazi();
+
+        cacheA.upsertBaseline(id, bazi, 72, "model", false);
+        cacheB.upsertBaseline(id, bazi, 55, "local", true);
+
+        CacheEntry onB = cacheB.get(id).orElseThrow();
+        assertEquals(72, onB.baseline());
+        assertFalse(onB.baselineProvisional());
+
+        // 临时值先到、模型结果后到：模型结果覆盖临时值
+        String other = newRequestId();
+        cacheB.upsertBaseline(other, bazi, 55, "local", true);
+        cacheA.upsertBaseline(other, bazi, 72, "model", false);
+        await().atMost(Duration.ofSeconds(5))
+                .until(() -> cacheB.get(other).map(CacheEntry::baseline).orElse(0) == 72);
+    }
+
+    @Test
+    void degradesToNearCacheWhileRedisIsUnavailable() {
+        String id = newRequestId();
+        nodeA.update(id, old -> entry(1));
+
+        DockerClientFactory.instance().client().pauseContainerCmd(REDIS.getContainerId()).exec();
+        try {
+            // 写入只留在本节点，读取本节点仍能命中；其他节点读不到（也不抛异常）
+            CacheEntry written = nodeA.update(id, old -> entry(old == null ? 100 : old.klineVersion() + 1));
+            assertEquals(2, written.klineVersion());
+            assertEquals(2, nodeA.get(id).orElseThrow().klineVersion());
+            assertFalse(nodeB.get(id).isPresent());
+        } finally {
+            DockerClientFactory.instance().client().unpauseContainerCmd(REDIS.getContainerId()).exec();
+        }
+
+        String after = newRequestId();
+        await().atMost(Duration.ofSeconds(10)).ignoreExceptions()
+                .until(() -> nodeA.update(after, old -> entry(7)).klineVersion() == 7
+                        && nodeB.get(after).map(CacheEntry::klineVersion).orElse(0) == 7);
+    }
+
+    private static RedisSessionStore newStore() {
+        String uri = "redis://" + REDIS.getHost() + ":" + REDIS.getMappedPort(6379);
+        return new RedisSessionStore(uri, Duration.ofMillis(500), Duration.ofMinutes(30), 1000,
+                Duration.ofMinutes(10), new SimpleMeterRegistry());
+    }
+
+    private static FateSessionCache sessionCache(SessionStore store) {
+        SimpleMeterRegistry registry = new SimpleMeterRegistry();
+        return new FateSessionCache(store, new ModelLedger(Duration.ofMinutes(30), 100, registry), true, false, false,
+                false, true, Duration.ofMinutes(30), 100, registry);
+    }
+
+    private static CacheEntry entry(int klineVersion) {
+        return new CacheEntry(System.currentTimeMillis(), null, null, null, false, CompactSeries.EMPTY, null,
+                klineVersion, false, Map.of());
+    }
+
+    private static FateResponse.BaZiInfo bazi() {
+        FateResponse.BaZiInfo bazi = new FateResponse.BaZiInfo();
+        bazi.setYearPillar("甲子");
+        bazi.setMonthPillar("丙寅");
+        bazi.setDayPillar("戊辰");
+        bazi.setHourPillar("庚申");
+        return bazi;
+    }
+
+    private static String newRequestId() {
+        return UUID.randomUUID().toString();
+    }
+}
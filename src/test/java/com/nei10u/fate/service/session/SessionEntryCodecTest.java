@@ -0,0 +1,111 @@
+package com.nei10u.fate.service.session;
+
+import com.nei10u.fate.model.FateResponse;
+import com.nei10u.fate.model.YearlyBatchResult;
+import com.nei10u.fate.service.FateSessionCache.CacheEntry;
+import org.junit.jupiter.api.Test;
+
+import java.io.ByteArrayOutputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.util.List;
+import java.util.Map;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class SessionEntryCodecTest {
+
+    private static final List<YearlyBatchResult.YearlyItem> ITEMS = List.of(
+            CompactSeriesTest.item(1, 55, null, 56, "Bullish", "甲子", "童限", "开局平稳"),
+            CompactSeriesTest.item(2, 56, 56, 53, "Bearish", "乙丑", "丙寅", "小有波折"));
+
+    @Test
+    void currentVersionRoundTrips() {
+        PreparedBody body = PreparedBody.json(Map.of("items", ITEMS), true);
+        CacheEntry entry = new CacheEntry(1_700_000_000_000L, bazi(), 62, "格局中和", true,
+                CompactSeries.of(ITEMS, null, true), body, 3, true, Map.of("yearly", "model-a,model-b"));
+
+        CacheEntry decoded = SessionEntryCodec.decode(SessionEntryCodec.encode(entry));
+
+        assertEquals(entry.createdAtMillis(), decoded.createdAtMillis());
+        assertEquals(entry.baziInfo(), decoded.baziInfo());
+        assertEquals(62, decoded.baseline());
+        assertEquals("格局中和", decoded.baselineAnalysis());
+        assertTrue(decoded.baselineProvisional());
+        assertEquals(ITEMS, decoded.series().yearlyItems());
+        assertArrayEquals(body.raw(), decoded.yearlyBody().raw());
+        assertArrayEquals(body.gzip(), decoded.yearlyBody().gzip());
+        assertEquals(body.tag(), decoded.yearlyBody().tag());
+        assertEquals(3, decoded.klineVersion());
+        assertTrue(decoded.klineProvisional());
+        assertEquals(entry.stageModels(), decoded.stageModels());
+    }
+
+    @Test
+    void bodyWithoutGzipCopyAndMissingFieldsRoundTrip() {
+        PreparedBody body = PreparedBody.json(Map.of("items", ITEMS), false);
+        CacheEntry entry = new CacheEntry(1L, null, null, null, false, CompactSeries.EMPTY, body, 0, false, Map.of());
+
+        CacheEntry decoded = SessionEntryCodec.decode(SessionEntryCodec.encode(entry));
+
+        assertNull(decoded.baziInfo());
+        assertNull(decoded.baseline());
+        assertNull(decoded.baselineAnalysis());
+        assertFalse(decoded.yearlyBody().hasGzip());
+        assertArrayEquals(body.raw(), decoded.yearlyBody().raw());
+        assertEquals(Map.of(), decoded.stageModels());
+    }
+
+    @Test
+    void version4GzipOnlyBodyIsInflatedOnRead() throws IOException {
+        // 版本 4：yearlyBody 只有 gzip 字节 + 原文长度
+        PreparedBody current = PreparedBody.json(Map.of("items", ITEMS), true);
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        try (DataOutputStream out = new DataOutputStream(bytes)) {
+            out.writeByte(4);
+            out.writeLong(42L);
+            out.writeInt(-1);
+            out.writeBoolean(true);
+            out.writeInt(58);
+            out.writeInt(-1);
+            out.writeBoolean(false);
+            CompactSeries.of(ITEMS, null, false).writeTo(out);
+            out.writeBoolean(true);
+            out.writeUTF(current.tag());
+            out.writeInt(current.raw().length);
+            out.writeInt(current.gzip().length);
+            out.write(current.gzip());
+            out.writeInt(2);
+            out.writeBoolean(false);
+            out.writeShort(1);
+            out.writeUTF("report");
+            out.writeUTF("model-c");
+        }
+
+        CacheEntry decoded = SessionEntryCodec.decode(bytes.toByteArray());
+
+        assertEquals(42L, decoded.createdAtMillis());
+        assertEquals(58, decoded.baseline());
+        assertEquals(ITEMS, decoded.series().yearlyItems());
+        assertEquals(new String(current.raw(), StandardCharsets.UTF_8),
+                new String(decoded.yearlyBody().raw(), StandardCharsets.UTF_8));
+        assertArrayEquals(current.gzip(), decoded.yearlyBody().gzip());
+        assertEquals(current.etag(false), decoded.yearlyBody().etag(false));
+        assertEquals(2, decoded.klineVersion());
+        assertEquals(Map.of("report", "model-c"), decoded.stageModels());
+    }
+
+    private static FateResponse.BaZiInfo bazi() {
+        FateResponse.BaZiInfo bazi = new FateResponse.BaZiInfo();
+        bazi.setYearPillar("甲子");
+        bazi.setMonthPillar("丙寅");
+        bazi.setDayPillar("戊辰");
+        bazi.setHourPillar("庚申");
+        return bazi;
+    }
+}
@@ -0,0 +1,94 @@
+package com.nei10u.fate.service.session;
+
+import com.nei10u.fate.service.FateSessionCache.CacheEntry;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.Duration;
+import java.util.List;
+import java.util.Map;
+
+import static org.awaitility.Awaitility.await;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class SessionSnapshotTest {
+
+    private static final Duration TTL = Duration.ofMinutes(30);
+
+    @TempDir
+    Path dir;
+
+    @Test
+    void writeSkipsExpiredEntriesAndRestoreDecodesTheRest() throws IOException {
+        Path path = dir.resolve("snapshot.bin");
+        long now = System.currentTimeMillis();
+        int written = SessionSnapshot.write(path, Map.of(
+                "live", entry(now, 61),
+                "expired", entry(now - TTL.toMillis() - 1_000, 40)), TTL);
+        assertEquals(1, written);
+
+        SessionSnapshot.Restore restore = SessionSnapshot.open(path, TTL);
+        assertEquals(1, restore.indexed);
+        assertEquals(0, restore.expired);
+        assertEquals(List.of("live"), restore.keys());
+        CacheEntry live = restore.take("live");
+        assertEquals(61, live.baseline());
+        assertEquals(Map.of("baseline", "model-a"), live.stageModels());
+        // 同一 key 只解码一次
+        assertNull(restore.take("live"));
+        assertTrue(restore.isEmpty());
+    }
+
+    @Test
+    void entriesThatExpiredWhileDownAreSkippedOnOpen() throws IOException {
+        Path path = dir.resolve("snapshot.bin");
+        long now = System.currentTimeMillis();
+        SessionSnapshot.write(path, Map.of(
+                "fresh", entry(now, 61),
+                "stale", entry(now - Duration.ofMinutes(20).toMillis(), 40)), TTL);
+
+        // 停机期间 ttl 被调短（或停机太久）：打开时按新 ttl 跳过已过期的记录
+        SessionSnapshot.Restore restore = SessionSnapshot.open(path, Duration.ofMinutes(10));
+        assertEquals(1, restore.indexed);
+        assertEquals(1, restore.expired);
+        assertNull(restore.take("stale"));
+        assertEquals(61, restore.take("fresh").baseline());
+    }
+
+    @Test
+    void missingOrForeignFilesAreHandled() throws IOException {
+        assertNull(SessionSnapshot.open(dir.resolve("absent.bin"), TTL));
+
+        Path foreign = Files.write(dir.resolve("foreign.bin"), new byte[]{1, 2, 3, 4, 5, 6, 7, 8, 9, 10});
+        assertThrows(IOException.class, () -> SessionSnapshot.open(foreign, TTL));
+    }
+
+    @Test
+    void inMemoryStoreRestoresItsSnapshotAfterRestart() {
+        Path path = dir.resolve("store.bin");
+        SimpleMeterRegistry registry = new SimpleMeterRegistry();
+        InMemorySessionStore before = new InMemorySessionStore(TTL, 16, true, path, registry);
+        before.update("r1", old -> entry(System.currentTimeMillis(), 58));
+        before.close();
+        assertTrue(Files.exists(path));
+
+        InMemorySessionStore after = new InMemorySessionStore(TTL, 16, true, path, new SimpleMeterRegistry());
+        assertEquals(58, after.get("r1").orElseThrow().baseline());
+        assertFalse(after.get("r2").isPresent());
+        // 后台恢复完成后删除快照文件，重启不会重复恢复
+        await().atMost(Duration.ofSeconds(5)).until(() -> !Files.exists(path));
+    }
+
+    private static CacheEntry entry(long createdAtMillis, int baseline) {
+        return new CacheEntry(createdAtMillis, null, baseline, null, false, CompactSeries.EMPTY, null, 0, false,
+                Map.of("baseline", "model-a"));
+    }
+}
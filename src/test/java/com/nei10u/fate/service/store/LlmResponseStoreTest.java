@@ -0,0 +1,179 @@
+package com.nei10u.fate.service.store;
+
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import org.springframework.util.unit.DataSize;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Optional;
+import java.util.zip.CRC32;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class LlmResponseStoreTest {
+
+    /**
+     * 每条记录约 944 字节（44 字节头 + 900 字节值），4KB 的段恰好放 4 条，第 5 条触发滚动。
+     */
+    private static final DataSize SEGMENT = DataSize.ofBytes(4096);
+    private static final int VALUE_CHARS = 900;
+
+    @TempDir
+    Path dir;
+
+    private final List<LlmResponseStore> opened = new ArrayList<>();
+
+    @AfterEach
+    void closeAll() {
+        opened.forEach(LlmResponseStore::close);
+    }
+
+    @Test
+    void valuesSurviveRestart() {
+        LlmResponseStore store = open(DataSize.ofMegabytes(1), 0.5);
+        store.put(key("a"), value('a'));
+        store.put(key("b"), value('b'));
+        store.put(key("a"), value('A'));
+        store.close();
+
+        LlmResponseStore reopened = open(DataSize.ofMegabytes(1), 0.5);
+        assertEquals(Optional.of(value('A')), reopened.get(key("a")));
+        assertEquals(Optional.of(value('b')), reopened.get(key("b")));
+        assertEquals(Optional.empty(), reopened.get(key("missing")));
+    }
+
+    @Test
+    void recoversUnindexedTailAndTruncatesTornRecord() throws Exception {
+        LlmResponseStore store = open(DataSize.ofMegabytes(1), 0.5);
+        store.put(key("a"), value('a'));
+        store.close();
+
+        // 崩溃在写 .log 与写 .idx 之间：记录完整但没有索引项，后面再跟半条记录
+        Path log = dir.resolve(segmentFile(1, "log"));
+        long validEnd = Files.size(log) + record(key("tail"), value('t')).length;
+        append(log, record(key("tail"), value('t')));
+        byte[] torn = record(key("torn"), value('x'));
+        append(log, Arrays.copyOf(torn, torn.length / 2));
+
+        LlmResponseStore reopened = open(DataSize.ofMegabytes(1), 0.5);
+        assertEquals(Optional.of(value('a')), reopened.get(key("a")));
+        assertEquals(Optional.of(value('t')), reopened.get(key("tail")));
+        assertEquals(Optional.empty(), reopened.get(key("torn")));
+
+        // 恢复后的段继续作为活动段追加，再次重启只靠 .idx 即可命中全部记录
+        reopened.put(key("b"), value('b'));
+        reopened.close();
+        assertEquals(validEnd + record(key("b"), value('b')).length, Files.size(log));
+        LlmResponseStore again = open(DataSize.ofMegabytes(1), 0.5);
+        assertEquals(Optional.of(value('t')), again.get(key("tail")));
+        assertEquals(Optional.of(value('b')), again.get(key("b")));
+    }
+
+    @Test
+    void recoveredTailOfSealedSegmentCanBeCompacted() throws Exception {
+        LlmResponseStore store = open(DataSize.ofMegabytes(1), 0.5);
+        store.put(key("a"), "a");
+        store.close();
+        append(dir.resolve(segmentFile(1, "log")), record(key("tail"), "t"));
+        // 之后还有一个段：段 1 恢复后保持只读映射，不会被重新映射为可写
+        Files.createFile(dir.resolve(segmentFile(2, "log")));
+
+        LlmResponseStore reopened = open(DataSize.ofMegabytes(1), 0.5);
+        reopened.runMaintenance();
+
+        // 段 1 过小会被压缩：尾部补登记的记录也必须被搬走，而不是读 .idx 越界后放弃压缩
+        assertFalse(Files.exists(dir.resolve(segmentFile(1, "log"))));
+        assertFalse(Files.exists(dir.resolve(segmentFile(1, "idx"))));
+        assertEquals(Optional.of("a"), reopened.get(key("a")));
+        assertEquals(Optional.of("t"), reopened.get(key("tail")));
+
+        reopened.close();
+        LlmResponseStore again = open(DataSize.ofMegabytes(1), 0.5);
+        assertEquals(Optional.of("a"), again.get(key("a")));
+        assertEquals(Optional.of("t"), again.get(key("tail")));
+    }
+
+    @Test
+    void compactionMovesLiveRecordsOutOfSparseSegment() throws Exception {
+        LlmResponseStore store = open(DataSize.ofMegabytes(1), 0.5);
+        for (String k : List.of("k0", "k1", "k2", "k3")) {
+            store.put(key(k), value(k.charAt(1)));
+        }
+        // 覆盖其中 3 条：第一条覆盖触发滚动，段 1 只剩 k3 存活（约 25%）
+        for (String k : List.of("k0", "k1", "k2")) {
+            store.put(key(k), value('N'));
+        }
+        store.runMaintenance();
+
+        assertFalse(Files.exists(dir.resolve(segmentFile(1, "log"))));
+        assertEquals(Optional.of(value('3')), store.get(key("k3")));
+        assertEquals(Optional.of(value('N')), store.get(key("k0")));
+
+        store.close();
+        LlmResponseStore reopened = open(DataSize.ofMegabytes(1), 0.5);
+        assertEquals(Optional.of(value('3')), reopened.get(key("k3")));
+        assertEquals(Optional.of(value('N')), reopened.get(key("k2")));
+    }
+
+    @Test
+    void evictsOldestSegmentsOverCapacity() throws Exception {
+        LlmResponseStore store = open(DataSize.ofBytes(8192), 0.0);
+        for (int i = 0; i < 20; i++) {
+            store.put(key("e" + i), value((char) ('a' + i)));
+        }
+        store.runMaintenance();
+
+        assertTrue(store.totalBytes() <= 8192, "totalBytes=" + store.totalBytes());
+        assertEquals(Optional.empty(), store.get(key("e0")));
+        assertEquals(Optional.of(value((char) ('a' + 19))), store.get(key("e19")));
+        assertFalse(Files.exists(dir.resolve(segmentFile(1, "log"))));
+    }
+
+    private LlmResponseStore open(DataSize maxSize, double compactLiveRatio) {
+        LlmResponseStore store = new LlmResponseStore(true, dir, SEGMENT, maxSize, compactLiveRatio,
+                new SimpleMeterRegistry());
+        assertTrue(store.isOpen());
+        opened.add(store);
+        return store;
+    }
+
+    private static byte[] key(String prompt) {
+        return LlmResponseStore.hash("test-model", prompt);
+    }
+
+    private static String value(char c) {
+        return String.valueOf(c).repeat(VALUE_CHARS);
+    }
+
+    private static String segmentFile(long id, String ext) {
+        return String.format("%016d.%s", id, ext);
+    }
+
+    /**
+     * 与 LlmResponseStore 相同的记录格式：[magic][sha256][valueLength][crc32][value]。
+     */
+    private static byte[] record(byte[] hash, String value) {
+        byte[] bytes = value.getBytes(StandardCharsets.UTF_8);
+        CRC32 crc = new CRC32();
+        crc.update(bytes);
+        return ByteBuffer.allocate(4 + LlmResponseStore.HASH_BYTES + 4 + 4 + bytes.length)
+                .putInt(LlmResponseStore.MAGIC).put(hash).putInt(bytes.length).putInt((int) crc.getValue())
+                .put(bytes).array();
+    }
+
+    private static void append(Path file, byte[] bytes) throws IOException {
+        Files.write(file, bytes, StandardOpenOption.APPEND);
+    }
+}